@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes a JMH JSON result file as a markdown table of each benchmark and parameter combination's score, error and
+ * {@code gc.alloc.rate.norm}, under a line describing the JDK, forks and iterations it was run with. The raw file is
+ * mostly per-iteration samples and records the path of the JVM that ran it, so the summary is what gets committed.
+ * <p>
+ * Takes the JMH JSON file to read and the file to write, {@code benchmarks/results/baseline.md} by default.
+ */
+public class BenchmarkSummary {
+
+    private static final String ALLOCATION = "\u00b7gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: BenchmarkSummary <jmh result json> [summary md]");
+            System.exit(1);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args.length > 1 ? args[1] : "benchmarks/results/baseline.md");
+
+        JsonNode results = new ObjectMapper().readTree(input.toFile());
+        if (!results.isArray() || results.size() == 0) {
+            throw new IllegalArgumentException(input + " holds no JMH results");
+        }
+
+        StringBuilder summary = new StringBuilder();
+        for (String setting : settings(results)) {
+            summary.append(setting).append("\n");
+        }
+        summary.append("\n")
+                .append("| Benchmark | Parameters | Mode | Score | Error | Units | Allocated (B/op) |\n")
+                .append("|---|---|---|---:|---:|---|---:|\n");
+        for (JsonNode result : results) {
+            JsonNode primary = result.get("primaryMetric");
+            JsonNode allocation = result.path("secondaryMetrics").path(ALLOCATION);
+            summary.append("| ").append(shortName(result.get("benchmark").asText()))
+                    .append(" | ").append(params(result.path("params")))
+                    .append(" | ").append(result.get("mode").asText())
+                    .append(" | ").append(number(primary.get("score")))
+                    .append(" | \u00b1 ").append(number(primary.get("scoreError")))
+                    .append(" | ").append(primary.get("scoreUnit").asText())
+                    .append(" | ").append(allocation.isMissingNode() ? "" : number(allocation.get("score")))
+                    .append(" |\n");
+        }
+
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        Files.write(output, summary.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.print(summary);
+        System.out.println("Written to " + output.toAbsolutePath());
+    }
+
+    // One line per distinct combination of settings, usually just the one since a run's options apply to every
+    // benchmark in it
+    private static List<String> settings(JsonNode results) {
+        List<String> settings = new ArrayList<>();
+        for (JsonNode result : results) {
+            String setting = String.format(Locale.ROOT,
+                    "JDK %s (%s %s), JMH %s, %d forks of %d \u00d7 %s warmup and %d \u00d7 %s measurement iterations, "
+                            + "%d threads. Errors are the 99.9%% confidence interval.",
+                    result.get("jdkVersion").asText(),
+                    result.get("vmName").asText(),
+                    result.get("vmVersion").asText(),
+                    result.get("jmhVersion").asText(),
+                    result.get("forks").asInt(),
+                    result.get("warmupIterations").asInt(),
+                    result.get("warmupTime").asText(),
+                    result.get("measurementIterations").asInt(),
+                    result.get("measurementTime").asText(),
+                    result.get("threads").asInt());
+            if (!settings.contains(setting)) settings.add(setting);
+        }
+        return settings;
+    }
+
+    private static String shortName(String benchmark) {
+        int method = benchmark.lastIndexOf('.');
+        int type = benchmark.lastIndexOf('.', method - 1);
+        return benchmark.substring(type + 1);
+    }
+
+    private static String params(JsonNode params) {
+        StringBuilder joined = new StringBuilder();
+        Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (joined.length() > 0) joined.append(", ");
+            joined.append(field.getKey()).append("=").append(field.getValue().asText());
+        }
+        return joined.toString();
+    }
+
+    private static String number(JsonNode value) {
+        double number = value.asDouble(Double.NaN);
+        return Double.isNaN(number) ? "NaN" : String.format(Locale.ROOT, "%.3f", number);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Combining already completed futures, as when fanned out calls have all returned, so the cost measured is that of
+ * the combinators themselves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class CSHelperBenchmark {
+
+    @Param({"1", "10", "100"})
+    int count;
+
+    private List<CompletableFuture<Integer>> futures;
+    private List<Integer> items;
+
+    @Setup
+    public void setUp() {
+        futures = new ArrayList<>(count);
+        items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(CompletableFuture.completedFuture(i));
+            items.add(i);
+        }
+    }
+
+    @Benchmark
+    public List<Integer> allOf() {
+        return CSHelper.allOf(futures).toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public List<Integer> traverse() {
+        return CSHelper.traverse(items, 8, CompletableFuture::completedFuture).toCompletableFuture().join();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.serialization;
+
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.SerializerWithStringManifest;
+import akka.util.ByteString;
+import com.lightbend.lagom.javadsl.api.deser.MessageSerializer.NegotiatedDeserializer;
+import com.lightbend.lagom.javadsl.api.deser.MessageSerializer.NegotiatedSerializer;
+import com.lightbend.lagom.javadsl.api.deser.StrictMessageSerializer;
+import com.lightbend.lagom.javadsl.jackson.JacksonSerializerFactory;
+import com.redelastic.stocktrader.serialization.CompactSerializerFactory;
+
+import java.io.NotSerializableException;
+import java.io.UncheckedIOException;
+
+/**
+ * Encodes and decodes a sample the way it is in production: persisted events and states with the Akka serializer
+ * bound to them, which is Lagom's Jackson serializer for {@code Jsonable}, and topic messages and service responses
+ * with the Lagom message serializer the Kafka producer and consumer and the service calls use.
+ */
+public abstract class MessageCodec {
+
+    public enum Format {
+        // The serializers as configured, JSON unless persistence.serializer is switched
+        DEFAULT,
+        // CompactSerializer for persisted messages, and CompactSerializerFactory writing Smile for topic messages
+        COMPACT
+    }
+
+    public abstract byte[] encode(Object message);
+
+    public abstract Object decode(byte[] bytes);
+
+    /**
+     * The serializer's class, to confirm that a message is not falling back to Java serialization.
+     */
+    public abstract String serializerName();
+
+    public static MessageCodec forSample(ActorSystem system, SerializationSamples.Sample sample) {
+        return forSample(system, sample, Format.DEFAULT);
+    }
+
+    public static MessageCodec forSample(ActorSystem system, SerializationSamples.Sample sample, Format format) {
+        if (sample.getDeclaredType().isPresent()) {
+            Class<?> type = sample.getDeclaredType().get();
+            if (format == Format.COMPACT) {
+                CompactSerializerFactory factory = new CompactSerializerFactory(true);
+                return new Topic(factory.messageSerializerFor(type), "CompactSerializerFactory");
+            } else {
+                JacksonSerializerFactory factory = new JacksonSerializerFactory(system);
+                return new Topic(factory.messageSerializerFor(type), "JacksonSerializerFactory");
+            }
+        } else {
+            Serializer serializer = format == Format.COMPACT
+                    ? new CompactSerializer((ExtendedActorSystem) system)
+                    : SerializationExtension.get(system).findSerializerFor(sample.getMessage());
+            return new Persisted(serializer, sample.getMessage());
+        }
+    }
+
+    private static class Persisted extends MessageCodec {
+        private final Serializer serializer;
+        private final Class<?> type;
+        private final String manifest;
+
+        Persisted(Serializer serializer, Object sample) {
+            this.serializer = serializer;
+            this.type = sample.getClass();
+            this.manifest = serializer instanceof SerializerWithStringManifest
+                    ? ((SerializerWithStringManifest) serializer).manifest(sample)
+                    : "";
+        }
+
+        @Override
+        public byte[] encode(Object message) {
+            return serializer.toBinary(message);
+        }
+
+        @Override
+        public Object decode(byte[] bytes) {
+            try {
+                if (serializer instanceof SerializerWithStringManifest) {
+                    return ((SerializerWithStringManifest) serializer).fromBinary(bytes, manifest);
+                } else {
+                    return serializer.fromBinary(bytes, type);
+                }
+            } catch (NotSerializableException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public String serializerName() {
+            return serializer.getClass().getSimpleName();
+        }
+    }
+
+    private static class Topic extends MessageCodec {
+        private final NegotiatedSerializer<Object, ByteString> serializer;
+        private final NegotiatedDeserializer<Object, ByteString> deserializer;
+        private final String name;
+
+        Topic(StrictMessageSerializer<Object> messageSerializer, String name) {
+            // The Kafka producer uses the request serializer, and the consumer the deserializer for its protocol
+            this.serializer = messageSerializer.serializerForRequest();
+            this.deserializer = messageSerializer.deserializer(serializer.protocol());
+            this.name = name;
+        }
+
+        @Override
+        public byte[] encode(Object message) {
+            return serializer.serialize(message).toArray();
+        }
+
+        @Override
+        public Object decode(byte[] bytes) {
+            return deserializer.deserialize(ByteString.fromArrayUnsafe(bytes));
+        }
+
+        @Override
+        public String serializerName() {
+            return name;
+        }
+    }
+}
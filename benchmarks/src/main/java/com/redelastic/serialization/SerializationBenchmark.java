@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.serialization;
+
+import akka.actor.ActorSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding each persisted event and state, each topic message and the larger service responses, see
+ * {@link SerializationSamples}, in each {@link MessageCodec.Format}. Encoded sizes are written by
+ * {@link SerializationReport}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class SerializationBenchmark {
+
+    @Param({
+            "PortfolioEvent.Opened",
+            "PortfolioEvent.LiquidationStarted",
+            "PortfolioEvent.Closed",
+            "PortfolioEvent.SharesCredited",
+            "PortfolioEvent.SharesDebited",
+            "PortfolioEvent.FundsDebited",
+            "PortfolioEvent.FundsCredited",
+            "PortfolioEvent.RefundAccepted",
+            "PortfolioEvent.OrderPlaced",
+            "PortfolioEvent.OrderFulfilled",
+            "PortfolioEvent.OrderFailed",
+            "PortfolioState.Open",
+            "PortfolioState.Closed",
+            "OrderEvent.OrderReceived",
+            "OrderEvent.OrderFulfilled",
+            "OrderEvent.OrderFailed",
+            "TransferEvent.TransferInitiated",
+            "TransferEvent.TransferInitiated/netted",
+            "TransferEvent.FundsRetrieved",
+            "TransferEvent.CouldNotSecureFunds",
+            "TransferEvent.DeliveryConfirmed",
+            "TransferEvent.DeliveryFailed",
+            "TransferEvent.RefundDelivered",
+            "TransferState",
+            "TransferState/netted",
+            "OrderPlaced",
+            "OrderResult.Fulfilled",
+            "OrderResult.Failed",
+            "TransferRequest.WithdrawlRequest",
+            "TransferRequest.DepositRequest",
+            "PortfolioView",
+            "PortfolioView/holdings",
+            "PortfolioView/bare"
+    })
+    String message;
+
+    @Param
+    MessageCodec.Format format;
+
+    private ActorSystem system;
+    private MessageCodec codec;
+    private Object sample;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        system = ActorSystem.create("serialization-benchmark");
+        SerializationSamples.Sample sample = SerializationSamples.get(message);
+        this.codec = MessageCodec.forSample(system, sample, format);
+        this.sample = sample.getMessage();
+        this.encoded = codec.encode(this.sample);
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return codec.encode(sample);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return codec.decode(encoded);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.serialization;
+
+import akka.actor.ActorSystem;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Writes the encoded size of every sample in {@link SerializationSamples} as a markdown table, so that changes to
+ * the model show up as a diff against the committed report. Each sample is also decoded and encoded again, to catch
+ * messages that do not survive a round trip. Each sample is also encoded in {@link MessageCodec.Format#COMPACT}, to
+ * show what switching to the compact serializers would save.
+ * <p>
+ * Takes the file to write as its argument, {@code benchmarks/results/serialization-sizes.md} by default.
+ */
+public class SerializationReport {
+
+    public static void main(String[] args) throws IOException {
+        Path output = Paths.get(args.length > 0 ? args[0] : "benchmarks/results/serialization-sizes.md");
+
+        StringBuilder report = new StringBuilder()
+                .append("| Message | Kind | Serializer | Bytes | Compact bytes | Round trip |\n")
+                .append("|---|---|---|---:|---:|---|\n");
+
+        ActorSystem system = ActorSystem.create("serialization-report");
+        try {
+            for (Map.Entry<String, SerializationSamples.Sample> entry : SerializationSamples.all().entrySet()) {
+                SerializationSamples.Sample sample = entry.getValue();
+                MessageCodec codec = MessageCodec.forSample(system, sample);
+                MessageCodec compact = MessageCodec.forSample(system, sample, MessageCodec.Format.COMPACT);
+                byte[] encoded = codec.encode(sample.getMessage());
+                report.append("| ").append(entry.getKey())
+                        .append(" | ").append(sample.getKind().name().toLowerCase())
+                        .append(" | ").append(codec.serializerName())
+                        .append(" | ").append(encoded.length)
+                        .append(" | ").append(compact.encode(sample.getMessage()).length)
+                        .append(" | ").append(roundTrip(codec, encoded))
+                        .append(" |\n");
+            }
+        } finally {
+            system.terminate();
+        }
+
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        Files.write(output, report.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.print(report);
+        System.out.println("Written to " + output.toAbsolutePath());
+    }
+
+    private static String roundTrip(MessageCodec codec, byte[] encoded) {
+        try {
+            return Arrays.equals(encoded, codec.encode(codec.decode(encoded))) ? "ok" : "changed";
+        } catch (RuntimeException e) {
+            return "failed: " + e.getClass().getSimpleName();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.serialization;
+
+import com.lightbend.lagom.javadsl.persistence.AggregateEvent;
+import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferSerializationSamples;
+import com.redelastic.stocktrader.OrderId;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TradeType;
+import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.broker.api.OrderResult;
+import com.redelastic.stocktrader.broker.api.Trade;
+import com.redelastic.stocktrader.broker.impl.order.OrderSerializationSamples;
+import com.redelastic.stocktrader.portfolio.api.OrderPlaced;
+import com.redelastic.stocktrader.portfolio.api.PortfolioView;
+import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
+import com.redelastic.stocktrader.portfolio.api.order.OrderType;
+import com.redelastic.stocktrader.portfolio.impl.PortfolioSerializationSamples;
+import com.redelastic.stocktrader.wiretransfer.api.Account;
+import com.redelastic.stocktrader.wiretransfer.api.TransferRequest;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Every persisted event and state, every topic message and the larger service responses, by name. The names are the
+ * values of {@link SerializationBenchmark#message}.
+ */
+public class SerializationSamples {
+
+    private SerializationSamples() {}
+
+    public enum Kind {
+        EVENT,
+        STATE,
+        TOPIC,
+        RESPONSE
+    }
+
+    @Value
+    public static class Sample {
+        String name;
+        Kind kind;
+        Object message;
+        // The type the topic or service call is declared with, which may be a supertype of the message. Empty for
+        // persisted messages.
+        Optional<Class<?>> declaredType;
+    }
+
+    public static Map<String, Sample> all() {
+        Map<String, Sample> samples = new LinkedHashMap<>();
+        persisted(samples, PortfolioSerializationSamples.samples());
+        persisted(samples, OrderSerializationSamples.samples());
+        persisted(samples, TransferSerializationSamples.samples());
+
+        PortfolioId portfolioId = new PortfolioId("3f1b1c9e-6a0d-4f43-9a1e-5b0f3c2d7e11");
+        OrderId orderId = new OrderId("8d2c7a5e-0b4f-4c1e-9f3a-000000000000");
+        TransferId transferId = new TransferId("c6e4a1f2-7d3b-4e8a-b5c9-000000000000");
+
+        topic(samples, "OrderPlaced", OrderPlaced.class, OrderPlaced.builder()
+                .portfolioId(portfolioId)
+                .orderId(orderId)
+                .orderDetails(OrderDetails.builder()
+                        .symbol("IBM")
+                        .shares(10)
+                        .tradeType(TradeType.BUY)
+                        .orderType(new OrderType.Limit(new BigDecimal("134.25")))
+                        .build())
+                .build());
+        topic(samples, "OrderResult.Fulfilled", OrderResult.class, OrderResult.Fulfilled.builder()
+                .portfolioId(portfolioId)
+                .orderId(orderId)
+                .trade(Trade.builder()
+                        .symbol("IBM")
+                        .shares(10)
+                        .tradeType(TradeType.BUY)
+                        .sharePrice(new BigDecimal("134.18"))
+                        .build())
+                .build());
+        topic(samples, "OrderResult.Failed", OrderResult.class, new OrderResult.Failed(portfolioId, orderId));
+        topic(samples, "TransferRequest.WithdrawlRequest", TransferRequest.class, TransferRequest.WithdrawlRequest.builder()
+                .transferId(transferId)
+                .account(new Account.SavingsAccount("SAV-0042-7781"))
+                .amount(new BigDecimal("12345.67"))
+                .build());
+        topic(samples, "TransferRequest.DepositRequest", TransferRequest.class, TransferRequest.DepositRequest.builder()
+                .transferId(transferId)
+                .account(new Account.Portfolio(portfolioId))
+                .amount(new BigDecimal("12345.67"))
+                .build());
+        PortfolioSerializationSamples.views()
+                .forEach((name, view) -> response(samples, name, PortfolioView.class, view));
+        return samples;
+    }
+
+    public static Sample get(String name) {
+        Map<String, Sample> samples = all();
+        Sample sample = samples.get(name);
+        if (sample == null) {
+            throw new IllegalArgumentException("Unknown message " + name + ", expected one of " + samples.keySet());
+        }
+        return sample;
+    }
+
+    private static void persisted(Map<String, Sample> samples, Map<String, Object> messages) {
+        messages.forEach((name, message) -> samples.put(name, new Sample(
+                name,
+                message instanceof AggregateEvent ? Kind.EVENT : Kind.STATE,
+                message,
+                Optional.empty())));
+    }
+
+    private static void topic(Map<String, Sample> samples, String name, Class<?> topicType, Object message) {
+        samples.put(name, new Sample(name, Kind.TOPIC, message, Optional.of(topicType)));
+    }
+
+    private static void response(Map<String, Sample> samples, String name, Class<?> responseType, Object message) {
+        samples.put(name, new Sample(name, Kind.RESPONSE, message, Optional.of(responseType)));
+    }
+}
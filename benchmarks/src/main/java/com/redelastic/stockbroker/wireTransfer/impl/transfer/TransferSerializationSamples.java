@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.wiretransfer.api.Account;
+import org.pcollections.PSequence;
+import org.pcollections.TreePVector;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An instance of each persisted transfer event and state, for the serialization benchmarks. Netted transfers carry
+ * the client transfers they were folded from, so the netted samples are the larger ones.
+ */
+public class TransferSerializationSamples {
+
+    private TransferSerializationSamples() {}
+
+    public static Map<String, Object> samples() {
+        TransferId transferId = transferId(0);
+        TransferDetails details = details(new BigDecimal("12345.67"), TreePVector.empty());
+        TransferDetails netted = details(new BigDecimal("12345.60"), nettedTransfers(10));
+
+        Map<String, Object> samples = new LinkedHashMap<>();
+        samples.put("TransferEvent.TransferInitiated", new TransferEvent.TransferInitiated(transferId, details));
+        samples.put("TransferEvent.TransferInitiated/netted", new TransferEvent.TransferInitiated(transferId, netted));
+        samples.put("TransferEvent.FundsRetrieved", new TransferEvent.FundsRetrieved(transferId, details));
+        samples.put("TransferEvent.CouldNotSecureFunds", new TransferEvent.CouldNotSecureFunds(transferId, details));
+        samples.put("TransferEvent.DeliveryConfirmed", new TransferEvent.DeliveryConfirmed(transferId, details));
+        samples.put("TransferEvent.DeliveryFailed", new TransferEvent.DeliveryFailed(transferId, details));
+        samples.put("TransferEvent.RefundDelivered", new TransferEvent.RefundDelivered(transferId, details));
+        samples.put("TransferState", TransferState.from(details).withStatus(TransferState.Status.FundsSent));
+        samples.put("TransferState/netted", TransferState.from(netted).withStatus(TransferState.Status.FundsSent));
+        return samples;
+    }
+
+    private static TransferDetails details(BigDecimal amount, PSequence<NettedTransfer> nettedTransfers) {
+        return TransferDetails.builder()
+                .source(new Account.SavingsAccount("SAV-0042-7781"))
+                .destination(new Account.Portfolio(new PortfolioId("3f1b1c9e-6a0d-4f43-9a1e-5b0f3c2d7e11")))
+                .amount(amount)
+                .nettedTransfers(nettedTransfers)
+                .initiatedAt(1546300800000L)
+                .build();
+    }
+
+    private static PSequence<NettedTransfer> nettedTransfers(int count) {
+        List<NettedTransfer> transfers = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            transfers.add(new NettedTransfer(transferId(i), new BigDecimal("1234.56")));
+        }
+        return TreePVector.from(transfers);
+    }
+
+    private static TransferId transferId(int i) {
+        return new TransferId(String.format("c6e4a1f2-7d3b-4e8a-b5c9-%012d", i));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.stocktrader.broker.impl.order;
+
+import com.redelastic.stocktrader.OrderId;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TradeType;
+import com.redelastic.stocktrader.broker.api.Trade;
+import com.redelastic.stocktrader.portfolio.api.order.Order;
+import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
+import com.redelastic.stocktrader.portfolio.api.order.OrderType;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An instance of each persisted order event, for the serialization benchmarks. {@link OrderState} is not
+ * {@code Jsonable} and is not included.
+ */
+public class OrderSerializationSamples {
+
+    private OrderSerializationSamples() {}
+
+    public static Map<String, Object> samples() {
+        Order order = Order.builder()
+                .orderId(new OrderId("8d2c7a5e-0b4f-4c1e-9f3a-000000000000"))
+                .portfolioId(new PortfolioId("3f1b1c9e-6a0d-4f43-9a1e-5b0f3c2d7e11"))
+                .details(OrderDetails.builder()
+                        .symbol("IBM")
+                        .shares(10)
+                        .tradeType(TradeType.BUY)
+                        .orderType(new OrderType.Limit(new BigDecimal("134.25")))
+                        .build())
+                .build();
+        Trade trade = Trade.builder()
+                .symbol("IBM")
+                .shares(10)
+                .tradeType(TradeType.BUY)
+                .sharePrice(new BigDecimal("134.18"))
+                .build();
+
+        Map<String, Object> samples = new LinkedHashMap<>();
+        samples.put("OrderEvent.OrderReceived", new OrderEvent.OrderReceived(order));
+        samples.put("OrderEvent.OrderFulfilled", new OrderEvent.OrderFulfilled(order, trade));
+        samples.put("OrderEvent.OrderFailed", new OrderEvent.OrderFailed(order));
+        return samples;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.stocktrader.broker.impl.trade;
+
+import com.redelastic.stocktrader.OrderId;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TradeType;
+import com.redelastic.stocktrader.broker.api.OrderResult;
+import com.redelastic.stocktrader.broker.api.Quote;
+import com.redelastic.stocktrader.portfolio.api.order.Order;
+import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
+import com.redelastic.stocktrader.portfolio.api.order.OrderType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pricing a market order, with quotes answered immediately so only the order handling and price arithmetic is
+ * measured. Logging is turned down to WARN in this module's logback.xml, otherwise the per order INFO line dominates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class TradeServiceBenchmark {
+
+    @Param({"1", "1000000"})
+    int shares;
+
+    @Param({"12.34", "987654.321987"})
+    String sharePrice;
+
+    private TradeServiceImpl tradeService;
+    private Order order;
+
+    @Setup
+    public void setUp() {
+        Quote quote = Quote.builder().symbol("IBM").sharePrice(new BigDecimal(sharePrice)).build();
+        tradeService = new TradeServiceImpl(symbol -> CompletableFuture.completedFuture(quote));
+        order = Order.builder()
+                .orderId(OrderId.newId())
+                .portfolioId(new PortfolioId("benchmark"))
+                .details(OrderDetails.builder()
+                        .symbol("IBM")
+                        .shares(shares)
+                        .tradeType(TradeType.BUY)
+                        .orderType(OrderType.Market.INSTANCE)
+                        .build())
+                .build();
+    }
+
+    @Benchmark
+    public OrderResult placeMarketOrder() {
+        return tradeService.placeOrder(order).toCompletableFuture().join();
+    }
+}
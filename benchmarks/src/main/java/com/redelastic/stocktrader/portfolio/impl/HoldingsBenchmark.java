@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.stocktrader.portfolio.impl;
+
+import com.redelastic.stocktrader.portfolio.api.Holding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pcollections.PSequence;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Holdings} is rebuilt on every share credit and debit, and converted to a sequence for every portfolio view.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class HoldingsBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    int holdingsCount;
+
+    private Holdings holdings;
+    private String heldSymbol;
+
+    @Setup
+    public void setUp() {
+        holdings = Holdings.EMPTY;
+        for (int i = 0; i < holdingsCount; i++) {
+            holdings = holdings.add(symbol(i), 100);
+        }
+        heldSymbol = symbol(holdingsCount / 2);
+    }
+
+    @Benchmark
+    public Holdings addToHeldSymbol() {
+        return holdings.add(heldSymbol, 10);
+    }
+
+    @Benchmark
+    public Holdings addNewSymbol() {
+        return holdings.add("NEW", 10);
+    }
+
+    @Benchmark
+    public Holdings removeSome() {
+        return holdings.remove(heldSymbol, 10);
+    }
+
+    @Benchmark
+    public Holdings removeAll() {
+        return holdings.remove(heldSymbol, 100);
+    }
+
+    @Benchmark
+    public PSequence<Holding> asSequence() {
+        return holdings.asSequence();
+    }
+
+    static String symbol(int i) {
+        return "SYM" + i;
+    }
+}
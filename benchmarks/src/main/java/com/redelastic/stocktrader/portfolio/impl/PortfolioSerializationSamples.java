@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.stocktrader.portfolio.impl;
+
+import com.redelastic.stocktrader.OrderId;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TradeType;
+import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.portfolio.api.PortfolioView;
+import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
+import com.redelastic.stocktrader.portfolio.api.order.OrderType;
+import org.pcollections.ConsPStack;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An instance of each persisted portfolio event and state, for the serialization benchmarks. Ids are fixed so that
+ * encoded sizes are the same from run to run.
+ */
+public class PortfolioSerializationSamples {
+
+    static final PortfolioId PORTFOLIO_ID = new PortfolioId("3f1b1c9e-6a0d-4f43-9a1e-5b0f3c2d7e11");
+
+    private PortfolioSerializationSamples() {}
+
+    public static Map<String, Object> samples() {
+        Map<String, Object> samples = new LinkedHashMap<>();
+        samples.put("PortfolioEvent.Opened", new PortfolioEvent.Opened(PORTFOLIO_ID, "Retirement fund"));
+        samples.put("PortfolioEvent.LiquidationStarted", new PortfolioEvent.LiquidationStarted(PORTFOLIO_ID));
+        samples.put("PortfolioEvent.Closed", new PortfolioEvent.Closed(PORTFOLIO_ID));
+        samples.put("PortfolioEvent.SharesCredited", new PortfolioEvent.SharesCredited(PORTFOLIO_ID, "IBM", 100));
+        samples.put("PortfolioEvent.SharesDebited", new PortfolioEvent.SharesDebited(PORTFOLIO_ID, "IBM", 100));
+        samples.put("PortfolioEvent.FundsDebited", new PortfolioEvent.FundsDebited(PORTFOLIO_ID, new BigDecimal("12345.67")));
+        samples.put("PortfolioEvent.FundsCredited", new PortfolioEvent.FundsCredited(PORTFOLIO_ID, new BigDecimal("12345.67")));
+        samples.put("PortfolioEvent.RefundAccepted", new PortfolioEvent.RefundAccepted(
+                PORTFOLIO_ID, transferId(0), new BigDecimal("12345.67")));
+        samples.put("PortfolioEvent.OrderPlaced", orderPlaced(0));
+        samples.put("PortfolioEvent.OrderFulfilled", new PortfolioEvent.OrderFulfilled(PORTFOLIO_ID, orderId(0)));
+        samples.put("PortfolioEvent.OrderFailed", new PortfolioEvent.OrderFailed(PORTFOLIO_ID, orderId(0)));
+        samples.put("PortfolioState.Open", openState(20, 5, 100));
+        samples.put("PortfolioState.Closed", PortfolioState.Closed.INSTANCE);
+        return samples;
+    }
+
+    /**
+     * The view {@code getPortfolio} answers with for the open portfolio sample, with all of its parts, with only the
+     * holdings, as the live valuations ask for, and with neither.
+     */
+    public static Map<String, PortfolioView> views() {
+        PortfolioState.Open portfolio = openState(20, 5, 100);
+        Map<String, PortfolioView> views = new LinkedHashMap<>();
+        views.put("PortfolioView", view(portfolio)
+                .holdings(portfolio.getHoldings().asSequence())
+                .completedOrders(ConsPStack.from(portfolio.getCompletedOrders()))
+                .build());
+        views.put("PortfolioView/holdings", view(portfolio)
+                .holdings(portfolio.getHoldings().asSequence())
+                .build());
+        views.put("PortfolioView/bare", view(portfolio).build());
+        return views;
+    }
+
+    private static PortfolioView.PortfolioViewBuilder view(PortfolioState.Open portfolio) {
+        return PortfolioView.builder()
+                .portfolioId(PORTFOLIO_ID)
+                .name(portfolio.getName())
+                .funds(portfolio.getFunds())
+                .version(portfolio.getVersion());
+    }
+
+    /**
+     * An open portfolio with some trading history, built by applying events as recovery would.
+     */
+    static PortfolioState.Open openState(int holdingsCount, int activeOrderCount, int completedOrderCount) {
+        PortfolioState.Open state = PortfolioState.Open.initialState("Retirement fund")
+                .update(new PortfolioEvent.FundsCredited(PORTFOLIO_ID, new BigDecimal("250000.00")));
+        for (int i = 0; i < holdingsCount; i++) {
+            state = state.update(new PortfolioEvent.SharesCredited(PORTFOLIO_ID, HoldingsBenchmark.symbol(i), 100));
+        }
+        for (int i = 0; i < completedOrderCount; i++) {
+            state = state.update(orderPlaced(i)).orderCompleted(orderId(i));
+        }
+        for (int i = completedOrderCount; i < completedOrderCount + activeOrderCount; i++) {
+            state = state.update(orderPlaced(i));
+        }
+        return state;
+    }
+
+    private static PortfolioEvent.OrderPlaced orderPlaced(int i) {
+        return new PortfolioEvent.OrderPlaced(orderId(i), PORTFOLIO_ID, OrderDetails.builder()
+                .symbol("IBM")
+                .shares(10)
+                .tradeType(TradeType.BUY)
+                .orderType(new OrderType.Limit(new BigDecimal("134.25")))
+                .build());
+    }
+
+    private static OrderId orderId(int i) {
+        return new OrderId(String.format("8d2c7a5e-0b4f-4c1e-9f3a-%012d", i));
+    }
+
+    private static TransferId transferId(int i) {
+        return new TransferId(String.format("c6e4a1f2-7d3b-4e8a-b5c9-%012d", i));
+    }
+}
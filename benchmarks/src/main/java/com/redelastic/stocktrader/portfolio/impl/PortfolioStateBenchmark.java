@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.stocktrader.portfolio.impl;
+
+import com.redelastic.stocktrader.OrderId;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TradeType;
+import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
+import com.redelastic.stocktrader.portfolio.api.order.OrderType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event application on {@link PortfolioState.Open}, which runs for every event on recovery as well as on every
+ * command. Active and completed orders grow with the portfolio's trading history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class PortfolioStateBenchmark {
+
+    @Param({"10", "100"})
+    int holdingsCount;
+
+    @Param({"0", "100", "1000"})
+    int activeOrderCount;
+
+    @Param({"0", "1000", "10000"})
+    int completedOrderCount;
+
+    private PortfolioState.Open state;
+    private PortfolioEvent.FundsCredited fundsCredited;
+    private PortfolioEvent.SharesCredited sharesCredited;
+    private PortfolioEvent.SharesDebited sharesDebited;
+    private PortfolioEvent.OrderPlaced orderPlaced;
+    private OrderId activeOrder;
+
+    @Setup
+    public void setUp() {
+        PortfolioId portfolioId = new PortfolioId("benchmark");
+        state = PortfolioState.Open.initialState("benchmark");
+
+        for (int i = 0; i < holdingsCount; i++) {
+            state = state.update(new PortfolioEvent.SharesCredited(portfolioId, HoldingsBenchmark.symbol(i), 100));
+        }
+        for (int i = 0; i < completedOrderCount; i++) {
+            OrderId orderId = OrderId.newId();
+            state = state.update(orderPlaced(orderId, portfolioId)).orderCompleted(orderId);
+        }
+        for (int i = 0; i < activeOrderCount; i++) {
+            OrderId orderId = OrderId.newId();
+            state = state.update(orderPlaced(orderId, portfolioId));
+            activeOrder = orderId;
+        }
+        if (activeOrder == null) {
+            activeOrder = OrderId.newId();
+        }
+
+        fundsCredited = new PortfolioEvent.FundsCredited(portfolioId, new BigDecimal("1234.56"));
+        sharesCredited = new PortfolioEvent.SharesCredited(portfolioId, HoldingsBenchmark.symbol(0), 10);
+        sharesDebited = new PortfolioEvent.SharesDebited(portfolioId, HoldingsBenchmark.symbol(0), 10);
+        orderPlaced = orderPlaced(OrderId.newId(), portfolioId);
+    }
+
+    @Benchmark
+    public PortfolioState.Open fundsCredited() {
+        return state.update(fundsCredited);
+    }
+
+    @Benchmark
+    public PortfolioState.Open sharesCredited() {
+        return state.update(sharesCredited);
+    }
+
+    @Benchmark
+    public PortfolioState.Open sharesDebited() {
+        return state.update(sharesDebited);
+    }
+
+    @Benchmark
+    public PortfolioState.Open orderPlaced() {
+        return state.update(orderPlaced);
+    }
+
+    @Benchmark
+    public PortfolioState.Open orderCompleted() {
+        return state.orderCompleted(activeOrder);
+    }
+
+    private static PortfolioEvent.OrderPlaced orderPlaced(OrderId orderId, PortfolioId portfolioId) {
+        return new PortfolioEvent.OrderPlaced(orderId, portfolioId, OrderDetails.builder()
+                .symbol("IBM")
+                .shares(10)
+                .tradeType(TradeType.BUY)
+                .orderType(OrderType.Market.INSTANCE)
+                .build());
+    }
+}
@@ -6,18 +6,23 @@ import com.lightbend.lagom.javadsl.api.ServiceInfo;
 import com.lightbend.lagom.javadsl.client.ServiceClientGuiceSupport;
 import com.lightbend.lagom.javadsl.client.ConfigurationServiceLocator;
 import com.lightbend.lagom.javadsl.api.ServiceLocator;
+import com.lightbend.lagom.internal.javadsl.client.ServiceClientProvider;
+import com.redelastic.metrics.MetricsRegistry;
 import play.Environment;
 import com.typesafe.config.Config;
 import com.redelastic.stocktrader.broker.api.BrokerService;
 import com.redelastic.stocktrader.portfolio.api.PortfolioService;
+import com.redelastic.stocktrader.serialization.CompactSerializerFactory;
 import com.redelastic.stocktrader.wiretransfer.api.WireTransferService;
 import services.quote.QuoteService;
+import services.metrics.InstrumentedClients;
 import services.quote.QuoteServiceImpl;
 
 @SuppressWarnings("WeakerAccess")
 public class Module extends AbstractModule implements ServiceClientGuiceSupport {
     private final Environment environment;
     private final Config config;
+    private final MetricsRegistry metrics = new MetricsRegistry();
 
     public Module(Environment environment, Config config) {
         this.environment = environment;
@@ -26,11 +31,14 @@ public class Module extends AbstractModule implements ServiceClientGuiceSupport
 
     @Override
     protected void configure() {
+        // Descriptors create their serializer factories themselves, so configure them from here
+        CompactSerializerFactory.configure(config);
         // route all paths to through this Play BFF
         bindServiceInfo(ServiceInfo.of("web-gateway-module", ServiceAcl.path(".*")));
-        bindClient(PortfolioService.class);
-        bindClient(BrokerService.class);
-        bindClient(WireTransferService.class);
+        bind(MetricsRegistry.class).toInstance(metrics);
+        bindInstrumentedClient(PortfolioService.class);
+        bindInstrumentedClient(BrokerService.class);
+        bindInstrumentedClient(WireTransferService.class);
 
         bind(JavaJsonCustomObjectMapper.class).asEagerSingleton();
         bind(QuoteService.class).to(QuoteServiceImpl.class);
@@ -39,4 +47,12 @@ public class Module extends AbstractModule implements ServiceClientGuiceSupport
             bind(ServiceLocator.class).to(ConfigurationServiceLocator.class);
         }
     }
+
+    // As bindClient, but with every call on the client timed. The plain client comes from the same provider
+    // bindClient uses.
+    private <T> void bindInstrumentedClient(Class<T> clientInterface) {
+        ServiceClientProvider<T> client = new ServiceClientProvider<>(clientInterface);
+        requestInjection(client);
+        bind(clientInterface).toProvider(InstrumentedClients.provider(clientInterface, client, metrics));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package controllers;
+
+import com.lightbend.lagom.javadsl.api.transport.TransportErrorCode;
+import com.lightbend.lagom.javadsl.api.transport.TransportException;
+import com.redelastic.stocktrader.portfolio.api.PortfolioService;
+import play.libs.Json;
+import play.mvc.Controller;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+
+import javax.inject.Inject;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+public class LeaderboardController extends Controller {
+
+    private final PortfolioService portfolioService;
+
+    @Inject
+    public LeaderboardController(PortfolioService portfolioService) {
+        this.portfolioService = portfolioService;
+    }
+
+    public CompletionStage<Result> top(Integer limit) {
+        return portfolioService
+                .getTopPortfolios(Optional.of(limit))
+                .invoke()
+                .thenApply(Json::toJson)
+                .thenApply(Results::ok)
+                .exceptionally(LeaderboardController::unavailable);
+    }
+
+    public CompletionStage<Result> movers(Integer limit) {
+        return portfolioService
+                .getBiggestMovers(Optional.of(limit))
+                .invoke()
+                .thenApply(Json::toJson)
+                .thenApply(Results::ok)
+                .exceptionally(LeaderboardController::unavailable);
+    }
+
+    /**
+     * Passes on the portfolio service's 503 while its leaderboard is still being built, rather than failing.
+     */
+    private static Result unavailable(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof TransportException
+                && ((TransportException) cause).errorCode().equals(TransportErrorCode.ServiceUnavailable)) {
+            return Results.status(Http.Status.SERVICE_UNAVAILABLE, cause.getMessage());
+        }
+        throw new CompletionException(cause);
+    }
+}
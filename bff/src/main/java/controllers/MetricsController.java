@@ -0,0 +1,40 @@
+package controllers;
+
+import com.redelastic.metrics.MetricsRegistry;
+import play.mvc.Controller;
+import play.mvc.Result;
+import services.cache.ConditionalGetMetrics;
+import services.cache.SingleFlight;
+
+import javax.inject.Inject;
+
+public class MetricsController extends Controller {
+
+    private final ConditionalGetMetrics conditionalGetMetrics;
+    private final SingleFlight singleFlight;
+    private final MetricsRegistry metrics;
+
+    @Inject
+    public MetricsController(ConditionalGetMetrics conditionalGetMetrics,
+                             SingleFlight singleFlight,
+                             MetricsRegistry metrics) {
+        this.conditionalGetMetrics = conditionalGetMetrics;
+        this.singleFlight = singleFlight;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Request and service client latencies, for Prometheus to scrape.
+     */
+    public Result prometheus() {
+        return ok(metrics.toPrometheus()).as("text/plain; version=0.0.4; charset=utf-8");
+    }
+
+    public Result conditionalGet() {
+        return ok(conditionalGetMetrics.toJson());
+    }
+
+    public Result coalescing() {
+        return ok(singleFlight.toJson());
+    }
+}
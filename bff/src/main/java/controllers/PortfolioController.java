@@ -1,6 +1,11 @@
 package controllers;
 
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.redelastic.CSHelper;
+import com.redelastic.Deadline;
+import com.redelastic.stocktrader.ConsistencyToken;
 import com.redelastic.stocktrader.OrderId;
 import com.redelastic.stocktrader.PortfolioId;
 import com.redelastic.stocktrader.broker.api.BrokerService;
@@ -11,8 +16,10 @@ import com.redelastic.stocktrader.portfolio.api.PortfolioService;
 import com.redelastic.stocktrader.portfolio.api.PortfolioView;
 import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
 import com.redelastic.stocktrader.portfolio.api.order.OrderType;
+import com.typesafe.config.Config;
 import controllers.forms.portfolio.OpenPortfolioForm;
 import controllers.forms.portfolio.PlaceOrderForm;
+import lombok.Value;
 import lombok.val;
 import models.CompletedOrder;
 import models.EquityHolding;
@@ -29,13 +36,24 @@ import play.mvc.Controller;
 import play.mvc.Http;
 import play.mvc.Result;
 import play.mvc.Results;
+import play.mvc.WebSocket;
+import services.cache.ConditionalGetMetrics;
+import services.cache.ETags;
+import services.cache.SingleFlight;
+import services.live.LivePortfolioValuations;
 import services.quote.QuoteService;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import static java.util.stream.Collectors.toList;
 
@@ -44,9 +62,22 @@ public class PortfolioController extends Controller {
 
     private final Logger log = LoggerFactory.getLogger(PortfolioController.class);
 
+    private static final Duration ORDER_SUMMARY_RETRY_BASE_DELAY = Duration.ofMillis(50);
+    private static final Duration ORDER_SUMMARY_RETRY_MAX_DELAY = Duration.ofMillis(500);
+    private static final Duration CONSISTENCY_POLL_INTERVAL = Duration.ofMillis(25);
+    private static final Duration CONSISTENCY_MAX_POLL_INTERVAL = Duration.ofMillis(400);
+
     private final PortfolioService portfolioService;
     private final QuoteService quoteService;
     private final BrokerService brokerService;
+    private final ConditionalGetMetrics conditionalGetMetrics;
+    private final LivePortfolioValuations liveValuations;
+    private final SingleFlight singleFlight;
+    private final long quoteFreshnessMillis;
+    private final int orderSummaryParallelism;
+    private final int orderSummaryAttempts;
+    private final Duration orderSummaryTimeout;
+    private final Duration consistencyMaxWait;
 
     private final Form<PlaceOrderForm> placeOrderForm;
     private final Form<OpenPortfolioForm> openPortfolioForm;
@@ -55,35 +86,68 @@ public class PortfolioController extends Controller {
     private PortfolioController(PortfolioService portfolioService,
                                 QuoteService quoteService,
                                 BrokerService brokerService,
+                                ConditionalGetMetrics conditionalGetMetrics,
+                                LivePortfolioValuations liveValuations,
+                                SingleFlight singleFlight,
+                                Config config,
                                 FormFactory formFactory) {
         this.portfolioService = portfolioService;
         this.quoteService = quoteService;
         this.brokerService = brokerService;
+        this.conditionalGetMetrics = conditionalGetMetrics;
+        this.liveValuations = liveValuations;
+        this.singleFlight = singleFlight;
+        this.quoteFreshnessMillis = config.getDuration("bff.etag.quote-freshness").toMillis();
+        this.orderSummaryParallelism = config.getInt("bff.order-summaries.parallelism");
+        this.orderSummaryAttempts = config.getInt("bff.order-summaries.attempts");
+        this.orderSummaryTimeout = config.getDuration("bff.order-summaries.timeout");
+        this.consistencyMaxWait = config.getDuration("bff.consistency.max-wait");
         this.placeOrderForm = formFactory.form(PlaceOrderForm.class);
         this.openPortfolioForm = formFactory.form(OpenPortfolioForm.class);
     }
 
+    /**
+     * The priced portfolio changes when the portfolio does, or when quotes do. The ETag combines the portfolio's
+     * version with the current quote freshness window, so a client revalidating within the same window gets
+     * a 304 without the holdings being re-priced. A response with a holding left unpriced is not tagged, so the
+     * next request prices it again.
+     */
     public CompletionStage<Result> getPortfolio(String portfolioId) {
-        val portfolioView = portfolioService
-                .getPortfolio(new PortfolioId(portfolioId))
-                .invoke();
+        Optional<String> ifNoneMatch = request().header(IF_NONE_MATCH);
 
-        val pricedView = portfolioView
-                .thenCompose(view ->
-                        quoteService.priceHoldings(view.getHoldings())
-                                .thenApply(pricedHoldings ->
-                                        Portfolio.builder()
-                                                .portfolioId(view.getPortfolioId().getId())
-                                                .name(view.getName())
-                                                .funds(view.getFunds())
-                                                .holdings(pricedHoldings)
-                                                .build()
-                                )
-                );
-
-        return pricedView
-                .thenApply(Json::toJson)
-                .thenApply(Results::ok);
+        return getPortfolioView(portfolioId, consistencyToken(portfolioId), PortfolioView.Field.HOLDINGS)
+                .<Result>thenCompose(view -> {
+                    String etag = ETags.of(portfolioId, view.getVersion(), System.currentTimeMillis() / quoteFreshnessMillis);
+                    if (ETags.matches(ifNoneMatch, etag)) {
+                        conditionalGetMetrics.record("getPortfolio", true, true);
+                        return CompletableFuture.completedFuture(notModifiedWithETag(etag));
+                    }
+                    conditionalGetMetrics.record("getPortfolio", ifNoneMatch.isPresent(), false);
+
+                    return quoteService.priceHoldings(view.getHoldings())
+                            .thenApply(pricedHoldings -> {
+                                Portfolio portfolio = Portfolio.builder()
+                                        .portfolioId(view.getPortfolioId().getId())
+                                        .name(view.getName())
+                                        .funds(view.getFunds())
+                                        .holdings(pricedHoldings)
+                                        .build();
+                                boolean complete = pricedHoldings.stream()
+                                        .allMatch(holding -> holding.getMarketValue() != null);
+                                return withETagIfComplete(Results.ok(Json.toJson(portfolio)), etag, complete);
+                            });
+                });
+    }
+
+    /**
+     * Pushes the priced portfolio as JSON, a snapshot followed by an update whenever a holding's price or the
+     * portfolio changes.
+     */
+    public WebSocket live(String portfolioId) {
+        return WebSocket.Json.accept(req ->
+                Flow.fromSinkAndSource(
+                        Sink.ignore(),
+                        liveValuations.valuations(new PortfolioId(portfolioId)).map(Json::toJson)));
     }
 
     public CompletionStage<Result> getAllPortfolios() {
@@ -96,19 +160,43 @@ public class PortfolioController extends Controller {
                 .thenApply(Results::ok);
     }
 
+    /**
+     * The summary does not include prices, so its ETag only depends on the portfolio's version and the parts requested.
+     * A summary missing an order it could not fetch is not tagged, so the next request fetches it again.
+     */
     public CompletionStage<Result> getSummary(String portfolioId, Boolean includeOrderInfo, Boolean includePrices) {
-        val getModel = portfolioService
-                .getPortfolio(new PortfolioId(portfolioId))
-                .invoke()
+        Optional<String> ifNoneMatch = request().header(IF_NONE_MATCH);
+
+        List<PortfolioView.Field> fields = new ArrayList<>();
+        if (includeOrderInfo) fields.add(PortfolioView.Field.COMPLETED_ORDERS);
+        if (includePrices) fields.add(PortfolioView.Field.HOLDINGS);
+
+        val getModel = getPortfolioView(portfolioId, consistencyToken(portfolioId), fields.toArray(new PortfolioView.Field[0]))
                 .toCompletableFuture();
 
-        CompletableFuture<PSequence<CompletedOrder>> getCompletedOrders =
+        return getModel.<Result>thenCompose(model -> {
+            String etag = ETags.of(portfolioId, model.getVersion(), includeOrderInfo ? "o" : "", includePrices ? "p" : "");
+            if (ETags.matches(ifNoneMatch, etag)) {
+                conditionalGetMetrics.record("getSummary", true, true);
+                return CompletableFuture.completedFuture(notModifiedWithETag(etag));
+            }
+            conditionalGetMetrics.record("getSummary", ifNoneMatch.isPresent(), false);
+
+            return summary(getModel, includeOrderInfo, includePrices)
+                    .thenApply(json -> withETagIfComplete(Results.ok(json.getBody()), etag, json.isComplete()));
+        });
+    }
+
+    private CompletionStage<Rendered<JsonNode>> summary(CompletableFuture<PortfolioView> getModel,
+                                                        Boolean includeOrderInfo,
+                                                        Boolean includePrices) {
+        CompletableFuture<Rendered<PSequence<CompletedOrder>>> getCompletedOrders =
                 includeOrderInfo ?
                         getModel
                                 .thenApply(PortfolioView::getCompletedOrders)
                                 .thenCompose(this::completedOrders)
                                 .toCompletableFuture()
-                        : CompletableFuture.completedFuture(null);
+                        : CompletableFuture.completedFuture(new Rendered<>(null, true));
 
         CompletableFuture<PSequence<EquityHolding>> getEquityHoldings =
                 includePrices ?
@@ -128,41 +216,96 @@ public class PortfolioController extends Controller {
                 .allOf(getModel, getCompletedOrders, getEquityHoldings)
                 .thenApply(done -> {
                     PortfolioView model = getModel.join();
-                    PSequence<CompletedOrder> completedOrders = getCompletedOrders.join();
+                    Rendered<PSequence<CompletedOrder>> completedOrders = getCompletedOrders.join();
                     PSequence<EquityHolding> equities = getEquityHoldings.join();
-                    return PortfolioSummary.builder()
+                    PortfolioSummary summary = PortfolioSummary.builder()
                             .portfolioId(model.getPortfolioId().getId())
                             .name(model.getName())
                             .funds(model.getFunds())
-                            .completedOrders(completedOrders)
+                            .completedOrders(completedOrders.getBody())
                             .equities(equities)
                             .build();
+                    return new Rendered<>(Json.toJson(summary), completedOrders.isComplete());
                 });
 
-        return summaryView
-                .thenApply(Json::toJson)
-                .thenApply(Results::ok);
+        return summaryView;
+    }
+
+    /**
+     * Fetch only the parts of the view the caller renders. Concurrent requests for the same portfolio and parts, e.g.
+     * from several open dashboards, share one downstream call.
+     * <p>
+     * A shared or microcached view can predate the caller's own write. Given that write's consistency token, such a
+     * view is read again directly, for a bounded time, until it includes the write.
+     */
+    private CompletionStage<PortfolioView> getPortfolioView(String portfolioId,
+                                                            Optional<ConsistencyToken> after,
+                                                            PortfolioView.Field... fields) {
+        Optional<String> selection = PortfolioView.Field.select(fields);
+        Supplier<CompletionStage<PortfolioView>> read = () ->
+                portfolioService.getPortfolio(new PortfolioId(portfolioId), selection).invoke();
+        CompletionStage<PortfolioView> shared = singleFlight.call("portfolio.getPortfolio", read, portfolioId, selection.get());
+        if (!after.isPresent()) return shared;
+
+        Predicate<PortfolioView> reached = view -> after.get().isReachedBy(view.getVersion());
+        return shared.thenCompose(view -> reached.test(view)
+                ? CompletableFuture.completedFuture(view)
+                : CSHelper.pollUntil(read, reached, Deadline.after(consistencyMaxWait),
+                        CONSISTENCY_POLL_INTERVAL, CONSISTENCY_MAX_POLL_INTERVAL));
+    }
+
+    private Optional<ConsistencyToken> consistencyToken(String portfolioId) {
+        return ConsistencyToken.parse(request().header(ConsistencyToken.HEADER))
+                .filter(token -> token.getEntityId().equals(portfolioId));
+    }
+
+    private static Result notModifiedWithETag(String etag) {
+        return withETag(Results.status(Http.Status.NOT_MODIFIED), etag);
+    }
+
+    // Clients must revalidate every time, the ETag is what saves the work
+    private static Result withETag(Result result, String etag) {
+        return result
+                .withHeader(ETAG, etag)
+                .withHeader(CACHE_CONTROL, "private, no-cache");
+    }
+
+    // A 304 against a degraded body would keep it until the portfolio's version changes, so it gets no ETag
+    private static Result withETagIfComplete(Result result, String etag, boolean complete) {
+        return complete ? withETag(result, etag) : result.withHeader(CACHE_CONTROL, "no-store");
+    }
+
+    /**
+     * A response body, and whether it is complete or had parts left out because a downstream call failed.
+     */
+    @Value
+    private static class Rendered<T> {
+        T body;
+        boolean complete;
     }
 
-    private CompletionStage<PSequence<CompletedOrder>> completedOrders(PSequence<OrderId> orderIds) {
-        return CSHelper.allOf(
-                orderIds.stream()
-                        .map(orderId ->
-                                brokerService
-                                        .getOrderSummary(orderId)
-                                        .invoke()
-                                        .thenApply(o -> {
-                                            log.info(o.toString());
-                                            return o;
-                                        })
-                                        .exceptionally(ex -> {
-                                            ex.printStackTrace();
-                                            return Optional.empty();
-                                        })
-                                        .thenApply(summary -> toCompletedOrder(orderId, summary.orElse(null)))
-                                        .toCompletableFuture())
-                        .collect(toList())
-        ).thenApply(ConsPStack::from);
+    /**
+     * Order summaries are fetched with bounded parallelism, retrying failures. An order whose summary still cannot
+     * be fetched is listed with just its id, and the orders are marked incomplete.
+     */
+    private CompletionStage<Rendered<PSequence<CompletedOrder>>> completedOrders(PSequence<OrderId> orderIds) {
+        AtomicBoolean failed = new AtomicBoolean();
+        return CSHelper.traverse(orderIds, orderSummaryParallelism, orderId ->
+                CSHelper.withTimeout(
+                        CSHelper.retry(
+                                () -> brokerService.getOrderSummary(orderId).invoke(),
+                                orderSummaryAttempts,
+                                ORDER_SUMMARY_RETRY_BASE_DELAY,
+                                ORDER_SUMMARY_RETRY_MAX_DELAY,
+                                ex -> true),
+                        orderSummaryTimeout)
+                        .exceptionally(ex -> {
+                            log.warn("Unable to get summary for order {}", orderId.getId(), ex);
+                            failed.set(true);
+                            return Optional.empty();
+                        })
+                        .thenApply(summary -> toCompletedOrder(orderId, summary.orElse(null)))
+        ).thenApply(orders -> new Rendered<>(ConsPStack.from(orders), !failed.get()));
     }
 
     private CompletedOrder toCompletedOrder(OrderId orderId, @Nullable OrderSummary orderSummary) {
@@ -215,11 +358,16 @@ public class PortfolioController extends Controller {
                     .build();
             return portfolioService
                     .placeOrder(new PortfolioId(portfolioId))
+                    .withResponseHeader()
                     .invoke(order)
-                    .thenApply(orderId -> {
+                    .thenApply(response -> {
                         val jsonResult = Json.newObject()
-                                .put("orderId", orderId.getId());
-                        return Results.status(Http.Status.ACCEPTED, jsonResult);
+                                .put("orderId", response.second().getId());
+                        // Clients pass the token back on their next read to see the order without polling
+                        Optional<String> token = response.first().getHeader(ConsistencyToken.HEADER);
+                        token.ifPresent(t -> jsonResult.put("consistencyToken", t));
+                        Result accepted = Results.status(Http.Status.ACCEPTED, jsonResult);
+                        return token.map(t -> accepted.withHeader(ConsistencyToken.HEADER, t)).orElse(accepted);
                     });
 
         }
@@ -0,0 +1,29 @@
+package controllers;
+
+import akka.stream.javadsl.Flow;
+import play.mvc.Controller;
+import play.mvc.WebSocket;
+import services.hub.HubConnection;
+import services.hub.StreamHub;
+
+import javax.inject.Inject;
+
+public class StreamController extends Controller {
+
+    private final StreamHub streamHub;
+
+    @Inject
+    public StreamController(StreamHub streamHub) {
+        this.streamHub = streamHub;
+    }
+
+    /**
+     * A single WebSocket for transfers, completed orders and quotes, see {@link HubConnection} for the protocol.
+     */
+    public WebSocket stream() {
+        return WebSocket.Json.accept(req -> {
+            HubConnection connection = streamHub.connect();
+            return Flow.fromSinkAndSourceCoupled(connection.commands(), connection.messages());
+        });
+    }
+}
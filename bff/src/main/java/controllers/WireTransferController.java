@@ -1,5 +1,6 @@
 package controllers;
 
+import com.redelastic.stocktrader.ConsistencyToken;
 import com.redelastic.stocktrader.PortfolioId;
 import com.redelastic.stocktrader.wiretransfer.api.Account;
 import com.redelastic.stocktrader.wiretransfer.api.Transfer;
@@ -52,18 +53,28 @@ public class WireTransferController extends Controller {
             Transfer transfer = populateTransfer(form.get());
             return wireTransferService
                 .transferFunds()
+                .withResponseHeader()
                 .invoke(transfer)
                 .thenApply(response -> {
                     val result = Json.newObject()
-                            .put("transferId", response.getId());
-                    return Results.status(Http.Status.ACCEPTED, result);
+                            .put("transferId", response.second().getId());
+                    Optional<String> token = response.first().getHeader(ConsistencyToken.HEADER);
+                    token.ifPresent(t -> result.put("consistencyToken", t));
+                    Result accepted = Results.status(Http.Status.ACCEPTED, result);
+                    return token.map(t -> accepted.withHeader(ConsistencyToken.HEADER, t)).orElse(accepted);
                 });
         }
     }
 
+    /**
+     * Pass a consistency token from {@link #transfer()} in the {@link ConsistencyToken#HEADER} header to have the
+     * transfer included, rather than polling until it appears.
+     */
     public CompletionStage<Result> getAllTransfersFor(String portfolioId) {
+        Optional<String> token = request().header(ConsistencyToken.HEADER);
         val transfers = wireTransferService
             .getAllTransactionsFor(portfolioId)
+            .handleRequestHeader(header -> token.map(t -> header.withHeader(ConsistencyToken.HEADER, t)).orElse(header))
             .invoke();
 
         return transfers
@@ -0,0 +1,48 @@
+package filters;
+
+import akka.stream.Materializer;
+import com.redelastic.metrics.MetricsRegistry;
+import play.mvc.Filter;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.routing.Router;
+
+import javax.inject.Inject;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Records the latency and status of every request, by route. The route is the controller action that handled the
+ * request, so path parameters such as portfolio ids do not each become a separate series.
+ */
+public class MetricsFilter extends Filter {
+
+    private final MetricsRegistry metrics;
+
+    @Inject
+    public MetricsFilter(Materializer materializer, MetricsRegistry metrics) {
+        super(materializer);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public CompletionStage<Result> apply(Function<Http.RequestHeader, CompletionStage<Result>> next,
+                                         Http.RequestHeader request) {
+        long start = System.nanoTime();
+        String route = route(request);
+        return next.apply(request).whenComplete((result, ex) -> {
+            metrics.timer("bff_request", "route", route).record(System.nanoTime() - start);
+            String status = ex == null ? String.valueOf(result.status()) : "error";
+            metrics.counter("bff_responses", "route", route, "status", status).increment();
+        });
+    }
+
+    private static String route(Http.RequestHeader request) {
+        return request.attrs().getOptional(Router.Attrs.HANDLER_DEF)
+                .map(handler -> {
+                    String controller = handler.controller();
+                    return controller.substring(controller.lastIndexOf('.') + 1) + "." + handler.method();
+                })
+                .orElse("unmatched");
+    }
+}
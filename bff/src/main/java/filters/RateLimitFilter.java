@@ -0,0 +1,139 @@
+package filters;
+
+import akka.stream.Materializer;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redelastic.metrics.MetricsRegistry;
+import com.redelastic.ratelimit.ConcurrencyLimit;
+import com.redelastic.ratelimit.TokenBuckets;
+import com.redelastic.stocktrader.ConsistencyToken;
+import com.typesafe.config.Config;
+import play.libs.Json;
+import play.mvc.Filter;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Protects the backend services from runaway clients and from overload.
+ * <p>
+ * Each client, by remote address, and each portfolio named in the path has a token bucket. Placing an order and
+ * fetching a summary with order details cost more tokens than other requests, since they fan out to the broker. A
+ * request finding its bucket empty gets 429 with Retry-After set to when it would have enough tokens.
+ * <p>
+ * Requests that pass are subject to a global {@link ConcurrencyLimit}, which shrinks while request latency is over
+ * the threshold. A request over the limit gets 503 with Retry-After. Requests carrying a consistency token may wait
+ * for a read side on purpose, for longer than the threshold, so their latency is left out.
+ */
+@Singleton
+public class RateLimitFilter extends Filter {
+
+    private static final Pattern PORTFOLIO_PATH = Pattern.compile("^/api/(?:portfolio|transfer)/([^/]+)");
+
+    private final boolean enabled;
+    private final TokenBuckets clientBuckets;
+    private final TokenBuckets portfolioBuckets;
+    private final ConcurrencyLimit concurrencyLimit;
+    private final int expensiveCost;
+    private final MetricsRegistry metrics;
+
+    @Inject
+    public RateLimitFilter(Materializer materializer, MetricsRegistry metrics, Config config) {
+        super(materializer);
+        this.metrics = metrics;
+
+        Config limits = config.getConfig("bff.rate-limit");
+        this.enabled = limits.getBoolean("enabled");
+        this.clientBuckets = new TokenBuckets(limits.getDouble("client.rate"), limits.getInt("client.burst"));
+        this.portfolioBuckets = new TokenBuckets(limits.getDouble("portfolio.rate"), limits.getInt("portfolio.burst"));
+        this.expensiveCost = limits.getInt("expensive-cost");
+        this.concurrencyLimit = new ConcurrencyLimit(
+                limits.getInt("concurrency.min"),
+                limits.getInt("concurrency.max"),
+                limits.getDuration("concurrency.latency-threshold"));
+
+        Duration evictionInterval = limits.getDuration("eviction-interval");
+        Source.tick(evictionInterval, evictionInterval, "evict")
+                .runForeach(tick -> {
+                    clientBuckets.evictIdle();
+                    portfolioBuckets.evictIdle();
+                }, materializer);
+    }
+
+    @Override
+    public CompletionStage<Result> apply(Function<Http.RequestHeader, CompletionStage<Result>> next,
+                                         Http.RequestHeader request) {
+        if (!enabled || !request.path().startsWith("/api/")) {
+            return next.apply(request);
+        }
+
+        int cost = isExpensive(request) ? expensiveCost : 1;
+
+        Duration wait = clientBuckets.tryAcquire(request.remoteAddress(), cost);
+        if (!wait.isZero()) {
+            return rejected(Http.Status.TOO_MANY_REQUESTS, "client", wait);
+        }
+        Optional<String> portfolioId = portfolioId(request);
+        if (portfolioId.isPresent()) {
+            wait = portfolioBuckets.tryAcquire(portfolioId.get(), cost);
+            if (!wait.isZero()) {
+                return rejected(Http.Status.TOO_MANY_REQUESTS, "portfolio", wait);
+            }
+        }
+
+        if (!concurrencyLimit.tryAcquire()) {
+            return rejected(Http.Status.SERVICE_UNAVAILABLE, "overload", Duration.ofSeconds(1));
+        }
+        boolean measured = !request.header(ConsistencyToken.HEADER).isPresent();
+        long start = System.nanoTime();
+        CompletionStage<Result> result;
+        try {
+            result = next.apply(request);
+        } catch (RuntimeException ex) {
+            release(measured, start);
+            throw ex;
+        }
+        return result.whenComplete((r, ex) -> release(measured, start));
+    }
+
+    private void release(boolean measured, long start) {
+        if (measured) {
+            concurrencyLimit.release(System.nanoTime() - start);
+        } else {
+            concurrencyLimit.releaseUnmeasured();
+        }
+    }
+
+    private boolean isExpensive(Http.RequestHeader request) {
+        String path = request.path();
+        if (request.method().equals("POST")) {
+            return path.endsWith("/order");
+        }
+        return path.endsWith("/summary") && "true".equals(request.getQueryString("includeOrderInfo"));
+    }
+
+    private static Optional<String> portfolioId(Http.RequestHeader request) {
+        Matcher matcher = PORTFOLIO_PATH.matcher(request.path());
+        return matcher.find() ? Optional.of(matcher.group(1)) : Optional.empty();
+    }
+
+    private CompletionStage<Result> rejected(int status, String reason, Duration retryAfter) {
+        metrics.counter("bff_rejected", "reason", reason).increment();
+        long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        ObjectNode body = Json.newObject().put("error", status == Http.Status.TOO_MANY_REQUESTS
+                ? "Too many requests"
+                : "Service overloaded");
+        return CompletableFuture.completedFuture(
+                Results.status(status, body).withHeader(Http.HeaderNames.RETRY_AFTER, String.valueOf(seconds)));
+    }
+}
@@ -0,0 +1,66 @@
+package models;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import org.pcollections.HashTreePSet;
+import org.pcollections.PSequence;
+import org.pcollections.PSet;
+import org.pcollections.TreePVector;
+import services.quote.ValuedHolding;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * An update pushed to a live portfolio stream. The first update is a snapshot listing every holding, later updates
+ * only list the holdings whose share count or price changed and the symbols no longer held.
+ */
+@Value
+@Builder(toBuilder = true)
+public class PortfolioValuation {
+
+    @NonNull String portfolioId;
+
+    long version;
+
+    @NonNull BigDecimal funds;
+
+    // Sum of the holdings that could be priced
+    @NonNull BigDecimal holdingsValue;
+
+    @NonNull BigDecimal totalValue;
+
+    boolean snapshot;
+
+    @NonNull PSequence<ValuedHolding> holdings;
+
+    @NonNull PSet<String> removed;
+
+    /**
+     * Combine this update with a newer one, for clients that are not keeping up with the stream.
+     */
+    public PortfolioValuation merge(PortfolioValuation newer) {
+        if (newer.isSnapshot()) return newer;
+
+        Map<String, ValuedHolding> changed = new LinkedHashMap<>();
+        holdings.forEach(holding -> changed.put(holding.getSymbol(), holding));
+        newer.getHoldings().forEach(holding -> changed.put(holding.getSymbol(), holding));
+        newer.getRemoved().forEach(changed::remove);
+
+        PSet<String> mergedRemoved = snapshot
+                ? HashTreePSet.empty()
+                : removed.minusAll(newer.getHoldings().stream().map(ValuedHolding::getSymbol)
+                        .collect(toList()))
+                  .plusAll(newer.getRemoved());
+
+        return newer.toBuilder()
+                .snapshot(snapshot)
+                .holdings(TreePVector.from(changed.values()))
+                .removed(mergedRemoved)
+                .build();
+    }
+}
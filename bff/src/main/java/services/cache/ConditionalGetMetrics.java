@@ -0,0 +1,45 @@
+package services.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import play.libs.Json;
+
+import javax.inject.Singleton;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts conditional GET outcomes per endpoint, so we can see how often clients are saved a full response.
+ */
+@Singleton
+public class ConditionalGetMetrics {
+
+    private final ConcurrentHashMap<String, Counters> endpoints = new ConcurrentHashMap<>();
+
+    public void record(String endpoint, boolean conditional, boolean notModified) {
+        Counters counters = endpoints.computeIfAbsent(endpoint, e -> new Counters());
+        counters.requests.increment();
+        if (conditional) counters.conditional.increment();
+        if (notModified) counters.notModified.increment();
+    }
+
+    public JsonNode toJson() {
+        ObjectNode json = Json.newObject();
+        endpoints.forEach((endpoint, counters) -> {
+            long conditional = counters.conditional.sum();
+            long notModified = counters.notModified.sum();
+            json.putObject(endpoint)
+                    .put("requests", counters.requests.sum())
+                    .put("conditionalRequests", conditional)
+                    .put("notModified", notModified)
+                    .put("hitRate", conditional == 0 ? 0.0 : (double) notModified / conditional);
+        });
+        return json;
+    }
+
+    private static class Counters {
+        final LongAdder requests = new LongAdder();
+        final LongAdder conditional = new LongAdder();
+        final LongAdder notModified = new LongAdder();
+    }
+}
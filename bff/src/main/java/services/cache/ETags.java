@@ -0,0 +1,34 @@
+package services.cache;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+public class ETags {
+
+    private ETags() {}
+
+    /**
+     * Build a strong entity tag from its parts.
+     */
+    public static String of(Object... parts) {
+        StringBuilder tag = new StringBuilder("\"");
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) tag.append('-');
+            tag.append(parts[i]);
+        }
+        return tag.append('"').toString();
+    }
+
+    /**
+     * Whether an If-None-Match header value matches the current entity tag, using the weak comparison RFC 7232
+     * requires for If-None-Match.
+     */
+    public static boolean matches(Optional<String> ifNoneMatch, String etag) {
+        return ifNoneMatch
+                .map(header -> header.trim().equals("*") || Arrays.stream(header.split(","))
+                        .map(String::trim)
+                        .map(candidate -> candidate.startsWith("W/") ? candidate.substring(2) : candidate)
+                        .anyMatch(etag::equals))
+                .orElse(false);
+    }
+}
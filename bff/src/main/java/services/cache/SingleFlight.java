@@ -0,0 +1,142 @@
+package services.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redelastic.CSHelper;
+import com.typesafe.config.Config;
+import play.libs.Json;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Merges identical concurrent downstream calls into one. A request for a call that is already in flight with the same
+ * parameters waits for that call's result instead of making its own, and a successful result is reused for a short
+ * microcache period after it arrives. Failures are never reused.
+ * <p>
+ * Only for reads, and only where results up to the microcache period old are acceptable.
+ */
+@Singleton
+public class SingleFlight {
+
+    private final boolean enabled;
+    private final Duration microcacheTtl;
+
+    private final ConcurrentHashMap<List<Object>, Flight> flights = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counters> metrics = new ConcurrentHashMap<>();
+
+    @Inject
+    SingleFlight(Config config) {
+        this.enabled = config.getBoolean("bff.coalesce.enabled");
+        this.microcacheTtl = config.getDuration("bff.coalesce.microcache-ttl");
+    }
+
+    /**
+     * Make {@code call}, or share the result of an identical one.
+     *
+     * @param name   Identifies the downstream call, e.g. "portfolio.getPortfolio".
+     * @param call   Makes the downstream call.
+     * @param params The parameters that, with {@code name}, identify identical calls.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletionStage<T> call(String name, Supplier<? extends CompletionStage<T>> call, Object... params) {
+        Counters counters = metrics.computeIfAbsent(name, n -> new Counters());
+        counters.requests.increment();
+        if (!enabled) {
+            counters.calls.increment();
+            return call.get();
+        }
+
+        List<Object> key = new ArrayList<>(params.length + 1);
+        key.add(name);
+        key.addAll(Arrays.asList(params));
+
+        long now = System.nanoTime();
+        Flight[] created = new Flight[1];
+        Flight flight = flights.compute(key, (k, existing) -> {
+            if (existing != null && existing.isUsable(now, microcacheTtl)) {
+                return existing;
+            }
+            created[0] = new Flight();
+            return created[0];
+        });
+
+        if (flight != created[0]) {
+            if (flight.isCompleted()) counters.cached.increment();
+            else counters.joined.increment();
+        } else {
+            counters.calls.increment();
+            start(key, flight, call);
+        }
+
+        // Each caller gets its own stage, so none of them can complete the shared one
+        return flight.result.thenApply(value -> (T) value);
+    }
+
+    private <T> void start(List<Object> key, Flight flight, Supplier<? extends CompletionStage<T>> call) {
+        CompletionStage<T> stage;
+        try {
+            stage = call.get();
+        } catch (RuntimeException ex) {
+            stage = CSHelper.failedFuture(ex);
+        }
+        stage.whenComplete((value, ex) -> {
+            if (ex != null) {
+                flights.remove(key, flight);
+                flight.result.completeExceptionally(ex);
+            } else {
+                flight.completedAt = System.nanoTime();
+                flight.result.complete(value);
+                if (microcacheTtl.isZero()) {
+                    flights.remove(key, flight);
+                } else {
+                    CSHelper.delay(microcacheTtl).thenRun(() -> flights.remove(key, flight));
+                }
+            }
+        });
+    }
+
+    public JsonNode toJson() {
+        ObjectNode json = Json.newObject();
+        metrics.forEach((name, counters) -> {
+            long requests = counters.requests.sum();
+            long calls = counters.calls.sum();
+            json.putObject(name)
+                    .put("requests", requests)
+                    .put("downstreamCalls", calls)
+                    .put("joinedInFlight", counters.joined.sum())
+                    .put("microcacheHits", counters.cached.sum())
+                    .put("coalesceRatio", requests == 0 ? 0.0 : 1.0 - (double) calls / requests);
+        });
+        return json;
+    }
+
+    private static class Flight {
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        volatile long completedAt = 0;
+
+        boolean isCompleted() {
+            return completedAt != 0;
+        }
+
+        boolean isUsable(long now, Duration ttl) {
+            return !isCompleted() || now - completedAt < ttl.toNanos();
+        }
+    }
+
+    private static class Counters {
+        final LongAdder requests = new LongAdder();
+        final LongAdder calls = new LongAdder();
+        final LongAdder joined = new LongAdder();
+        final LongAdder cached = new LongAdder();
+    }
+}
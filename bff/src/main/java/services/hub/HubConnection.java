@@ -0,0 +1,204 @@
+package services.hub;
+
+import akka.NotUsed;
+import akka.japi.Pair;
+import akka.japi.pf.PFBuilder;
+import akka.stream.KillSwitches;
+import akka.stream.Materializer;
+import akka.stream.OverflowStrategy;
+import akka.stream.UniqueKillSwitch;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.MergeHub;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redelastic.stocktrader.PortfolioId;
+import play.libs.Json;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * One client WebSocket carrying any number of channel subscriptions.
+ * <p>
+ * The client sends {@code {"op": "subscribe" | "unsubscribe", "channel": ..., "portfolioId": ..., "symbols": [...]}}
+ * and receives {@code {"channel": ..., "portfolioId": ..., "data": ...}} for each update. Acknowledgements and errors
+ * arrive on the "control" channel, with a "subscription" field naming the channel they refer to. Channels are
+ * "transfers" (optionally for one portfolio), "orders" (for one portfolio) and "quotes" (for a list of symbols,
+ * replacing any earlier list).
+ * <p>
+ * Subscriptions are merged into the connection with a small buffer each, so a busy channel cannot starve the others,
+ * and each subscription drops its oldest updates when the client falls behind instead of back pressuring the feeds it
+ * shares with other connections.
+ */
+public class HubConnection {
+
+    private static final String TRANSFERS = "transfers";
+    private static final String ORDERS = "orders";
+    private static final String QUOTES = "quotes";
+    private static final String CONTROL = "control";
+
+    private final StreamHub hub;
+    private final Materializer materializer;
+    private final int maxSubscriptions;
+
+    private final Sink<JsonNode, NotUsed> outgoing;
+    private final Source<JsonNode, NotUsed> messages;
+    private final Map<String, Subscription> subscriptions = new HashMap<>();
+    private boolean closed = false;
+
+    HubConnection(StreamHub hub,
+                  Materializer materializer,
+                  int channelBuffer,
+                  int connectionBuffer,
+                  int maxSubscriptions) {
+        this.hub = hub;
+        this.materializer = materializer;
+        this.maxSubscriptions = maxSubscriptions;
+
+        Pair<Sink<JsonNode, NotUsed>, Source<JsonNode, NotUsed>> merged = MergeHub.of(JsonNode.class, channelBuffer)
+                .buffer(connectionBuffer, OverflowStrategy.backpressure())
+                .preMaterialize(materializer);
+        this.outgoing = merged.first();
+        this.messages = merged.second()
+                .watchTermination((notUsed, done) -> {
+                    done.whenComplete((d, ex) -> close());
+                    return NotUsed.getInstance();
+                });
+    }
+
+    /**
+     * Messages to send to the client. Can only be materialized once.
+     */
+    public Source<JsonNode, NotUsed> messages() {
+        return messages;
+    }
+
+    /**
+     * Handles messages from the client.
+     */
+    public Sink<JsonNode, NotUsed> commands() {
+        return Sink.<JsonNode>foreach(this::handle)
+                .mapMaterializedValue(done -> {
+                    done.whenComplete((d, ex) -> close());
+                    return NotUsed.getInstance();
+                });
+    }
+
+    private synchronized void handle(JsonNode command) {
+        if (closed) return;
+
+        String op = command.path("op").asText();
+        String channel = command.path("channel").asText();
+        Optional<String> portfolioId = Optional.ofNullable(command.get("portfolioId"))
+                .map(JsonNode::asText)
+                .filter(id -> !id.isEmpty());
+        String key = portfolioId.map(id -> channel + ":" + id).orElse(channel);
+
+        if (op.equals("unsubscribe")) {
+            if (unsubscribe(key)) {
+                control(channel, portfolioId, "unsubscribed");
+            } else {
+                error(channel, portfolioId, "Not subscribed");
+            }
+        } else if (!op.equals("subscribe")) {
+            error(channel, portfolioId, "Unknown op " + op);
+        } else if (!subscriptions.containsKey(key) && subscriptions.size() >= maxSubscriptions) {
+            error(channel, portfolioId, "Too many subscriptions, the limit is " + maxSubscriptions);
+        } else if (channel.equals(TRANSFERS)) {
+            subscribe(key, channel, portfolioId, hub.transfers(portfolioId), () -> { });
+        } else if (channel.equals(ORDERS)) {
+            if (portfolioId.isPresent()) {
+                subscribe(key, channel, portfolioId, hub.completedOrders(new PortfolioId(portfolioId.get())), () -> { });
+            } else {
+                error(channel, portfolioId, "portfolioId is required");
+            }
+        } else if (channel.equals(QUOTES)) {
+            Set<String> symbols = new HashSet<>();
+            command.path("symbols").forEach(symbol -> symbols.add(symbol.asText()));
+            // Retain the new symbols before releasing the old ones, so symbols in both lists keep being polled
+            hub.retainQuotes(symbols);
+            subscribe(key, channel, portfolioId, hub.quotes(symbols), () -> hub.releaseQuotes(symbols));
+        } else {
+            error(channel, portfolioId, "Unknown channel " + channel);
+        }
+    }
+
+    private void subscribe(String key,
+                           String channel,
+                           Optional<String> portfolioId,
+                           Source<JsonNode, NotUsed> updates,
+                           Runnable release) {
+        unsubscribe(key);
+
+        UniqueKillSwitch killSwitch = updates
+                .map(data -> envelope(channel, portfolioId).set("data", data))
+                .viaMat(KillSwitches.single(), Keep.right())
+                .recover(new PFBuilder<Throwable, JsonNode>()
+                        .matchAny(ex -> {
+                            hub.logFailure(channel, ex);
+                            return control(channel, portfolioId).put("error", "Subscription failed");
+                        })
+                        .build())
+                .to(outgoing)
+                .run(materializer);
+
+        subscriptions.put(key, new Subscription(killSwitch, release));
+        control(channel, portfolioId, "subscribed");
+    }
+
+    private boolean unsubscribe(String key) {
+        Subscription subscription = subscriptions.remove(key);
+        if (subscription == null) return false;
+        subscription.cancel();
+        return true;
+    }
+
+    private synchronized void close() {
+        if (closed) return;
+        closed = true;
+        subscriptions.values().forEach(Subscription::cancel);
+        subscriptions.clear();
+    }
+
+    private void control(String channel, Optional<String> portfolioId, String status) {
+        send(control(channel, portfolioId).put("status", status));
+    }
+
+    private void error(String channel, Optional<String> portfolioId, String message) {
+        send(control(channel, portfolioId).put("error", message));
+    }
+
+    private static ObjectNode control(String channel, Optional<String> portfolioId) {
+        return envelope(CONTROL, portfolioId).put("subscription", channel);
+    }
+
+    private void send(JsonNode message) {
+        Source.single(message).runWith(outgoing, materializer);
+    }
+
+    private static ObjectNode envelope(String channel, Optional<String> portfolioId) {
+        ObjectNode envelope = Json.newObject().put("channel", channel);
+        portfolioId.ifPresent(id -> envelope.put("portfolioId", id));
+        return envelope;
+    }
+
+    private static class Subscription {
+        private final UniqueKillSwitch killSwitch;
+        private final Runnable release;
+
+        Subscription(UniqueKillSwitch killSwitch, Runnable release) {
+            this.killSwitch = killSwitch;
+            this.release = release;
+        }
+
+        void cancel() {
+            killSwitch.shutdown();
+            release.run();
+        }
+    }
+}
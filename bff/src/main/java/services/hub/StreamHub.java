@@ -0,0 +1,176 @@
+package services.hub;
+
+import akka.NotUsed;
+import akka.stream.Materializer;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.BroadcastHub;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.RestartSource;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.redelastic.stocktrader.OrderId;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.broker.api.BrokerService;
+import com.redelastic.stocktrader.broker.api.OrderStatus;
+import com.redelastic.stocktrader.broker.api.Quote;
+import com.redelastic.stocktrader.portfolio.api.PortfolioService;
+import com.redelastic.stocktrader.portfolio.api.PortfolioView;
+import com.redelastic.stocktrader.wiretransfer.api.WireTransferService;
+import com.typesafe.config.Config;
+import models.CompletedOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.libs.Json;
+import services.quote.QuoteFeed;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Channels carried by the multiplexed client WebSocket, see {@link HubConnection}. Upstream feeds are shared by all
+ * connections on this node: one transfer subscription to the wire transfer service and one quote poller.
+ */
+@Singleton
+public class StreamHub {
+
+    private final Logger log = LoggerFactory.getLogger(StreamHub.class);
+
+    private final PortfolioService portfolioService;
+    private final BrokerService brokerService;
+    private final QuoteFeed quoteFeed;
+    private final Materializer materializer;
+    private final Source<JsonNode, NotUsed> transfers;
+
+    private final int channelBuffer;
+    private final int connectionBuffer;
+    private final int maxSubscriptions;
+    private final Duration portfolioPollInterval;
+
+    @Inject
+    StreamHub(WireTransferService wireTransferService,
+              PortfolioService portfolioService,
+              BrokerService brokerService,
+              QuoteFeed quoteFeed,
+              Materializer materializer,
+              Config config) {
+        this.portfolioService = portfolioService;
+        this.brokerService = brokerService;
+        this.quoteFeed = quoteFeed;
+        this.materializer = materializer;
+
+        Config hubConfig = config.getConfig("bff.hub");
+        this.channelBuffer = hubConfig.getInt("channel-buffer");
+        this.connectionBuffer = hubConfig.getInt("connection-buffer");
+        this.maxSubscriptions = hubConfig.getInt("max-subscriptions");
+        this.portfolioPollInterval = config.getDuration("bff.live.portfolio-poll-interval");
+
+        // Resubscribe with backoff if the wire transfer service drops the stream
+        this.transfers = RestartSource.withBackoff(
+                Duration.ofSeconds(1), Duration.ofSeconds(30), 0.2,
+                () -> Source.fromSourceCompletionStage(wireTransferService.transferStream().invoke()
+                        .thenApply(source -> source.mapMaterializedValue(mat -> NotUsed.getInstance())))
+                        .map(Json::parse))
+                .toMat(BroadcastHub.of(JsonNode.class, 256), Keep.right())
+                .run(materializer);
+    }
+
+    public HubConnection connect() {
+        return new HubConnection(this, materializer, channelBuffer, connectionBuffer, maxSubscriptions);
+    }
+
+    /**
+     * Transfer status changes, for all transfers or only those into or out of one portfolio. Updates are dropped,
+     * oldest first, for a connection that falls behind rather than holding up every other connection.
+     */
+    Source<JsonNode, NotUsed> transfers(Optional<String> portfolioId) {
+        return transfers
+                .filter(transfer -> !portfolioId.isPresent()
+                        || portfolioId.get().equals(transfer.path("sourceId").asText())
+                        || portfolioId.get().equals(transfer.path("destinationId").asText()))
+                .buffer(channelBuffer, OverflowStrategy.dropHead());
+    }
+
+    /**
+     * Orders completed from now on for a portfolio. The portfolio service does not publish order completions, so the
+     * portfolio's completed orders are polled and each new one is looked up with the broker.
+     */
+    Source<JsonNode, NotUsed> completedOrders(PortfolioId portfolioId) {
+        Optional<String> completedOrdersOnly = PortfolioView.Field.select(PortfolioView.Field.COMPLETED_ORDERS);
+        return Source.tick(Duration.ZERO, portfolioPollInterval, "poll")
+                .mapAsync(1, tick -> portfolioService.getPortfolio(portfolioId, completedOrdersOnly).invoke())
+                .statefulMapConcat(() -> {
+                    Set<OrderId> seen = new HashSet<>();
+                    long[] lastVersion = {-1};
+                    return view -> {
+                        if (view.getVersion() == lastVersion[0]) return Collections.<OrderId>emptyList();
+                        boolean first = lastVersion[0] < 0;
+                        lastVersion[0] = view.getVersion();
+
+                        List<OrderId> completed = new ArrayList<>();
+                        for (OrderId orderId : view.getCompletedOrders()) {
+                            if (seen.add(orderId) && !first) completed.add(orderId);
+                        }
+                        return completed;
+                    };
+                })
+                .mapAsync(1, orderId -> brokerService.getOrderSummary(orderId).invoke()
+                        .thenApply(summary -> {
+                            CompletedOrder.CompletedOrderBuilder order = CompletedOrder.builder().orderId(orderId.getId());
+                            summary.ifPresent(s -> {
+                                order.symbol(s.getSymbol()).shares(s.getShares()).tradeType(s.getTradeType());
+                                if (s.getStatus() instanceof OrderStatus.Fulfilled) {
+                                    order.price(((OrderStatus.Fulfilled) s.getStatus()).getPrice());
+                                }
+                            });
+                            return Json.toJson(order.build());
+                        }))
+                .mapMaterializedValue(cancellable -> NotUsed.getInstance());
+    }
+
+    /**
+     * Price changes for the given symbols, starting with the last known price of each. Only the latest price per
+     * symbol is kept for a connection that falls behind, so a burst of quotes for one symbol cannot push out another's.
+     */
+    Source<JsonNode, NotUsed> quotes(Set<String> symbols) {
+        List<JsonNode> latest = new ArrayList<>();
+        symbols.forEach(symbol -> quoteFeed.latestPrice(symbol).ifPresent(price ->
+                latest.add(Json.newObject().put("symbol", symbol).put("sharePrice", price))));
+
+        return Source.from(latest)
+                .concat(quoteFeed.quotes()
+                        .filter(quote -> symbols.contains(quote.getSymbol()))
+                        .conflateWithSeed(StreamHub::pendingQuotes, (pending, quote) -> {
+                            pending.put(quote.getSymbol(), quote);
+                            return pending;
+                        })
+                        .mapConcat(pending -> new ArrayList<>(pending.values()))
+                        .<JsonNode>map(Json::toJson));
+    }
+
+    private static Map<String, Quote> pendingQuotes(Quote first) {
+        Map<String, Quote> pending = new LinkedHashMap<>();
+        pending.put(first.getSymbol(), first);
+        return pending;
+    }
+
+    void retainQuotes(Set<String> symbols) {
+        symbols.forEach(quoteFeed::retain);
+    }
+
+    void releaseQuotes(Set<String> symbols) {
+        symbols.forEach(quoteFeed::release);
+    }
+
+    void logFailure(String channel, Throwable ex) {
+        log.warn("Stream hub channel {} failed", channel, ex);
+    }
+}
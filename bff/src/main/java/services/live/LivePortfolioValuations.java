@@ -0,0 +1,184 @@
+package services.live;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.broker.api.Quote;
+import com.redelastic.stocktrader.portfolio.api.Holding;
+import com.redelastic.stocktrader.portfolio.api.PortfolioService;
+import com.redelastic.stocktrader.portfolio.api.PortfolioView;
+import com.typesafe.config.Config;
+import models.PortfolioValuation;
+import org.pcollections.HashTreePSet;
+import org.pcollections.PSet;
+import org.pcollections.TreePVector;
+import services.quote.QuoteFeed;
+import services.quote.ValuedHolding;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams a priced portfolio, pushing an update whenever the portfolio or the price of one of its holdings changes.
+ * <p>
+ * The portfolio service does not publish portfolio changes, so each stream polls its portfolio and ignores views
+ * whose version has not moved. Quotes come from the shared {@link QuoteFeed}, and only the holdings affected
+ * by a change are re-priced.
+ */
+@Singleton
+public class LivePortfolioValuations {
+
+    private final PortfolioService portfolioService;
+    private final QuoteFeed quoteFeed;
+    private final Duration portfolioPollInterval;
+
+    @Inject
+    LivePortfolioValuations(PortfolioService portfolioService, QuoteFeed quoteFeed, Config config) {
+        this.portfolioService = portfolioService;
+        this.quoteFeed = quoteFeed;
+        this.portfolioPollInterval = config.getDuration("bff.live.portfolio-poll-interval");
+    }
+
+    /**
+     * Valuation updates for a portfolio, starting with a snapshot. Updates are merged while the consumer is not
+     * keeping up, so a slow client receives fewer, larger updates rather than holding up the stream.
+     */
+    public Source<PortfolioValuation, NotUsed> valuations(PortfolioId portfolioId) {
+        Valuation valuation = new Valuation(quoteFeed);
+
+        Source<Object, NotUsed> portfolioChanges = Source.tick(Duration.ZERO, portfolioPollInterval, "poll")
+                .mapAsync(1, tick -> portfolioService
+                        .getPortfolio(portfolioId, PortfolioView.Field.select(PortfolioView.Field.HOLDINGS))
+                        .invoke())
+                .<Object>map(view -> view)
+                .mapMaterializedValue(cancellable -> NotUsed.getInstance());
+
+        Source<Object, NotUsed> quotes = quoteFeed.quotes().map(quote -> quote);
+
+        return portfolioChanges
+                .merge(quotes)
+                .statefulMapConcat(() -> valuation::update)
+                .conflate(PortfolioValuation::merge)
+                .watchTermination((notUsed, done) -> {
+                    done.whenComplete((d, ex) -> valuation.releaseAll());
+                    return notUsed;
+                });
+    }
+
+    /**
+     * Valuation state for one stream. Only used from within the stream, apart from releaseAll once it has finished.
+     */
+    private static class Valuation {
+
+        private final QuoteFeed quoteFeed;
+
+        private PortfolioView view = null;
+        private final Map<String, Integer> shares = new HashMap<>();
+        private final Map<String, BigDecimal> prices = new HashMap<>();
+
+        Valuation(QuoteFeed quoteFeed) {
+            this.quoteFeed = quoteFeed;
+        }
+
+        List<PortfolioValuation> update(Object element) {
+            if (element instanceof PortfolioView) {
+                return portfolioChanged((PortfolioView) element);
+            } else {
+                return quoteChanged((Quote) element);
+            }
+        }
+
+        private List<PortfolioValuation> portfolioChanged(PortfolioView newView) {
+            if (view != null && view.getVersion() == newView.getVersion()) {
+                return Collections.emptyList();
+            }
+            boolean snapshot = view == null;
+            view = newView;
+
+            Map<String, Integer> newShares = new HashMap<>();
+            for (Holding holding : newView.getHoldings()) {
+                newShares.put(holding.getSymbol(), holding.getShareCount());
+            }
+
+            Set<String> removed = new HashSet<>(shares.keySet());
+            removed.removeAll(newShares.keySet());
+            removed.forEach(symbol -> {
+                shares.remove(symbol);
+                prices.remove(symbol);
+                quoteFeed.release(symbol);
+            });
+
+            List<String> changed = new ArrayList<>();
+            newShares.forEach((symbol, count) -> {
+                Integer previous = shares.put(symbol, count);
+                if (previous == null) {
+                    quoteFeed.retain(symbol);
+                    quoteFeed.latestPrice(symbol).ifPresent(price -> prices.put(symbol, price));
+                }
+                if (snapshot || previous == null || previous != count.intValue()) {
+                    changed.add(symbol);
+                }
+            });
+
+            return Collections.singletonList(valuation(changed, HashTreePSet.from(removed), snapshot));
+        }
+
+        private List<PortfolioValuation> quoteChanged(Quote quote) {
+            String symbol = quote.getSymbol();
+            if (view == null || !shares.containsKey(symbol)) {
+                return Collections.emptyList();
+            }
+            BigDecimal previous = prices.put(symbol, quote.getSharePrice());
+            if (previous != null && previous.compareTo(quote.getSharePrice()) == 0) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(
+                    valuation(Collections.singletonList(symbol), HashTreePSet.empty(), false));
+        }
+
+        private PortfolioValuation valuation(List<String> changed, PSet<String> removed, boolean snapshot) {
+            BigDecimal holdingsValue = BigDecimal.ZERO;
+            for (Map.Entry<String, Integer> holding : shares.entrySet()) {
+                BigDecimal price = prices.get(holding.getKey());
+                if (price != null) {
+                    holdingsValue = holdingsValue.add(price.multiply(BigDecimal.valueOf(holding.getValue())));
+                }
+            }
+
+            List<ValuedHolding> changedHoldings = new ArrayList<>();
+            for (String symbol : changed) {
+                int shareCount = shares.get(symbol);
+                BigDecimal price = prices.get(symbol);
+                changedHoldings.add(new ValuedHolding(
+                        symbol,
+                        shareCount,
+                        price == null ? null : price.multiply(BigDecimal.valueOf(shareCount))));
+            }
+
+            return PortfolioValuation.builder()
+                    .portfolioId(view.getPortfolioId().getId())
+                    .version(view.getVersion())
+                    .funds(view.getFunds())
+                    .holdingsValue(holdingsValue)
+                    .totalValue(view.getFunds().add(holdingsValue))
+                    .snapshot(snapshot)
+                    .holdings(TreePVector.from(changedHoldings))
+                    .removed(removed)
+                    .build();
+        }
+
+        void releaseAll() {
+            shares.keySet().forEach(quoteFeed::release);
+            shares.clear();
+        }
+    }
+}
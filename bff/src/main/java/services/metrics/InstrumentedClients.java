@@ -0,0 +1,58 @@
+package services.metrics;
+
+import com.lightbend.lagom.javadsl.api.ServiceCall;
+import com.redelastic.metrics.MetricsRegistry;
+
+import javax.inject.Provider;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+/**
+ * Wraps a Lagom service client so that every service call it returns is timed, see {@link TimedServiceCall}. Calls
+ * are labelled with the service interface and method name. Topics and the descriptor are passed through untouched.
+ */
+public final class InstrumentedClients {
+
+    private InstrumentedClients() {}
+
+    @SuppressWarnings("unchecked")
+    public static <T> T instrument(Class<T> clientInterface, T client, MetricsRegistry metrics) {
+        String service = clientInterface.getSimpleName();
+        return (T) Proxy.newProxyInstance(
+                clientInterface.getClassLoader(),
+                new Class<?>[]{clientInterface},
+                (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(client, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                    if (result instanceof ServiceCall) {
+                        return new TimedServiceCall<>((ServiceCall<Object, Object>) result, metrics, service, method.getName());
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Provides the instrumented client, creating it from the plain client provider on first use.
+     */
+    public static <T> Provider<T> provider(Class<T> clientInterface, Provider<T> client, MetricsRegistry metrics) {
+        return new Provider<T>() {
+            private volatile T instrumented;
+
+            @Override
+            public T get() {
+                if (instrumented == null) {
+                    synchronized (this) {
+                        if (instrumented == null) {
+                            instrumented = instrument(clientInterface, client.get(), metrics);
+                        }
+                    }
+                }
+                return instrumented;
+            }
+        };
+    }
+}
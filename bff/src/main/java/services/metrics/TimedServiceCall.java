@@ -0,0 +1,50 @@
+package services.metrics;
+
+import com.lightbend.lagom.javadsl.api.ServiceCall;
+import com.lightbend.lagom.javadsl.api.transport.RequestHeader;
+import com.lightbend.lagom.javadsl.api.transport.ResponseHeader;
+import com.redelastic.metrics.MetricsRegistry;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A service call that records its latency, and counts failures. Header handlers are applied to the underlying call,
+ * so calls made with {@link #withResponseHeader()} still see the real response headers.
+ */
+class TimedServiceCall<Request, Response> implements ServiceCall<Request, Response> {
+
+    private final ServiceCall<Request, Response> call;
+    private final MetricsRegistry metrics;
+    private final String service;
+    private final String name;
+
+    TimedServiceCall(ServiceCall<Request, Response> call, MetricsRegistry metrics, String service, String name) {
+        this.call = call;
+        this.metrics = metrics;
+        this.service = service;
+        this.name = name;
+    }
+
+    @Override
+    public CompletionStage<Response> invoke(Request request) {
+        long start = System.nanoTime();
+        return call.invoke(request).whenComplete((response, ex) -> {
+            metrics.timer("bff_client_call", "service", service, "call", name).record(System.nanoTime() - start);
+            if (ex != null) {
+                metrics.counter("bff_client_errors", "service", service, "call", name).increment();
+            }
+        });
+    }
+
+    @Override
+    public ServiceCall<Request, Response> handleRequestHeader(Function<RequestHeader, RequestHeader> handler) {
+        return new TimedServiceCall<>(call.handleRequestHeader(handler), metrics, service, name);
+    }
+
+    @Override
+    public <T> ServiceCall<Request, T> handleResponseHeader(BiFunction<ResponseHeader, Response, T> handler) {
+        return new TimedServiceCall<>(call.handleResponseHeader(handler), metrics, service, name);
+    }
+}
@@ -0,0 +1,90 @@
+package services.quote;
+
+import akka.NotUsed;
+import akka.stream.Materializer;
+import akka.stream.javadsl.BroadcastHub;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Source;
+import com.redelastic.stocktrader.broker.api.BrokerService;
+import com.redelastic.stocktrader.broker.api.Quote;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A single quote poller shared by all live connections. Symbols are polled only while at least one subscriber has
+ * retained them, each symbol once per tick regardless of how many subscribers hold it, and a quote is only broadcast
+ * when its price changes.
+ */
+@Singleton
+public class QuoteFeed {
+
+    private final Logger log = LoggerFactory.getLogger(QuoteFeed.class);
+
+    private final ConcurrentHashMap<String, Integer> subscribers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, BigDecimal> latestPrices = new ConcurrentHashMap<>();
+    private final Source<Quote, NotUsed> quotes;
+
+    @Inject
+    QuoteFeed(BrokerService brokerService, Materializer materializer, Config config) {
+        Duration interval = config.getDuration("bff.live.quote-interval");
+        int parallelism = config.getInt("bff.live.quote-parallelism");
+
+        this.quotes = Source.tick(Duration.ZERO, interval, "tick")
+                .mapConcat(tick -> new ArrayList<>(subscribers.keySet()))
+                .mapAsyncUnordered(parallelism, symbol ->
+                        brokerService.getQuote(symbol)
+                                .invoke()
+                                .thenApply(Optional::of)
+                                .exceptionally(ex -> {
+                                    log.debug("Quote for {} failed", symbol, ex);
+                                    return Optional.empty();
+                                }))
+                .mapConcat(quote -> quote.map(Collections::singletonList).orElse(Collections.emptyList()))
+                .filter(this::priceChanged)
+                .toMat(BroadcastHub.of(Quote.class, 256), Keep.right())
+                .run(materializer);
+    }
+
+    /**
+     * Price changes for all retained symbols. Subscribers should filter to the symbols they hold.
+     */
+    public Source<Quote, NotUsed> quotes() {
+        return quotes;
+    }
+
+    /**
+     * The last price seen for a symbol, if it is currently being polled.
+     */
+    public Optional<BigDecimal> latestPrice(String symbol) {
+        return Optional.ofNullable(latestPrices.get(symbol));
+    }
+
+    public void retain(String symbol) {
+        subscribers.merge(symbol, 1, Integer::sum);
+    }
+
+    public void release(String symbol) {
+        subscribers.computeIfPresent(symbol, (s, count) -> {
+            if (count > 1) return count - 1;
+            latestPrices.remove(symbol);
+            return null;
+        });
+    }
+
+    private boolean priceChanged(Quote quote) {
+        // Ignore quotes for symbols released while the request was in flight
+        if (!subscribers.containsKey(quote.getSymbol())) return false;
+        BigDecimal previous = latestPrices.put(quote.getSymbol(), quote.getSharePrice());
+        return previous == null || previous.compareTo(quote.getSharePrice()) != 0;
+    }
+}
@@ -4,50 +4,63 @@ import com.redelastic.CSHelper;
 import com.redelastic.stocktrader.broker.api.BrokerService;
 import com.redelastic.stocktrader.broker.api.Quote;
 import com.redelastic.stocktrader.portfolio.api.Holding;
+import com.typesafe.config.Config;
 import org.pcollections.ConsPStack;
 import org.pcollections.PSequence;
+import services.cache.SingleFlight;
 
 import javax.inject.Inject;
 import java.math.BigDecimal;
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.time.Duration;
 import java.util.concurrent.CompletionStage;
 
-import static java.util.stream.Collectors.toList;
-
 public class QuoteServiceImpl implements QuoteService {
 
     private final BrokerService brokerService;
+    private final SingleFlight singleFlight;
+    private final int parallelism;
+    private final Duration timeout;
+    private final Duration hedgeAfter;
 
     @Inject
-    QuoteServiceImpl(BrokerService brokerService) {
+    QuoteServiceImpl(BrokerService brokerService, SingleFlight singleFlight, Config config) {
         this.brokerService = brokerService;
+        this.singleFlight = singleFlight;
+        this.parallelism = config.getInt("bff.quotes.parallelism");
+        this.timeout = config.getDuration("bff.quotes.timeout");
+        this.hedgeAfter = config.getDuration("bff.quotes.hedge-after");
     }
 
+    /**
+     * Quotes are fetched with bounded parallelism. A slow quote request is hedged with a second one, and a holding
+     * whose quote cannot be fetched in time is returned without a price. Concurrent requests for the same quote share
+     * one downstream call.
+     */
     @Override
     public CompletionStage<PSequence<ValuedHolding>> priceHoldings(PSequence<Holding> holdings) {
-        List<CompletableFuture<ValuedHolding>> requests = holdings.stream()
-                .map(valuedHolding -> {
-                    CompletionStage<BigDecimal> getSharePrice = brokerService
-                            .getQuote(valuedHolding.getSymbol())
-                            .invoke()
-                            .thenApply(Quote::getSharePrice);
-
-                    CompletionStage<BigDecimal> nullPriceOnFailure = CSHelper.recover(getSharePrice, RuntimeException.class, ex -> null);
-
-                    return nullPriceOnFailure
-
-                            .thenApply(sharePrice -> {
-                                BigDecimal price = sharePrice == null ? null : sharePrice.multiply(BigDecimal.valueOf(valuedHolding.getShareCount()));
-                                return new ValuedHolding(
-                                        valuedHolding.getSymbol(),
-                                        valuedHolding.getShareCount(),
-                                        price);
-                            })
-                            .toCompletableFuture();
-                })
-                .collect(toList());
-
-        return CSHelper.allOf(requests).thenApply(ConsPStack::from);
+        return CSHelper.traverse(holdings, parallelism, holding -> {
+            CompletionStage<BigDecimal> getSharePrice = CSHelper.withTimeout(
+                    getQuote(holding.getSymbol()),
+                    timeout)
+                    .thenApply(Quote::getSharePrice);
+
+            CompletionStage<BigDecimal> nullPriceOnFailure = CSHelper.recover(getSharePrice, Exception.class, ex -> null);
+
+            return nullPriceOnFailure
+                    .thenApply(sharePrice -> {
+                        BigDecimal price = sharePrice == null ? null : sharePrice.multiply(BigDecimal.valueOf(holding.getShareCount()));
+                        return new ValuedHolding(
+                                holding.getSymbol(),
+                                holding.getShareCount(),
+                                price);
+                    });
+        }).thenApply(ConsPStack::from);
+    }
+
+    private CompletionStage<Quote> getQuote(String symbol) {
+        return singleFlight.call(
+                "broker.getQuote",
+                () -> CSHelper.hedge(() -> brokerService.getQuote(symbol).invoke(), hedgeAfter),
+                symbol);
     }
 }
@@ -0,0 +1,72 @@
+package models;
+
+import org.junit.Test;
+import org.pcollections.HashTreePSet;
+import org.pcollections.TreePVector;
+import services.quote.ValuedHolding;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PortfolioValuationTest {
+
+    private static final ValuedHolding IBM = new ValuedHolding("IBM", 10, new BigDecimal("1000"));
+    private static final ValuedHolding AAPL = new ValuedHolding("AAPL", 5, new BigDecimal("500"));
+    private static final ValuedHolding MSFT = new ValuedHolding("MSFT", 3, new BigDecimal("300"));
+
+    @Test
+    public void keepsASnapshotWholeThroughLaterDeltas() {
+        PortfolioValuation snapshot = valuation(1, true, new ValuedHolding[]{IBM, AAPL});
+        ValuedHolding ibmRepriced = new ValuedHolding("IBM", 10, new BigDecimal("1100"));
+        PortfolioValuation repricedAndSold = valuation(2, false, new ValuedHolding[]{ibmRepriced}, "AAPL");
+        PortfolioValuation bought = valuation(3, false, new ValuedHolding[]{MSFT});
+
+        PortfolioValuation merged = snapshot.merge(repricedAndSold).merge(bought);
+
+        assertTrue(merged.isSnapshot());
+        assertEquals(3, merged.getVersion());
+        assertEquals(Arrays.asList(ibmRepriced, MSFT), merged.getHoldings());
+        // A snapshot lists every holding, so has nothing to remove
+        assertTrue(merged.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void combinesTheChangesAndRemovalsOfDeltas() {
+        PortfolioValuation sold = valuation(2, false, new ValuedHolding[]{IBM}, "AAPL", "MSFT");
+        PortfolioValuation boughtBack = valuation(3, false, new ValuedHolding[]{AAPL}, "IBM");
+
+        PortfolioValuation merged = sold.merge(boughtBack);
+
+        assertFalse(merged.isSnapshot());
+        assertEquals(3, merged.getVersion());
+        assertEquals(Arrays.asList(AAPL), merged.getHoldings());
+        assertEquals(HashTreePSet.from(Arrays.asList("IBM", "MSFT")), merged.getRemoved());
+    }
+
+    @Test
+    public void replacesEverythingWithANewerSnapshot() {
+        PortfolioValuation delta = valuation(2, false, new ValuedHolding[]{IBM}, "AAPL");
+        PortfolioValuation snapshot = valuation(3, true, new ValuedHolding[]{MSFT});
+
+        assertSame(snapshot, delta.merge(snapshot));
+    }
+
+    private static PortfolioValuation valuation(long version, boolean snapshot, ValuedHolding[] holdings,
+                                                String... removed) {
+        return PortfolioValuation.builder()
+                .portfolioId("portfolio")
+                .version(version)
+                .funds(new BigDecimal("100"))
+                .holdingsValue(BigDecimal.ZERO)
+                .totalValue(new BigDecimal("100"))
+                .snapshot(snapshot)
+                .holdings(TreePVector.from(Arrays.asList(holdings)))
+                .removed(HashTreePSet.from(Arrays.asList(removed)))
+                .build();
+    }
+}
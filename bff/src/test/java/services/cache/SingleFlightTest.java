@@ -0,0 +1,111 @@
+package services.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.redelastic.CSHelper;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    @Test
+    public void joinsACallAlreadyInFlight() throws Exception {
+        SingleFlight singleFlight = singleFlight("1s");
+        CompletableFuture<String> downstream = new CompletableFuture<>();
+        CountingCall<String> call = new CountingCall<>(() -> downstream);
+
+        CompletableFuture<String> first = singleFlight.call("portfolio.get", call, "p1").toCompletableFuture();
+        CompletableFuture<String> joined = singleFlight.call("portfolio.get", call, "p1").toCompletableFuture();
+        assertFalse(joined.isDone());
+        // Different parameters are a different call
+        singleFlight.call("portfolio.get", new CountingCall<>(() -> downstream), "p2");
+
+        downstream.complete("portfolio");
+
+        assertEquals("portfolio", first.get(5, TimeUnit.SECONDS));
+        assertEquals("portfolio", joined.get(5, TimeUnit.SECONDS));
+        assertEquals(1, call.calls.get());
+        JsonNode counters = singleFlight.toJson().get("portfolio.get");
+        assertEquals(3, counters.get("requests").asLong());
+        assertEquals(2, counters.get("downstreamCalls").asLong());
+        assertEquals(1, counters.get("joinedInFlight").asLong());
+    }
+
+    @Test
+    public void reusesAResultWithinTheMicrocachePeriod() throws Exception {
+        SingleFlight singleFlight = singleFlight("300ms");
+        CountingCall<Integer> call = new CountingCall<>(() -> CompletableFuture.completedFuture(42));
+
+        assertEquals(42, (int) singleFlight.call("quote.get", call, "IBM").toCompletableFuture().get());
+        assertEquals(42, (int) singleFlight.call("quote.get", call, "IBM").toCompletableFuture().get());
+        assertEquals(1, call.calls.get());
+        assertEquals(1, singleFlight.toJson().get("quote.get").get("microcacheHits").asLong());
+
+        // Past the microcache period the result is no longer reused
+        Thread.sleep(600);
+        singleFlight.call("quote.get", call, "IBM").toCompletableFuture().get();
+        assertEquals(2, call.calls.get());
+    }
+
+    @Test
+    public void failureEvictsTheFlight() throws Exception {
+        SingleFlight singleFlight = singleFlight("5s");
+        CompletableFuture<String> downstream = new CompletableFuture<>();
+        CountingCall<String> failing = new CountingCall<>(() -> downstream);
+
+        CompletionStage<String> first = singleFlight.call("portfolio.get", failing, "p1");
+        CompletionStage<String> joined = singleFlight.call("portfolio.get", failing, "p1");
+        RuntimeException unavailable = new RuntimeException("Portfolio service unavailable");
+        downstream.completeExceptionally(unavailable);
+
+        assertSame(unavailable, failureOf(first));
+        assertSame(unavailable, failureOf(joined));
+        assertEquals(1, failing.calls.get());
+
+        // The failure is not reused, so the next request calls again
+        CountingCall<String> working = new CountingCall<>(() -> CompletableFuture.completedFuture("portfolio"));
+        assertEquals("portfolio", singleFlight.call("portfolio.get", working, "p1").toCompletableFuture().get());
+        assertEquals(1, working.calls.get());
+    }
+
+    private static SingleFlight singleFlight(String microcacheTtl) {
+        return new SingleFlight(ConfigFactory.parseString(
+                "bff.coalesce { enabled = on, microcache-ttl = " + microcacheTtl + " }"));
+    }
+
+    private static Throwable failureOf(CompletionStage<?> stage) throws Exception {
+        try {
+            stage.toCompletableFuture().get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return CSHelper.unwrap(e);
+        }
+        fail("Call succeeded");
+        return null;
+    }
+
+    private static class CountingCall<T> implements Supplier<CompletionStage<T>> {
+        final AtomicInteger calls = new AtomicInteger();
+        private final Supplier<CompletionStage<T>> call;
+
+        CountingCall(Supplier<CompletionStage<T>> call) {
+            this.call = call;
+        }
+
+        @Override
+        public CompletionStage<T> get() {
+            calls.incrementAndGet();
+            return call.get();
+        }
+    }
+}
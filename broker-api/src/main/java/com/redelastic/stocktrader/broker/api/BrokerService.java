@@ -8,6 +8,7 @@ import com.lightbend.lagom.javadsl.api.broker.Topic;
 import com.lightbend.lagom.javadsl.api.broker.kafka.KafkaProperties;
 import com.lightbend.lagom.javadsl.api.transport.Method;
 import com.redelastic.stocktrader.OrderId;
+import com.redelastic.stocktrader.serialization.CompactSerializerFactory;
 
 import java.util.Optional;
 
@@ -48,7 +49,8 @@ public interface BrokerService extends Service {
         ).withTopics(
                 topic(ORDER_RESULTS_TOPIC_ID, this::orderResult)
                         .withProperty(KafkaProperties.partitionKeyStrategy(), orderResult -> orderResult.getPortfolioId().getId())
-        ).withPathParamSerializer(OrderId.class, OrderId.pathParamSerializer);
+        ).withPathParamSerializer(OrderId.class, OrderId.pathParamSerializer)
+                .withSerializerFactory(new CompactSerializerFactory());
         // @formatter:on
     }
 }
@@ -0,0 +1,42 @@
+package com.redelastic.stocktrader.broker.impl;
+
+import com.google.inject.AbstractModule;
+import com.redelastic.stocktrader.broker.impl.order.OrderRepository;
+import com.redelastic.stocktrader.broker.impl.order.OrderRepositoryImpl;
+import com.redelastic.stocktrader.broker.impl.quote.IexQuoteServiceImpl;
+import com.redelastic.stocktrader.broker.impl.quote.QuoteService;
+import com.redelastic.stocktrader.broker.impl.quote.StubQuoteServiceImpl;
+import com.redelastic.stocktrader.broker.impl.trade.TradeService;
+import com.redelastic.stocktrader.broker.impl.trade.TradeServiceImpl;
+import com.typesafe.config.Config;
+
+/**
+ * What the broker service needs bound however it is deployed.
+ */
+public class BrokerComponents extends AbstractModule {
+    private final Config config;
+
+    public BrokerComponents(Config config) {
+        this.config = config;
+    }
+
+    @Override
+    protected void configure() {
+        bindQuoteService(config.getString("quote.service"));
+        bind(TradeService.class).to(TradeServiceImpl.class);
+        bind(OrderRepository.class).to(OrderRepositoryImpl.class);
+    }
+
+    private void bindQuoteService(String quoteService) {
+        switch (quoteService) {
+            case "iex":
+                bind(QuoteService.class).to(IexQuoteServiceImpl.class);
+                break;
+            case "stub":
+                bind(QuoteService.class).to(StubQuoteServiceImpl.class);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown quote.service " + quoteService + ", expected iex or stub");
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.redelastic.stocktrader.broker.impl;
+
+import com.google.inject.AbstractModule;
+import com.lightbend.lagom.javadsl.server.ServiceGuiceSupport;
+import com.redelastic.metrics.ConsumerLagRouter;
+import com.redelastic.metrics.HotEntitiesRouter;
+import com.redelastic.metrics.MetricsRegistry;
+import com.redelastic.metrics.MetricsRouter;
+import com.redelastic.metrics.DispatcherMetrics;
+import com.redelastic.metrics.StartupTimer;
+import com.redelastic.stocktrader.broker.api.BrokerService;
+import com.redelastic.stocktrader.portfolio.api.PortfolioService;
+import com.redelastic.stocktrader.serialization.CompactSerializerFactory;
+import com.redelastic.topic.KafkaTopicFactory;
+import com.redelastic.topic.TaggedTopicFactory;
+import com.typesafe.config.Config;
+import play.Environment;
+
+/**
+ * The broker service deployed on its own, calling the portfolio service over HTTP and publishing through Kafka.
+ */
+@SuppressWarnings("WeakerAccess")
+public class BrokerModule extends AbstractModule implements ServiceGuiceSupport {
+    private final Config config;
+
+    public BrokerModule(Environment environment, Config config) {
+        this.config = config;
+    }
+
+    @Override
+    protected void configure() {
+        // Descriptors create their serializer factories themselves, so configure them from here
+        CompactSerializerFactory.configure(config);
+        bindService(BrokerService.class, BrokerServiceImpl.class,
+                additionalRouter(MetricsRouter.class),
+                additionalRouter(ConsumerLagRouter.class),
+                additionalRouter(HotEntitiesRouter.class));
+        bind(MetricsRegistry.class).toInstance(new MetricsRegistry());
+        bind(TaggedTopicFactory.class).to(KafkaTopicFactory.class);
+        install(new BrokerComponents(config));
+        bindClient(PortfolioService.class);
+        bind(DispatcherMetrics.class).asEagerSingleton();
+        bind(StartupTimer.class).asEagerSingleton();
+    }
+}
@@ -6,8 +6,8 @@ import akka.stream.Attributes;
 import akka.stream.javadsl.Flow;
 import com.lightbend.lagom.javadsl.api.ServiceCall;
 import com.lightbend.lagom.javadsl.api.broker.Topic;
-import com.lightbend.lagom.javadsl.broker.TopicProducer;
 import com.lightbend.lagom.javadsl.persistence.PersistentEntityRegistry;
+import com.redelastic.metrics.ConsumerLagMonitor;
 import com.redelastic.stocktrader.OrderId;
 import com.redelastic.stocktrader.broker.api.BrokerService;
 import com.redelastic.stocktrader.broker.api.OrderResult;
@@ -19,6 +19,7 @@ import com.redelastic.stocktrader.broker.impl.order.OrderRepository;
 import com.redelastic.stocktrader.broker.impl.quote.QuoteService;
 import com.redelastic.stocktrader.portfolio.api.OrderPlaced;
 import com.redelastic.stocktrader.portfolio.api.PortfolioService;
+import com.redelastic.topic.TaggedTopicFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,14 +38,20 @@ public class BrokerServiceImpl implements BrokerService {
     private final Logger log = LoggerFactory.getLogger(BrokerServiceImpl.class);
     private final QuoteService quoteService;
     private final OrderRepository orderRepository;
+    private final ConsumerLagMonitor lagMonitor;
+    private final TaggedTopicFactory topics;
 
     @Inject
     public BrokerServiceImpl(PersistentEntityRegistry persistentEntities,
                              QuoteService quoteService,
                              PortfolioService portfolioService,
-                             OrderRepository orderRepository) {
+                             OrderRepository orderRepository,
+                             ConsumerLagMonitor lagMonitor,
+                             TaggedTopicFactory topics) {
         this.quoteService = quoteService;
         this.orderRepository = orderRepository;
+        this.lagMonitor = lagMonitor;
+        this.topics = topics;
         persistentEntities.register(OrderEntity.class);
 
         portfolioService.orderPlaced().subscribe().atLeastOnce(processPortfolioOrders());
@@ -67,7 +74,8 @@ public class BrokerServiceImpl implements BrokerService {
 
     @Override
     public Topic<OrderResult> orderResult() {
-        return TopicProducer.taggedStreamWithOffset(OrderEvent.TAG.allTags(), orderRepository::orderResults);
+        return topics.taggedStreamWithOffset(ORDER_RESULTS_TOPIC_ID, OrderEvent.TAG.allTags(),
+                lagMonitor.topicProducer("orderResult", orderRepository::orderResults));
     }
 
 
@@ -1,7 +1,9 @@
 package com.redelastic.stocktrader.broker.impl.order;
 
 import akka.Done;
-import com.lightbend.lagom.javadsl.persistence.PersistentEntity;
+import com.redelastic.metrics.HotEntities;
+import com.redelastic.metrics.InstrumentedEntity;
+import com.redelastic.metrics.MetricsRegistry;
 import com.redelastic.stocktrader.OrderId;
 import com.redelastic.stocktrader.PortfolioId;
 import com.redelastic.stocktrader.broker.api.OrderResult;
@@ -12,16 +14,22 @@ import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
 import java.math.BigDecimal;
 import java.util.Optional;
 import java.util.function.Function;
 
-public class OrderEntity extends PersistentEntity<OrderCommand, OrderEvent, Optional<OrderState>> {
+public class OrderEntity extends InstrumentedEntity<OrderCommand, OrderEvent, Optional<OrderState>> {
 
     private final Logger log = LoggerFactory.getLogger(OrderEntity.class);
 
+    @Inject
+    public OrderEntity(MetricsRegistry metrics, HotEntities hotEntities) {
+        super(metrics, hotEntities);
+    }
+
     @Override
-    public Behavior initialBehavior(Optional<Optional<OrderState>> snapshotState) {
+    protected Behavior createInitialBehavior(Optional<Optional<OrderState>> snapshotState) {
         return snapshotState
                 .flatMap(Function.identity())
                 .map(orderState ->
@@ -1,7 +1,7 @@
 package com.redelastic.stocktrader.broker.impl.order;
 
 import akka.Done;
-import com.lightbend.lagom.javadsl.persistence.PersistentEntityRef;
+import com.redelastic.metrics.InstrumentedEntityRef;
 import com.redelastic.stocktrader.OrderId;
 import com.redelastic.stocktrader.PortfolioId;
 import com.redelastic.stocktrader.broker.api.OrderResult;
@@ -20,10 +20,10 @@ public class OrderModelImpl implements OrderModel {
 
     private final Logger log = LoggerFactory.getLogger(OrderModelImpl.class);
 
-    private final PersistentEntityRef<OrderCommand> orderEntity;
+    private final InstrumentedEntityRef<OrderCommand> orderEntity;
     private final TradeService tradeService;
 
-    OrderModelImpl(PersistentEntityRef<OrderCommand> orderEntity,
+    OrderModelImpl(InstrumentedEntityRef<OrderCommand> orderEntity,
                    TradeService tradeService) {
         this.orderEntity = orderEntity;
         this.tradeService = tradeService;
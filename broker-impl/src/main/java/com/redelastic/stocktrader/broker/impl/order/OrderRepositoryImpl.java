@@ -1,10 +1,14 @@
 package com.redelastic.stocktrader.broker.impl.order;
 
+import akka.actor.ActorSystem;
 import akka.japi.Pair;
 import akka.stream.javadsl.Source;
 import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
 import com.lightbend.lagom.javadsl.persistence.Offset;
 import com.lightbend.lagom.javadsl.persistence.PersistentEntityRegistry;
+import com.redelastic.EntityDispatchers;
+import com.redelastic.metrics.InstrumentedEntityRef;
+import com.redelastic.metrics.MetricsRegistry;
 import com.redelastic.stocktrader.OrderId;
 import com.redelastic.stocktrader.broker.api.OrderResult;
 import com.redelastic.stocktrader.broker.api.Trade;
@@ -20,13 +24,18 @@ public class OrderRepositoryImpl implements OrderRepository {
     private final Logger log = LoggerFactory.getLogger(OrderRepositoryImpl.class);
     private final PersistentEntityRegistry persistentEntities;
     private final TradeService tradeService;
+    private final MetricsRegistry metrics;
 
     @Inject
     OrderRepositoryImpl(PersistentEntityRegistry persistentEntities,
-                        TradeService tradeService) {
+                        TradeService tradeService,
+                        MetricsRegistry metrics,
+                        ActorSystem system) {
         this.persistentEntities = persistentEntities;
         this.tradeService = tradeService;
+        this.metrics = metrics;
         persistentEntities.register(OrderEntity.class);
+        EntityDispatchers.check(system, OrderEntity.class);
     }
 
     @Override
@@ -69,7 +78,7 @@ public class OrderRepositoryImpl implements OrderRepository {
 
     private OrderModel createModel(OrderId orderId) {
         return new OrderModelImpl(
-                persistentEntities.refFor(OrderEntity.class, orderId.getId()),
+                InstrumentedEntityRef.refFor(persistentEntities, OrderEntity.class, orderId.getId(), metrics),
                 tradeService);
     }
 
@@ -3,6 +3,7 @@ package com.redelastic.stocktrader.broker.impl.quote;
 import akka.actor.ActorSystem;
 import akka.pattern.CircuitBreaker;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.redelastic.Bulkheads;
 import com.redelastic.stocktrader.broker.api.Quote;
 import com.typesafe.config.Config;
 import org.slf4j.Logger;
@@ -16,6 +17,7 @@ import play.libs.ws.WSResponse;
 import javax.inject.Inject;
 import java.time.Duration;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 /**
  * Delegate quotes out to the IexTrading public API.
@@ -30,6 +32,9 @@ public class IexQuoteServiceImpl implements QuoteService, WSBodyReadables {
 
     private final CircuitBreaker circuitBreaker;
 
+    // Responses are decoded off the WS client's threads
+    private final Executor blockingIo;
+
     @Inject
     IexQuoteServiceImpl(WSClient wsClient,
                         Config config,
@@ -46,6 +51,7 @@ public class IexQuoteServiceImpl implements QuoteService, WSBodyReadables {
                 maxFailures,
                 callTimeout,
                 resetTimeout); // TODO
+        this.blockingIo = actorSystem.dispatchers().lookup(Bulkheads.BLOCKING_IO);
     }
 
     private WSRequest quoteRequest(String symbol) {
@@ -68,13 +74,13 @@ public class IexQuoteServiceImpl implements QuoteService, WSBodyReadables {
             }
         });
         return request
-                .thenApply(response -> {
+                .thenApplyAsync(response -> {
                     JsonNode json = response.getBody(json());
                     IexQuoteResponse iexQuoteResponse = Json.fromJson(json, IexQuoteResponse.class);
                     return Quote.builder()
                             .symbol(symbol)
                             .sharePrice(iexQuoteResponse.getLatestPrice())
                             .build();
-                });
+                }, blockingIo);
     }
 }
@@ -0,0 +1,64 @@
+package com.redelastic.stocktrader.broker.impl.quote;
+
+import akka.actor.ActorSystem;
+import akka.pattern.Patterns;
+import com.redelastic.stocktrader.broker.api.Quote;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stand-in quotes for running the stack locally and under load without calling IEX. Each symbol starts at a price
+ * derived from its name and moves by a small random step on every quote, after a configurable delay standing in for
+ * the round trip to the quote provider.
+ */
+@Singleton
+public class StubQuoteServiceImpl implements QuoteService {
+
+    private final ActorSystem actorSystem;
+    private final Duration latency;
+    private final double maxStep;
+    private final ConcurrentMap<String, BigDecimal> prices = new ConcurrentHashMap<>();
+
+    @Inject
+    StubQuoteServiceImpl(Config config, ActorSystem actorSystem) {
+        this.actorSystem = actorSystem;
+        this.latency = config.getDuration("quote.stub.latency");
+        this.maxStep = config.getDouble("quote.stub.max-step");
+    }
+
+    @Override
+    public CompletionStage<Quote> getQuote(String symbol) {
+        Quote quote = Quote.builder()
+                .symbol(symbol)
+                .sharePrice(prices.compute(symbol, (s, price) -> price == null ? initialPrice(s) : step(price)))
+                .build();
+        if (latency.isZero()) {
+            return CompletableFuture.completedFuture(quote);
+        } else {
+            return Patterns.after(latency, actorSystem.scheduler(), actorSystem.dispatcher(),
+                    () -> CompletableFuture.completedFuture(quote));
+        }
+    }
+
+    // Between 10 and 500, the same for a symbol from run to run
+    private static BigDecimal initialPrice(String symbol) {
+        return BigDecimal.valueOf(10 + Math.floorMod(symbol.hashCode(), 49100) / 100.0)
+                .setScale(2, RoundingMode.HALF_EVEN);
+    }
+
+    private BigDecimal step(BigDecimal price) {
+        double change = ThreadLocalRandom.current().nextDouble(-maxStep, maxStep);
+        BigDecimal next = price.multiply(BigDecimal.valueOf(1 + change)).setScale(2, RoundingMode.HALF_EVEN);
+        return next.signum() > 0 ? next : price;
+    }
+}
@@ -3,10 +3,13 @@ package com.redelastic.stocktrader.broker.impl.order;
 import akka.actor.ActorSystem;
 import akka.testkit.javadsl.TestKit;
 import com.lightbend.lagom.javadsl.testkit.PersistentEntityTestDriver;
+import com.redelastic.metrics.HotEntities;
+import com.redelastic.metrics.MetricsRegistry;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.time.Duration;
 import java.util.Optional;
 
 public class OrderEntityTest {
@@ -24,7 +27,8 @@ public class OrderEntityTest {
     }
 
     private PersistentEntityTestDriver<OrderCommand, OrderEvent, Optional<OrderState>> createOrderEntity(String id) {
-        return new PersistentEntityTestDriver<>(system, new OrderEntity(), id);
+        return new PersistentEntityTestDriver<>(system, new OrderEntity(new MetricsRegistry(),
+                new HotEntities(10, Duration.ofSeconds(10), 100)), id);
     }
 
     @Test
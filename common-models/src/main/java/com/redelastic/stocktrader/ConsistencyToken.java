@@ -0,0 +1,68 @@
+package com.redelastic.stocktrader;
+
+import lombok.NonNull;
+import lombok.Value;
+
+import java.util.Optional;
+
+/**
+ * Identifies a write, as the entity written and the version of it the write reached, so that a later read can ask
+ * to see at least that write. Each entity decides what its versions count, as long as they only go up. Passed
+ * between services and clients in the {@link #HEADER} header as {@code <entityId>:<version>}, or as {@code <entityId>}
+ * for a write that has no version to give.
+ */
+@Value
+public class ConsistencyToken {
+
+    public static final String HEADER = "X-Consistency-Token";
+
+    /**
+     * Set on a read that was given a token, to "false" if the token had not been reached when the wait ran out.
+     */
+    public static final String REACHED_HEADER = "X-Consistency-Token-Reached";
+
+    // Versions start at 1
+    private static final long ANY_VERSION = 0;
+
+    @NonNull String entityId;
+
+    long version;
+
+    /**
+     * A token for a write to an entity that does not report versions, so a read can only wait for the entity to be
+     * written at all.
+     */
+    public static ConsistencyToken forEntity(String entityId) {
+        return new ConsistencyToken(entityId, ANY_VERSION);
+    }
+
+    public boolean hasVersion() {
+        return version != ANY_VERSION;
+    }
+
+    public boolean isReachedBy(long version) {
+        return version >= this.version;
+    }
+
+    public String encode() {
+        return hasVersion() ? entityId + ":" + version : entityId;
+    }
+
+    /**
+     * Parse an encoded token. Anything malformed is ignored rather than failing the read it came with.
+     */
+    public static Optional<ConsistencyToken> parse(Optional<String> encoded) {
+        return encoded.filter(token -> !token.isEmpty()).map(token -> {
+            int separator = token.lastIndexOf(':');
+            if (separator <= 0) return forEntity(token);
+            try {
+                return new ConsistencyToken(
+                        token.substring(0, separator),
+                        Long.parseLong(token.substring(separator + 1)));
+            } catch (NumberFormatException ex) {
+                // An entity id containing ':'
+                return forEntity(token);
+            }
+        });
+    }
+}
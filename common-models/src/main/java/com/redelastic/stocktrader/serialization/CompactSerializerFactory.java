@@ -0,0 +1,172 @@
+package com.redelastic.stocktrader.serialization;
+
+import akka.util.ByteString;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.lightbend.lagom.javadsl.api.deser.DeserializationException;
+import com.lightbend.lagom.javadsl.api.deser.MessageSerializer.NegotiatedDeserializer;
+import com.lightbend.lagom.javadsl.api.deser.MessageSerializer.NegotiatedSerializer;
+import com.lightbend.lagom.javadsl.api.deser.SerializationException;
+import com.lightbend.lagom.javadsl.api.deser.SerializerFactory;
+import com.lightbend.lagom.javadsl.api.deser.StrictMessageSerializer;
+import com.lightbend.lagom.javadsl.api.transport.MessageProtocol;
+import com.typesafe.config.Config;
+import org.pcollections.PSequence;
+import org.pcollections.TreePVector;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Message serializers for service calls and topics that write Smile, Jackson's binary equivalent of JSON, where the
+ * receiver is known to read it and JSON otherwise, so services using them can be rolled out next to services that
+ * only read JSON.
+ * <p>
+ * Messages are read as either, told apart by the header every Smile document starts with rather than by content type,
+ * as Kafka messages have none. Responses are Smile when the request accepts {@code application/x-jackson-smile},
+ * which clients using these serializers do. Requests and topic messages are Smile only with
+ * {@code message-serialization.write-compact} on, which is for once every service that calls or subscribes to this one
+ * reads Smile.
+ * <p>
+ * Service descriptors create their factory themselves, so it cannot be given the application's configuration. Each
+ * application passes it to {@link #configure} as it starts instead, and until then requests and topic messages are
+ * JSON.
+ */
+public class CompactSerializerFactory implements SerializerFactory {
+
+    public static final MessageProtocol SMILE =
+            new MessageProtocol(Optional.of("application/x-jackson-smile"), Optional.empty(), Optional.empty());
+    public static final MessageProtocol JSON =
+            new MessageProtocol(Optional.of("application/json"), Optional.of("utf-8"), Optional.empty());
+
+    private static final PSequence<MessageProtocol> ACCEPTED =
+            TreePVector.<MessageProtocol>empty().plus(SMILE).plus(JSON);
+
+    private static volatile boolean configuredWriteCompact = false;
+
+    private final ObjectMapper json = mapper(new ObjectMapper());
+    private final ObjectMapper smile = mapper(new ObjectMapper(new SmileFactory()));
+    private final BooleanSupplier writeCompact;
+
+    /**
+     * Writes Smile as {@link #configure configured} by the application.
+     */
+    public CompactSerializerFactory() {
+        this.writeCompact = () -> configuredWriteCompact;
+    }
+
+    public CompactSerializerFactory(boolean writeCompact) {
+        this.writeCompact = () -> writeCompact;
+    }
+
+    /**
+     * Apply {@code message-serialization.write-compact} from the application's configuration to the factories its
+     * service descriptors create.
+     */
+    public static void configure(Config config) {
+        configuredWriteCompact = config.getBoolean("message-serialization.write-compact");
+    }
+
+    // Like Lagom's own serializers, ignore properties added by a newer version of a message
+    private static ObjectMapper mapper(ObjectMapper mapper) {
+        return mapper.findAndRegisterModules().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Override
+    public <MessageEntity> StrictMessageSerializer<MessageEntity> messageSerializerFor(Type type) {
+        return new CompactMessageSerializer<>(json.constructType(type));
+    }
+
+    static boolean isSmile(ByteString bytes) {
+        return bytes.length() >= 3 && bytes.apply(0) == ':' && bytes.apply(1) == ')' && bytes.apply(2) == '\n';
+    }
+
+    private class CompactMessageSerializer<MessageEntity> implements StrictMessageSerializer<MessageEntity> {
+        private final Serializer<MessageEntity> jsonSerializer;
+        private final Serializer<MessageEntity> smileSerializer;
+        private final Deserializer<MessageEntity> deserializer;
+
+        CompactMessageSerializer(JavaType type) {
+            this.jsonSerializer = new Serializer<>(JSON, json.writerFor(type));
+            this.smileSerializer = new Serializer<>(SMILE, smile.writerFor(type));
+            this.deserializer = new Deserializer<>(json.readerFor(type), smile.readerFor(type));
+        }
+
+        @Override
+        public PSequence<MessageProtocol> acceptResponseProtocols() {
+            return ACCEPTED;
+        }
+
+        // Also used by the Kafka producer for each message it publishes
+        @Override
+        public NegotiatedSerializer<MessageEntity, ByteString> serializerForRequest() {
+            return writeCompact.getAsBoolean() ? smileSerializer : jsonSerializer;
+        }
+
+        @Override
+        public NegotiatedSerializer<MessageEntity, ByteString> serializerForResponse(
+                List<MessageProtocol> acceptedMessageProtocols) {
+            for (MessageProtocol accepted : acceptedMessageProtocols) {
+                if (accepted.contentType().equals(SMILE.contentType())) return smileSerializer;
+                if (accepted.contentType().equals(JSON.contentType())) return jsonSerializer;
+            }
+            return jsonSerializer;
+        }
+
+        @Override
+        public NegotiatedDeserializer<MessageEntity, ByteString> deserializer(MessageProtocol protocol) {
+            return deserializer;
+        }
+    }
+
+    private static class Serializer<MessageEntity> implements NegotiatedSerializer<MessageEntity, ByteString> {
+        private final MessageProtocol protocol;
+        private final ObjectWriter writer;
+
+        Serializer(MessageProtocol protocol, ObjectWriter writer) {
+            this.protocol = protocol;
+            this.writer = writer;
+        }
+
+        @Override
+        public MessageProtocol protocol() {
+            return protocol;
+        }
+
+        @Override
+        public ByteString serialize(MessageEntity message) {
+            try {
+                return ByteString.fromArrayUnsafe(writer.writeValueAsBytes(message));
+            } catch (JsonProcessingException e) {
+                throw new SerializationException(e);
+            }
+        }
+    }
+
+    private static class Deserializer<MessageEntity> implements NegotiatedDeserializer<MessageEntity, ByteString> {
+        private final ObjectReader jsonReader;
+        private final ObjectReader smileReader;
+
+        Deserializer(ObjectReader jsonReader, ObjectReader smileReader) {
+            this.jsonReader = jsonReader;
+            this.smileReader = smileReader;
+        }
+
+        @Override
+        public MessageEntity deserialize(ByteString bytes) {
+            try {
+                return (isSmile(bytes) ? smileReader : jsonReader).readValue(bytes.iterator().asInputStream());
+            } catch (IOException e) {
+                throw new DeserializationException(e);
+            }
+        }
+    }
+}
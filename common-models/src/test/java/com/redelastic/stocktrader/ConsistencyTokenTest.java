@@ -0,0 +1,36 @@
+package com.redelastic.stocktrader;
+
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistencyTokenTest {
+
+    @Test
+    public void roundTripsVersionedTokens() {
+        ConsistencyToken token = new ConsistencyToken("portfolio-1", 7);
+        assertEquals("portfolio-1:7", token.encode());
+        assertEquals(Optional.of(token), ConsistencyToken.parse(Optional.of(token.encode())));
+        assertTrue(token.isReachedBy(7));
+        assertFalse(token.isReachedBy(6));
+    }
+
+    @Test
+    public void roundTripsTokensWithoutAVersion() {
+        ConsistencyToken token = ConsistencyToken.forEntity("transfer-1");
+        assertFalse(token.hasVersion());
+        assertEquals("transfer-1", token.encode());
+        assertEquals(Optional.of(token), ConsistencyToken.parse(Optional.of(token.encode())));
+        assertEquals(Optional.of(ConsistencyToken.forEntity("a:b")), ConsistencyToken.parse(Optional.of("a:b")));
+    }
+
+    @Test
+    public void ignoresEmptyTokens() {
+        assertFalse(ConsistencyToken.parse(Optional.of("")).isPresent());
+        assertFalse(ConsistencyToken.parse(Optional.empty()).isPresent());
+    }
+}
@@ -0,0 +1,124 @@
+package com.redelastic.stocktrader.serialization;
+
+import akka.util.ByteString;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.lightbend.lagom.javadsl.api.deser.StrictMessageSerializer;
+import com.lightbend.lagom.javadsl.api.transport.MessageProtocol;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+
+import static com.redelastic.stocktrader.serialization.CompactSerializerFactory.JSON;
+import static com.redelastic.stocktrader.serialization.CompactSerializerFactory.SMILE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompactSerializerFactoryTest {
+
+    private final Sample sample = new Sample("IBM", 10);
+    private final StrictMessageSerializer<Sample> serializer =
+            new CompactSerializerFactory(false).messageSerializerFor(Sample.class);
+
+    @Test
+    public void respondsInSmileOnlyWhenAccepted() {
+        assertEquals(SMILE, serializer.serializerForResponse(Arrays.asList(SMILE, JSON)).protocol());
+        assertEquals(JSON, serializer.serializerForResponse(Arrays.asList(JSON, SMILE)).protocol());
+        assertEquals(JSON, serializer.serializerForResponse(Collections.singletonList(
+                new MessageProtocol().withContentType("text/html"))).protocol());
+        assertEquals(JSON, serializer.serializerForResponse(Collections.emptyList()).protocol());
+        assertEquals(Arrays.asList(SMILE, JSON), serializer.acceptResponseProtocols());
+    }
+
+    @Test
+    public void writesRequestsInSmileOnlyWhenSwitchedOn() {
+        assertEquals(JSON, serializer.serializerForRequest().protocol());
+        assertFalse(CompactSerializerFactory.isSmile(serializer.serializerForRequest().serialize(sample)));
+
+        StrictMessageSerializer<Sample> smile = new CompactSerializerFactory(true).messageSerializerFor(Sample.class);
+        assertEquals(SMILE, smile.serializerForRequest().protocol());
+        assertTrue(CompactSerializerFactory.isSmile(smile.serializerForRequest().serialize(sample)));
+    }
+
+    @Test
+    public void readsEitherWhateverTheProtocol() {
+        ByteString json = serializer.serializerForResponse(Collections.singletonList(JSON)).serialize(sample);
+        ByteString smile = serializer.serializerForResponse(Collections.singletonList(SMILE)).serialize(sample);
+        assertTrue(smile.length() < json.length());
+
+        // Kafka consumers ask for the deserializer of the protocol they would write, not the one the message was
+        assertEquals(sample, serializer.deserializer(JSON).deserialize(smile));
+        assertEquals(sample, serializer.deserializer(SMILE).deserialize(json));
+    }
+
+    @Test
+    public void ignoresPropertiesItDoesNotKnow() {
+        ByteString json = ByteString.fromString("{\"symbol\":\"IBM\",\"shares\":10,\"exchange\":\"NYSE\"}");
+        assertEquals(sample, serializer.deserializer(JSON).deserialize(json));
+
+        StrictMessageSerializer<Extended> newer =
+                new CompactSerializerFactory(true).messageSerializerFor(Extended.class);
+        ByteString smile = newer.serializerForRequest().serialize(new Extended("IBM", 10, "NYSE"));
+        assertEquals(sample, serializer.deserializer(SMILE).deserialize(smile));
+    }
+
+    @Test
+    public void writesAsConfiguredByDefault() {
+        StrictMessageSerializer<Sample> configured = new CompactSerializerFactory().messageSerializerFor(Sample.class);
+        try {
+            CompactSerializerFactory.configure(ConfigFactory.parseString("message-serialization.write-compact = on"));
+            assertEquals(SMILE, configured.serializerForRequest().protocol());
+        } finally {
+            CompactSerializerFactory.configure(ConfigFactory.load());
+        }
+        assertEquals(JSON, configured.serializerForRequest().protocol());
+    }
+
+    // Sample as a later version of the message might be
+    public static final class Extended {
+        public final String symbol;
+        public final int shares;
+        public final String exchange;
+
+        Extended(String symbol, int shares, String exchange) {
+            this.symbol = symbol;
+            this.shares = shares;
+            this.exchange = exchange;
+        }
+    }
+
+    public static final class Sample {
+        private final String symbol;
+        private final int shares;
+
+        @JsonCreator
+        public Sample(@JsonProperty("symbol") String symbol, @JsonProperty("shares") int shares) {
+            this.symbol = symbol;
+            this.shares = shares;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public int getShares() {
+            return shares;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Sample)) return false;
+            Sample other = (Sample) o;
+            return symbol.equals(other.symbol) && shares == other.shares;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(symbol, shares);
+        }
+    }
+}
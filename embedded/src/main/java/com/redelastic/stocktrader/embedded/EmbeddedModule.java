@@ -0,0 +1,74 @@
+package com.redelastic.stocktrader.embedded;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.util.Modules;
+import com.lightbend.lagom.javadsl.server.ServiceGuiceSupport;
+import com.redelastic.metrics.DispatcherMetrics;
+import com.redelastic.metrics.StartupTimer;
+import com.redelastic.stockbroker.wireTransfer.impl.WireTransferComponents;
+import com.redelastic.stockbroker.wireTransfer.impl.WireTransferServiceImpl;
+import com.redelastic.stocktrader.broker.api.BrokerService;
+import com.redelastic.stocktrader.broker.impl.BrokerComponents;
+import com.redelastic.stocktrader.broker.impl.BrokerServiceImpl;
+import com.redelastic.stocktrader.portfolio.api.PortfolioService;
+import com.redelastic.stocktrader.portfolio.impl.PortfolioComponents;
+import com.redelastic.stocktrader.portfolio.impl.PortfolioServiceImpl;
+import com.redelastic.stocktrader.wiretransfer.api.WireTransferService;
+import com.redelastic.topic.EmbeddedTopicFactory;
+import com.redelastic.topic.TaggedTopicFactory;
+import com.typesafe.config.Config;
+import play.Environment;
+
+/**
+ * The portfolio, broker and wire transfer services and the BFF deployed in one JVM, used instead of each one's own
+ * module. Each service's client is its implementation, called in process, and topics are read from the journal by
+ * {@link EmbeddedTopicFactory} rather than through Kafka.
+ * <p>
+ * The BFF's bindings come first, then the services' replace its service info and clients, then the in process
+ * clients replace the HTTP clients Lagom binds for the services.
+ */
+@SuppressWarnings("WeakerAccess")
+public class EmbeddedModule extends AbstractModule {
+    private final Environment environment;
+    private final Config config;
+
+    public EmbeddedModule(Environment environment, Config config) {
+        this.environment = environment;
+        this.config = config;
+    }
+
+    @Override
+    protected void configure() {
+        install(Modules.override(Modules.override(new services.Module(environment, config)).with(new Services()))
+                .with(new InProcessClients()));
+        bind(TaggedTopicFactory.class).to(EmbeddedTopicFactory.class);
+        install(new PortfolioComponents());
+        install(new BrokerComponents(config));
+        install(new WireTransferComponents());
+        bind(DispatcherMetrics.class).asEagerSingleton();
+        bind(StartupTimer.class).asEagerSingleton();
+    }
+
+    private static class Services extends AbstractModule implements ServiceGuiceSupport {
+        @Override
+        protected void configure() {
+            bindServices(
+                    serviceBinding(PortfolioService.class, PortfolioServiceImpl.class),
+                    serviceBinding(BrokerService.class, BrokerServiceImpl.class),
+                    serviceBinding(WireTransferService.class, WireTransferServiceImpl.class));
+        }
+    }
+
+    private static class InProcessClients extends AbstractModule {
+        @Override
+        protected void configure() {
+            bindInProcess(PortfolioService.class, PortfolioServiceImpl.class);
+            bindInProcess(BrokerService.class, BrokerServiceImpl.class);
+            bindInProcess(WireTransferService.class, WireTransferServiceImpl.class);
+        }
+
+        private <T> void bindInProcess(Class<T> serviceInterface, Class<? extends T> implementation) {
+            bind(serviceInterface).toInstance(InProcessClient.of(serviceInterface, getProvider(implementation)));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.redelastic.stocktrader.embedded;
+
+import com.redelastic.metrics.ConsumerLagRouter;
+import com.redelastic.metrics.HotEntitiesRouter;
+import play.api.mvc.Handler;
+import play.api.mvc.RequestHeader;
+import play.api.routing.SimpleRouter;
+import scala.PartialFunction;
+
+import javax.inject.Inject;
+
+/**
+ * Serves the BFF's routes, including {@code /metrics} for the BFF and services alike, consumer lag for all three
+ * services, and the hottest portfolios and orders. The services' own REST endpoints are not served: several of their
+ * paths are also the BFF's, and the BFF is the only thing calling them.
+ */
+public class EmbeddedRouter implements SimpleRouter {
+
+    private final PartialFunction<RequestHeader, Handler> routes;
+
+    @Inject
+    public EmbeddedRouter(router.Routes bff, ConsumerLagRouter consumerLag, HotEntitiesRouter hotEntities) {
+        this.routes = bff.routes().orElse(consumerLag.routes()).orElse(hotEntities.routes());
+    }
+
+    @Override
+    public PartialFunction<RequestHeader, Handler> routes() {
+        return routes;
+    }
+}
@@ -0,0 +1,152 @@
+package com.redelastic.stocktrader.embedded;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Source;
+import com.lightbend.lagom.javadsl.api.Service;
+import com.lightbend.lagom.javadsl.api.broker.Subscriber;
+import com.lightbend.lagom.javadsl.api.broker.Topic;
+import com.lightbend.lagom.javadsl.api.broker.kafka.KafkaProperties;
+import com.lightbend.lagom.javadsl.api.broker.kafka.PartitionKeyStrategy;
+import com.lightbend.lagom.javadsl.server.ServerServiceCall;
+import com.redelastic.topic.MessageSubscriber;
+
+import javax.inject.Provider;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A service client that calls the service's implementation in this JVM, without serializing requests or responses.
+ * <p>
+ * The implementation is only looked up when the client is first used, and topics only once subscribed to, off the
+ * subscribing thread: the services subscribe to each other's topics as they are constructed, so a subscription made
+ * directly would need the other service to exist first. Subscribers taking message metadata get each message keyed
+ * with the partition key the topic's descriptor gives it, as they would from Kafka.
+ */
+class InProcessClient<T> implements InvocationHandler {
+    private final Class<T> serviceInterface;
+    private final Provider<? extends T> implementation;
+
+    private InProcessClient(Class<T> serviceInterface, Provider<? extends T> implementation) {
+        this.serviceInterface = serviceInterface;
+        this.implementation = implementation;
+    }
+
+    static <T> T of(Class<T> serviceInterface, Provider<? extends T> implementation) {
+        Object proxy = Proxy.newProxyInstance(serviceInterface.getClassLoader(), new Class<?>[]{serviceInterface},
+                new InProcessClient<>(serviceInterface, implementation));
+        return serviceInterface.cast(proxy);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "InProcessClient(" + serviceInterface.getName() + ")";
+            }
+        }
+        if (method.getReturnType() == Topic.class) {
+            return new DeferredTopic<>(() -> (Topic<Object>) call(method, args), this::partitionKeyStrategy);
+        }
+        Object result = call(method, args);
+        if (result instanceof ServerServiceCall) {
+            // Passes request and response headers, which a plain invoke on the implementation's call would drop
+            return InProcessServiceCall.of((ServerServiceCall<?, ?>) result);
+        }
+        return result;
+    }
+
+    private Object call(Method method, Object[] args) {
+        try {
+            return method.invoke(implementation.get(), args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Could not call " + method, e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Could not call " + method, e);
+        }
+    }
+
+    // The topic factories are not told the key, so it is taken from the service's descriptor, as Kafka's is
+    @SuppressWarnings("unchecked")
+    private Optional<PartitionKeyStrategy<Object>> partitionKeyStrategy(Topic.TopicId topicId) {
+        return ((Service) implementation.get()).descriptor().topicCalls().stream()
+                .filter(topicCall -> topicCall.topicId().equals(topicId))
+                .findFirst()
+                .map(topicCall -> (PartitionKeyStrategy<Object>) topicCall.properties()
+                        .getValueOf(KafkaProperties.partitionKeyStrategy()));
+    }
+
+    private static class DeferredTopic<Message> implements Topic<Message> {
+        private final Supplier<Topic<Message>> topic;
+        private final Function<TopicId, Optional<PartitionKeyStrategy<Message>>> partitionKeys;
+
+        DeferredTopic(Supplier<Topic<Message>> topic,
+                      Function<TopicId, Optional<PartitionKeyStrategy<Message>>> partitionKeys) {
+            this.topic = topic;
+            this.partitionKeys = partitionKeys;
+        }
+
+        @Override
+        public TopicId topicId() {
+            return topic.get().topicId();
+        }
+
+        @Override
+        public Subscriber<Message> subscribe() {
+            return new DeferredSubscriber<>(() -> topic.get().subscribe(), () -> partitionKeys.apply(topicId()));
+        }
+    }
+
+    private static class DeferredSubscriber<Message> implements Subscriber<Message> {
+        private final Supplier<Subscriber<Message>> subscriber;
+        private final Supplier<Optional<PartitionKeyStrategy<Message>>> partitionKeys;
+
+        DeferredSubscriber(Supplier<Subscriber<Message>> subscriber,
+                           Supplier<Optional<PartitionKeyStrategy<Message>>> partitionKeys) {
+            this.subscriber = subscriber;
+            this.partitionKeys = partitionKeys;
+        }
+
+        @Override
+        public Subscriber<Message> withGroupId(String groupId) {
+            return new DeferredSubscriber<>(() -> subscriber.get().withGroupId(groupId), partitionKeys);
+        }
+
+        @Override
+        public Subscriber<com.lightbend.lagom.javadsl.api.broker.Message<Message>> withMetadata() {
+            return new DeferredSubscriber<com.lightbend.lagom.javadsl.api.broker.Message<Message>>(
+                    () -> new MessageSubscriber<>(subscriber.get(), partitionKeys.get()), Optional::empty);
+        }
+
+        @Override
+        public Source<Message, ?> atMostOnceSource() {
+            return Source.fromCompletionStage(subscriber())
+                    .flatMapConcat(subscriber -> subscriber.atMostOnceSource()
+                            .mapMaterializedValue(mat -> NotUsed.getInstance()));
+        }
+
+        @Override
+        public CompletionStage<Done> atLeastOnce(Flow<Message, Done, ?> flow) {
+            return subscriber().thenCompose(subscriber -> subscriber.atLeastOnce(flow));
+        }
+
+        private CompletionStage<Subscriber<Message>> subscriber() {
+            return CompletableFuture.supplyAsync(subscriber);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.redelastic.stocktrader.embedded;
+
+import com.lightbend.lagom.javadsl.api.ServiceCall;
+import com.lightbend.lagom.javadsl.api.transport.RequestHeader;
+import com.lightbend.lagom.javadsl.api.transport.ResponseHeader;
+import com.lightbend.lagom.javadsl.server.ServerServiceCall;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A service implementation's call made in process, with the request headers a client would have sent and the
+ * response headers the implementation set, such as consistency tokens.
+ */
+class InProcessServiceCall<Request, ServerResponse, Response> implements ServiceCall<Request, Response> {
+    private final ServerServiceCall<Request, ServerResponse> call;
+    private final Function<RequestHeader, RequestHeader> requestHeader;
+    private final BiFunction<ResponseHeader, ServerResponse, Response> response;
+
+    private InProcessServiceCall(ServerServiceCall<Request, ServerResponse> call,
+                                 Function<RequestHeader, RequestHeader> requestHeader,
+                                 BiFunction<ResponseHeader, ServerResponse, Response> response) {
+        this.call = call;
+        this.requestHeader = requestHeader;
+        this.response = response;
+    }
+
+    static <Request, Response> ServiceCall<Request, Response> of(ServerServiceCall<Request, Response> call) {
+        return new InProcessServiceCall<>(call, Function.identity(), (header, response) -> response);
+    }
+
+    @Override
+    public CompletionStage<Response> invoke(Request request) {
+        return call.invokeWithHeaders(requestHeader.apply(RequestHeader.DEFAULT), request)
+                .thenApply(headerAndResponse -> response.apply(headerAndResponse.first(), headerAndResponse.second()));
+    }
+
+    @Override
+    public ServiceCall<Request, Response> handleRequestHeader(Function<RequestHeader, RequestHeader> handler) {
+        return new InProcessServiceCall<>(call, requestHeader.andThen(handler), response);
+    }
+
+    @Override
+    public <T> ServiceCall<Request, T> handleResponseHeader(BiFunction<ResponseHeader, Response, T> handler) {
+        return new InProcessServiceCall<>(call, requestHeader,
+                (header, serverResponse) -> handler.apply(header, response.apply(header, serverResponse)));
+    }
+}
@@ -0,0 +1,89 @@
+package com.redelastic.stocktrader.embedded;
+
+import akka.japi.Pair;
+import akka.stream.javadsl.Source;
+import akka.stream.testkit.TestSubscriber;
+import akka.stream.testkit.javadsl.TestSink;
+import com.redelastic.stocktrader.ConsistencyToken;
+import com.redelastic.stocktrader.OrderId;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TradeType;
+import com.redelastic.stocktrader.portfolio.api.OpenPortfolioDetails;
+import com.redelastic.stocktrader.portfolio.api.OrderPlaced;
+import com.redelastic.stocktrader.portfolio.api.PortfolioService;
+import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
+import com.redelastic.stocktrader.portfolio.api.order.OrderType;
+import com.redelastic.topic.EmbeddedTopicFactory;
+import com.redelastic.topic.TaggedTopicFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+
+import static com.lightbend.lagom.javadsl.testkit.ServiceTest.*;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Starts the embedded deployment as configured by its application.conf, and checks that the services reach each
+ * other through the in process clients and the embedded topics.
+ */
+public class EmbeddedModuleTest {
+
+    private static TestServer server;
+
+    @BeforeClass
+    public static void setUp() {
+        server = startServer(defaultSetup().withCassandra());
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+    }
+
+    @Test
+    public void bindsInProcessClientsAndEmbeddedTopics() {
+        assertTrue(Proxy.isProxyClass(server.injector().instanceOf(PortfolioService.class).getClass()));
+        assertTrue(server.injector().instanceOf(TaggedTopicFactory.class) instanceof EmbeddedTopicFactory);
+    }
+
+    @Test
+    public void placesAndPublishesOrdersInProcess() throws Exception {
+        PortfolioService service = server.injector().instanceOf(PortfolioService.class);
+        PortfolioId portfolioId = service.openPortfolio()
+                .invoke(new OpenPortfolioDetails("embedded"))
+                .toCompletableFuture().get(5, SECONDS);
+        Source<OrderPlaced, ?> source = service.orderPlaced().subscribe().atMostOnceSource();
+        TestSubscriber.Probe<OrderPlaced> probe =
+                source.runWith(TestSink.probe(server.system()), server.materializer());
+
+        OrderDetails orderDetails = OrderDetails.builder()
+                .symbol("IBM")
+                .shares(10)
+                .tradeType(TradeType.BUY)
+                .orderType(OrderType.Market.INSTANCE)
+                .build();
+        Pair<Optional<String>, OrderId> placed = service.placeOrder(portfolioId)
+                .handleResponseHeader((header, orderId) ->
+                        Pair.create(header.getHeader(ConsistencyToken.HEADER), orderId))
+                .invoke(orderDetails)
+                .toCompletableFuture().get(5, SECONDS);
+
+        // Response headers come back from the implementation as they would over HTTP
+        assertTrue(placed.first().isPresent());
+
+        eventually(FiniteDuration.create(10, SECONDS), () -> {
+            OrderPlaced orderPlaced = probe.request(1).expectNext();
+            assertEquals(portfolioId, orderPlaced.getPortfolioId());
+            assertEquals(placed.second(), orderPlaced.getOrderId());
+        });
+    }
+}
@@ -0,0 +1,49 @@
+package com.redelastic.loadtest;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gaps between request arrivals in an open model, where requests arrive at a rate independent of how quickly earlier
+ * ones complete, as they do from many independent users.
+ */
+public abstract class ArrivalSchedule {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    public abstract long nextIntervalNanos();
+
+    public static ArrivalSchedule forName(String name, double ratePerSecond, Random random) {
+        switch (name) {
+            case "poisson":
+                return poisson(ratePerSecond, random);
+            case "constant":
+                return constant(ratePerSecond);
+            default:
+                throw new IllegalArgumentException("Unknown arrivals " + name + ", expected poisson or constant");
+        }
+    }
+
+    /**
+     * Exponentially distributed gaps, so arrivals bunch up and spread out as real traffic does.
+     */
+    public static ArrivalSchedule poisson(double ratePerSecond, Random random) {
+        double meanNanos = NANOS_PER_SECOND / ratePerSecond;
+        return new ArrivalSchedule() {
+            @Override
+            public long nextIntervalNanos() {
+                return (long) (-Math.log(1 - random.nextDouble()) * meanNanos);
+            }
+        };
+    }
+
+    public static ArrivalSchedule constant(double ratePerSecond) {
+        long intervalNanos = (long) (NANOS_PER_SECOND / ratePerSecond);
+        return new ArrivalSchedule() {
+            @Override
+            public long nextIntervalNanos() {
+                return intervalNanos;
+            }
+        };
+    }
+}
@@ -0,0 +1,163 @@
+package com.redelastic.loadtest;
+
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.stream.Materializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The BFF routes the load test calls, with each call's latency and outcome recorded under an endpoint name.
+ */
+public class BffClient {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final ActorSystem system;
+    private final Materializer materializer;
+    private final Http http;
+    private final String baseUrl;
+    private final Duration requestTimeout;
+    private final LatencyRecorder recorder;
+
+    public BffClient(ActorSystem system,
+                     Materializer materializer,
+                     String baseUrl,
+                     Duration requestTimeout,
+                     LatencyRecorder recorder) {
+        this.system = system;
+        this.materializer = materializer;
+        this.http = Http.get(system);
+        this.baseUrl = baseUrl;
+        this.requestTimeout = requestTimeout;
+        this.recorder = recorder;
+    }
+
+    public CompletionStage<String> openPortfolio(String name, long intendedStartNanos) {
+        ObjectNode body = mapper.createObjectNode().put("name", name);
+        return call("open", intendedStartNanos, post("/api/portfolio", body))
+                .thenApply(json -> json.path("portfolioId").asText());
+    }
+
+    public CompletionStage<JsonNode> deposit(String portfolioId, BigDecimal amount, long intendedStartNanos) {
+        ObjectNode body = mapper.createObjectNode()
+                .put("amount", amount)
+                .put("sourceType", "savings")
+                .put("sourceId", "load-test")
+                .put("destinationType", "portfolio")
+                .put("destinationId", portfolioId);
+        return call("deposit", intendedStartNanos, post("/api/transfer", body));
+    }
+
+    public CompletionStage<JsonNode> placeOrder(String portfolioId,
+                                                String symbol,
+                                                int shares,
+                                                String order,
+                                                long intendedStartNanos) {
+        ObjectNode body = mapper.createObjectNode()
+                .put("symbol", symbol)
+                .put("shares", shares)
+                .put("order", order);
+        return call(order, intendedStartNanos, post("/api/portfolio/" + portfolioId + "/order", body));
+    }
+
+    public CompletionStage<JsonNode> getPortfolio(String portfolioId, long intendedStartNanos) {
+        return call("portfolio", intendedStartNanos, get("/api/portfolio/" + portfolioId));
+    }
+
+    public CompletionStage<JsonNode> getSummary(String portfolioId, long intendedStartNanos) {
+        return call("summary", intendedStartNanos,
+                get("/api/portfolio/" + portfolioId + "/summary?includeOrderInfo=true&includePrices=true"));
+    }
+
+    public CompletionStage<JsonNode> getTransfers(String portfolioId, long intendedStartNanos) {
+        return call("transfers", intendedStartNanos, get("/api/transfer/" + portfolioId));
+    }
+
+    public CompletionStage<JsonNode> getLeaderboard(long intendedStartNanos) {
+        return call("leaderboard", intendedStartNanos, get("/api/leaderboard/top"));
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.GET(baseUrl + path);
+    }
+
+    private HttpRequest post(String path, JsonNode body) {
+        return HttpRequest.POST(baseUrl + path).withEntity(ContentTypes.APPLICATION_JSON, body.toString());
+    }
+
+    private CompletionStage<JsonNode> call(String endpoint, long intendedStartNanos, HttpRequest request) {
+        long sentNanos = System.nanoTime();
+        CompletionStage<JsonNode> response = http.singleRequest(request)
+                .thenCompose(this::readBody);
+        return withTimeout(response).whenComplete((json, ex) -> {
+            if (ex == null) {
+                recorder.success(endpoint, intendedStartNanos, sentNanos, System.nanoTime());
+            } else {
+                recorder.failure(endpoint, reason(ex));
+            }
+        });
+    }
+
+    private CompletionStage<JsonNode> readBody(HttpResponse response) {
+        return response.entity()
+                .toStrict(requestTimeout.toMillis(), materializer)
+                .thenApply(entity -> {
+                    if (!response.status().isSuccess()) {
+                        throw new StatusException(response.status().intValue());
+                    }
+                    String body = entity.getData().utf8String();
+                    try {
+                        return body.isEmpty() ? mapper.createObjectNode() : mapper.readTree(body);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private <T> CompletionStage<T> withTimeout(CompletionStage<T> stage) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Cancellable timeout = system.scheduler().scheduleOnce(
+                FiniteDuration.create(requestTimeout.toMillis(), TimeUnit.MILLISECONDS),
+                () -> result.completeExceptionally(new TimeoutException()),
+                system.dispatcher());
+        stage.whenComplete((value, ex) -> {
+            timeout.cancel();
+            if (ex == null) result.complete(value);
+            else result.completeExceptionally(ex);
+        });
+        return result;
+    }
+
+    private static String reason(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return cause instanceof StatusException
+                ? "HTTP " + ((StatusException) cause).status
+                : cause.getClass().getSimpleName();
+    }
+
+    static class StatusException extends RuntimeException {
+        final int status;
+
+        StatusException(int status) {
+            super("HTTP " + status, null, false, false);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.redelastic.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * A single page summary of a run: the settings, then response and service time percentiles and errors for each
+ * endpoint, then the full response time distribution of each. Times are in milliseconds.
+ */
+class HtmlReport {
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final StringBuilder html = new StringBuilder();
+
+    static void write(Path file,
+                      LoadTestSettings settings,
+                      Instant started,
+                      Map<String, LatencyRecorder.EndpointSummary> endpoints,
+                      WebSockets webSockets) throws IOException {
+        HtmlReport report = new HtmlReport();
+        report.header(settings, started, webSockets);
+        report.endpoints(settings, endpoints);
+        report.distributions(endpoints);
+        report.html.append("</body>\n</html>\n");
+        Files.write(file, report.html.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void header(LoadTestSettings settings, Instant started, WebSockets webSockets) {
+        html.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n")
+                .append("<title>Load test ").append(started).append("</title>\n")
+                .append("<style>\n")
+                .append("body { font-family: sans-serif; }\n")
+                .append("table { border-collapse: collapse; }\n")
+                .append("th, td { border: 1px solid #ccc; padding: 4px 8px; }\n")
+                .append("td.n { text-align: right; }\n")
+                .append("</style>\n</head>\n<body>\n")
+                .append("<h1>Load test ").append(started).append("</h1>\n")
+                .append("<table>\n");
+        setting("BFF", settings.getBffUrl());
+        setting("Arrivals", settings.getArrivals() + ", " + settings.getRate() + " requests per second");
+        setting("Warmup", settings.getWarmup().toString());
+        setting("Duration", settings.getDuration().toString());
+        setting("Portfolios", Integer.toString(settings.getPortfolios()));
+        setting("Mix", settings.getMix().toString());
+        setting("WebSockets", webSockets.connected() + " of " + settings.getWebSockets() + " connected, "
+                + webSockets.messages() + " messages received");
+        html.append("</table>\n")
+                .append("<p>Response time is measured from when a request was due to be sent, service time from when ")
+                .append("it was sent. Interval histograms for both are in latency.hlog.</p>\n");
+    }
+
+    private void setting(String name, String value) {
+        html.append("<tr><th>").append(name).append("</th><td>").append(escape(value)).append("</td></tr>\n");
+    }
+
+    private void endpoints(LoadTestSettings settings, Map<String, LatencyRecorder.EndpointSummary> endpoints) {
+        html.append("<h2>Endpoints</h2>\n<table>\n<tr><th>Endpoint</th><th>Requests</th><th>Per second</th>");
+        for (double percentile : PERCENTILES) {
+            html.append("<th>Response p").append(format(percentile)).append("</th>");
+        }
+        html.append("<th>Response max</th><th>Service p50</th><th>Service p99</th><th>Errors</th></tr>\n");
+
+        double seconds = settings.getDuration().toMillis() / 1000.0;
+        endpoints.forEach((name, endpoint) -> {
+            Histogram response = endpoint.getResponseTime();
+            Histogram service = endpoint.getServiceTime();
+            html.append("<tr><td>").append(escape(name)).append("</td>");
+            number(Long.toString(response.getTotalCount()));
+            number(String.format("%.1f", response.getTotalCount() / seconds));
+            for (double percentile : PERCENTILES) {
+                number(millis(response.getValueAtPercentile(percentile)));
+            }
+            number(millis(response.getMaxValue()));
+            number(millis(service.getValueAtPercentile(50)));
+            number(millis(service.getValueAtPercentile(99)));
+            html.append("<td>").append(escape(errors(endpoint))).append("</td></tr>\n");
+        });
+        html.append("</table>\n");
+    }
+
+    private void distributions(Map<String, LatencyRecorder.EndpointSummary> endpoints) {
+        html.append("<h2>Response time distributions</h2>\n");
+        endpoints.forEach((name, endpoint) -> {
+            if (endpoint.getResponseTime().getTotalCount() == 0) return;
+            html.append("<details><summary>").append(escape(name)).append("</summary>\n<pre>")
+                    .append(escape(distribution(endpoint.getResponseTime())))
+                    .append("</pre></details>\n");
+        });
+    }
+
+    private void number(String value) {
+        html.append("<td class=\"n\">").append(value).append("</td>");
+    }
+
+    private static String errors(LatencyRecorder.EndpointSummary endpoint) {
+        if (endpoint.errorCount() == 0) return "";
+        StringBuilder errors = new StringBuilder();
+        endpoint.getErrors().forEach((reason, count) ->
+                errors.append(errors.length() == 0 ? "" : ", ").append(reason).append(": ").append(count));
+        return errors.toString();
+    }
+
+    private static String distribution(Histogram histogram) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8.name())) {
+            histogram.outputPercentileDistribution(out, MICROS_PER_MILLI);
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f", micros / MICROS_PER_MILLI);
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -0,0 +1,133 @@
+package com.redelastic.loadtest;
+
+import lombok.Value;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency of each endpoint, in microseconds, recorded two ways. Response time runs from when the request was due to
+ * be sent, so time a request spent waiting behind earlier ones in the generator or the client connection pool counts
+ * against it, correcting for coordinated omission. Service time runs from when it was actually sent. A service time
+ * well below the response time means requests are queueing in front of the BFF rather than in it.
+ * <p>
+ * Interval histograms are written to an HdrHistogram log, tagged with the endpoint for response time and the endpoint
+ * followed by "/service" for service time.
+ */
+public class LatencyRecorder {
+
+    static final String SERVICE_TIME_SUFFIX = "/service";
+
+    private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Records a successful request.
+     *
+     * @param intendedStartNanos when the request was due to be sent, from {@link System#nanoTime()}
+     * @param sentNanos          when it was actually sent
+     * @param endNanos           when the response was complete
+     */
+    public void success(String endpoint, long intendedStartNanos, long sentNanos, long endNanos) {
+        Endpoint e = endpoint(endpoint);
+        e.responseTime.recordValue(micros(endNanos - intendedStartNanos));
+        e.serviceTime.recordValue(micros(endNanos - sentNanos));
+    }
+
+    /**
+     * Records a failed request, by the response status or exception.
+     */
+    public void failure(String endpoint, String reason) {
+        endpoint(endpoint).intervalErrors.computeIfAbsent(reason, r -> new LongAdder()).increment();
+    }
+
+    /**
+     * Writes the histograms recorded since the last call to the log, and adds them and the errors since the last call
+     * to the totals if they are not from the warmup.
+     */
+    public synchronized Interval logInterval(HistogramLogWriter log, long startMillis, long endMillis, boolean warmup) {
+        long[] responses = {0};
+        long[] errors = {0};
+        new TreeMap<>(endpoints).forEach((name, endpoint) -> {
+            Histogram responseTime = endpoint.responseTime.getIntervalHistogram();
+            Histogram serviceTime = endpoint.serviceTime.getIntervalHistogram();
+            write(log, name, responseTime, startMillis, endMillis);
+            write(log, name + SERVICE_TIME_SUFFIX, serviceTime, startMillis, endMillis);
+            responses[0] += responseTime.getTotalCount();
+
+            endpoint.intervalErrors.forEach((reason, count) -> {
+                long sum = count.sumThenReset();
+                errors[0] += sum;
+                if (!warmup && sum > 0) endpoint.totalErrors.merge(reason, sum, Long::sum);
+            });
+            if (!warmup) {
+                endpoint.totalResponseTime.add(responseTime);
+                endpoint.totalServiceTime.add(serviceTime);
+            }
+        });
+        return new Interval(responses[0], errors[0]);
+    }
+
+    /**
+     * Totals since the warmup, by endpoint name, as of the last {@link #logInterval}.
+     */
+    public synchronized Map<String, EndpointSummary> summary() {
+        Map<String, EndpointSummary> summary = new TreeMap<>();
+        endpoints.forEach((name, endpoint) -> summary.put(name, new EndpointSummary(
+                endpoint.totalResponseTime.copy(),
+                endpoint.totalServiceTime.copy(),
+                new TreeMap<>(endpoint.totalErrors))));
+        return summary;
+    }
+
+    private Endpoint endpoint(String name) {
+        return endpoints.computeIfAbsent(name, n -> new Endpoint());
+    }
+
+    private static void write(HistogramLogWriter log,
+                              String tag,
+                              Histogram histogram,
+                              long startMillis,
+                              long endMillis) {
+        histogram.setTag(tag);
+        histogram.setStartTimeStamp(startMillis);
+        histogram.setEndTimeStamp(endMillis);
+        log.outputIntervalHistogram(histogram);
+    }
+
+    private static long micros(long nanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    private static class Endpoint {
+        final Recorder responseTime = new Recorder(3);
+        final Recorder serviceTime = new Recorder(3);
+        final Histogram totalResponseTime = new Histogram(3);
+        final Histogram totalServiceTime = new Histogram(3);
+        final ConcurrentMap<String, LongAdder> intervalErrors = new ConcurrentHashMap<>();
+        final Map<String, Long> totalErrors = new TreeMap<>();
+    }
+
+    @Value
+    public static class Interval {
+        long responses;
+        long errors;
+    }
+
+    @Value
+    public static class EndpointSummary {
+        Histogram responseTime;
+        Histogram serviceTime;
+        Map<String, Long> errors;
+
+        public long errorCount() {
+            return errors.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.redelastic.loadtest;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import com.typesafe.config.ConfigFactory;
+import org.HdrHistogram.HistogramLogWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Drives the BFF end to end, see load-test/README.md.
+ */
+public class LoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final DateTimeFormatter RUN_DIRECTORY =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromConfig(ConfigFactory.load().getConfig("load-test"));
+        Instant started = Instant.now();
+        Path output = Paths.get(settings.getOutputDirectory(), RUN_DIRECTORY.format(started));
+        Files.createDirectories(output);
+
+        ActorSystem system = ActorSystem.create("load-test");
+        Materializer materializer = ActorMaterializer.create(system);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        try (PrintStream logFile = new PrintStream(output.resolve("latency.hlog").toFile(), "UTF-8")) {
+            LatencyRecorder recorder = new LatencyRecorder();
+            BffClient client = new BffClient(
+                    system, materializer, settings.getBffUrl(), settings.getRequestTimeout(), recorder);
+            WebSockets webSockets = new WebSockets(system, materializer, settings.getBffUrl(), recorder);
+            Scenario scenario = new Scenario(settings, client, recorder, materializer);
+
+            HistogramLogWriter histogramLog = new HistogramLogWriter(logFile);
+            histogramLog.outputLogFormatVersion();
+            histogramLog.outputStartTime(started.toEpochMilli());
+            histogramLog.setBaseTime(started.toEpochMilli());
+            histogramLog.outputLegend();
+
+            // Setup and warmup intervals are logged but left out of the summary
+            AtomicBoolean recording = new AtomicBoolean(false);
+            AtomicLong intervalStart = new AtomicLong(started.toEpochMilli());
+            Supplier<LatencyRecorder.Interval> logInterval = () -> {
+                synchronized (histogramLog) {
+                    long now = System.currentTimeMillis();
+                    return recorder.logInterval(histogramLog, intervalStart.getAndSet(now), now, !recording.get());
+                }
+            };
+            long interval = settings.getReportInterval().toMillis();
+            reporter.scheduleAtFixedRate(() -> {
+                boolean warmup = !recording.get();
+                LatencyRecorder.Interval last = logInterval.get();
+                log.info("{}{} responses, {} errors", warmup ? "(warmup) " : "", last.getResponses(), last.getErrors());
+            }, interval, interval, TimeUnit.MILLISECONDS);
+
+            log.info("Opening {} portfolios through {}", settings.getPortfolios(), settings.getBffUrl());
+            List<String> portfolios = scenario.setUp().toCompletableFuture().get();
+            if (portfolios.isEmpty()) {
+                throw new IllegalStateException("No portfolios could be opened, is the BFF running?");
+            }
+
+            webSockets.open(portfolios, settings.getWebSockets());
+            log.info("Sending {} requests per second for {} after a {} warmup",
+                    settings.getRate(), settings.getDuration(), settings.getWarmup());
+            scenario.run(portfolios, () -> {
+                // Start the summary at the end of the warmup rather than partway through an interval
+                logInterval.get();
+                recording.set(true);
+            });
+            webSockets.close();
+
+            reporter.shutdown();
+            reporter.awaitTermination(interval, TimeUnit.MILLISECONDS);
+            logInterval.get();
+
+            HtmlReport.write(output.resolve("summary.html"), settings, started, recorder.summary(), webSockets);
+            log.info("Results written to {}", output.toAbsolutePath());
+        } finally {
+            reporter.shutdownNow();
+            system.terminate();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.redelastic.loadtest;
+
+import com.typesafe.config.Config;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The "load-test" section of the configuration, see load-test/src/main/resources/application.conf.
+ */
+@Value
+public class LoadTestSettings {
+    String bffUrl;
+    int portfolios;
+    BigDecimal initialDeposit;
+    int setupParallelism;
+    double rate;
+    String arrivals;
+    Duration warmup;
+    Duration duration;
+    int maxOutstanding;
+    Duration requestTimeout;
+    List<String> symbols;
+    Map<String, Integer> mix;
+    int webSockets;
+    Duration reportInterval;
+    String outputDirectory;
+
+    public static LoadTestSettings fromConfig(Config config) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        Config mixConfig = config.getConfig("mix");
+        mixConfig.root().keySet().stream().sorted().forEach(action -> mix.put(action, mixConfig.getInt(action)));
+
+        return new LoadTestSettings(
+                config.getString("bff-url"),
+                config.getInt("portfolios"),
+                new BigDecimal(config.getString("initial-deposit")),
+                config.getInt("setup-parallelism"),
+                config.getDouble("rate"),
+                config.getString("arrivals"),
+                config.getDuration("warmup"),
+                config.getDuration("duration"),
+                config.getInt("max-outstanding"),
+                config.getDuration("request-timeout"),
+                Collections.unmodifiableList(config.getStringList("symbols")),
+                Collections.unmodifiableMap(mix),
+                config.getInt("websockets"),
+                config.getDuration("report-interval"),
+                config.getString("output-directory"));
+    }
+}
@@ -0,0 +1,194 @@
+package com.redelastic.loadtest;
+
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Opens and funds the portfolios, then sends the configured mix of requests against them at the configured rate.
+ */
+public class Scenario {
+
+    private final Logger log = LoggerFactory.getLogger(Scenario.class);
+
+    private static final BigDecimal DEPOSIT = new BigDecimal("1000");
+    private static final int MAX_SHARES = 10;
+    private static final Set<String> ACTIONS = new HashSet<>(Arrays.asList(
+            "summary", "portfolio", "transfers", "leaderboard", "deposit", "buy", "sell"));
+
+    private final LoadTestSettings settings;
+    private final BffClient client;
+    private final LatencyRecorder recorder;
+    private final Materializer materializer;
+
+    private final String[] actions;
+    private final int[] cumulativeWeights;
+    // Shares bought and not yet sold in this run, by portfolio and symbol
+    private final ConcurrentMap<String, Integer> held = new ConcurrentHashMap<>();
+
+    public Scenario(LoadTestSettings settings, BffClient client, LatencyRecorder recorder, Materializer materializer) {
+        this.settings = settings;
+        this.client = client;
+        this.recorder = recorder;
+        this.materializer = materializer;
+
+        this.actions = settings.getMix().keySet().toArray(new String[0]);
+        this.cumulativeWeights = new int[actions.length];
+        int total = 0;
+        for (int i = 0; i < actions.length; i++) {
+            if (!ACTIONS.contains(actions[i])) {
+                throw new IllegalArgumentException(
+                        "Unknown request " + actions[i] + " in load-test.mix, expected one of " + ACTIONS);
+            }
+            total += settings.getMix().get(actions[i]);
+            cumulativeWeights[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("load-test.mix has no requests with a positive weight");
+        }
+    }
+
+    /**
+     * Opens and funds the portfolios, completing with the ids of those that opened.
+     */
+    public CompletionStage<List<String>> setUp() {
+        return Source.range(1, settings.getPortfolios())
+                .mapAsyncUnordered(settings.getSetupParallelism(), i -> {
+                    long start = System.nanoTime();
+                    return client.openPortfolio("Load test " + i, start)
+                            .thenCompose(portfolioId -> client
+                                    .deposit(portfolioId, settings.getInitialDeposit(), System.nanoTime())
+                                    .thenApply(deposited -> portfolioId))
+                            .handle((portfolioId, ex) -> {
+                                if (ex != null) log.warn("Could not set up portfolio {}: {}", i, ex.toString());
+                                return ex == null ? portfolioId : null;
+                            });
+                })
+                .filter(portfolioId -> portfolioId != null)
+                .runWith(Sink.seq(), materializer);
+    }
+
+    /**
+     * Sends requests until the warmup and run are over, blocking the calling thread, then waits up to the request
+     * timeout for outstanding requests to complete.
+     *
+     * @param recordingStarted called when the warmup is over
+     */
+    public void run(List<String> portfolios, Runnable recordingStarted) throws InterruptedException {
+        ArrivalSchedule schedule = ArrivalSchedule.forName(settings.getArrivals(), settings.getRate(), new Random());
+        Semaphore outstanding = new Semaphore(settings.getMaxOutstanding());
+
+        long start = System.nanoTime();
+        long warmupEnd = start + settings.getWarmup().toNanos();
+        long end = warmupEnd + settings.getDuration().toNanos();
+        boolean recording = false;
+
+        long next = start;
+        while (true) {
+            next += schedule.nextIntervalNanos();
+            if (next >= end) break;
+            long wait = next - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+
+            if (!recording && next >= warmupEnd) {
+                recording = true;
+                recordingStarted.run();
+            }
+
+            String action = pickAction();
+            String portfolioId = portfolios.get(ThreadLocalRandom.current().nextInt(portfolios.size()));
+            if (!outstanding.tryAcquire()) {
+                recorder.failure(action, "dropped");
+                continue;
+            }
+            // The request is timed from when it was due, so a generator running behind still shows up as latency
+            try {
+                perform(action, portfolioId, next).whenComplete((result, ex) -> outstanding.release());
+            } catch (RuntimeException e) {
+                recorder.failure(action, e.getClass().getSimpleName());
+                outstanding.release();
+            }
+        }
+
+        long timeoutMillis = settings.getRequestTimeout().toMillis();
+        if (!outstanding.tryAcquire(settings.getMaxOutstanding(), timeoutMillis, TimeUnit.MILLISECONDS)) {
+            log.warn("Requests still outstanding after the run");
+        }
+    }
+
+    private String pickAction() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) return actions[i];
+        }
+        throw new IllegalStateException();
+    }
+
+    private CompletionStage<?> perform(String action, String portfolioId, long intendedStartNanos) {
+        switch (action) {
+            case "summary":
+                return client.getSummary(portfolioId, intendedStartNanos);
+            case "portfolio":
+                return client.getPortfolio(portfolioId, intendedStartNanos);
+            case "transfers":
+                return client.getTransfers(portfolioId, intendedStartNanos);
+            case "leaderboard":
+                return client.getLeaderboard(intendedStartNanos);
+            case "deposit":
+                return client.deposit(portfolioId, DEPOSIT, intendedStartNanos);
+            case "buy":
+                return buy(portfolioId, randomSymbol(), intendedStartNanos);
+            case "sell":
+                return sell(portfolioId, randomSymbol(), intendedStartNanos);
+            default:
+                throw new IllegalStateException("Unhandled request " + action);
+        }
+    }
+
+    private CompletionStage<?> buy(String portfolioId, String symbol, long intendedStartNanos) {
+        int shares = 1 + ThreadLocalRandom.current().nextInt(MAX_SHARES);
+        return client.placeOrder(portfolioId, symbol, shares, "buy", intendedStartNanos)
+                .thenRun(() -> held.merge(key(portfolioId, symbol), shares, Integer::sum));
+    }
+
+    private CompletionStage<?> sell(String portfolioId, String symbol, long intendedStartNanos) {
+        String key = key(portfolioId, symbol);
+        int[] sold = {0};
+        held.computeIfPresent(key, (k, shares) -> {
+            sold[0] = Math.min(shares, 1 + ThreadLocalRandom.current().nextInt(MAX_SHARES));
+            return shares - sold[0] > 0 ? shares - sold[0] : null;
+        });
+        if (sold[0] == 0) {
+            return buy(portfolioId, symbol, intendedStartNanos);
+        }
+        return client.placeOrder(portfolioId, symbol, sold[0], "sell", intendedStartNanos)
+                .whenComplete((result, ex) -> {
+                    if (ex != null) held.merge(key, sold[0], Integer::sum);
+                });
+    }
+
+    private String randomSymbol() {
+        List<String> symbols = settings.getSymbols();
+        return symbols.get(ThreadLocalRandom.current().nextInt(symbols.size()));
+    }
+
+    private static String key(String portfolioId, String symbol) {
+        return portfolioId + "/" + symbol;
+    }
+}
@@ -0,0 +1,122 @@
+package com.redelastic.loadtest;
+
+import akka.Done;
+import akka.actor.ActorSystem;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.ws.Message;
+import akka.http.javadsl.model.ws.TextMessage;
+import akka.http.javadsl.model.ws.WebSocketRequest;
+import akka.http.javadsl.model.ws.WebSocketUpgradeResponse;
+import akka.japi.Pair;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSockets held open on the BFF's multiplexed stream, each subscribed to the orders and transfers of one portfolio.
+ * Connection time is recorded as "ws-connect", and connections the BFF closes before the run is over as "ws"
+ * failures.
+ */
+public class WebSockets {
+
+    private final Http http;
+    private final Materializer materializer;
+    private final String streamUrl;
+    private final LatencyRecorder recorder;
+
+    private final List<CompletableFuture<Optional<Message>>> connections = new ArrayList<>();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final LongAdder messages = new LongAdder();
+    private volatile boolean closing = false;
+
+    public WebSockets(ActorSystem system, Materializer materializer, String bffUrl, LatencyRecorder recorder) {
+        this.http = Http.get(system);
+        this.materializer = materializer;
+        this.streamUrl = bffUrl.replaceFirst("^http", "ws") + "/api/stream";
+        this.recorder = recorder;
+    }
+
+    /**
+     * Opens a connection for each of the first {@code count} portfolios, taking them in turn if there are fewer.
+     */
+    public void open(List<String> portfolios, int count) {
+        for (int i = 0; i < count; i++) {
+            open(portfolios.get(i % portfolios.size()));
+        }
+    }
+
+    public void close() {
+        closing = true;
+        connections.forEach(connection -> connection.complete(Optional.empty()));
+    }
+
+    public int connected() {
+        return connected.get();
+    }
+
+    public long messages() {
+        return messages.sum();
+    }
+
+    private void open(String portfolioId) {
+        List<Message> subscriptions = Arrays.asList(
+                subscribe("orders", portfolioId),
+                subscribe("transfers", portfolioId));
+
+        Sink<Message, CompletionStage<Done>> received = Flow.<Message>create()
+                .mapAsync(1, this::drain)
+                .toMat(Sink.foreach(done -> messages.increment()), Keep.right());
+        Source<Message, CompletableFuture<Optional<Message>>> sent = Source.from(subscriptions)
+                .concatMat(Source.maybe(), Keep.right());
+
+        long start = System.nanoTime();
+        Pair<CompletionStage<WebSocketUpgradeResponse>,
+                Pair<CompletionStage<Done>, CompletableFuture<Optional<Message>>>> connection =
+                http.singleWebSocketRequest(
+                        WebSocketRequest.create(streamUrl),
+                        Flow.fromSinkAndSourceMat(received, sent, Keep.both()),
+                        materializer);
+        connections.add(connection.second().second());
+
+        connection.first().whenComplete((upgrade, ex) -> {
+            if (ex != null) {
+                recorder.failure("ws-connect", ex.getClass().getSimpleName());
+            } else if (!upgrade.response().status().equals(StatusCodes.SWITCHING_PROTOCOLS)) {
+                recorder.failure("ws-connect", "HTTP " + upgrade.response().status().intValue());
+            } else {
+                long end = System.nanoTime();
+                recorder.success("ws-connect", start, start, end);
+                connected.incrementAndGet();
+                connection.second().first().whenComplete((done, closed) -> {
+                    if (!closing) recorder.failure("ws", "closed early");
+                });
+            }
+        });
+    }
+
+    // Streamed messages must be read to the end before the next one arrives
+    private CompletionStage<Done> drain(Message message) {
+        if (message.isText()) {
+            return message.asTextMessage().getStreamedText().runWith(Sink.ignore(), materializer);
+        } else {
+            return message.asBinaryMessage().getStreamedData().runWith(Sink.ignore(), materializer);
+        }
+    }
+
+    private static Message subscribe(String channel, String portfolioId) {
+        return TextMessage.create(
+                "{\"op\":\"subscribe\",\"channel\":\"" + channel + "\",\"portfolioId\":\"" + portfolioId + "\"}");
+    }
+}
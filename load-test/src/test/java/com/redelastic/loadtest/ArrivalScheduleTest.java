@@ -0,0 +1,43 @@
+package com.redelastic.loadtest;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ArrivalScheduleTest {
+
+    @Test
+    public void constantArrivalsAreEvenlySpaced() {
+        ArrivalSchedule schedule = ArrivalSchedule.constant(100);
+        assertEquals(10000000L, schedule.nextIntervalNanos());
+        assertEquals(10000000L, schedule.nextIntervalNanos());
+    }
+
+    @Test
+    public void poissonArrivalsAverageTheRate() {
+        ArrivalSchedule schedule = ArrivalSchedule.poisson(100, new Random(42));
+        int arrivals = 100000;
+        long total = 0;
+        long shortest = Long.MAX_VALUE;
+        long longest = 0;
+        for (int i = 0; i < arrivals; i++) {
+            long interval = schedule.nextIntervalNanos();
+            total += interval;
+            shortest = Math.min(shortest, interval);
+            longest = Math.max(longest, interval);
+        }
+        double mean = (double) total / arrivals;
+        assertTrue("mean interval " + mean, Math.abs(mean - 10000000) < 200000);
+        // Bursts and lulls, unlike constant arrivals
+        assertTrue(shortest < 1000000);
+        assertTrue(longest > 50000000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownArrivals() {
+        ArrivalSchedule.forName("uniform", 100, new Random());
+    }
+}
@@ -0,0 +1,72 @@
+package com.redelastic.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyRecorderTest {
+
+    private final HistogramLogWriter log = new HistogramLogWriter(new PrintStream(new ByteArrayOutputStream()));
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    // Histograms keep three significant digits, so the largest value comes back as the top of its bucket
+    private static void assertLargest(long expected, Histogram histogram) {
+        long largest = histogram.getValueAtPercentile(100);
+        assertTrue(expected + " recorded as " + largest, histogram.valuesAreEquivalent(expected, largest));
+    }
+
+    @Test
+    public void responseTimeIncludesTimeSpentWaitingToBeSent() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        // Due at 0, sent at 900 behind earlier requests, answered at 1000
+        recorder.success("summary", 0, millis(900), millis(1000));
+        recorder.logInterval(log, 0, 1000, false);
+
+        LatencyRecorder.EndpointSummary summary = recorder.summary().get("summary");
+        assertLargest(1000000L, summary.getResponseTime());
+        assertLargest(100000L, summary.getServiceTime());
+    }
+
+    @Test
+    public void warmupIsLeftOutOfTheSummary() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        recorder.success("summary", 0, 0, millis(5000));
+        recorder.failure("summary", "HTTP 503");
+        LatencyRecorder.Interval warmup = recorder.logInterval(log, 0, 1000, true);
+
+        recorder.success("summary", 0, 0, millis(10));
+        recorder.logInterval(log, 1000, 2000, false);
+
+        assertEquals(1, warmup.getResponses());
+        assertEquals(1, warmup.getErrors());
+        LatencyRecorder.EndpointSummary summary = recorder.summary().get("summary");
+        assertEquals(1, summary.getResponseTime().getTotalCount());
+        assertLargest(10000L, summary.getResponseTime());
+        assertEquals(0, summary.errorCount());
+    }
+
+    @Test
+    public void errorsAreCountedByReason() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        recorder.failure("buy", "HTTP 429");
+        recorder.failure("buy", "HTTP 429");
+        recorder.failure("buy", "dropped");
+        recorder.logInterval(log, 0, 1000, false);
+
+        LatencyRecorder.EndpointSummary summary = recorder.summary().get("buy");
+        assertEquals(3, summary.errorCount());
+        assertEquals(Long.valueOf(2), summary.getErrors().get("HTTP 429"));
+        assertEquals(0, summary.getResponseTime().getTotalCount());
+        assertEquals(0, recorder.logInterval(log, 1000, 2000, false).getErrors());
+    }
+}
@@ -20,6 +20,8 @@ public abstract class FundsTransfer {
 
     private FundsTransfer() {}
 
+    public abstract TransferId getTransferId();
+
     public abstract <T> T visit(Visitor<T> visitor);
 
     public interface Visitor<T> {
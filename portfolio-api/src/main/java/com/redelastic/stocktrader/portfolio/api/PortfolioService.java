@@ -9,10 +9,13 @@ import com.lightbend.lagom.javadsl.api.broker.Topic;
 import com.lightbend.lagom.javadsl.api.transport.Method;
 import com.redelastic.stocktrader.OrderId;
 import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.serialization.CompactSerializerFactory;
 import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
 
 import org.pcollections.PSequence;
 
+import java.util.Optional;
+
 import static com.lightbend.lagom.javadsl.api.Service.*;
 
 import akka.stream.javadsl.Source;
@@ -23,16 +26,43 @@ public interface PortfolioService extends Service {
 
     ServiceCall<OpenPortfolioDetails, PortfolioId> openPortfolio();
 
+    /**
+     * Responds with a {@link com.redelastic.stocktrader.ConsistencyToken} header. A {@link #getPortfolio} view whose
+     * version has reached the token includes the order.
+     */
     ServiceCall<OrderDetails, OrderId> placeOrder(PortfolioId portfolioId);
 
     ServiceCall<NotUsed, Done> closePortfolio(PortfolioId portfolioId);
 
     ServiceCall<FundsTransfer, Done> processTransfer(PortfolioId portfolioId);
 
-    ServiceCall<NotUsed, PortfolioView> getPortfolio(PortfolioId portfolioId);
+    /**
+     * Apply many transfers, possibly to different portfolios, in a single request. Transfers are applied
+     * concurrently and an outcome is returned for each, in the order the transfers were submitted. A rejected
+     * transfer does not fail the request.
+     */
+    ServiceCall<PSequence<PortfolioTransfer>, PSequence<TransferOutcome>> processTransfers();
+
+    /**
+     * @param fields Comma separated names of the optional parts of the view to include, see
+     *               {@link PortfolioView.Field}. All parts are included when absent.
+     */
+    ServiceCall<NotUsed, PortfolioView> getPortfolio(PortfolioId portfolioId, Optional<String> fields);
 
     ServiceCall<NotUsed, PSequence<PortfolioSummary>> getAllPortfolios();
 
+    /**
+     * The most valuable portfolios, by funds plus the value of priced holdings. Answers 503 while the node is still
+     * building its leaderboard after starting.
+     */
+    ServiceCall<NotUsed, PSequence<RankedPortfolio>> getTopPortfolios(Optional<Integer> limit);
+
+    /**
+     * The portfolios whose holdings have gained or lost the most in value from price movements recently. Answers
+     * 503 while the node is still building its leaderboard after starting.
+     */
+    ServiceCall<NotUsed, PSequence<RankedPortfolio>> getBiggestMovers(Optional<Integer> limit);
+
     Topic<OrderPlaced> orderPlaced();
 
     @Override
@@ -44,12 +74,16 @@ public interface PortfolioService extends Service {
                 restCall(Method.POST, "/api/portfolio", this::openPortfolio),
                 restCall(Method.POST, "/api/portfolio/:portfolioId/close", this::closePortfolio),
                 restCall(Method.GET, "/api/portfolio", this::getAllPortfolios),
-                restCall(Method.GET, "/api/portfolio/:portfolioId", this::getPortfolio),
+                restCall(Method.GET, "/api/portfolio/:portfolioId?fields", this::getPortfolio),
+                restCall(Method.GET, "/api/leaderboard/top?limit", this::getTopPortfolios),
+                restCall(Method.GET, "/api/leaderboard/movers?limit", this::getBiggestMovers),
                 restCall(Method.POST, "/api/portfolio/:portfolioId/placeOrder", this::placeOrder),
-                restCall(Method.POST, "/api/portfolio/:portfolio/processTransfer", this::processTransfer)
+                restCall(Method.POST, "/api/portfolio/:portfolio/processTransfer", this::processTransfer),
+                restCall(Method.POST, "/api/portfolio/processTransfers", this::processTransfers)
         ).withTopics(
                 topic(ORDERS_TOPIC_ID, this::orderPlaced)
-        ).withPathParamSerializer(PortfolioId.class, PortfolioId.pathParamSerializer);
+        ).withPathParamSerializer(PortfolioId.class, PortfolioId.pathParamSerializer)
+                .withSerializerFactory(new CompactSerializerFactory());
         // @formatter:on
 
     }
@@ -0,0 +1,16 @@
+package com.redelastic.stocktrader.portfolio.api;
+
+import com.redelastic.stocktrader.PortfolioId;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * A funds transfer addressed to a particular portfolio, used when submitting several transfers in one request.
+ */
+@Value
+@Builder
+public class PortfolioTransfer {
+    @NonNull PortfolioId portfolioId;
+    @NonNull FundsTransfer transfer;
+}
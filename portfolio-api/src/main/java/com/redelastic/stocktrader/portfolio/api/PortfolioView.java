@@ -1,16 +1,38 @@
 package com.redelastic.stocktrader.portfolio.api;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.lightbend.lagom.javadsl.api.transport.BadRequest;
 import com.redelastic.stocktrader.OrderId;
 import com.redelastic.stocktrader.PortfolioId;
+import lombok.AccessLevel;
 import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.ToString;
 import lombok.Value;
+import org.pcollections.HashTreePSet;
 import org.pcollections.PSequence;
+import org.pcollections.PSet;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Optional;
 
+import static java.util.stream.Collectors.joining;
+
+/**
+ * A portfolio as seen by clients. The larger parts of the view are optional, see {@link Field}. A part that was not
+ * requested is left out of the JSON, and its getter throws rather than returning something that looks like an empty
+ * portfolio; check with {@link #has} first when a view may not include it.
+ */
 @Value
 @Builder
+@EqualsAndHashCode(doNotUseGetters = true)
+@ToString(doNotUseGetters = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class PortfolioView {
 
     @NonNull PortfolioId portfolioId;
@@ -19,7 +41,100 @@ public class PortfolioView {
 
     @NonNull BigDecimal funds;
 
-    @NonNull PSequence<Holding> holdings;
+    // Serialized from the fields, so an unrequested part is left out rather than failing its getter
+    @JsonProperty
+    @Getter(AccessLevel.NONE)
+    PSequence<Holding> holdings; // Null unless Field.HOLDINGS was requested
+
+    @JsonProperty
+    @Getter(AccessLevel.NONE)
+    PSequence<OrderId> completedOrders; // Null unless Field.COMPLETED_ORDERS was requested
+
+    /**
+     * Version of the portfolio's view, counting the changes to it since the portfolio was opened. It is not the
+     * portfolio's event sequence number: events that do not change the view leave it as it is. Views with the same
+     * version are identical.
+     */
+    long version;
+
+    /**
+     * @throws IllegalStateException if the view was read without {@link Field#HOLDINGS}.
+     */
+    @JsonIgnore
+    public PSequence<Holding> getHoldings() {
+        return requested(holdings, Field.HOLDINGS);
+    }
+
+    /**
+     * @throws IllegalStateException if the view was read without {@link Field#COMPLETED_ORDERS}.
+     */
+    @JsonIgnore
+    public PSequence<OrderId> getCompletedOrders() {
+        return requested(completedOrders, Field.COMPLETED_ORDERS);
+    }
+
+    public boolean has(Field field) {
+        switch (field) {
+            case HOLDINGS:
+                return holdings != null;
+            case COMPLETED_ORDERS:
+                return completedOrders != null;
+            default:
+                throw new IllegalArgumentException(field.toString());
+        }
+    }
+
+    private static <T> T requested(T part, Field field) {
+        if (part == null) {
+            throw new IllegalStateException("Portfolio view was read without " + field.getFieldName());
+        }
+        return part;
+    }
+
+    /**
+     * Optional parts of the view. The id, name, funds and version are always included.
+     */
+    public enum Field {
+        HOLDINGS("holdings"),
+        COMPLETED_ORDERS("completedOrders");
+
+        public static final PSet<Field> ALL = HashTreePSet.from(Arrays.asList(values()));
+
+        @Getter
+        private final String fieldName;
+
+        Field(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        /**
+         * Parse a comma separated list of field names, as passed in the "fields" query parameter. No parameter means
+         * every field, so clients that do not know about field selection get the full view. An empty parameter
+         * selects none of them.
+         */
+        public static PSet<Field> parse(Optional<String> fields) {
+            if (!fields.isPresent()) return ALL;
+            if (fields.get().trim().isEmpty()) return HashTreePSet.empty();
+
+            PSet<Field> selected = HashTreePSet.empty();
+            for (String name : fields.get().split(",")) {
+                String trimmed = name.trim();
+                if (trimmed.isEmpty()) continue;
+                Field field = Arrays.stream(values())
+                        .filter(f -> f.fieldName.equals(trimmed))
+                        .findFirst()
+                        .orElseThrow(() -> new BadRequest("Unknown portfolio field " + trimmed));
+                selected = selected.plus(field);
+            }
+            return selected;
+        }
 
-    @NonNull PSequence<OrderId> completedOrders;
+        /**
+         * The "fields" query parameter selecting exactly these fields. Selecting none gives an empty parameter, for
+         * just the id, name, funds and version, not an absent one.
+         */
+        public static Optional<String> select(Field... fields) {
+            return Optional.of(Arrays.stream(fields).map(Field::getFieldName).collect(joining(",")));
+        }
+    }
 }
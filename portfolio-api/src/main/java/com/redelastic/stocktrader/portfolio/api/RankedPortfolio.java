@@ -0,0 +1,27 @@
+package com.redelastic.stocktrader.portfolio.api;
+
+import com.redelastic.stocktrader.PortfolioId;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * A portfolio's place on a leaderboard. Holdings without a known price are left out of the value.
+ */
+@Value
+@Builder
+public class RankedPortfolio {
+
+    int rank;
+
+    @NonNull PortfolioId portfolioId;
+
+    @NonNull String name;
+
+    @NonNull BigDecimal value;
+
+    // Change in the value of the holdings due to price movements in the current movers window
+    @NonNull BigDecimal change;
+}
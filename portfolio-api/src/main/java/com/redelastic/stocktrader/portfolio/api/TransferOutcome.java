@@ -0,0 +1,20 @@
+package com.redelastic.stocktrader.portfolio.api;
+
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TransferId;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Result of applying a single {@link PortfolioTransfer}. When the portfolio rejected the transfer the reason is
+ * included, otherwise it is null.
+ */
+@Value
+@Builder
+public class TransferOutcome {
+    @NonNull PortfolioId portfolioId;
+    @NonNull TransferId transferId;
+    boolean accepted;
+    String reason;
+}
@@ -0,0 +1,183 @@
+package com.redelastic.stocktrader.portfolio.impl;
+
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.portfolio.api.RankedPortfolio;
+import org.pcollections.PSequence;
+import org.pcollections.TreePVector;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * In memory valuation of every open portfolio, ranked by value and by recent price movement.
+ * <p>
+ * Portfolios are kept in two sorted sets, so a change to one portfolio is a remove and re-insert in each and a top N
+ * query only walks the first N entries. Holders are indexed by symbol, so a price change only revalues the portfolios
+ * that hold that symbol.
+ */
+class Leaderboard {
+
+    private static final Comparator<Entry> BY_VALUE = Comparator
+            .comparing((Entry entry) -> entry.value()).reversed()
+            .thenComparing(entry -> entry.portfolioId.getId());
+
+    private static final Comparator<Entry> BY_CHANGE = Comparator
+            .comparing((Entry entry) -> entry.change.abs()).reversed()
+            .thenComparing(entry -> entry.portfolioId.getId());
+
+    private final Map<PortfolioId, Entry> entries = new HashMap<>();
+    private final Map<String, Set<PortfolioId>> holders = new HashMap<>();
+    private final Map<String, BigDecimal> prices = new HashMap<>();
+
+    private final TreeSet<Entry> byValue = new TreeSet<>(BY_VALUE);
+    private final TreeSet<Entry> byChange = new TreeSet<>(BY_CHANGE);
+
+    synchronized void opened(PortfolioId portfolioId, String name) {
+        if (entries.containsKey(portfolioId)) return;
+        Entry entry = new Entry(portfolioId, name);
+        entries.put(portfolioId, entry);
+        index(entry);
+    }
+
+    synchronized void closed(PortfolioId portfolioId) {
+        Entry entry = entries.remove(portfolioId);
+        if (entry == null) return;
+        unindex(entry);
+        entry.shares.keySet().forEach(symbol -> removeHolder(symbol, portfolioId));
+    }
+
+    synchronized void fundsChanged(PortfolioId portfolioId, BigDecimal delta) {
+        update(portfolioId, entry -> entry.funds = entry.funds.add(delta));
+    }
+
+    synchronized void sharesChanged(PortfolioId portfolioId, String symbol, int delta) {
+        BigDecimal price = prices.get(symbol);
+        update(portfolioId, entry -> {
+            int shares = entry.shares.getOrDefault(symbol, 0) + delta;
+            if (shares > 0) {
+                entry.shares.put(symbol, shares);
+                holders.computeIfAbsent(symbol, s -> new HashSet<>()).add(portfolioId);
+            } else {
+                entry.shares.remove(symbol);
+                removeHolder(symbol, portfolioId);
+            }
+            if (price != null) {
+                entry.holdingsValue = entry.holdingsValue.add(price.multiply(BigDecimal.valueOf(delta)));
+            }
+        });
+    }
+
+    /**
+     * Revalue the portfolios holding {@code symbol}. The first price seen for a symbol values the holdings but does
+     * not count as a movement.
+     */
+    synchronized void priceChanged(String symbol, BigDecimal price) {
+        BigDecimal previous = prices.put(symbol, price);
+        if (previous != null && previous.compareTo(price) == 0) return;
+
+        BigDecimal priceDelta = previous == null ? price : price.subtract(previous);
+        for (PortfolioId portfolioId : holders.getOrDefault(symbol, Collections.emptySet())) {
+            update(portfolioId, entry -> {
+                BigDecimal delta = priceDelta.multiply(BigDecimal.valueOf(entry.shares.get(symbol)));
+                entry.holdingsValue = entry.holdingsValue.add(delta);
+                if (previous != null) entry.change = entry.change.add(delta);
+            });
+        }
+    }
+
+    /**
+     * Start a new movers window.
+     */
+    synchronized void resetChanges() {
+        byChange.clear();
+        entries.values().forEach(entry -> {
+            entry.change = BigDecimal.ZERO;
+            byChange.add(entry);
+        });
+    }
+
+    synchronized Set<String> heldSymbols() {
+        return new HashSet<>(holders.keySet());
+    }
+
+    synchronized PSequence<RankedPortfolio> top(int limit) {
+        return ranked(byValue, limit);
+    }
+
+    synchronized PSequence<RankedPortfolio> movers(int limit) {
+        return ranked(byChange, limit);
+    }
+
+    private PSequence<RankedPortfolio> ranked(TreeSet<Entry> ranking, int limit) {
+        List<RankedPortfolio> result = new ArrayList<>(Math.min(limit, ranking.size()));
+        Iterator<Entry> iterator = ranking.iterator();
+        while (iterator.hasNext() && result.size() < limit) {
+            Entry entry = iterator.next();
+            result.add(RankedPortfolio.builder()
+                    .rank(result.size() + 1)
+                    .portfolioId(entry.portfolioId)
+                    .name(entry.name)
+                    .value(entry.value())
+                    .change(entry.change)
+                    .build());
+        }
+        return TreePVector.from(result);
+    }
+
+    private void update(PortfolioId portfolioId, Consumer<Entry> change) {
+        Entry entry = entries.get(portfolioId);
+        if (entry == null) return;
+        // The sort keys are about to change, so the entry has to come out of the sets first
+        unindex(entry);
+        change.accept(entry);
+        index(entry);
+    }
+
+    private void index(Entry entry) {
+        byValue.add(entry);
+        byChange.add(entry);
+    }
+
+    private void unindex(Entry entry) {
+        byValue.remove(entry);
+        byChange.remove(entry);
+    }
+
+    private void removeHolder(String symbol, PortfolioId portfolioId) {
+        Set<PortfolioId> symbolHolders = holders.get(symbol);
+        if (symbolHolders == null) return;
+        symbolHolders.remove(portfolioId);
+        if (symbolHolders.isEmpty()) {
+            holders.remove(symbol);
+            prices.remove(symbol);
+        }
+    }
+
+    private static class Entry {
+        final PortfolioId portfolioId;
+        final String name;
+        final Map<String, Integer> shares = new HashMap<>();
+        BigDecimal funds = BigDecimal.ZERO;
+        BigDecimal holdingsValue = BigDecimal.ZERO;
+        BigDecimal change = BigDecimal.ZERO;
+
+        Entry(PortfolioId portfolioId, String name) {
+            this.portfolioId = portfolioId;
+            this.name = name;
+        }
+
+        BigDecimal value() {
+            return funds.add(holdingsValue);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.redelastic.stocktrader.portfolio.impl;
+
+import com.lightbend.lagom.javadsl.api.transport.TransportErrorCode;
+import com.lightbend.lagom.javadsl.api.transport.TransportException;
+
+/**
+ * The leaderboard is still being rebuilt from the journal, so would rank only some of the portfolios.
+ */
+class LeaderboardNotReady extends TransportException {
+
+    public LeaderboardNotReady(String message) {
+        super(TransportErrorCode.ServiceUnavailable, message);
+    }
+}
@@ -0,0 +1,251 @@
+package com.redelastic.stocktrader.portfolio.impl;
+
+import akka.NotUsed;
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.PoisonPill;
+import akka.actor.Props;
+import akka.cluster.singleton.ClusterSingletonManager;
+import akka.cluster.singleton.ClusterSingletonManagerSettings;
+import akka.cluster.singleton.ClusterSingletonProxy;
+import akka.cluster.singleton.ClusterSingletonProxySettings;
+import akka.pattern.AskTimeoutException;
+import akka.pattern.Patterns;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.RestartSource;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
+import com.lightbend.lagom.javadsl.persistence.Offset;
+import com.lightbend.lagom.javadsl.persistence.PersistentEntityRegistry;
+import com.lightbend.lagom.serialization.Jsonable;
+import com.redelastic.CSHelper;
+import com.redelastic.metrics.ConsumerLagMonitor;
+import com.redelastic.stocktrader.broker.api.BrokerService;
+import com.redelastic.stocktrader.portfolio.api.RankedPortfolio;
+import com.typesafe.config.Config;
+import lombok.NonNull;
+import lombok.Value;
+import org.pcollections.PSequence;
+import org.pcollections.TreePVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Serves the {@link Leaderboard}, which is kept by a cluster singleton and asked for by every node.
+ * <p>
+ * The singleton reads holdings and funds from the portfolio event stream, from the start of the journal whenever it
+ * starts since the leaderboard is not persisted, and prices by polling the broker for the symbols currently held by
+ * some portfolio. Only the node running it reads the journal, and the board moves to another node with the
+ * singleton, rebuilding there, if that node leaves.
+ * <p>
+ * Until every tag has been read up to the present the board would rank only some portfolios, so it is not served
+ * and callers get a 503 instead, as they do when the singleton does not answer within {@code ask-timeout}, such as
+ * while it is moving. A tag is caught up once it delivers an event written within {@code caught-up-within} of now,
+ * or delivers nothing for that long.
+ */
+@Singleton
+class LeaderboardUpdater {
+
+    private final Optional<ActorRef> board;
+    private final int defaultLimit;
+    private final int maxLimit;
+    private final Duration askTimeout;
+
+    @Inject
+    LeaderboardUpdater(ActorSystem system,
+                       PersistentEntityRegistry persistentEntities,
+                       BrokerService brokerService,
+                       Config config) {
+        Config leaderboardConfig = config.getConfig("portfolio.leaderboard");
+        this.defaultLimit = leaderboardConfig.getInt("default-limit");
+        this.maxLimit = leaderboardConfig.getInt("max-limit");
+        this.askTimeout = leaderboardConfig.getDuration("ask-timeout");
+
+        if (leaderboardConfig.getBoolean("enabled")) {
+            system.actorOf(
+                    ClusterSingletonManager.props(
+                            Props.create(BoardActor.class,
+                                    () -> new BoardActor(persistentEntities, brokerService, leaderboardConfig)),
+                            PoisonPill.getInstance(),
+                            ClusterSingletonManagerSettings.create(system)),
+                    "leaderboard");
+            this.board = Optional.of(system.actorOf(
+                    ClusterSingletonProxy.props("/user/leaderboard", ClusterSingletonProxySettings.create(system)),
+                    "leaderboardProxy"));
+        } else {
+            this.board = Optional.empty();
+        }
+    }
+
+    CompletionStage<PSequence<RankedPortfolio>> top(Optional<Integer> limit) {
+        return rank(new Rank(false, limit(limit)));
+    }
+
+    CompletionStage<PSequence<RankedPortfolio>> movers(Optional<Integer> limit) {
+        return rank(new Rank(true, limit(limit)));
+    }
+
+    private CompletionStage<PSequence<RankedPortfolio>> rank(Rank rank) {
+        if (!board.isPresent()) return CompletableFuture.completedFuture(TreePVector.empty());
+        return Patterns.ask(board.get(), rank, askTimeout)
+                .handle((reply, ex) -> {
+                    if (CSHelper.unwrap(ex) instanceof AskTimeoutException) {
+                        throw new LeaderboardNotReady("Leaderboard did not answer within " + askTimeout);
+                    } else if (ex != null) {
+                        throw new CompletionException(CSHelper.unwrap(ex));
+                    } else if (reply instanceof NotReady) {
+                        throw new LeaderboardNotReady(((NotReady) reply).getReason());
+                    }
+                    return ((Ranking) reply).getPortfolios();
+                });
+    }
+
+    private int limit(Optional<Integer> limit) {
+        return Math.max(0, Math.min(limit.orElse(defaultLimit), maxLimit));
+    }
+
+    @Value
+    static class Rank implements Jsonable {
+        boolean movers;
+        int limit;
+    }
+
+    @Value
+    static class Ranking implements Jsonable {
+        @NonNull PSequence<RankedPortfolio> portfolios;
+    }
+
+    @Value
+    static class NotReady implements Jsonable {
+        @NonNull String reason;
+    }
+
+    /**
+     * The singleton. Its streams run on a materializer of its own, so stop when it does.
+     */
+    static class BoardActor extends AbstractActor {
+
+        private final Logger log = LoggerFactory.getLogger(LeaderboardUpdater.class);
+
+        private final Leaderboard leaderboard = new Leaderboard();
+        private final PersistentEntityRegistry persistentEntities;
+        private final BrokerService brokerService;
+        private final Config leaderboardConfig;
+        private final Duration caughtUpWithin;
+
+        // For each tag not yet caught up, System.nanoTime() of the last event read, or of starting to read
+        private final ConcurrentHashMap<String, Long> catchingUp = new ConcurrentHashMap<>();
+
+        BoardActor(PersistentEntityRegistry persistentEntities, BrokerService brokerService, Config leaderboardConfig) {
+            this.persistentEntities = persistentEntities;
+            this.brokerService = brokerService;
+            this.leaderboardConfig = leaderboardConfig;
+            this.caughtUpWithin = leaderboardConfig.getDuration("caught-up-within");
+        }
+
+        @Override
+        public void preStart() {
+            Materializer materializer = ActorMaterializer.create(getContext());
+
+            for (AggregateEventTag<PortfolioEvent> tag : PortfolioEvent.TAG.allTags()) {
+                catchingUp.put(tag.tag(), System.nanoTime());
+                followEvents(tag, materializer);
+            }
+            Source.tick(Duration.ofSeconds(1), Duration.ofSeconds(1), "tick")
+                    .takeWhile(tick -> !catchingUp.isEmpty())
+                    .runForeach(tick -> catchingUp.entrySet().removeIf(tag ->
+                            System.nanoTime() - tag.getValue() >= caughtUpWithin.toNanos()), materializer);
+
+            int quoteParallelism = leaderboardConfig.getInt("quote-parallelism");
+            Source.tick(Duration.ZERO, leaderboardConfig.getDuration("quote-interval"), "tick")
+                    .mapConcat(tick -> new ArrayList<>(leaderboard.heldSymbols()))
+                    .mapAsyncUnordered(quoteParallelism, symbol ->
+                            brokerService.getQuote(symbol).invoke()
+                                    .thenApply(Optional::of)
+                                    .exceptionally(ex -> {
+                                        log.debug("Quote for {} failed", symbol, ex);
+                                        return Optional.empty();
+                                    }))
+                    .runForeach(quote -> quote.ifPresent(q ->
+                            leaderboard.priceChanged(q.getSymbol(), q.getSharePrice())), materializer);
+
+            Duration moversWindow = leaderboardConfig.getDuration("movers-window");
+            Source.tick(moversWindow, moversWindow, "reset")
+                    .runForeach(tick -> leaderboard.resetChanges(), materializer);
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(Rank.class, rank -> getSender().tell(rank(rank), getSelf()))
+                    .build();
+        }
+
+        private Jsonable rank(Rank rank) {
+            if (!catchingUp.isEmpty()) {
+                return new NotReady("Leaderboard is still reading " + catchingUp.size() + " tags of the journal");
+            }
+            int limit = rank.getLimit();
+            return new Ranking(rank.isMovers() ? leaderboard.movers(limit) : leaderboard.top(limit));
+        }
+
+        private void followEvents(AggregateEventTag<PortfolioEvent> tag, Materializer materializer) {
+            // Resume from the last event applied if the stream fails, rather than applying events twice
+            AtomicReference<Offset> offset = new AtomicReference<>(Offset.NONE);
+            Source<NotUsed, NotUsed> events = RestartSource.withBackoff(
+                    Duration.ofSeconds(3), Duration.ofSeconds(30), 0.2,
+                    () -> persistentEntities.eventStream(tag, offset.get())
+                            .map(eventAndOffset -> {
+                                apply(eventAndOffset.first());
+                                offset.set(eventAndOffset.second());
+                                read(tag, eventAndOffset.second());
+                                return NotUsed.getInstance();
+                            }));
+            events.runWith(Sink.ignore(), materializer);
+        }
+
+        private void read(AggregateEventTag<PortfolioEvent> tag, Offset offset) {
+            if (catchingUp.isEmpty()) return;
+            long writtenAt = ConsumerLagMonitor.timestamp(offset);
+            if (writtenAt >= 0 && System.currentTimeMillis() - writtenAt <= caughtUpWithin.toMillis()) {
+                catchingUp.remove(tag.tag());
+            } else {
+                catchingUp.computeIfPresent(tag.tag(), (key, lastRead) -> System.nanoTime());
+            }
+        }
+
+        private void apply(PortfolioEvent event) {
+            if (event instanceof PortfolioEvent.Opened) {
+                PortfolioEvent.Opened opened = (PortfolioEvent.Opened) event;
+                leaderboard.opened(opened.getPortfolioId(), opened.getName());
+            } else if (event instanceof PortfolioEvent.Closed) {
+                leaderboard.closed(event.getPortfolioId());
+            } else if (event instanceof PortfolioEvent.FundsCredited) {
+                leaderboard.fundsChanged(event.getPortfolioId(), ((PortfolioEvent.FundsCredited) event).getAmount());
+            } else if (event instanceof PortfolioEvent.FundsDebited) {
+                leaderboard.fundsChanged(event.getPortfolioId(),
+                        ((PortfolioEvent.FundsDebited) event).getAmount().negate());
+            } else if (event instanceof PortfolioEvent.SharesCredited) {
+                PortfolioEvent.SharesCredited credited = (PortfolioEvent.SharesCredited) event;
+                leaderboard.sharesChanged(credited.getPortfolioId(), credited.getSymbol(), credited.getShares());
+            } else if (event instanceof PortfolioEvent.SharesDebited) {
+                PortfolioEvent.SharesDebited debited = (PortfolioEvent.SharesDebited) event;
+                leaderboard.sharesChanged(debited.getPortfolioId(), debited.getSymbol(), -debited.getShares());
+            }
+        }
+    }
+}
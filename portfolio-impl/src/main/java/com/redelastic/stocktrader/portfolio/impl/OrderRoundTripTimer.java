@@ -0,0 +1,55 @@
+package com.redelastic.stocktrader.portfolio.impl;
+
+import com.redelastic.metrics.MetricsRegistry;
+import com.redelastic.stocktrader.OrderId;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Times orders from being persisted by their portfolio until their result is back from the broker, as
+ * {@code order_round_trip}: both topic hops and the broker's handling of the order. Only orders placed and completed
+ * on the same node since it started are timed.
+ */
+@Singleton
+public class OrderRoundTripTimer {
+
+    // Orders the broker never answers would otherwise be held forever, so past this many the oldest are dropped
+    private static final int MAX_PENDING = 10_000;
+
+    // In the order placed; guarded by itself
+    private final LinkedHashMap<OrderId, Long> pending;
+    private final MetricsRegistry.Timer roundTrip;
+
+    @Inject
+    public OrderRoundTripTimer(MetricsRegistry metrics) {
+        this(metrics, MAX_PENDING);
+    }
+
+    OrderRoundTripTimer(MetricsRegistry metrics, int maxPending) {
+        this.roundTrip = metrics.timer("order_round_trip");
+        this.pending = new LinkedHashMap<OrderId, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<OrderId, Long> eldest) {
+                return size() > maxPending;
+            }
+        };
+    }
+
+    void placed(OrderId orderId) {
+        long now = System.nanoTime();
+        synchronized (pending) {
+            pending.put(orderId, now);
+        }
+    }
+
+    void completed(OrderId orderId) {
+        Long placedAt;
+        synchronized (pending) {
+            placedAt = pending.remove(orderId);
+        }
+        if (placedAt != null) roundTrip.record(System.nanoTime() - placedAt);
+    }
+}
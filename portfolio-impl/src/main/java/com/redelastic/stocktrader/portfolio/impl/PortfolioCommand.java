@@ -7,6 +7,7 @@ import com.redelastic.stocktrader.OrderId;
 import com.redelastic.stocktrader.TransferId;
 import com.redelastic.stocktrader.broker.api.OrderResult;
 import com.redelastic.stocktrader.broker.api.Trade;
+import com.redelastic.stocktrader.portfolio.api.PortfolioView;
 import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
 import lombok.Builder;
 import lombok.NonNull;
@@ -24,6 +25,21 @@ public interface PortfolioCommand extends Jsonable {
         INSTANCE
     }
 
+    /**
+     * Build the client view on the entity, so only the requested parts of the state are copied into the reply.
+     */
+    @Value
+    @Builder
+    class GetView implements PortfolioCommand, ReplyType<ViewReply> {
+        boolean includeHoldings;
+        boolean includeCompletedOrders;
+    }
+
+    @Value
+    class ViewReply implements Jsonable {
+        @NonNull PortfolioView view;
+    }
+
     @Value
     class Open implements PortfolioCommand, ReplyType<Done> {
         @NonNull String name;
@@ -31,11 +47,19 @@ public interface PortfolioCommand extends Jsonable {
 
     @Value
     @Builder
-    class PlaceOrder implements PortfolioCommand, ReplyType<Done> {
+    class PlaceOrder implements PortfolioCommand, ReplyType<OrderPlacedReply> {
         @NonNull OrderId orderId;
         @NonNull OrderDetails orderDetails;
     }
 
+    /**
+     * The portfolio's version once the order was placed, for the consistency token of the order.
+     */
+    @Value
+    class OrderPlacedReply implements Jsonable {
+        long version;
+    }
+
     @Value
     @Builder
     class CompleteTrade implements PortfolioCommand, ReplyType<Done> {
@@ -43,16 +67,24 @@ public interface PortfolioCommand extends Jsonable {
         @NonNull Trade trade;
     }
 
+    /**
+     * Given a transfer id, funds already received for that transfer are not received again.
+     */
     @Value
     @Builder
     class ReceiveFunds implements PortfolioCommand, ReplyType<Done> {
         @NonNull BigDecimal amount;
+        TransferId transferId;
     }
 
+    /**
+     * Given a transfer id, funds already sent for that transfer are not sent again.
+     */
     @Value
     @Builder
     class SendFunds implements PortfolioCommand, ReplyType<Done> {
         @NonNull BigDecimal amount;
+        TransferId transferId;
     }
 
     @Value
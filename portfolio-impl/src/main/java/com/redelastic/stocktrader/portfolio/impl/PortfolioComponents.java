@@ -0,0 +1,13 @@
+package com.redelastic.stocktrader.portfolio.impl;
+
+import com.google.inject.AbstractModule;
+
+/**
+ * What the portfolio service needs bound however it is deployed.
+ */
+public class PortfolioComponents extends AbstractModule {
+    @Override
+    protected void configure() {
+        bind(PortfolioRepository.class).to(PortfolioRepositoryImpl.class);
+    }
+}
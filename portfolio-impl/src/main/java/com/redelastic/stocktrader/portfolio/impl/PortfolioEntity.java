@@ -3,24 +3,38 @@ package com.redelastic.stocktrader.portfolio.impl;
 import akka.Done;
 import com.lightbend.lagom.javadsl.api.transport.NotFound;
 import com.lightbend.lagom.javadsl.persistence.PersistentEntity;
+import com.redelastic.metrics.HotEntities;
+import com.redelastic.metrics.InstrumentedEntity;
+import com.redelastic.metrics.MetricsRegistry;
 import com.redelastic.stocktrader.OrderId;
 import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TransferId;
 import com.redelastic.stocktrader.broker.api.Trade;
+import com.redelastic.stocktrader.portfolio.api.PortfolioView;
 import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
+import org.pcollections.ConsPStack;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 
 // TODO: Note overdrawn status on purchase.
-class PortfolioEntity extends PersistentEntity<PortfolioCommand, PortfolioEvent, Optional<PortfolioState>> {
+class PortfolioEntity extends InstrumentedEntity<PortfolioCommand, PortfolioEvent, Optional<PortfolioState>> {
     private final Logger log = LoggerFactory.getLogger(PortfolioEntity.class);
 
+    @Inject
+    PortfolioEntity(MetricsRegistry metrics, HotEntities hotEntities) {
+        super(metrics, hotEntities);
+    }
+
     @Override
-    public Behavior initialBehavior(Optional<Optional<PortfolioState>> snapshotState) {
+    protected Behavior createInitialBehavior(Optional<Optional<PortfolioState>> snapshotState) {
         return snapshotState
                 .flatMap(Function.identity())
                 .map(state ->
@@ -50,6 +64,8 @@ class PortfolioEntity extends PersistentEntity<PortfolioCommand, PortfolioEvent,
             builder.setEventHandlerChangingBehavior(PortfolioEvent.Opened.class, this::opened);
             builder.setReadOnlyCommandHandler(PortfolioCommand.GetState.class, (cmd, ctx) ->
                     ctx.commandFailed(new NotFound(String.format("Portfolio %s not found.", entityId()))));
+            builder.setReadOnlyCommandHandler(PortfolioCommand.GetView.class, (cmd, ctx) ->
+                    ctx.commandFailed(new NotFound(String.format("Portfolio %s not found.", entityId()))));
 
             return builder.build();
         }
@@ -144,6 +160,7 @@ class PortfolioEntity extends PersistentEntity<PortfolioCommand, PortfolioEvent,
             builder.setCommandHandler(PortfolioCommand.ClosePortfolio.class, this::closePortfolio);
 
             builder.setReadOnlyCommandHandler(PortfolioCommand.GetState.class, this::getState);
+            builder.setReadOnlyCommandHandler(PortfolioCommand.GetView.class, this::getView);
 
             setEventHandler(PortfolioEvent.OrderPlaced.class, evt -> state().update(evt));
             setEventHandler(PortfolioEvent.SharesCredited.class, evt -> state().update(evt));
@@ -154,14 +171,32 @@ class PortfolioEntity extends PersistentEntity<PortfolioCommand, PortfolioEvent,
                     state().orderCompleted(evt.getOrderId()));
             setEventHandler(PortfolioEvent.OrderFailed.class, evt ->
                     state().orderCompleted(evt.getOrderId()));
+            // Only records the transfer, the funds event persisted with it changes the view
+            super.setEventHandler(PortfolioEvent.TransferApplied.class, evt -> state().update(evt));
 
 
         }
 
+        // Every event registered here changes the portfolio's view, so bumps its version. Events that leave the view
+        // as it is register with super.setEventHandler, and are not counted.
+        @Override
+        <E extends PortfolioEvent> void setEventHandler(Class<E> event, Function<E, PortfolioState.Open> handler) {
+            super.setEventHandler(event, handler.andThen(updated ->
+                    updated.withVersion(state().getVersion() + 1)));
+        }
+
+        // A refund is only sent when the deposit failed, so it is recorded as the transfer's credit
         private Persist acceptRefund(PortfolioCommand.AcceptRefund cmd, CommandContext<Done> ctx) {
-            return ctx.thenPersist(
-                    new PortfolioEvent.RefundAccepted(getPortfolioId(), cmd.getTransferId(), cmd.getAmount()),
-                    evt -> ctx.reply(Done.getInstance())
+            Optional<PortfolioEvent.TransferApplied> transfer = transferApplied(cmd.getTransferId(), true);
+            if (transfer.filter(state()::transferApplied).isPresent()) {
+                log.info(String.format("Refund for transfer %s already accepted", cmd.getTransferId()));
+                ctx.reply(Done.getInstance());
+                return ctx.done();
+            }
+            return ctx.thenPersistAll(
+                    withTransfer(new PortfolioEvent.RefundAccepted(getPortfolioId(), cmd.getTransferId(), cmd.getAmount()),
+                            transfer),
+                    () -> ctx.reply(Done.getInstance())
             );
         }
 
@@ -220,7 +255,8 @@ class PortfolioEntity extends PersistentEntity<PortfolioCommand, PortfolioEvent,
             }
         }
 
-        private PersistentEntity.Persist placeOrder(PortfolioCommand.PlaceOrder placeOrder, CommandContext<Done> ctx) {
+        private PersistentEntity.Persist placeOrder(PortfolioCommand.PlaceOrder placeOrder,
+                                                    CommandContext<PortfolioCommand.OrderPlacedReply> ctx) {
             log.info(String.format("Placing order %s", placeOrder.toString()));
             OrderDetails orderDetails = placeOrder.getOrderDetails();
             switch (orderDetails.getTradeType()) {
@@ -230,7 +266,7 @@ class PortfolioEntity extends PersistentEntity<PortfolioCommand, PortfolioEvent,
                         return ctx.thenPersistAll(Arrays.asList(
                                 new PortfolioEvent.OrderPlaced(placeOrder.getOrderId(), getPortfolioId(), placeOrder.getOrderDetails()),
                                 new PortfolioEvent.SharesDebited(getPortfolioId(), orderDetails.getSymbol(), orderDetails.getShares())),
-                                () -> ctx.reply(Done.getInstance()));
+                                () -> ctx.reply(new PortfolioCommand.OrderPlacedReply(state().getVersion())));
                     } else {
                         ctx.commandFailed(new InsufficientShares(
                                 String.format("Insufficient shares of %s for sell, %d required, %d held.",
@@ -242,7 +278,7 @@ class PortfolioEntity extends PersistentEntity<PortfolioCommand, PortfolioEvent,
                 case BUY:
                     return ctx.thenPersist(
                             new PortfolioEvent.OrderPlaced(placeOrder.getOrderId(), getPortfolioId(), placeOrder.getOrderDetails()),
-                            evt -> ctx.reply(Done.getInstance()));
+                            evt -> ctx.reply(new PortfolioCommand.OrderPlacedReply(state().getVersion())));
                 default:
                     throw new IllegalStateException();
             }
@@ -252,6 +288,22 @@ class PortfolioEntity extends PersistentEntity<PortfolioCommand, PortfolioEvent,
             ctx.reply(state());
         }
 
+        private void getView(PortfolioCommand.GetView cmd, ReadOnlyCommandContext<PortfolioCommand.ViewReply> ctx) {
+            PortfolioState.Open portfolio = state();
+            PortfolioView.PortfolioViewBuilder view = PortfolioView.builder()
+                    .portfolioId(getPortfolioId())
+                    .name(portfolio.getName())
+                    .funds(portfolio.getFunds())
+                    .version(portfolio.getVersion());
+            if (cmd.isIncludeHoldings()) {
+                view.holdings(portfolio.getHoldings().asSequence());
+            }
+            if (cmd.isIncludeCompletedOrders()) {
+                view.completedOrders(ConsPStack.from(portfolio.getCompletedOrders()));
+            }
+            ctx.reply(new PortfolioCommand.ViewReply(view.build()));
+        }
+
         private PersistentEntity.Persist liquidate(PortfolioCommand.Liquidate cmd, CommandContext<Done> ctx) {
             // TODO: Sell all stocks, transfer out all funds, then move to closed.
             // TODO: Handle overdrawn account (negative funds after all equities liquidated
@@ -260,10 +312,15 @@ class PortfolioEntity extends PersistentEntity<PortfolioCommand, PortfolioEvent,
         }
 
         private PersistentEntity.Persist sendFunds(PortfolioCommand.SendFunds cmd, CommandContext<Done> ctx) {
-            if (state().getFunds().compareTo(cmd.getAmount()) >= 0) {
-                return ctx.thenPersist(
-                        new PortfolioEvent.FundsDebited(getPortfolioId(), cmd.getAmount()),
-                        evt -> ctx.reply(Done.getInstance())
+            Optional<PortfolioEvent.TransferApplied> transfer = transferApplied(cmd.getTransferId(), false);
+            if (transfer.filter(state()::transferApplied).isPresent()) {
+                log.info(String.format("Funds for transfer %s already sent", cmd.getTransferId()));
+                ctx.reply(Done.getInstance());
+                return ctx.done();
+            } else if (state().getFunds().compareTo(cmd.getAmount()) >= 0) {
+                return ctx.thenPersistAll(
+                        withTransfer(new PortfolioEvent.FundsDebited(getPortfolioId(), cmd.getAmount()), transfer),
+                        () -> ctx.reply(Done.getInstance())
                 );
             } else {
                 ctx.commandFailed(new InsufficientFunds(
@@ -273,12 +330,31 @@ class PortfolioEntity extends PersistentEntity<PortfolioCommand, PortfolioEvent,
         }
 
         private PersistentEntity.Persist receiveFunds(PortfolioCommand.ReceiveFunds cmd, CommandContext<Done> ctx) {
-            return ctx.thenPersist(
-                    new PortfolioEvent.FundsCredited(getPortfolioId(), cmd.getAmount()),
-                    evt -> ctx.reply(Done.getInstance())
+            Optional<PortfolioEvent.TransferApplied> transfer = transferApplied(cmd.getTransferId(), true);
+            if (transfer.filter(state()::transferApplied).isPresent()) {
+                log.info(String.format("Funds for transfer %s already received", cmd.getTransferId()));
+                ctx.reply(Done.getInstance());
+                return ctx.done();
+            }
+            return ctx.thenPersistAll(
+                    withTransfer(new PortfolioEvent.FundsCredited(getPortfolioId(), cmd.getAmount()), transfer),
+                    () -> ctx.reply(Done.getInstance())
             );
         }
 
+        private Optional<PortfolioEvent.TransferApplied> transferApplied(TransferId transferId, boolean credited) {
+            return Optional.ofNullable(transferId)
+                    .map(id -> new PortfolioEvent.TransferApplied(getPortfolioId(), id, credited));
+        }
+
+        private List<PortfolioEvent> withTransfer(PortfolioEvent fundsEvent,
+                                                  Optional<PortfolioEvent.TransferApplied> transfer) {
+            List<PortfolioEvent> events = new ArrayList<>(2);
+            events.add(fundsEvent);
+            transfer.ifPresent(events::add);
+            return events;
+        }
+
         /**
          * If a sell order failed then we can reclaim the shares.
          *
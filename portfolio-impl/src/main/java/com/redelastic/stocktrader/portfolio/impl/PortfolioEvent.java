@@ -80,6 +80,18 @@ interface PortfolioEvent extends Jsonable, AggregateEvent<PortfolioEvent> {
         @NonNull BigDecimal amount;
     }
 
+    /**
+     * Persisted with the funds debited or credited, or the refund accepted, for a transfer saga step, so a repeated
+     * step is not applied twice.
+     */
+    @Value
+    class TransferApplied implements PortfolioEvent {
+        @NonNull PortfolioId portfolioId;
+        @NonNull TransferId transferId;
+        // Whether the funds were credited to the portfolio rather than debited
+        boolean credited;
+    }
+
     @Value
     class RefundAccepted implements PortfolioEvent {
         @NonNull PortfolioId portfolioId;
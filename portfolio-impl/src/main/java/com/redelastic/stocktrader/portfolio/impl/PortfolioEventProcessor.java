@@ -11,6 +11,7 @@ import com.lightbend.lagom.javadsl.persistence.cassandra.CassandraReadSide;
 import com.lightbend.lagom.javadsl.persistence.cassandra.CassandraSession;
 
 import akka.Done;
+import com.redelastic.metrics.ConsumerLagMonitor;
 import org.pcollections.PSequence;
 import org.pcollections.TreePVector;
 import com.redelastic.stocktrader.portfolio.impl.PortfolioEvent.Opened;
@@ -26,13 +27,15 @@ public class PortfolioEventProcessor extends ReadSideProcessor<PortfolioEvent> {
 
   private final CassandraSession session;
   private final CassandraReadSide readSide;
+  private final ConsumerLagMonitor lagMonitor;
 
   private PreparedStatement writePortfolios = null; // initialized in prepare
 
   @Inject
-  public PortfolioEventProcessor(CassandraSession session, CassandraReadSide readSide) {
+  public PortfolioEventProcessor(CassandraSession session, CassandraReadSide readSide, ConsumerLagMonitor lagMonitor) {
     this.session = session;
     this.readSide = readSide;
+    this.lagMonitor = lagMonitor;
   }
 
   @Override
@@ -42,11 +45,11 @@ public class PortfolioEventProcessor extends ReadSideProcessor<PortfolioEvent> {
 
   @Override
   public ReadSideHandler<PortfolioEvent> buildHandler() {
-    return readSide.<PortfolioEvent>builder("portfolio_offset")
+    return lagMonitor.readSide("PortfolioEventProcessor", readSide.<PortfolioEvent>builder("portfolio_offset")
       .setGlobalPrepare(this::prepareCreateTables)
       .setPrepare(tag -> prepareWritePortfolios())
       .setEventHandler(Opened.class, this::processPortfolioChanged)
-      .build();
+      .build());
   }
 
   private CompletionStage<Done> prepareCreateTables() {
@@ -1,16 +1,17 @@
 package com.redelastic.stocktrader.portfolio.impl;
 
 import akka.Done;
-import com.lightbend.lagom.javadsl.persistence.PersistentEntityRef;
 import com.lightbend.lagom.javadsl.persistence.PersistentEntityRegistry;
+import com.redelastic.metrics.InstrumentedEntityRef;
+import com.redelastic.metrics.MetricsRegistry;
 import com.redelastic.stocktrader.OrderId;
 import com.redelastic.stocktrader.PortfolioId;
 import com.redelastic.stocktrader.broker.api.OrderResult;
 import com.redelastic.stocktrader.broker.api.Trade;
 import com.redelastic.stocktrader.portfolio.api.PortfolioView;
 import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
-import org.pcollections.ConsPStack;
 
+import java.util.Set;
 import java.util.concurrent.CompletionStage;
 
 /* Facade for a PortfolioModel. Wraps up all the logic surrounding an individual PortfolioEntity.
@@ -19,33 +20,36 @@ import java.util.concurrent.CompletionStage;
  */
 class PortfolioModel {
 
-    private final PersistentEntityRef<PortfolioCommand> portfolioEntity;
+    private final InstrumentedEntityRef<PortfolioCommand> portfolioEntity;
     private final PortfolioId portfolioId;
 
     PortfolioModel(PersistentEntityRegistry registry,
+                   MetricsRegistry metrics,
                    PortfolioId portfolioId) {
-        this.portfolioEntity = registry.refFor(PortfolioEntity.class, portfolioId.getId());
+        this.portfolioEntity = InstrumentedEntityRef.refFor(registry, PortfolioEntity.class, portfolioId.getId(), metrics);
         this.portfolioId = portfolioId;
     }
 
     CompletionStage<PortfolioView> view() {
-        return portfolioEntity
-                .ask(PortfolioCommand.GetState.INSTANCE)
-                .thenApply(portfolio ->
-                        PortfolioView.builder()
-                                .portfolioId(portfolioId)
-                                .name(portfolio.getName())
-                                .funds(portfolio.getFunds())
-                                .holdings(portfolio.getHoldings().asSequence())
-                                .completedOrders(
-                                        ConsPStack.from(portfolio.getCompletedOrders()))
-                                .build()
-                );
+        return view(PortfolioView.Field.ALL);
     }
 
+    CompletionStage<PortfolioView> view(Set<PortfolioView.Field> fields) {
+        return portfolioEntity
+                .ask(PortfolioCommand.GetView.builder()
+                        .includeHoldings(fields.contains(PortfolioView.Field.HOLDINGS))
+                        .includeCompletedOrders(fields.contains(PortfolioView.Field.COMPLETED_ORDERS))
+                        .build())
+                .thenApply(PortfolioCommand.ViewReply::getView);
+    }
 
-    CompletionStage<Done> placeOrder(OrderId orderId, OrderDetails orderDetails) {
-        return portfolioEntity.ask(new PortfolioCommand.PlaceOrder(orderId, orderDetails));
+    /**
+     * @return the portfolio's version once the order was placed.
+     */
+    CompletionStage<Long> placeOrder(OrderId orderId, OrderDetails orderDetails) {
+        return portfolioEntity
+                .ask(new PortfolioCommand.PlaceOrder(orderId, orderDetails))
+                .thenApply(PortfolioCommand.OrderPlacedReply::getVersion);
     }
 
     CompletionStage<Done> processTrade(OrderId orderId, Trade trade) {
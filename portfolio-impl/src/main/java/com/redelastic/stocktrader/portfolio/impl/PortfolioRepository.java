@@ -4,7 +4,7 @@ import akka.japi.Pair;
 import akka.stream.javadsl.Source;
 import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
 import com.lightbend.lagom.javadsl.persistence.Offset;
-import com.lightbend.lagom.javadsl.persistence.PersistentEntityRef;
+import com.redelastic.metrics.InstrumentedEntityRef;
 import com.redelastic.stocktrader.PortfolioId;
 import com.redelastic.stocktrader.portfolio.api.OpenPortfolioDetails;
 import com.redelastic.stocktrader.portfolio.api.OrderPlaced;
@@ -17,7 +17,7 @@ public interface PortfolioRepository {
 
     PortfolioModel get(PortfolioId portfolioId);
 
-    PersistentEntityRef<PortfolioCommand> getRef(PortfolioId portfolioId);
+    InstrumentedEntityRef<PortfolioCommand> getRef(PortfolioId portfolioId);
 
     Source<Pair<OrderPlaced, Offset>, ?> ordersStream(AggregateEventTag<PortfolioEvent> tag, Offset offset);
 
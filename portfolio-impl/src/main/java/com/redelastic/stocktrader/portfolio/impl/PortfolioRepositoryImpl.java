@@ -1,11 +1,14 @@
 package com.redelastic.stocktrader.portfolio.impl;
 
+import akka.actor.ActorSystem;
 import akka.japi.Pair;
 import akka.stream.javadsl.Source;
 import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
 import com.lightbend.lagom.javadsl.persistence.Offset;
-import com.lightbend.lagom.javadsl.persistence.PersistentEntityRef;
 import com.lightbend.lagom.javadsl.persistence.PersistentEntityRegistry;
+import com.redelastic.EntityDispatchers;
+import com.redelastic.metrics.InstrumentedEntityRef;
+import com.redelastic.metrics.MetricsRegistry;
 import com.redelastic.stocktrader.PortfolioId;
 import com.redelastic.stocktrader.broker.api.BrokerService;
 import com.redelastic.stocktrader.portfolio.api.OpenPortfolioDetails;
@@ -23,12 +26,17 @@ public class PortfolioRepositoryImpl implements PortfolioRepository {
     private final Logger log = LoggerFactory.getLogger(PortfolioRepositoryImpl.class);
 
     private final PersistentEntityRegistry persistentEntities;
+    private final MetricsRegistry metrics;
 
     @Inject
     public PortfolioRepositoryImpl(BrokerService brokerService,
-                                   PersistentEntityRegistry persistentEntities) {
+                                   PersistentEntityRegistry persistentEntities,
+                                   MetricsRegistry metrics,
+                                   ActorSystem system) {
         this.persistentEntities = persistentEntities;
+        this.metrics = metrics;
         persistentEntities.register(PortfolioEntity.class);
+        EntityDispatchers.check(system, PortfolioEntity.class);
     }
 
     /**
@@ -43,19 +51,18 @@ public class PortfolioRepositoryImpl implements PortfolioRepository {
     @Override
     public CompletionStage<PortfolioId> open(OpenPortfolioDetails request) {
         val portfolioId = PortfolioId.newId();
-        PersistentEntityRef<PortfolioCommand> ref = persistentEntities.refFor(PortfolioEntity.class, portfolioId.getId());
-        return ref.ask(new PortfolioCommand.Open(request.getName()))
+        return getRef(portfolioId).ask(new PortfolioCommand.Open(request.getName()))
                 .thenApply(done -> portfolioId);
     }
 
     @Override
     public PortfolioModel get(PortfolioId portfolioId) {
-        return new PortfolioModel(persistentEntities, portfolioId);
+        return new PortfolioModel(persistentEntities, metrics, portfolioId);
     }
 
     @Override
-    public PersistentEntityRef<PortfolioCommand> getRef(PortfolioId portfolioId) {
-        return persistentEntities.refFor(PortfolioEntity.class, portfolioId.getId());
+    public InstrumentedEntityRef<PortfolioCommand> getRef(PortfolioId portfolioId) {
+        return InstrumentedEntityRef.refFor(persistentEntities, PortfolioEntity.class, portfolioId.getId(), metrics);
     }
 
     public Source<Pair<OrderPlaced, Offset>, ?> ordersStream(AggregateEventTag<PortfolioEvent> tag, Offset offset) {
@@ -2,10 +2,18 @@ package com.redelastic.stocktrader.portfolio.impl;
 
 import akka.Done;
 import akka.NotUsed;
+import akka.japi.Pair;
+import akka.stream.Materializer;
 import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
 import com.lightbend.lagom.javadsl.api.ServiceCall;
+import com.lightbend.lagom.javadsl.api.transport.ResponseHeader;
+import com.lightbend.lagom.javadsl.server.HeaderServiceCall;
 import com.lightbend.lagom.javadsl.api.broker.Topic;
-import com.lightbend.lagom.javadsl.broker.TopicProducer;
+import com.redelastic.CSHelper;
+import com.redelastic.metrics.ConsumerLagMonitor;
+import com.redelastic.topic.TaggedTopicFactory;
+import com.redelastic.stocktrader.ConsistencyToken;
 import com.redelastic.stocktrader.OrderId;
 import com.redelastic.stocktrader.PortfolioId;
 import com.redelastic.stocktrader.broker.api.BrokerService;
@@ -13,6 +21,7 @@ import com.redelastic.stocktrader.broker.api.OrderResult;
 import com.redelastic.stocktrader.portfolio.api.*;
 import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
 import com.redelastic.stocktrader.portfolio.api.PortfolioSummary;
+import com.typesafe.config.Config;
 import lombok.val;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +33,8 @@ import javax.inject.Singleton;
 import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import org.pcollections.PSequence;
 import org.pcollections.TreePVector;
@@ -32,7 +43,6 @@ import akka.stream.javadsl.Source;
 
 import com.redelastic.stocktrader.PortfolioId;
 
-import java.util.concurrent.CompletableFuture;
 
 @Singleton
 public class PortfolioServiceImpl implements PortfolioService {
@@ -41,14 +51,32 @@ public class PortfolioServiceImpl implements PortfolioService {
 
     private final PortfolioRepository portfolioRepository;
     private final CassandraSession db;
+    private final Materializer materializer;
+    private final LeaderboardUpdater leaderboard;
+    private final ConsumerLagMonitor lagMonitor;
+    private final TaggedTopicFactory topics;
+    private final OrderRoundTripTimer roundTrips;
+    private final int transferBatchParallelism;
 
     @Inject
     public PortfolioServiceImpl(PortfolioRepository portfolioRepository,
                                 BrokerService brokerService, 
                                 ReadSide readSide,
-                                CassandraSession db) {
+                                CassandraSession db,
+                                Materializer materializer,
+                                LeaderboardUpdater leaderboard,
+                                ConsumerLagMonitor lagMonitor,
+                                TaggedTopicFactory topics,
+                                OrderRoundTripTimer roundTrips,
+                                Config config) {
         this.portfolioRepository = portfolioRepository;
         this.db = db;
+        this.materializer = materializer;
+        this.leaderboard = leaderboard;
+        this.lagMonitor = lagMonitor;
+        this.topics = topics;
+        this.roundTrips = roundTrips;
+        this.transferBatchParallelism = config.getInt("portfolio.transfer-batch.parallelism");
 
         // Listen for purchase order completions and send them to the corresponding portfolio
         brokerService.orderResult()
@@ -72,11 +100,12 @@ public class PortfolioServiceImpl implements PortfolioService {
     }
 
     @Override
-    public ServiceCall<NotUsed, PortfolioView> getPortfolio(PortfolioId portfolioId) {
+    public ServiceCall<NotUsed, PortfolioView> getPortfolio(PortfolioId portfolioId, Optional<String> fields) {
+        Set<PortfolioView.Field> selected = PortfolioView.Field.parse(fields);
         return notUsed ->
                 portfolioRepository
                         .get(portfolioId)
-                        .view();
+                        .view(selected);
     }
 
     @Override
@@ -96,41 +125,93 @@ public class PortfolioServiceImpl implements PortfolioService {
         };
     }
 
+    @Override
+    public ServiceCall<NotUsed, PSequence<RankedPortfolio>> getTopPortfolios(Optional<Integer> limit) {
+        return notUsed -> leaderboard.top(limit);
+    }
+
+    @Override
+    public ServiceCall<NotUsed, PSequence<RankedPortfolio>> getBiggestMovers(Optional<Integer> limit) {
+        return notUsed -> leaderboard.movers(limit);
+    }
+
     @Override
     public ServiceCall<FundsTransfer, Done> processTransfer(PortfolioId portfolioId) {
+        return fundsTransfer -> applyTransfer(portfolioId, fundsTransfer);
+    }
+
+    @Override
+    public ServiceCall<PSequence<PortfolioTransfer>, PSequence<TransferOutcome>> processTransfers() {
+        return transfers ->
+            Source.from(transfers)
+                .mapAsync(transferBatchParallelism, portfolioTransfer ->
+                    applyTransfer(portfolioTransfer.getPortfolioId(), portfolioTransfer.getTransfer())
+                        .handle((done, ex) -> {
+                            // The entity's failure, such as InsufficientFunds, rather than the stage wrapping it
+                            String reason = ex == null ? null : CSHelper.unwrap(ex).getMessage();
+                            if (ex != null) {
+                                log.info("Transfer {} rejected by portfolio {}: {}",
+                                    portfolioTransfer.getTransfer().getTransferId(),
+                                    portfolioTransfer.getPortfolioId(),
+                                    reason);
+                            }
+                            return TransferOutcome.builder()
+                                .portfolioId(portfolioTransfer.getPortfolioId())
+                                .transferId(portfolioTransfer.getTransfer().getTransferId())
+                                .accepted(ex == null)
+                                .reason(reason)
+                                .build();
+                        }))
+                .runWith(Sink.seq(), materializer)
+                .thenApply(TreePVector::from);
+    }
+
+    private CompletionStage<Done> applyTransfer(PortfolioId portfolioId, FundsTransfer fundsTransfer) {
         val portfolioRef = portfolioRepository
             .getRef(portfolioId);
-        return fundsTransfer ->
-            fundsTransfer.visit(new FundsTransfer.Visitor<CompletionStage<Done>>() {
-                @Override
-                public CompletionStage<Done> visit(FundsTransfer.Deposit deposit) {
-                    return portfolioRef.ask(new PortfolioCommand.ReceiveFunds(deposit.getFunds()));
-                }
-
-                @Override
-                public CompletionStage<Done> visit(FundsTransfer.Withdrawl withdrawl) {
-                    return portfolioRef.ask(new PortfolioCommand.SendFunds(withdrawl.getFunds()));
-                }
-
-                @Override
-                public CompletionStage<Done> visit(FundsTransfer.Refund refund) {
-                    return portfolioRef.ask(new PortfolioCommand.AcceptRefund(refund.getFunds(), refund.getTransferId()));
-                }
-            });
+        return fundsTransfer.visit(new FundsTransfer.Visitor<CompletionStage<Done>>() {
+            @Override
+            public CompletionStage<Done> visit(FundsTransfer.Deposit deposit) {
+                return portfolioRef.ask(
+                        new PortfolioCommand.ReceiveFunds(deposit.getFunds(), deposit.getTransferId()));
+            }
+
+            @Override
+            public CompletionStage<Done> visit(FundsTransfer.Withdrawl withdrawl) {
+                return portfolioRef.ask(
+                        new PortfolioCommand.SendFunds(withdrawl.getFunds(), withdrawl.getTransferId()));
+            }
+
+            @Override
+            public CompletionStage<Done> visit(FundsTransfer.Refund refund) {
+                return portfolioRef.ask(new PortfolioCommand.AcceptRefund(refund.getFunds(), refund.getTransferId()));
+            }
+        });
     }
 
+    /**
+     * Responds with a consistency token for the order in the {@link ConsistencyToken#HEADER} header. A view of the
+     * portfolio with at least the token's version includes the order.
+     */
     @Override
     public ServiceCall<OrderDetails, OrderId> placeOrder(PortfolioId portfolioId) {
-        return orderDetails -> {
+        return HeaderServiceCall.of((requestHeader, orderDetails) -> {
             val orderId = OrderId.newId();
-            return portfolioRepository
-                    .get(portfolioId)
+            val portfolio = portfolioRepository.get(portfolioId);
+            return portfolio
                     .placeOrder(orderId, orderDetails)
-                    .thenApply(done -> orderId);
-        };
+                    .thenApply(version -> {
+                        roundTrips.placed(orderId);
+                        return Pair.create(
+                                ResponseHeader.OK.withHeader(ConsistencyToken.HEADER,
+                                        new ConsistencyToken(portfolioId.getId(), version).encode()),
+                                orderId);
+                    });
+        });
     }
 
     private CompletionStage<Done> handleOrderResult(OrderResult orderResult) {
+        roundTrips.completed(orderResult.getOrderId());
         PortfolioModel portfolio = portfolioRepository.get(orderResult.getPortfolioId());
         return orderResult.visit(new OrderResult.Visitor<CompletionStage<Done>>() {
             @Override
@@ -147,7 +228,8 @@ public class PortfolioServiceImpl implements PortfolioService {
 
     @Override
     public Topic<OrderPlaced> orderPlaced() {
-        return TopicProducer.taggedStreamWithOffset(PortfolioEvent.TAG.allTags(), portfolioRepository::ordersStream);
+        return topics.taggedStreamWithOffset(ORDERS_TOPIC_ID, PortfolioEvent.TAG.allTags(),
+                lagMonitor.topicProducer("orderPlaced", portfolioRepository::ordersStream));
     }
 
 
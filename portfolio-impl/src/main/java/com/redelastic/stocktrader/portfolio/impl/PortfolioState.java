@@ -11,6 +11,8 @@ import org.pcollections.HashTreePMap;
 import org.pcollections.HashTreePSet;
 import org.pcollections.PMap;
 import org.pcollections.PSet;
+import org.pcollections.PVector;
+import org.pcollections.TreePVector;
 
 import java.math.BigDecimal;
 
@@ -21,6 +23,9 @@ import java.math.BigDecimal;
  */
 public interface PortfolioState extends Jsonable {
 
+    // Transfers remembered per portfolio, so saga steps repeated within this many later transfers are not reapplied
+    int RECENT_TRANSFERS = 1000;
+
     <T> T visit(Visitor<T> visitor);
 
     enum Closed implements PortfolioState {
@@ -49,18 +54,36 @@ public interface PortfolioState extends Jsonable {
         @NonNull Holdings holdings;
         @NonNull PMap<OrderId, PortfolioEvent.OrderPlaced> activeOrders;
         @NonNull PSet<OrderId> completedOrders;
+        // Version of the portfolio's view, starting from 1 for the Opened event and counting each event that changes
+        // the view since. Not the persistence sequence number, which Lagom does not expose to the entity.
+        long version;
+        // The latest transfers applied, oldest first. Null in snapshots from before transfers were recorded.
+        PVector<PortfolioEvent.TransferApplied> recentTransfers;
 
         public static Open initialState(String name) {
             return Open.builder()
+                    .version(1)
                     .name(name)
                     .loyaltyLevel(LoyaltyLevel.BRONZE)
                     .funds(BigDecimal.valueOf(0))
                     .activeOrders(HashTreePMap.empty())
                     .holdings(Holdings.EMPTY)
                     .completedOrders(HashTreePSet.empty())
+                    .recentTransfers(TreePVector.empty())
                     .build();
         }
 
+        boolean transferApplied(PortfolioEvent.TransferApplied transfer) {
+            return recentTransfers != null && recentTransfers.contains(transfer);
+        }
+
+        Open update(PortfolioEvent.TransferApplied evt) {
+            PVector<PortfolioEvent.TransferApplied> transfers =
+                    recentTransfers == null ? TreePVector.empty() : recentTransfers;
+            if (transfers.size() >= RECENT_TRANSFERS) transfers = transfers.minus(0);
+            return this.withRecentTransfers(transfers.plus(evt));
+        }
+
         Open update(PortfolioEvent.FundsCredited evt) {
             return this.withFunds(getFunds().add(evt.getAmount()));
         }
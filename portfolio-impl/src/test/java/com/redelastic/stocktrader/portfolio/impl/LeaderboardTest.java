@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.stocktrader.portfolio.impl;
+
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.portfolio.api.RankedPortfolio;
+import org.junit.Test;
+import org.pcollections.PSequence;
+
+import java.math.BigDecimal;
+
+import static org.hamcrest.Matchers.comparesEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class LeaderboardTest {
+
+    private final PortfolioId alice = new PortfolioId("alice");
+    private final PortfolioId bob = new PortfolioId("bob");
+
+    private Leaderboard twoPortfolios() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.opened(alice, "Alice");
+        leaderboard.opened(bob, "Bob");
+        leaderboard.fundsChanged(alice, new BigDecimal("100"));
+        leaderboard.fundsChanged(bob, new BigDecimal("150"));
+        leaderboard.sharesChanged(alice, "IBM", 10);
+        return leaderboard;
+    }
+
+    @Test
+    public void ranksByFundsAndPricedHoldings() {
+        Leaderboard leaderboard = twoPortfolios();
+        assertEquals(bob, leaderboard.top(10).get(0).getPortfolioId());
+
+        leaderboard.priceChanged("IBM", new BigDecimal("10"));
+
+        PSequence<RankedPortfolio> top = leaderboard.top(10);
+        assertEquals(alice, top.get(0).getPortfolioId());
+        assertEquals(1, top.get(0).getRank());
+        assertThat(top.get(0).getValue(), comparesEqualTo(new BigDecimal("200")));
+        assertEquals(bob, top.get(1).getPortfolioId());
+    }
+
+    @Test
+    public void limitsResults() {
+        assertEquals(1, twoPortfolios().top(1).size());
+    }
+
+    @Test
+    public void firstPriceIsNotAMovement() {
+        Leaderboard leaderboard = twoPortfolios();
+        leaderboard.priceChanged("IBM", new BigDecimal("10"));
+
+        assertThat(leaderboard.movers(1).get(0).getChange(), comparesEqualTo(BigDecimal.ZERO));
+    }
+
+    @Test
+    public void moversTrackPriceChangesUntilReset() {
+        Leaderboard leaderboard = twoPortfolios();
+        leaderboard.priceChanged("IBM", new BigDecimal("10"));
+        leaderboard.priceChanged("IBM", new BigDecimal("7"));
+
+        RankedPortfolio mover = leaderboard.movers(1).get(0);
+        assertEquals(alice, mover.getPortfolioId());
+        assertThat(mover.getChange(), comparesEqualTo(new BigDecimal("-30")));
+
+        leaderboard.resetChanges();
+        assertThat(leaderboard.movers(1).get(0).getChange(), comparesEqualTo(BigDecimal.ZERO));
+    }
+
+    @Test
+    public void sellingRevaluesAtTheCurrentPrice() {
+        Leaderboard leaderboard = twoPortfolios();
+        leaderboard.priceChanged("IBM", new BigDecimal("10"));
+        leaderboard.sharesChanged(alice, "IBM", -4);
+
+        assertThat(leaderboard.top(1).get(0).getValue(), comparesEqualTo(new BigDecimal("160")));
+    }
+
+    @Test
+    public void closedPortfoliosLeaveTheBoard() {
+        Leaderboard leaderboard = twoPortfolios();
+        leaderboard.closed(bob);
+
+        assertEquals(1, leaderboard.top(10).size());
+        assertEquals(alice, leaderboard.top(10).get(0).getPortfolioId());
+    }
+}
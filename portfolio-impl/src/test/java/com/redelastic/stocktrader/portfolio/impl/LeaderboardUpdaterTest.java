@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.stocktrader.portfolio.impl;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.cluster.Cluster;
+import akka.japi.Pair;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import com.datastax.driver.core.utils.UUIDs;
+import com.lightbend.lagom.javadsl.persistence.AggregateEvent;
+import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
+import com.lightbend.lagom.javadsl.persistence.Offset;
+import com.lightbend.lagom.javadsl.persistence.PersistentEntity;
+import com.lightbend.lagom.javadsl.persistence.PersistentEntityRef;
+import com.lightbend.lagom.javadsl.persistence.PersistentEntityRegistry;
+import com.redelastic.CSHelper;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.portfolio.api.RankedPortfolio;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pcollections.PSequence;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.comparesEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LeaderboardUpdaterTest {
+
+    private static final PortfolioId ALICE = new PortfolioId("alice");
+    private static final PortfolioId BOB = new PortfolioId("bob");
+
+    private static ActorSystem system;
+
+    @BeforeClass
+    public static void setup() {
+        // Every message to and from the singleton is serialized, as it is when asked from another node
+        system = ActorSystem.create("LeaderboardUpdaterTest", ConfigFactory.parseString(
+                "akka.actor.provider = cluster\n"
+                        + "akka.actor.serialize-messages = on\n"
+                        + "akka.remote.netty.tcp { hostname = \"127.0.0.1\", port = 0 }")
+                .withFallback(ConfigFactory.load()));
+        Cluster.get(system).join(Cluster.get(system).selfAddress());
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    @Test
+    public void ranksPortfoliosOnceTheSingletonHasReadTheJournal() throws Exception {
+        JournalStub journal = new JournalStub(
+                new PortfolioEvent.Opened(ALICE, "Alice"),
+                new PortfolioEvent.FundsCredited(ALICE, new BigDecimal("100")),
+                new PortfolioEvent.Opened(BOB, "Bob"),
+                new PortfolioEvent.FundsCredited(BOB, new BigDecimal("150")));
+        LeaderboardUpdater updater = new LeaderboardUpdater(system, journal, null, leaderboardConfig(true));
+
+        // Tags with no events are only caught up once they have delivered nothing for a second
+        assertTrue(CSHelper.unwrap(failureOf(updater.top(Optional.empty()))) instanceof LeaderboardNotReady);
+
+        new TestKit(system).awaitAssert(FiniteDuration.create(10, TimeUnit.SECONDS), () -> {
+            // Bounded by the ask timeout
+            PSequence<RankedPortfolio> top = updater.top(Optional.empty()).toCompletableFuture().join();
+            assertEquals(Arrays.asList(BOB, ALICE),
+                    top.stream().map(RankedPortfolio::getPortfolioId).collect(Collectors.toList()));
+            assertThat(top.get(0).getValue(), comparesEqualTo(new BigDecimal("150")));
+            return null;
+        });
+        assertEquals(1, updater.top(Optional.of(1)).toCompletableFuture().get(5, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void answersEmptyWhenDisabled() throws Exception {
+        LeaderboardUpdater updater = new LeaderboardUpdater(system, null, null, leaderboardConfig(false));
+
+        assertTrue(updater.movers(Optional.empty()).toCompletableFuture().get(5, TimeUnit.SECONDS).isEmpty());
+    }
+
+    // No shares are held, so no quotes are asked of the broker
+    private static Config leaderboardConfig(boolean enabled) {
+        return ConfigFactory.parseString(
+                "portfolio.leaderboard { enabled = " + enabled + ", quote-interval = 1h, quote-parallelism = 1,"
+                        + " movers-window = 1h, default-limit = 10, max-limit = 100, caught-up-within = 1s,"
+                        + " ask-timeout = 5s }");
+    }
+
+    private static Throwable failureOf(CompletionStage<?> stage) throws Exception {
+        try {
+            stage.toCompletableFuture().get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("Leaderboard answered");
+        return null;
+    }
+
+    /**
+     * Delivers the given events on the tags they were persisted with, as just written, then waits for more.
+     */
+    private static class JournalStub implements PersistentEntityRegistry {
+        private final List<PortfolioEvent> events;
+
+        JournalStub(PortfolioEvent... events) {
+            this.events = Arrays.asList(events);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <Event extends AggregateEvent<Event>> Source<Pair<Event, Offset>, NotUsed> eventStream(
+                AggregateEventTag<Event> tag, Offset fromOffset) {
+            List<Pair<Event, Offset>> tagged = events.stream()
+                    .filter(event -> PortfolioEvent.TAG.forEntityId(event.getPortfolioId().getId()).equals(tag))
+                    .map(event -> Pair.create((Event) event, Offset.timeBasedUUID(UUIDs.timeBased())))
+                    .collect(Collectors.toList());
+            return Source.from(tagged).concat(Source.maybe());
+        }
+
+        @Override
+        public <C, E, S> void register(Class<? extends PersistentEntity<C, E, S>> entityClass) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <C> PersistentEntityRef<C> refFor(Class<? extends PersistentEntity<C, ?, ?>> entityClass,
+                                                 String entityId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletionStage<Done> gracefulShutdown(FiniteDuration timeout) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.stocktrader.portfolio.impl;
+
+import com.redelastic.metrics.MetricsRegistry;
+import com.redelastic.stocktrader.OrderId;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class OrderRoundTripTimerTest {
+
+    @Test
+    public void dropsOnlyTheOldestPendingOrders() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        OrderRoundTripTimer timer = new OrderRoundTripTimer(metrics, 2);
+        OrderId oldest = new OrderId("oldest");
+        OrderId older = new OrderId("older");
+        OrderId newest = new OrderId("newest");
+
+        timer.placed(oldest);
+        timer.placed(older);
+        timer.placed(newest);
+        timer.completed(oldest);
+        timer.completed(older);
+        timer.completed(newest);
+
+        assertEquals(2, metrics.timer("order_round_trip").count());
+    }
+}
@@ -5,13 +5,18 @@
 
 package com.redelastic.stocktrader.portfolio.impl;
 
+import akka.Done;
 import akka.actor.ActorSystem;
 import akka.testkit.javadsl.TestKit;
 import com.lightbend.lagom.javadsl.testkit.PersistentEntityTestDriver;
+import com.redelastic.metrics.HotEntities;
+import com.redelastic.metrics.MetricsRegistry;
 import com.redelastic.stocktrader.OrderId;
 import com.redelastic.stocktrader.PortfolioId;
 import com.redelastic.stocktrader.TradeType;
+import com.redelastic.stocktrader.TransferId;
 import com.redelastic.stocktrader.broker.api.Trade;
+import com.redelastic.stocktrader.portfolio.api.PortfolioView;
 import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
 import com.redelastic.stocktrader.portfolio.api.order.OrderType;
 import com.redelastic.stocktrader.portfolio.impl.PortfolioCommand.Open;
@@ -20,8 +25,10 @@ import lombok.val;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.pcollections.HashTreePSet;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.Optional;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
@@ -44,7 +51,7 @@ public class PortfolioModelEntityTest {
     }
 
     private PersistentEntityTestDriver<PortfolioCommand, PortfolioEvent, Optional<PortfolioState>> createPortfolioEntity(String id) {
-        return new PersistentEntityTestDriver<>(system, new PortfolioEntity(), id);
+        return new PersistentEntityTestDriver<>(system, new PortfolioEntity(new MetricsRegistry(), hotEntities()), id);
     }
 
     private PersistentEntityTestDriver<PortfolioCommand, PortfolioEvent, Optional<PortfolioState>> openPortfolioEntity(PortfolioId portfolioId, String name) {
@@ -77,6 +84,8 @@ public class PortfolioModelEntityTest {
         assertThat(outcome.state().get(), instanceOf(PortfolioState.Open.class));
         assertTrue(outcome.events().contains(
                 new PortfolioEvent.OrderPlaced(orderId, portfolioId, orderDetails)));
+        // Opened, OrderPlaced
+        assertEquals(new PortfolioCommand.OrderPlacedReply(2), outcome.getReplies().get(1));
     }
 
     @Test
@@ -108,6 +117,109 @@ public class PortfolioModelEntityTest {
         assertThat(difference, comparesEqualTo(((PortfolioState.Open) outcome.state().get()).getFunds()));
     }
 
+    @Test
+    public void repeatedTransferStepsAreAppliedOnce() {
+        val portfolioId = new PortfolioId("portfolioId");
+        PersistentEntityTestDriver<PortfolioCommand, PortfolioEvent, Optional<PortfolioState>> driver = openPortfolioEntity(portfolioId, "portfolioName");
+
+        PortfolioCommand.ReceiveFunds deposit = PortfolioCommand.ReceiveFunds.builder()
+                .amount(new BigDecimal("100"))
+                .transferId(new TransferId("transfer"))
+                .build();
+        PortfolioCommand.SendFunds withdrawl = PortfolioCommand.SendFunds.builder()
+                .amount(new BigDecimal("30"))
+                // A transfer between accounts of the same portfolio debits and credits it under one id
+                .transferId(new TransferId("transfer"))
+                .build();
+
+        PersistentEntityTestDriver.Outcome<PortfolioEvent, Optional<PortfolioState>> outcome = driver.run(
+                deposit, deposit, withdrawl, withdrawl
+        );
+
+        // Redriven steps are still acknowledged, so the saga moves on
+        assertEquals(4, outcome.getReplies().size());
+        outcome.getReplies().forEach(reply -> assertEquals(Done.getInstance(), reply));
+        assertEquals(4, outcome.events().size());
+        assertThat(new BigDecimal("70"), comparesEqualTo(((PortfolioState.Open) outcome.state().get()).getFunds()));
+    }
+
+    @Test
+    public void repeatedRefundsAreAcceptedOnce() {
+        val portfolioId = new PortfolioId("portfolioId");
+        PersistentEntityTestDriver<PortfolioCommand, PortfolioEvent, Optional<PortfolioState>> driver = openPortfolioEntity(portfolioId, "portfolioName");
+
+        TransferId transferId = new TransferId("transfer");
+        PortfolioCommand.AcceptRefund refund = PortfolioCommand.AcceptRefund.builder()
+                .amount(new BigDecimal("30"))
+                .transferId(transferId)
+                .build();
+
+        PersistentEntityTestDriver.Outcome<PortfolioEvent, Optional<PortfolioState>> outcome = driver.run(refund, refund);
+
+        assertEquals(2, outcome.getReplies().size());
+        outcome.getReplies().forEach(reply -> assertEquals(Done.getInstance(), reply));
+        assertEquals(2, outcome.events().size());
+        assertEquals(new PortfolioEvent.RefundAccepted(portfolioId, transferId, new BigDecimal("30")), outcome.events().get(0));
+        assertEquals(new PortfolioEvent.TransferApplied(portfolioId, transferId, true), outcome.events().get(1));
+    }
+
+    @Test
+    public void versionCountsChangesToTheView() {
+        val portfolioId = new PortfolioId("portfolioId");
+        PersistentEntityTestDriver<PortfolioCommand, PortfolioEvent, Optional<PortfolioState>> driver = openPortfolioEntity(portfolioId, "portfolioName");
+
+        PersistentEntityTestDriver.Outcome<PortfolioEvent, Optional<PortfolioState>> outcome = driver.run(
+                PortfolioCommand.ReceiveFunds.builder()
+                        .amount(new BigDecimal("100"))
+                        .transferId(new TransferId("in"))
+                        .build(),
+                PortfolioCommand.SendFunds.builder().amount(new BigDecimal("10")).build(),
+                PortfolioCommand.GetView.builder().build()
+        );
+
+        // FundsCredited, TransferApplied, FundsDebited, of which TransferApplied leaves the view as it is
+        assertEquals(3, outcome.events().size());
+        // Opened, FundsCredited, FundsDebited
+        assertEquals(3, ((PortfolioState.Open) outcome.state().get()).getVersion());
+        PortfolioView view = ((PortfolioCommand.ViewReply) outcome.getReplies().get(2)).getView();
+        assertEquals(3, view.getVersion());
+    }
+
+    @Test
+    public void viewOnlyIncludesSelectedFields() {
+        val portfolioId = new PortfolioId("portfolioId");
+        PersistentEntityTestDriver<PortfolioCommand, PortfolioEvent, Optional<PortfolioState>> driver = openPortfolioEntity(portfolioId, "portfolioName");
+
+        PersistentEntityTestDriver.Outcome<PortfolioEvent, Optional<PortfolioState>> outcome = driver.run(
+                PortfolioCommand.GetView.builder().includeHoldings(true).includeCompletedOrders(false).build(),
+                PortfolioCommand.GetView.builder().includeHoldings(false).includeCompletedOrders(false).build()
+        );
+
+        PortfolioView withHoldings = ((PortfolioCommand.ViewReply) outcome.getReplies().get(0)).getView();
+        assertEquals(portfolioId, withHoldings.getPortfolioId());
+        assertNotNull(withHoldings.getHoldings());
+        assertFalse(withHoldings.has(PortfolioView.Field.COMPLETED_ORDERS));
+
+        PortfolioView bare = ((PortfolioCommand.ViewReply) outcome.getReplies().get(1)).getView();
+        assertEquals("portfolioName", bare.getName());
+        assertFalse(bare.has(PortfolioView.Field.HOLDINGS));
+        assertFalse(bare.has(PortfolioView.Field.COMPLETED_ORDERS));
+        try {
+            bare.getHoldings();
+            fail("Holdings were not requested");
+        } catch (IllegalStateException expected) {
+            // An unrequested part is not mistaken for an empty one
+        }
+    }
+
+    @Test
+    public void parsesSelectedFields() {
+        assertEquals(PortfolioView.Field.ALL, PortfolioView.Field.parse(Optional.empty()));
+        assertTrue(PortfolioView.Field.parse(PortfolioView.Field.select()).isEmpty());
+        assertEquals(HashTreePSet.singleton(PortfolioView.Field.HOLDINGS),
+                PortfolioView.Field.parse(PortfolioView.Field.select(PortfolioView.Field.HOLDINGS)));
+    }
+
     @Test
     public void denyOverSellingShares() {
         val portfolioId = new PortfolioId("portfolioId");
@@ -147,7 +259,7 @@ public class PortfolioModelEntityTest {
         BigDecimal amount = new BigDecimal("101.40");
         PersistentEntityTestDriver<PortfolioCommand, PortfolioEvent, Optional<PortfolioState>> driver = openPortfolioEntity(portfolioId, portfolioName);
         PersistentEntityTestDriver.Outcome<PortfolioEvent, Optional<PortfolioState>> outcome = driver.run(
-                new PortfolioCommand.ReceiveFunds(amount)
+                PortfolioCommand.ReceiveFunds.builder().amount(amount).build()
         );
 
         assertTrue(outcome.state().isPresent());
@@ -155,4 +267,25 @@ public class PortfolioModelEntityTest {
         assertEquals(amount, ((PortfolioState.Open) outcome.state().get()).getFunds());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void instrumentsEveryBehavior() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        // A zero window closes on every call, so the last command handled is reported
+        HotEntities hotEntities = new HotEntities(10, Duration.ZERO, 100);
+        PersistentEntityTestDriver<PortfolioCommand, PortfolioEvent, Optional<PortfolioState>> driver =
+                new PersistentEntityTestDriver<>(system, new PortfolioEntity(metrics, hotEntities), "portfolioId");
+
+        driver.run(new Open("portfolioName"), PortfolioCommand.ReceiveFunds.builder().amount(BigDecimal.TEN).build());
+
+        // Open is handled by the initial behavior, ReceiveFunds by the behavior the Opened event switched to
+        assertEquals(1, metrics.timer("entity_command_handler", "entity", "PortfolioEntity", "command", "Open").count());
+        assertEquals(1, metrics.timer("entity_event_handler", "entity", "PortfolioEntity", "event", "Opened").count());
+        assertEquals(1,
+                metrics.timer("entity_command_handler", "entity", "PortfolioEntity", "command", "ReceiveFunds").count());
+        assertEquals("portfolioId", hotEntities.hottestEntities("PortfolioEntity", 1).get(0).getEntityId());
+    }
+
+    private static HotEntities hotEntities() {
+        return new HotEntities(10, Duration.ofSeconds(10), 100);
+    }
+}
@@ -14,12 +14,16 @@ import com.lightbend.lagom.javadsl.api.broker.Topic;
 import com.lightbend.lagom.javadsl.testkit.ProducerStub;
 import com.lightbend.lagom.javadsl.testkit.ProducerStubFactory;
 import com.redelastic.stocktrader.OrderId;
+import com.redelastic.stocktrader.PortfolioId;
 import com.redelastic.stocktrader.TradeType;
 import com.redelastic.stocktrader.TransferId;
 import com.redelastic.stocktrader.broker.api.*;
 import com.redelastic.stocktrader.portfolio.api.*;
 import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
 import com.redelastic.stocktrader.portfolio.api.order.OrderType;
+import com.redelastic.stocktrader.wiretransfer.api.BulkTransfer;
+import com.redelastic.stocktrader.wiretransfer.api.BulkTransferAccepted;
+import com.redelastic.stocktrader.wiretransfer.api.TransactionSummary;
 import com.redelastic.stocktrader.wiretransfer.api.Transfer;
 import com.redelastic.stocktrader.wiretransfer.api.TransferRequest;
 import com.redelastic.stocktrader.wiretransfer.api.WireTransferService;
@@ -29,16 +33,22 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.pcollections.PSequence;
+import org.pcollections.TreePVector;
 import scala.concurrent.duration.FiniteDuration;
 
 import javax.inject.Inject;
 import java.math.BigDecimal;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.lightbend.lagom.javadsl.testkit.ServiceTest.*;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.comparesEqualTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 @Log4j
@@ -109,7 +119,7 @@ public class PortfolioServiceImplTest {
 
         // Allow some time for the trade result to be processed by the portfolio
         eventually(FiniteDuration.create(10, SECONDS), () -> {
-            PortfolioView view = service.getPortfolio(portfolioId).invoke().toCompletableFuture().get(5, SECONDS);
+            PortfolioView view = service.getPortfolio(portfolioId, Optional.empty()).invoke().toCompletableFuture().get(5, SECONDS);
             assertEquals(1, view.getHoldings().size());
             assertTrue(view.getHoldings().contains(new Holding(symbol, shares)));
             assertTrue(view.getCompletedOrders().contains(orderId));
@@ -164,7 +174,7 @@ public class PortfolioServiceImplTest {
 
         // Allow some time for the trade result to be processed by the portfolio
         eventually(FiniteDuration.create(10, SECONDS), () -> {
-            PortfolioView view = service.getPortfolio(portfolioId).invoke().toCompletableFuture().get(5, SECONDS);
+            PortfolioView view = service.getPortfolio(portfolioId, Optional.empty()).invoke().toCompletableFuture().get(5, SECONDS);
             assertEquals(1, view.getHoldings().size());
             assertTrue(view.getHoldings().contains(new Holding(symbol, sharesToBuy)));
         });
@@ -189,7 +199,7 @@ public class PortfolioServiceImplTest {
                 .portfolioId(portfolioId)
                 .build();
 
-        PSequence<Holding> holdingsDuringSale = service.getPortfolio(portfolioId)
+        PSequence<Holding> holdingsDuringSale = service.getPortfolio(portfolioId, Optional.empty())
                 .invoke()
                 .toCompletableFuture()
                 .get(5, SECONDS)
@@ -200,7 +210,7 @@ public class PortfolioServiceImplTest {
         BrokerStub.orderResultProducerStub.send(sellOrderResult);
 
         eventually(FiniteDuration.create(10, SECONDS), () -> {
-            PortfolioView view = service.getPortfolio(portfolioId).invoke().toCompletableFuture().get(5, SECONDS);
+            PortfolioView view = service.getPortfolio(portfolioId, Optional.empty()).invoke().toCompletableFuture().get(5, SECONDS);
             assertEquals(1, view.getHoldings().size());
             assertEquals(sharesToBuy, view.getHoldings().get(0).getShareCount());
         });
@@ -246,12 +256,66 @@ public class PortfolioServiceImplTest {
         BrokerStub.orderResultProducerStub.send(tradeResult);
 
 
-        PortfolioView view = service.getPortfolio(portfolioId).invoke().toCompletableFuture().get(5, SECONDS);
+        PortfolioView view = service.getPortfolio(portfolioId, Optional.empty()).invoke().toCompletableFuture().get(5, SECONDS);
         assertEquals(1, view.getHoldings().size());
         assertEquals(sharesToBuy, view.getHoldings().get(0).getShareCount());
 
     }
 
+    @Test
+    public void processTransfersReportsEachOutcomeInOrder() throws Exception {
+        PortfolioService service = server.client(PortfolioService.class);
+        // May be the first write since the server started, which can outlast a call while Cassandra creates tables
+        AtomicReference<PortfolioId> opened = new AtomicReference<>();
+        eventually(FiniteDuration.create(60, SECONDS), () -> opened.set(
+                service.openPortfolio().invoke(new OpenPortfolioDetails("funded")).toCompletableFuture().get(5, SECONDS)));
+        val funded = opened.get();
+        val empty = service.openPortfolio().invoke(new OpenPortfolioDetails("empty")).toCompletableFuture().get(5, SECONDS);
+        service.processTransfers()
+                .invoke(TreePVector.singleton(transfer(funded, FundsTransfer.Deposit.builder()
+                        .transferId(new TransferId("deposit"))
+                        .funds(new BigDecimal("100"))
+                        .build())))
+                .toCompletableFuture().get(5, SECONDS);
+
+        PSequence<TransferOutcome> outcomes = service.processTransfers()
+                .invoke(TreePVector.<PortfolioTransfer>empty()
+                        .plus(transfer(funded, FundsTransfer.Withdrawl.builder()
+                                .transferId(new TransferId("withdrawl"))
+                                .funds(new BigDecimal("30"))
+                                .build()))
+                        .plus(transfer(empty, FundsTransfer.Withdrawl.builder()
+                                .transferId(new TransferId("overdraft"))
+                                .funds(new BigDecimal("1000"))
+                                .build()))
+                        .plus(transfer(empty, FundsTransfer.Deposit.builder()
+                                .transferId(new TransferId("second-deposit"))
+                                .funds(new BigDecimal("5"))
+                                .build())))
+                .toCompletableFuture().get(5, SECONDS);
+
+        assertEquals(3, outcomes.size());
+        assertEquals(new TransferId("withdrawl"), outcomes.get(0).getTransferId());
+        assertTrue(outcomes.get(0).isAccepted());
+        assertNull(outcomes.get(0).getReason());
+
+        // Rejected with the entity's reason, without failing the rest of the batch
+        assertEquals(new TransferId("overdraft"), outcomes.get(1).getTransferId());
+        assertEquals(empty, outcomes.get(1).getPortfolioId());
+        assertFalse(outcomes.get(1).isAccepted());
+        assertTrue(outcomes.get(1).getReason().startsWith("Attempt to send 1000.00"));
+
+        assertEquals(new TransferId("second-deposit"), outcomes.get(2).getTransferId());
+        assertTrue(outcomes.get(2).isAccepted());
+
+        PortfolioView view = service.getPortfolio(funded, Optional.empty()).invoke().toCompletableFuture().get(5, SECONDS);
+        assertThat(view.getFunds(), comparesEqualTo(new BigDecimal("70")));
+    }
+
+    private static PortfolioTransfer transfer(PortfolioId portfolioId, FundsTransfer transfer) {
+        return PortfolioTransfer.builder().portfolioId(portfolioId).transfer(transfer).build();
+    }
+
     // Could consider mocking this per test, however this will require creating a new server per test (to resolve DI),
     // which will spin up C* each time and slow the tests down.
     static class BrokerStub implements BrokerService {
@@ -285,12 +349,10 @@ public class PortfolioServiceImplTest {
     static class WireTransferStub implements WireTransferService {
 
         static ProducerStub<TransferRequest> transferRequestProducerStub;
-        static ProducerStub<Transfer> transferProducerStub;
 
         @Inject
         WireTransferStub(ProducerStubFactory producerStubFactory) {
             transferRequestProducerStub = producerStubFactory.producer(TRANSFER_REQUEST_TOPIC_ID);
-            transferProducerStub = producerStubFactory.producer(PORTFOLIO_TRANSFER_TOPIC_ID);
         }
 
         @Override
@@ -299,8 +361,23 @@ public class PortfolioServiceImplTest {
         }
 
         @Override
-        public Topic<Transfer> completedTransfers() {
-            return transferProducerStub.topic();
+        public ServiceCall<Source<BulkTransfer, NotUsed>, Source<BulkTransferAccepted, NotUsed>> bulkTransferFunds() {
+            return null;
+        }
+
+        @Override
+        public ServiceCall<PSequence<BulkTransfer>, PSequence<BulkTransferAccepted>> transferFundsBatch() {
+            return null;
+        }
+
+        @Override
+        public ServiceCall<NotUsed, PSequence<TransactionSummary>> getAllTransactionsFor(String portfolioId) {
+            return null;
+        }
+
+        @Override
+        public ServiceCall<NotUsed, Source<String, ?>> transferStream() {
+            return null;
         }
 
         @Override
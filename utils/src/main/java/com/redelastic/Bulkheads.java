@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic;
+
+/**
+ * Ids of the dispatchers in utils' reference.conf that keep each kind of work on its own threads, so one saturated
+ * subsystem queues behind itself rather than starving the others. Each is sized under {@code bulkheads} and its load
+ * exported by {@link com.redelastic.metrics.DispatcherMetrics}.
+ */
+public final class Bulkheads {
+
+    /** Persistent entities' actors, which handle commands and apply events. */
+    public static final String ENTITY = "bulkheads.entity";
+
+    /** Read-side processors, and their handlers' callbacks. */
+    public static final String READ_SIDE = "bulkheads.read-side";
+
+    /** Streams of events being published to topics, and the Kafka producer. */
+    public static final String TOPIC_PRODUCER = "bulkheads.topic-producer";
+
+    /** Blocking calls and CPU heavy work, such as decoding large responses, kept off the other dispatchers. */
+    public static final String BLOCKING_IO = "bulkheads.blocking-io";
+
+    private Bulkheads() {
+    }
+}
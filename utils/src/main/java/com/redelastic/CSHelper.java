@@ -5,9 +5,18 @@
 
 package com.redelastic;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import static java.util.stream.Collectors.toList;
 
@@ -16,6 +25,14 @@ import static java.util.stream.Collectors.toList;
  * this functionality has been added in the Java 9 API.
  */
 public class CSHelper {
+
+    // Timers only complete futures, so a single daemon thread is enough for all of them
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cs-helper-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final ScheduledExecutorService scheduler;
 
     CSHelper(ScheduledExecutorService scheduler) {
@@ -76,9 +93,265 @@ public class CSHelper {
         return future;
     }
 
+    /**
+     * @deprecated Use {@link #withTimeout(CompletionStage, Duration)}, which cancels its timer once the result is in.
+     */
+    @Deprecated
     public <T> CompletionStage<T> withTimeout(CompletionStage<T> resultFuture, int delay, TimeUnit timeUnit) {
-        CompletableFuture<T> timeoutFuture = new CompletableFuture<T>();
-        scheduler.schedule(() -> timeoutFuture.completeExceptionally(new TimeoutException()), delay, timeUnit);
-        return (CompletionStage<T>) CompletableFuture.anyOf(resultFuture.toCompletableFuture(), timeoutFuture);
+        return withTimeout(resultFuture, Duration.ofNanos(timeUnit.toNanos(delay)), scheduler);
+    }
+
+    /**
+     * Apply {@code f} to every item, with at most {@code parallelism} of the resulting stages incomplete at once.
+     *
+     * @return The results in the order of {@code items}, or the first failure. No further items are started once one
+     * has failed.
+     */
+    public static <A, B> CompletionStage<List<B>> traverse(List<A> items, int parallelism, Function<A, ? extends CompletionStage<B>> f) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+        if (items.isEmpty()) return CompletableFuture.completedFuture(Collections.emptyList());
+
+        Traversal<A, B> traversal = new Traversal<>(items, f);
+        for (int i = 0; i < Math.min(parallelism, items.size()); i++) {
+            traversal.startItems();
+        }
+        return traversal.result;
+    }
+
+    /**
+     * Fail with a {@link TimeoutException} if {@code cs} has not completed within {@code timeout}. The timer is
+     * cancelled as soon as {@code cs} completes.
+     */
+    public static <T> CompletionStage<T> withTimeout(CompletionStage<T> cs, Duration timeout) {
+        return withTimeout(cs, timeout, timer);
+    }
+
+    /**
+     * Run {@code call} with whatever time is left before {@code deadline}, failing straight away if it has already
+     * passed. Pass the same deadline to the calls {@code call} makes in turn so they all give up together.
+     */
+    public static <T> CompletionStage<T> withDeadline(Deadline deadline, Supplier<? extends CompletionStage<T>> call) {
+        if (deadline.isOverdue()) {
+            return failedFuture(new TimeoutException("Deadline passed before the call was made"));
+        }
+        return withTimeout(attempt(call), deadline.remaining());
+    }
+
+    /**
+     * Collect the results of whichever stages succeed within {@code timeout}. Stages that fail or are still running
+     * at the timeout are empty in the result, which never fails.
+     */
+    public static <T> CompletionStage<List<Optional<T>>> partial(List<? extends CompletionStage<T>> stages, Duration timeout) {
+        List<CompletableFuture<Optional<T>>> settled = new ArrayList<>(stages.size());
+        for (CompletionStage<T> stage : stages) {
+            settled.add(withTimeout(stage, timeout)
+                    .handle((value, ex) -> ex == null ? Optional.ofNullable(value) : Optional.<T>empty())
+                    .toCompletableFuture());
+        }
+        return allOf(settled);
+    }
+
+    /**
+     * Make {@code call}, and if it has not succeeded within {@code hedgeAfter} make it again, taking whichever
+     * result arrives first. Only for idempotent calls. A failure of the first call starts the hedge straight away,
+     * the result only fails if both calls do.
+     */
+    public static <T> CompletionStage<T> hedge(Supplier<? extends CompletionStage<T>> call, Duration hedgeAfter) {
+        Hedge<T> hedge = new Hedge<>(call);
+        hedge.start(hedgeAfter);
+        return hedge.result;
+    }
+
+    /**
+     * Make {@code call} up to {@code maxAttempts} times while it fails with an exception accepted by
+     * {@code retryable}. Waits before each retry are drawn at random from zero up to {@code baseDelay} doubled for
+     * each attempt so far, capped at {@code maxDelay}, so that clients that failed together do not retry together.
+     */
+    public static <T> CompletionStage<T> retry(Supplier<? extends CompletionStage<T>> call,
+                                               int maxAttempts,
+                                               Duration baseDelay,
+                                               Duration maxDelay,
+                                               Predicate<Throwable> retryable) {
+        return retry(call, 1, maxAttempts, baseDelay, maxDelay, retryable);
+    }
+
+    private static <T> CompletionStage<T> retry(Supplier<? extends CompletionStage<T>> call,
+                                                int attempt,
+                                                int maxAttempts,
+                                                Duration baseDelay,
+                                                Duration maxDelay,
+                                                Predicate<Throwable> retryable) {
+        return attempt(call).handle((value, ex) -> {
+            if (ex == null) {
+                return CompletableFuture.completedFuture(value);
+            }
+            Throwable cause = unwrap(ex);
+            if (attempt >= maxAttempts || !retryable.test(cause)) {
+                return CSHelper.<T>failedFuture(cause);
+            }
+            long ceiling = Math.min(maxDelay.toNanos(), baseDelay.toNanos() << Math.min(attempt - 1, 30));
+            Duration wait = Duration.ofNanos(ThreadLocalRandom.current().nextLong(Math.max(ceiling, 1)));
+            return delay(wait).thenCompose(done -> retry(call, attempt + 1, maxAttempts, baseDelay, maxDelay, retryable));
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Repeat {@code read} until its result satisfies {@code reached} or {@code deadline} passes, waiting
+     * {@code interval} before the first repeat and doubling the wait each time up to {@code maxInterval}.
+     *
+     * @return The first result that satisfies {@code reached}, or the last one read when the deadline passed.
+     */
+    public static <T> CompletionStage<T> pollUntil(Supplier<? extends CompletionStage<T>> read,
+                                                   Predicate<T> reached,
+                                                   Deadline deadline,
+                                                   Duration interval,
+                                                   Duration maxInterval) {
+        return attempt(read).thenCompose(value -> {
+            if (reached.test(value) || deadline.isOverdue()) {
+                return CompletableFuture.completedFuture(value);
+            }
+            Duration wait = interval.compareTo(deadline.remaining()) < 0 ? interval : deadline.remaining();
+            Duration next = interval.multipliedBy(2).compareTo(maxInterval) < 0 ? interval.multipliedBy(2) : maxInterval;
+            return delay(wait).thenCompose(done -> pollUntil(read, reached, deadline, next, maxInterval));
+        });
+    }
+
+    /**
+     * A stage that completes after {@code duration}.
+     */
+    public static CompletionStage<Void> delay(Duration duration) {
+        CompletableFuture<Void> delayed = new CompletableFuture<>();
+        timer.schedule(() -> delayed.complete(null), duration.toNanos(), TimeUnit.NANOSECONDS);
+        return delayed;
+    }
+
+    private static <T> CompletionStage<T> withTimeout(CompletionStage<T> cs, Duration timeout, ScheduledExecutorService scheduler) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ScheduledFuture<?> timeoutTimer = scheduler.schedule(
+                () -> result.completeExceptionally(new TimeoutException("Timed out after " + timeout)),
+                timeout.toNanos(),
+                TimeUnit.NANOSECONDS);
+        cs.whenComplete((value, ex) -> {
+            timeoutTimer.cancel(false);
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    private static <T> CompletionStage<T> attempt(Supplier<? extends CompletionStage<T>> call) {
+        try {
+            return call.get();
+        } catch (RuntimeException ex) {
+            return failedFuture(ex);
+        }
+    }
+
+    /**
+     * The failure a completion stage wrapped, or the failure itself if it was not wrapped.
+     */
+    public static Throwable unwrap(Throwable ex) {
+        if ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) {
+            return ex.getCause();
+        }
+        return ex;
+    }
+
+    private static class Traversal<A, B> {
+        private final List<A> items;
+        private final Function<A, ? extends CompletionStage<B>> f;
+        private final CompletableFuture<List<B>> result = new CompletableFuture<>();
+        private final AtomicReferenceArray<B> results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+
+        Traversal(List<A> items, Function<A, ? extends CompletionStage<B>> f) {
+            this.items = items;
+            this.f = f;
+            this.results = new AtomicReferenceArray<>(items.size());
+            this.remaining = new AtomicInteger(items.size());
+        }
+
+        /**
+         * Start items one after another for as long as each one's stage is already complete, so stages that
+         * complete straight away, such as cache hits, do not deepen the stack. Only a stage still running
+         * starts the next item from its callback.
+         */
+        void startItems() {
+            while (true) {
+                int index = next.getAndIncrement();
+                if (index >= items.size() || result.isDone()) return;
+
+                CompletableFuture<B> stage = CSHelper.<B>attempt(() -> f.apply(items.get(index))).toCompletableFuture();
+                if (!stage.isDone()) {
+                    stage.whenComplete((value, ex) -> {
+                        if (completed(index, value, ex)) startItems();
+                    });
+                    return;
+                }
+                B value;
+                try {
+                    value = stage.join();
+                } catch (CompletionException | CancellationException ex) {
+                    completed(index, null, ex);
+                    return;
+                }
+                if (!completed(index, value, null)) return;
+            }
+        }
+
+        // Whether to go on to the next item
+        private boolean completed(int index, B value, Throwable ex) {
+            if (ex != null) {
+                result.completeExceptionally(unwrap(ex));
+                return false;
+            }
+            results.set(index, value);
+            if (remaining.decrementAndGet() == 0) {
+                List<B> ordered = new ArrayList<>(items.size());
+                for (int i = 0; i < items.size(); i++) ordered.add(results.get(i));
+                result.complete(ordered);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private static class Hedge<T> {
+        private final Supplier<? extends CompletionStage<T>> call;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicBoolean hedged = new AtomicBoolean(false);
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile ScheduledFuture<?> hedgeTimer = null;
+
+        Hedge(Supplier<? extends CompletionStage<T>> call) {
+            this.call = call;
+        }
+
+        void start(Duration hedgeAfter) {
+            hedgeTimer = timer.schedule(this::startHedge, hedgeAfter.toNanos(), TimeUnit.NANOSECONDS);
+            attempt(call).whenComplete(this::completed);
+        }
+
+        private void startHedge() {
+            if (!result.isDone() && hedged.compareAndSet(false, true)) {
+                attempt(call).whenComplete(this::completed);
+            }
+        }
+
+        private void completed(T value, Throwable ex) {
+            if (ex == null) {
+                if (hedgeTimer != null) hedgeTimer.cancel(false);
+                result.complete(value);
+            } else if (failures.incrementAndGet() == 2) {
+                result.completeExceptionally(unwrap(ex));
+            } else {
+                // The first failure starts the hedge early, or leaves the outcome to the call already running
+                startHedge();
+            }
+        }
     }
 }
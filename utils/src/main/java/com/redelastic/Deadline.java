@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic;
+
+import java.time.Duration;
+
+/**
+ * A point in time by which a piece of work, and everything it calls, should be finished. Pass it down through nested
+ * calls, with {@link CSHelper#withDeadline}, rather than giving each call its own timeout.
+ */
+public final class Deadline {
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(Duration duration) {
+        return new Deadline(System.nanoTime() + duration.toNanos());
+    }
+
+    /**
+     * Time left before the deadline, zero once it has passed.
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isOverdue() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * The earlier of this deadline and one {@code duration} from now, for a call that has its own limit.
+     */
+    public Deadline atMost(Duration duration) {
+        long other = System.nanoTime() + duration.toNanos();
+        return other - deadlineNanos < 0 ? new Deadline(other) : this;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline(" + remaining().toMillis() + "ms remaining)";
+    }
+}
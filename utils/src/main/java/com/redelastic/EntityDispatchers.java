@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic;
+
+import akka.actor.ActorPath;
+import akka.actor.ActorSystem;
+import akka.actor.Deploy;
+import akka.actor.ExtendedActorSystem;
+import akka.cluster.sharding.ClusterSharding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.Option;
+
+import java.util.Optional;
+
+/**
+ * Where persistent entities' actors run. Lagom starts them under cluster sharding with no dispatcher of their own,
+ * so they only reach {@link Bulkheads#ENTITY} through an {@code akka.actor.deployment} entry for
+ * {@code /sharding/<entity class>/*}{@code /*}. Nothing fails if that path stops matching, so each repository checks
+ * its entity when it registers it and logs the outcome.
+ */
+public final class EntityDispatchers {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityDispatchers.class);
+
+    private EntityDispatchers() {
+    }
+
+    /**
+     * The dispatcher deployment config gives the entities of a sharded type, found from the path of its shard region,
+     * which must have been started. Empty if no entry matches, so the entities run on the default dispatcher.
+     */
+    public static Optional<String> configured(ActorSystem system, String typeName) {
+        // Entities are children of their shard, which is a child of the region
+        ActorPath entity = ClusterSharding.get(system).shardRegion(typeName).path().child("0").child("entity");
+        Option<Deploy> deploy = ((ExtendedActorSystem) system).provider().deployer().lookup(entity);
+        if (deploy.isEmpty() || deploy.get().dispatcher().equals(Deploy.NoDispatcherGiven())) {
+            return Optional.empty();
+        }
+        return Optional.of(deploy.get().dispatcher());
+    }
+
+    /**
+     * Logs the dispatcher an entity class runs on, warning unless it is {@link Bulkheads#ENTITY}. Call once the
+     * class is registered with Lagom, which names its shard region after the class.
+     */
+    public static void check(ActorSystem system, Class<?> entityClass) {
+        String typeName = entityClass.getSimpleName();
+        Optional<String> dispatcher = configured(system, typeName);
+        if (dispatcher.equals(Optional.of(Bulkheads.ENTITY))) {
+            log.info("{} entities run on the {} dispatcher", typeName, Bulkheads.ENTITY);
+        } else {
+            log.warn("{} entities run on the {} dispatcher, not {}; check akka.actor.deployment for /sharding/{}/*/*",
+                    typeName, dispatcher.orElse("default"), Bulkheads.ENTITY, typeName);
+        }
+    }
+}
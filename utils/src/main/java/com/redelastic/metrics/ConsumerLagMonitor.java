@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import akka.Done;
+import akka.japi.Pair;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.RestartSource;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.lightbend.lagom.javadsl.persistence.AggregateEvent;
+import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
+import com.lightbend.lagom.javadsl.persistence.Offset;
+import com.lightbend.lagom.javadsl.persistence.PersistentEntityRegistry;
+import com.lightbend.lagom.javadsl.persistence.ReadSideProcessor.ReadSideHandler;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * How far each read-side processor and topic producer on this node is behind the journal, per tag shard.
+ * <p>
+ * Lag is the difference between the timestamps of the newest event written for a tag and the last event the consumer
+ * has processed, both taken from their time based offsets. The newest event is found by following each tag from when
+ * its first consumer starts, so a consumer working through a backlog from before then has its lag measured from that
+ * point. With {@code consumer-lag.track-head} off, lag is measured from the current time instead, which overstates it
+ * for a tag that has gone quiet.
+ * <p>
+ * Each shard exports {@code event_consumer_lag_milliseconds}, {@code event_consumer_events} and, for read sides,
+ * {@code event_consumer_processing}: the time from an event entering the handler until it is done, which for the
+ * Cassandra read side covers writing the event's batch of statements and offset.
+ */
+@Singleton
+public class ConsumerLagMonitor {
+
+    // Offset of the version 1 UUID epoch, 1582-10-15, from the Unix epoch in 100ns intervals
+    private static final long UUID_EPOCH_OFFSET = 0x01B21DD213814000L;
+    private static final long MIN_CLOCK_SEQ_AND_NODE = 0x8080808080808080L;
+
+    private final MetricsRegistry metrics;
+    private final PersistentEntityRegistry persistentEntities;
+    private final Materializer materializer;
+    private final boolean trackHead;
+    private final long rateWindowNanos;
+
+    private final ConcurrentHashMap<String, Shard> shards = new ConcurrentHashMap<>();
+    // Timestamp of the newest event seen for each tag, in epoch millis
+    private final ConcurrentHashMap<String, Long> heads = new ConcurrentHashMap<>();
+
+    @Inject
+    public ConsumerLagMonitor(MetricsRegistry metrics,
+                              PersistentEntityRegistry persistentEntities,
+                              Materializer materializer,
+                              Config config) {
+        this.metrics = metrics;
+        this.persistentEntities = persistentEntities;
+        this.materializer = materializer;
+        this.trackHead = config.getBoolean("consumer-lag.track-head");
+        this.rateWindowNanos = config.getDuration("consumer-lag.rate-window").toNanos();
+    }
+
+    /**
+     * Monitors a read-side handler. The handler's flow must emit one {@code Done} per event; events handled out of
+     * order are timed as if they completed in order.
+     */
+    public <Event extends AggregateEvent<Event>> ReadSideHandler<Event> readSide(String consumer,
+                                                                                   ReadSideHandler<Event> handler) {
+        return new MonitoredHandler<>(consumer, handler);
+    }
+
+    /**
+     * Monitors the event stream of a topic producer, as passed to {@code TopicProducer.taggedStreamWithOffset}. Lag is
+     * measured for messages as the producer takes them, the time to publish them is not included.
+     */
+    public <Event extends AggregateEvent<Event>, Message>
+    BiFunction<AggregateEventTag<Event>, Offset, Source<Pair<Message, Offset>, ?>> topicProducer(
+            String consumer,
+            BiFunction<AggregateEventTag<Event>, Offset, Source<Pair<Message, Offset>, ?>> eventStream) {
+        return (tag, offset) -> {
+            Shard shard = shard(consumer, tag);
+            return eventStream.apply(tag, offset).map(messageAndOffset -> {
+                shard.processed(messageAndOffset.second());
+                return messageAndOffset;
+            });
+        };
+    }
+
+    /**
+     * The shards furthest behind, then the busiest.
+     */
+    public List<ShardLag> slowest(int limit) {
+        return shards.values().stream()
+                .map(Shard::snapshot)
+                .sorted(Comparator.comparingLong(ShardLag::getLagMillis).reversed()
+                        .thenComparing(Comparator.comparingDouble(ShardLag::getEventsPerSecond).reversed()))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private <Event extends AggregateEvent<Event>> Shard shard(String consumer, AggregateEventTag<Event> tag) {
+        if (trackHead) followHead(tag);
+        return shards.computeIfAbsent(consumer + "/" + tag.tag(), key -> new Shard(consumer, tag.tag()));
+    }
+
+    private <Event extends AggregateEvent<Event>> void followHead(AggregateEventTag<Event> tag) {
+        long startedAt = System.currentTimeMillis();
+        if (heads.putIfAbsent(tag.tag(), startedAt) != null) return;
+
+        // Resume from the newest event seen if the stream fails
+        AtomicReference<Offset> offset = new AtomicReference<>(Offset.timeBasedUUID(startOf(startedAt)));
+        RestartSource.withBackoff(
+                Duration.ofSeconds(3), Duration.ofSeconds(30), 0.2,
+                () -> persistentEntities.eventStream(tag, offset.get())
+                        .map(eventAndOffset -> {
+                            offset.set(eventAndOffset.second());
+                            long timestamp = timestamp(eventAndOffset.second());
+                            if (timestamp >= 0) headMoved(tag.tag(), timestamp);
+                            return Done.getInstance();
+                        }))
+                .runWith(Sink.ignore(), materializer);
+    }
+
+    private void headMoved(String tag, long timestamp) {
+        heads.merge(tag, timestamp, Math::max);
+        shards.values().stream()
+                .filter(shard -> shard.tag.equals(tag))
+                .forEach(Shard::updateLag);
+    }
+
+    /**
+     * Epoch millis of a time based offset, or -1 for other offsets.
+     */
+    public static long timestamp(Offset offset) {
+        if (!(offset instanceof Offset.TimeBasedUUID)) return -1;
+        UUID uuid = ((Offset.TimeBasedUUID) offset).value();
+        if (uuid.version() != 1) return -1;
+        return (uuid.timestamp() - UUID_EPOCH_OFFSET) / 10_000;
+    }
+
+    /**
+     * The smallest time based UUID for the given epoch millis, as used by the Cassandra journal for offsets.
+     */
+    static UUID startOf(long epochMillis) {
+        long timestamp = epochMillis * 10_000 + UUID_EPOCH_OFFSET;
+        long msb = (timestamp & 0x00000000FFFFFFFFL) << 32
+                | (timestamp & 0x0000FFFF00000000L) >>> 16
+                | (timestamp & 0x0FFF000000000000L) >>> 48
+                | 0x0000000000001000L; // version 1
+        return new UUID(msb, MIN_CLOCK_SEQ_AND_NODE);
+    }
+
+    private class MonitoredHandler<Event extends AggregateEvent<Event>> extends ReadSideHandler<Event> {
+        private final String consumer;
+        private final ReadSideHandler<Event> delegate;
+        private volatile Shard shard;
+
+        MonitoredHandler(String consumer, ReadSideHandler<Event> delegate) {
+            this.consumer = consumer;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletionStage<Done> globalPrepare() {
+            return delegate.globalPrepare();
+        }
+
+        // Lagom builds a handler for each tag, and prepares it before handling that tag's events
+        @Override
+        public CompletionStage<Offset> prepare(AggregateEventTag<Event> tag) {
+            shard = shard(consumer, tag);
+            return delegate.prepare(tag);
+        }
+
+        @Override
+        public Flow<Pair<Event, Offset>, Done, ?> handle() {
+            Queue<Pair<Offset, Long>> started = new ConcurrentLinkedQueue<>();
+            return Flow.<Pair<Event, Offset>>create()
+                    .map(eventAndOffset -> {
+                        started.add(Pair.create(eventAndOffset.second(), System.nanoTime()));
+                        return eventAndOffset;
+                    })
+                    .via(delegate.handle())
+                    .map(done -> {
+                        Pair<Offset, Long> event = started.poll();
+                        if (event != null && shard != null) {
+                            shard.processing.record(System.nanoTime() - event.second());
+                            shard.processed(event.first());
+                        }
+                        return done;
+                    });
+        }
+    }
+
+    private class Shard {
+        private final String consumer;
+        private final String tag;
+        private final MetricsRegistry.Counter events;
+        private final MetricsRegistry.Timer processing;
+        private final MetricsRegistry.Gauge lag;
+
+        // Timestamp of the last event processed, in epoch millis, or -1 before the first
+        private volatile long processedAt = -1;
+
+        private long windowStart = System.nanoTime();
+        private long windowEvents = 0;
+        private double eventsPerSecond = 0;
+
+        Shard(String consumer, String tag) {
+            this.consumer = consumer;
+            this.tag = tag;
+            this.events = metrics.counter("event_consumer_events", "consumer", consumer, "tag", tag);
+            this.processing = metrics.timer("event_consumer_processing", "consumer", consumer, "tag", tag);
+            this.lag = metrics.gauge("event_consumer_lag_milliseconds", "consumer", consumer, "tag", tag);
+        }
+
+        void processed(Offset offset) {
+            events.increment();
+            synchronized (this) {
+                windowEvents++;
+                roll(System.nanoTime());
+            }
+            long timestamp = timestamp(offset);
+            if (timestamp >= 0) {
+                processedAt = timestamp;
+                updateLag();
+            }
+        }
+
+        void updateLag() {
+            lag.set(lagMillis());
+        }
+
+        long lagMillis() {
+            if (processedAt < 0) return 0;
+            long head = trackHead ? heads.getOrDefault(tag, processedAt) : System.currentTimeMillis();
+            return Math.max(0, head - processedAt);
+        }
+
+        private void roll(long now) {
+            long elapsed = now - windowStart;
+            if (elapsed >= rateWindowNanos) {
+                eventsPerSecond = windowEvents * 1_000_000_000.0 / elapsed;
+                windowStart = now;
+                windowEvents = 0;
+            }
+        }
+
+        ShardLag snapshot() {
+            double rate;
+            synchronized (this) {
+                roll(System.nanoTime());
+                rate = eventsPerSecond;
+            }
+            return new ShardLag(consumer, tag, lagMillis(), rate, events.count(),
+                    processing.count() == 0 ? 0 : processing.quantile(0.99).toMillis());
+        }
+    }
+
+    public static class ShardLag {
+        private final String consumer;
+        private final String tag;
+        private final long lagMillis;
+        private final double eventsPerSecond;
+        private final long events;
+        private final long processingP99Millis;
+
+        ShardLag(String consumer, String tag, long lagMillis, double eventsPerSecond, long events,
+                 long processingP99Millis) {
+            this.consumer = consumer;
+            this.tag = tag;
+            this.lagMillis = lagMillis;
+            this.eventsPerSecond = eventsPerSecond;
+            this.events = events;
+            this.processingP99Millis = processingP99Millis;
+        }
+
+        public String getConsumer() {
+            return consumer;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public long getLagMillis() {
+            return lagMillis;
+        }
+
+        public double getEventsPerSecond() {
+            return eventsPerSecond;
+        }
+
+        public long getEvents() {
+            return events;
+        }
+
+        public long getProcessingP99Millis() {
+            return processingP99Millis;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import play.api.mvc.Handler;
+import play.api.mvc.RequestHeader;
+import play.api.routing.Router;
+import play.api.routing.SimpleRouter;
+import play.libs.Json;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+import play.routing.RoutingDsl;
+import scala.PartialFunction;
+
+import javax.inject.Inject;
+
+/**
+ * Serves {@code GET /admin/consumer-lag?limit=n}, the read-side processors and topic producers on this node that are
+ * furthest behind, per tag shard. Like {@link MetricsRouter} it is not exposed through the service gateway.
+ */
+public class ConsumerLagRouter implements SimpleRouter {
+
+    private static final int DEFAULT_LIMIT = 10;
+
+    private final Router delegate;
+    private final ConsumerLagMonitor lagMonitor;
+
+    @Inject
+    public ConsumerLagRouter(RoutingDsl routingDsl, ConsumerLagMonitor lagMonitor) {
+        this.lagMonitor = lagMonitor;
+        this.delegate = routingDsl
+                .GET("/admin/consumer-lag")
+                .routingTo(this::slowest)
+                .build()
+                .asScala();
+    }
+
+    @Override
+    public PartialFunction<RequestHeader, Handler> routes() {
+        return delegate.routes();
+    }
+
+    private Result slowest(Http.Request request) {
+        int limit;
+        try {
+            String requested = request.getQueryString("limit");
+            limit = requested == null ? DEFAULT_LIMIT : Integer.parseInt(requested);
+        } catch (NumberFormatException e) {
+            return Results.badRequest("limit must be a number");
+        }
+
+        ArrayNode shards = Json.newArray();
+        lagMonitor.slowest(Math.max(0, limit)).forEach(shard -> shards.addObject()
+                .put("consumer", shard.getConsumer())
+                .put("tag", shard.getTag())
+                .put("lagMillis", shard.getLagMillis())
+                .put("eventsPerSecond", shard.getEventsPerSecond())
+                .put("events", shard.getEvents())
+                .put("processingP99Millis", shard.getProcessingP99Millis()));
+        return Results.ok(shards);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import akka.actor.ActorSystem;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Source;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exports the load on each dispatcher run by {@link InstrumentedExecutorConfigurator}, labelled with the dispatcher's
+ * id: {@code dispatcher_queue_wait}, from a task being submitted until it starts, {@code dispatcher_task}, how long
+ * tasks run, and, sampled every {@code dispatcher-metrics.interval}, {@code dispatcher_queue_length},
+ * {@code dispatcher_active_threads} and {@code dispatcher_utilization_percent}, active threads as a share of the
+ * pool's maximum. A dispatcher that has shut its pool down while idle is reported as empty.
+ * <p>
+ * Bind as an eager singleton, so tasks are timed from startup.
+ */
+@Singleton
+public class DispatcherMetrics {
+
+    private final MetricsRegistry metrics;
+    private final String systemName;
+    // Every dispatcher that has had a pool, including those shut down since
+    private final Set<String> dispatchers = ConcurrentHashMap.newKeySet();
+
+    @Inject
+    public DispatcherMetrics(MetricsRegistry metrics, ActorSystem system, Materializer materializer, Config config) {
+        this.metrics = metrics;
+        this.systemName = system.name();
+        InstrumentedExecutor.exportTo(systemName, metrics);
+
+        Duration interval = config.getDuration("dispatcher-metrics.interval");
+        Source.tick(interval, interval, "sample")
+                .runForeach(tick -> sample(), materializer);
+    }
+
+    private void sample() {
+        Map<String, InstrumentedExecutor> executors = InstrumentedExecutor.executors(systemName);
+        dispatchers.addAll(executors.keySet());
+        for (String dispatcher : dispatchers) {
+            InstrumentedExecutor executor = executors.get(dispatcher);
+            int maximum = executor == null ? 0 : executor.maximumThreads();
+            int active = executor == null ? 0 : executor.activeThreads();
+            metrics.gauge("dispatcher_queue_length", "dispatcher", dispatcher)
+                    .set(executor == null ? 0 : executor.queueLength());
+            metrics.gauge("dispatcher_active_threads", "dispatcher", dispatcher).set(active);
+            metrics.gauge("dispatcher_utilization_percent", "dispatcher", dispatcher)
+                    .set(maximum == 0 ? 0 : active * 100L / maximum);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * The entities handling the most commands on this node, and the load on each of their shards, per entity class.
+ * <p>
+ * Commands are counted over windows of {@code hot-entities.window}, and rates are those of the last complete window.
+ * Entities are counted with a {@link SpaceSaving} sketch of {@code hot-entities.capacity} counters, so any entity
+ * taking more than {@code 1/capacity} of its class's commands is found, with its rate overstated by at most the
+ * reported overcount. Shards are counted exactly, using the shard Lagom puts each entity in, which depends on
+ * {@code lagom.persistence.max-number-of-shards}.
+ * <p>
+ * Every command handler counts its command here, so each class's counts are split over stripes by entity id, and
+ * entities handled on different threads rarely wait for the same lock. An entity is always counted in the same
+ * stripe, so reads merge the stripes by taking their union, and each stripe keeps the guarantee above for its part
+ * of the commands.
+ */
+@Singleton
+public class HotEntities {
+
+    // A power of two, so that a stripe can be picked by masking the entity id's hash
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+
+    private final int capacity;
+    private final long windowNanos;
+    private final int numberOfShards;
+
+    private final ConcurrentHashMap<String, EntityLoad> entityTypes = new ConcurrentHashMap<>();
+
+    @Inject
+    public HotEntities(Config config) {
+        this(config.getInt("hot-entities.capacity"),
+                config.getDuration("hot-entities.window"),
+                config.getInt("lagom.persistence.max-number-of-shards"));
+    }
+
+    public HotEntities(int capacity, Duration window, int numberOfShards) {
+        this.capacity = capacity;
+        this.windowNanos = window.toNanos();
+        this.numberOfShards = numberOfShards;
+    }
+
+    public void commandHandled(String entityType, String entityId) {
+        commandHandled(entityType, entityId, System.nanoTime());
+    }
+
+    void commandHandled(String entityType, String entityId, long now) {
+        entityTypes.computeIfAbsent(entityType, type -> new EntityLoad(now)).commandHandled(entityId, now);
+    }
+
+    /**
+     * The entity classes that have handled commands on this node.
+     */
+    public Set<String> entityTypes() {
+        return new TreeSet<>(entityTypes.keySet());
+    }
+
+    /**
+     * The entities of a class handling the most commands, busiest first.
+     */
+    public List<HotEntity> hottestEntities(String entityType, int limit) {
+        return hottestEntities(entityType, limit, System.nanoTime());
+    }
+
+    List<HotEntity> hottestEntities(String entityType, int limit, long now) {
+        EntityLoad load = entityTypes.get(entityType);
+        return load == null ? Collections.emptyList() : load.hottestEntities(limit, now);
+    }
+
+    /**
+     * The shards of an entity class handling the most commands, busiest first.
+     */
+    public List<ShardLoad> hottestShards(String entityType, int limit) {
+        return hottestShards(entityType, limit, System.nanoTime());
+    }
+
+    List<ShardLoad> hottestShards(String entityType, int limit, long now) {
+        EntityLoad load = entityTypes.get(entityType);
+        return load == null ? Collections.emptyList() : load.hottestShards(limit, now);
+    }
+
+    // As Lagom's persistent entity registry assigns them
+    String shardOf(String entityId) {
+        return String.valueOf(Math.abs(entityId.hashCode()) % numberOfShards);
+    }
+
+    private class EntityLoad {
+        private final Stripe[] stripes = new Stripe[STRIPES];
+
+        EntityLoad(long now) {
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe(now);
+            }
+        }
+
+        void commandHandled(String entityId, long now) {
+            int hash = entityId.hashCode();
+            stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)].commandHandled(entityId, now);
+        }
+
+        List<HotEntity> hottestEntities(int limit, long now) {
+            // Each entity is in one stripe, so the overall top entities are among the stripes' top entities
+            List<HotEntity> hottest = new ArrayList<>();
+            for (Stripe stripe : stripes) {
+                hottest.addAll(stripe.hottestEntities(limit, now));
+            }
+            return hottest.stream()
+                    .sorted(Comparator.comparingDouble(HotEntity::getCommandsPerSecond).reversed())
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        }
+
+        List<ShardLoad> hottestShards(int limit, long now) {
+            Map<String, Double> shards = new HashMap<>();
+            double total = 0;
+            for (Stripe stripe : stripes) {
+                total += stripe.addShards(shards, now);
+            }
+            double commandsPerSecond = total;
+            return shards.entrySet().stream()
+                    .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                    .limit(limit)
+                    .map(shard -> new ShardLoad(shard.getKey(), shard.getValue(), shard.getValue() / commandsPerSecond))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private class Stripe {
+        private long windowStart;
+        private SpaceSaving entities = new SpaceSaving(capacity);
+        private Map<String, Long> shards = new HashMap<>();
+
+        // The last complete window, empty until there is one
+        private SpaceSaving lastEntities = new SpaceSaving(capacity);
+        private Map<String, Long> lastShards = new HashMap<>();
+        private long lastWindowNanos = 1;
+
+        Stripe(long now) {
+            this.windowStart = now;
+        }
+
+        synchronized void commandHandled(String entityId, long now) {
+            roll(now);
+            entities.offer(entityId);
+            shards.merge(shardOf(entityId), 1L, Long::sum);
+        }
+
+        synchronized List<HotEntity> hottestEntities(int limit, long now) {
+            roll(now);
+            return lastEntities.top(limit).stream()
+                    .map(counter -> new HotEntity(counter.key, shardOf(counter.key),
+                            perSecond(counter.count()), perSecond(counter.error)))
+                    .collect(Collectors.toList());
+        }
+
+        /**
+         * Adds the commands per second of each shard in the last window to {@code into}, and returns the stripe's
+         * total commands per second.
+         */
+        synchronized double addShards(Map<String, Double> into, long now) {
+            roll(now);
+            lastShards.forEach((shard, commands) -> into.merge(shard, perSecond(commands), Double::sum));
+            return perSecond(lastEntities.total());
+        }
+
+        private void roll(long now) {
+            long elapsed = now - windowStart;
+            if (elapsed >= windowNanos) {
+                lastEntities = entities;
+                lastShards = shards;
+                lastWindowNanos = elapsed;
+                entities = new SpaceSaving(capacity);
+                shards = new HashMap<>();
+                windowStart = now;
+            }
+        }
+
+        private double perSecond(long commands) {
+            return commands * 1_000_000_000.0 / lastWindowNanos;
+        }
+    }
+
+    public static class HotEntity {
+        private final String entityId;
+        private final String shard;
+        private final double commandsPerSecond;
+        private final double overcountPerSecond;
+
+        HotEntity(String entityId, String shard, double commandsPerSecond, double overcountPerSecond) {
+            this.entityId = entityId;
+            this.shard = shard;
+            this.commandsPerSecond = commandsPerSecond;
+            this.overcountPerSecond = overcountPerSecond;
+        }
+
+        public String getEntityId() {
+            return entityId;
+        }
+
+        public String getShard() {
+            return shard;
+        }
+
+        /**
+         * At most {@link #getOvercountPerSecond} above the entity's true rate.
+         */
+        public double getCommandsPerSecond() {
+            return commandsPerSecond;
+        }
+
+        public double getOvercountPerSecond() {
+            return overcountPerSecond;
+        }
+    }
+
+    public static class ShardLoad {
+        private final String shard;
+        private final double commandsPerSecond;
+        private final double share;
+
+        ShardLoad(String shard, double commandsPerSecond, double share) {
+            this.shard = shard;
+            this.commandsPerSecond = commandsPerSecond;
+            this.share = share;
+        }
+
+        public String getShard() {
+            return shard;
+        }
+
+        public double getCommandsPerSecond() {
+            return commandsPerSecond;
+        }
+
+        /**
+         * The shard's part of the commands handled for its entity class on this node, from 0 to 1.
+         */
+        public double getShare() {
+            return share;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import play.api.mvc.Handler;
+import play.api.mvc.RequestHeader;
+import play.api.routing.Router;
+import play.api.routing.SimpleRouter;
+import play.libs.Json;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+import play.routing.RoutingDsl;
+import scala.PartialFunction;
+
+import javax.inject.Inject;
+
+/**
+ * Serves {@code GET /admin/hot-entities?limit=n}, the entities and shards handling the most commands on this node, per
+ * entity class, from {@link HotEntities}. Like {@link MetricsRouter} it is not exposed through the service gateway.
+ */
+public class HotEntitiesRouter implements SimpleRouter {
+
+    private static final int DEFAULT_LIMIT = 10;
+
+    private final Router delegate;
+    private final HotEntities hotEntities;
+
+    @Inject
+    public HotEntitiesRouter(RoutingDsl routingDsl, HotEntities hotEntities) {
+        this.hotEntities = hotEntities;
+        this.delegate = routingDsl
+                .GET("/admin/hot-entities")
+                .routingTo(this::hottest)
+                .build()
+                .asScala();
+    }
+
+    @Override
+    public PartialFunction<RequestHeader, Handler> routes() {
+        return delegate.routes();
+    }
+
+    private Result hottest(Http.Request request) {
+        int limit;
+        try {
+            String requested = request.getQueryString("limit");
+            limit = requested == null ? DEFAULT_LIMIT : Integer.parseInt(requested);
+        } catch (NumberFormatException e) {
+            return Results.badRequest("limit must be a number");
+        }
+        limit = Math.max(0, limit);
+
+        ObjectNode entityTypes = Json.newObject();
+        for (String entityType : hotEntities.entityTypes()) {
+            ObjectNode load = entityTypes.putObject(entityType);
+            ArrayNode entities = load.putArray("entities");
+            hotEntities.hottestEntities(entityType, limit).forEach(entity -> entities.addObject()
+                    .put("entityId", entity.getEntityId())
+                    .put("shard", entity.getShard())
+                    .put("commandsPerSecond", entity.getCommandsPerSecond())
+                    .put("overcountPerSecond", entity.getOvercountPerSecond()));
+            ArrayNode shards = load.putArray("shards");
+            hotEntities.hottestShards(entityType, limit).forEach(shard -> shards.addObject()
+                    .put("shard", shard.getShard())
+                    .put("commandsPerSecond", shard.getCommandsPerSecond())
+                    .put("share", shard.getShare()));
+        }
+        return Results.ok(entityTypes);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import com.lightbend.lagom.javadsl.persistence.PersistentEntity;
+import scala.collection.JavaConverters;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A persistent entity that records, labelled with the entity class and the command or event class:
+ * <ul>
+ * <li>{@code entity_command_handler} and {@code entity_event_handler}, CPU time spent in each handler,</li>
+ * <li>{@code entity_persist}, from a command handler returning until its first event is applied, which Lagom does
+ * once the journal has written it,</li>
+ * <li>{@code entity_recovery} and {@code entity_recovery_events}, from the entity starting until its state is
+ * recovered, and the number of events replayed to do so.</li>
+ * </ul>
+ * Every behavior the entity switches to has its handlers wrapped, so subclasses use the behavior builder as usual
+ * and implement {@link #createInitialBehavior} instead of {@code initialBehavior}. Given {@link HotEntities}, each
+ * command handled is also counted against the entity's id there.
+ */
+public abstract class InstrumentedEntity<Command, Event, State> extends PersistentEntity<Command, Event, State> {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME_SUPPORTED =
+            THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+
+    private final MetricsRegistry metrics;
+    private final HotEntities hotEntities;
+    private final String entityType;
+
+    // Entities are created when their actor starts, so recovery is timed from construction
+    private final long startedAt = System.nanoTime();
+    private boolean recovering = true;
+    private long recoveredEvents = 0;
+
+    // The command whose events are being persisted, if any
+    private MetricsRegistry.Timer pendingPersist;
+    private long persistStartedAt;
+
+    // Handlers of the last behavior instrumented, behaviors that only change state keep them
+    private scala.collection.immutable.Map<?, ?> instrumentedCommandHandlers;
+    private scala.collection.immutable.Map<?, ?> instrumentedEventHandlers;
+
+    protected InstrumentedEntity(MetricsRegistry metrics) {
+        this(metrics, null);
+    }
+
+    protected InstrumentedEntity(MetricsRegistry metrics, HotEntities hotEntities) {
+        this.metrics = metrics;
+        this.hotEntities = hotEntities;
+        this.entityType = getClass().getSimpleName();
+    }
+
+    /**
+     * The behavior to start with, given the latest snapshot if there is one.
+     */
+    protected abstract Behavior createInitialBehavior(Optional<State> snapshotState);
+
+    @Override
+    public final Behavior initialBehavior(Optional<State> snapshotState) {
+        return instrument(createInitialBehavior(snapshotState));
+    }
+
+    @Override
+    public final Behavior recoveryCompleted() {
+        if (recovering) {
+            recovering = false;
+            metrics.timer("entity_recovery", "entity", entityType).record(System.nanoTime() - startedAt);
+            metrics.distribution("entity_recovery_events", "entity", entityType).record(recoveredEvents);
+        }
+        return instrument(super.recoveryCompleted());
+    }
+
+    // The builder's handler types cannot be named for an arbitrary command class, so it is used raw
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Behavior instrument(Behavior behavior) {
+        if (behavior.commandHandlers() == instrumentedCommandHandlers
+                && behavior.eventHandlers() == instrumentedEventHandlers) {
+            return behavior;
+        }
+
+        PersistentEntity.BehaviorBuilder builder = behavior.builder();
+        boolean changed = false;
+        for (Map.Entry<Class<? extends Command>, ? extends BiFunction> handler
+                : JavaConverters.mapAsJavaMapConverter(behavior.commandHandlers()).asJava().entrySet()) {
+            if (!(handler.getValue() instanceof InstrumentedEntity.TimedCommandHandler)) {
+                builder.setCommandHandler(handler.getKey(),
+                        new TimedCommandHandler(handler.getKey(), handler.getValue()));
+                changed = true;
+            }
+        }
+        for (Map.Entry<Class<? extends Event>, Function<? extends Event, Behavior>> handler
+                : JavaConverters.mapAsJavaMapConverter(behavior.eventHandlers()).asJava().entrySet()) {
+            if (!(handler.getValue() instanceof InstrumentedEntity.TimedEventHandler)) {
+                builder.setEventHandlerChangingBehavior(handler.getKey(),
+                        new TimedEventHandler(handler.getKey(), handler.getValue()));
+                changed = true;
+            }
+        }
+
+        Behavior instrumented = changed ? (Behavior) builder.build() : behavior;
+        instrumentedCommandHandlers = instrumented.commandHandlers();
+        instrumentedEventHandlers = instrumented.eventHandlers();
+        return instrumented;
+    }
+
+    private static long cpuTime() {
+        return CPU_TIME_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    private class TimedCommandHandler implements BiFunction<Command, CommandContext<Object>, Persist> {
+        private final BiFunction<Command, CommandContext<Object>, Persist> handler;
+        private final MetricsRegistry.Timer handlerTime;
+        private final MetricsRegistry.Timer persistTime;
+
+        @SuppressWarnings("unchecked")
+        TimedCommandHandler(Class<? extends Command> commandClass, BiFunction<?, ?, ?> handler) {
+            this.handler = (BiFunction<Command, CommandContext<Object>, Persist>) handler;
+            String command = commandClass.getSimpleName();
+            this.handlerTime = metrics.timer("entity_command_handler", "entity", entityType, "command", command);
+            this.persistTime = metrics.timer("entity_persist", "entity", entityType, "command", command);
+        }
+
+        @Override
+        public Persist apply(Command command, CommandContext<Object> ctx) {
+            if (hotEntities != null) hotEntities.commandHandled(entityType, entityId());
+            long start = cpuTime();
+            try {
+                return handler.apply(command, ctx);
+            } finally {
+                handlerTime.record(cpuTime() - start);
+                // Commands are stashed while events persist, so the next event applied comes from this command
+                pendingPersist = persistTime;
+                persistStartedAt = System.nanoTime();
+            }
+        }
+    }
+
+    private class TimedEventHandler implements Function<Event, Behavior> {
+        private final Function<Event, Behavior> handler;
+        private final MetricsRegistry.Timer handlerTime;
+
+        @SuppressWarnings("unchecked")
+        TimedEventHandler(Class<? extends Event> eventClass, Function<? extends Event, Behavior> handler) {
+            this.handler = (Function<Event, Behavior>) handler;
+            this.handlerTime = metrics.timer("entity_event_handler",
+                    "entity", entityType, "event", eventClass.getSimpleName());
+        }
+
+        @Override
+        public Behavior apply(Event event) {
+            if (recovering) {
+                recoveredEvents++;
+            } else if (pendingPersist != null) {
+                pendingPersist.record(System.nanoTime() - persistStartedAt);
+                pendingPersist = null;
+            }
+
+            long start = cpuTime();
+            Behavior next;
+            try {
+                next = handler.apply(event);
+            } finally {
+                handlerTime.record(cpuTime() - start);
+            }
+            return instrument(next);
+        }
+    }
+}
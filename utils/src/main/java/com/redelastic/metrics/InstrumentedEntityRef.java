@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import com.lightbend.lagom.javadsl.persistence.PersistentEntity;
+import com.lightbend.lagom.javadsl.persistence.PersistentEntityRef;
+import com.lightbend.lagom.javadsl.persistence.PersistentEntityRegistry;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A {@link PersistentEntityRef} that records {@code entity_ask}, the time from sending a command until its reply,
+ * and {@code entity_ask_failures}, labelled with the entity class and the command class.
+ * <p>
+ * {@code entity_asks_in_flight} counts the commands sent to an entity class and not yet answered on this node.
+ * Cluster sharding does not expose the entities' mailboxes, so this stands in for their depth: a growing count with
+ * flat handler times means commands are queueing rather than being handled slowly.
+ */
+public class InstrumentedEntityRef<Command> {
+
+    private final PersistentEntityRef<Command> ref;
+    private final MetricsRegistry metrics;
+    private final String entityType;
+    private final MetricsRegistry.Gauge inFlight;
+
+    public InstrumentedEntityRef(PersistentEntityRef<Command> ref,
+                                 Class<? extends PersistentEntity<Command, ?, ?>> entityClass,
+                                 MetricsRegistry metrics) {
+        this.ref = ref;
+        this.metrics = metrics;
+        this.entityType = entityClass.getSimpleName();
+        this.inFlight = metrics.gauge("entity_asks_in_flight", "entity", entityType);
+    }
+
+    public static <Command> InstrumentedEntityRef<Command> refFor(
+            PersistentEntityRegistry registry,
+            Class<? extends PersistentEntity<Command, ?, ?>> entityClass,
+            String entityId,
+            MetricsRegistry metrics) {
+        return new InstrumentedEntityRef<>(registry.refFor(entityClass, entityId), entityClass, metrics);
+    }
+
+    public String entityId() {
+        return ref.entityId();
+    }
+
+    public <Reply, Cmd extends Object & PersistentEntity.ReplyType<Reply>> CompletionStage<Reply> ask(Cmd command) {
+        String commandType = command.getClass().getSimpleName();
+        MetricsRegistry.Timer timer = metrics.timer("entity_ask", "entity", entityType, "command", commandType);
+        long start = System.nanoTime();
+
+        inFlight.increment();
+        CompletionStage<Reply> reply;
+        try {
+            reply = ref.ask(command);
+        } catch (RuntimeException e) {
+            inFlight.decrement();
+            throw e;
+        }
+        return reply.whenComplete((result, failure) -> {
+            inFlight.decrement();
+            timer.record(System.nanoTime() - start);
+            if (failure != null) {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause()
+                        : failure;
+                metrics.counter("entity_ask_failures", "entity", entityType, "command", commandType,
+                        "error", cause.getClass().getSimpleName()).increment();
+            }
+        });
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A dispatcher's thread pool, timing how long each task waits in the queue and then runs.
+ * <p>
+ * Akka creates dispatchers before the application's injector exists, so running executors are tracked here per actor
+ * system, and start recording once {@link DispatcherMetrics} has given their system a registry. A dispatcher shuts
+ * its pool down when idle and starts a new one when next used, so executors come and go.
+ */
+final class InstrumentedExecutor extends AbstractExecutorService {
+
+    // Running executors by actor system and dispatcher id
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, InstrumentedExecutor>> running =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, MetricsRegistry> registries = new ConcurrentHashMap<>();
+
+    private final String systemName;
+    private final String dispatcher;
+    private final ThreadPoolExecutor pool;
+
+    // Null until the system has a registry
+    private volatile MetricsRegistry.Timer queueWait;
+    private volatile MetricsRegistry.Timer task;
+
+    private InstrumentedExecutor(String systemName, String dispatcher, ThreadPoolExecutor pool) {
+        this.systemName = systemName;
+        this.dispatcher = dispatcher;
+        this.pool = pool;
+    }
+
+    static InstrumentedExecutor start(String systemName, String dispatcher, ThreadPoolExecutor pool) {
+        InstrumentedExecutor executor = new InstrumentedExecutor(systemName, dispatcher, pool);
+        running.computeIfAbsent(systemName, name -> new ConcurrentHashMap<>()).put(dispatcher, executor);
+        MetricsRegistry metrics = registries.get(systemName);
+        if (metrics != null) executor.exportTo(metrics);
+        return executor;
+    }
+
+    /**
+     * Records the tasks of the system's executors in the given registry, from now on.
+     */
+    static void exportTo(String systemName, MetricsRegistry metrics) {
+        registries.put(systemName, metrics);
+        executors(systemName).values().forEach(executor -> executor.exportTo(metrics));
+    }
+
+    static ConcurrentHashMap<String, InstrumentedExecutor> executors(String systemName) {
+        return running.getOrDefault(systemName, new ConcurrentHashMap<>());
+    }
+
+    private void exportTo(MetricsRegistry metrics) {
+        queueWait = metrics.timer("dispatcher_queue_wait", "dispatcher", dispatcher);
+        task = metrics.timer("dispatcher_task", "dispatcher", dispatcher);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        long submitted = System.nanoTime();
+        pool.execute(() -> {
+            long started = System.nanoTime();
+            MetricsRegistry.Timer waited = queueWait;
+            if (waited != null) waited.record(started - submitted);
+            try {
+                command.run();
+            } finally {
+                MetricsRegistry.Timer ran = task;
+                if (ran != null) ran.record(System.nanoTime() - started);
+            }
+        });
+    }
+
+    int queueLength() {
+        return pool.getQueue().size();
+    }
+
+    int activeThreads() {
+        return pool.getActiveCount();
+    }
+
+    int maximumThreads() {
+        return pool.getMaximumPoolSize();
+    }
+
+    @Override
+    public void shutdown() {
+        stopped();
+        pool.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        stopped();
+        return pool.shutdownNow();
+    }
+
+    private void stopped() {
+        executors(systemName).remove(dispatcher, this);
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return pool.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+}
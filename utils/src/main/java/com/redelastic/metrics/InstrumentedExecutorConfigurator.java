@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import akka.dispatch.DispatcherPrerequisites;
+import akka.dispatch.ExecutorServiceConfigurator;
+import akka.dispatch.ExecutorServiceFactory;
+import akka.dispatch.ThreadPoolExecutorConfigurator;
+import com.typesafe.config.Config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * A dispatcher executor that runs the dispatcher's {@code thread-pool-executor}, timing every task, for
+ * {@link DispatcherMetrics} to export. Use it as a dispatcher's {@code executor}:
+ * <pre>
+ * my-dispatcher {
+ *   type = Dispatcher
+ *   executor = "com.redelastic.metrics.InstrumentedExecutorConfigurator"
+ *   thread-pool-executor.fixed-pool-size = 8
+ * }
+ * </pre>
+ */
+public class InstrumentedExecutorConfigurator extends ExecutorServiceConfigurator {
+
+    private final ThreadPoolExecutorConfigurator threadPool;
+    private final String systemName;
+
+    public InstrumentedExecutorConfigurator(Config config, DispatcherPrerequisites prerequisites) {
+        super(config, prerequisites);
+        this.threadPool = new ThreadPoolExecutorConfigurator(config.getConfig("thread-pool-executor"), prerequisites);
+        this.systemName = prerequisites.settings().name();
+    }
+
+    @Override
+    public ExecutorServiceFactory createExecutorServiceFactory(String id, ThreadFactory threadFactory) {
+        ExecutorServiceFactory factory = threadPool.createExecutorServiceFactory(id, threadFactory);
+        return () -> {
+            ExecutorService executor = factory.createExecutorService();
+            if (!(executor instanceof ThreadPoolExecutor)) return executor;
+            return InstrumentedExecutor.start(systemName, id, (ThreadPoolExecutor) executor);
+        };
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms, value distributions, counters and gauges, exported in the Prometheus text format.
+ * <p>
+ * A metric is identified by its name and label values, e.g. {@code timer("bff_request", "route", "getPortfolio")}.
+ * Look metrics up once per request at most; recording into one is lock free. Latencies are kept in HdrHistograms
+ * from startup, and exported as summaries with fixed quantiles.
+ */
+public class MetricsRegistry {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // Latencies are recorded in microseconds, up to this long, to two significant digits
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    // Larger values of a distribution are recorded as this
+    private static final long HIGHEST_TRACKABLE_VALUE = 10_000_000;
+
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Distribution> distributions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * @param labels Alternating label names and values.
+     */
+    public Timer timer(String name, String... labels) {
+        return timers.computeIfAbsent(series(name, labels), series -> new Timer(name, labels(labels)));
+    }
+
+    /**
+     * @param labels Alternating label names and values.
+     */
+    public Counter counter(String name, String... labels) {
+        return counters.computeIfAbsent(series(name, labels), series -> new Counter(name, labels(labels)));
+    }
+
+    /**
+     * Distribution of a count or size, such as the number of events replayed by an entity.
+     *
+     * @param labels Alternating label names and values.
+     */
+    public Distribution distribution(String name, String... labels) {
+        return distributions.computeIfAbsent(series(name, labels), series -> new Distribution(name, labels(labels)));
+    }
+
+    /**
+     * @param labels Alternating label names and values.
+     */
+    public Gauge gauge(String name, String... labels) {
+        return gauges.computeIfAbsent(series(name, labels), series -> new Gauge(name, labels(labels)));
+    }
+
+    /**
+     * All metrics in the Prometheus text exposition format, version 0.0.4.
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+
+        Map<String, Map<String, Timer>> timersByName = new TreeMap<>();
+        timers.forEach((series, timer) -> timersByName.computeIfAbsent(timer.name, name -> new TreeMap<>()).put(series, timer));
+        timersByName.forEach((name, series) -> {
+            out.append("# TYPE ").append(name).append("_seconds summary\n");
+            series.values().forEach(timer -> timer.write(out));
+        });
+
+        Map<String, Map<String, Counter>> countersByName = new TreeMap<>();
+        counters.forEach((series, counter) -> countersByName.computeIfAbsent(counter.name, name -> new TreeMap<>()).put(series, counter));
+        countersByName.forEach((name, series) -> {
+            out.append("# TYPE ").append(name).append("_total counter\n");
+            series.values().forEach(counter -> counter.write(out));
+        });
+
+        Map<String, Map<String, Distribution>> distributionsByName = new TreeMap<>();
+        distributions.forEach((series, distribution) ->
+                distributionsByName.computeIfAbsent(distribution.name, name -> new TreeMap<>()).put(series, distribution));
+        distributionsByName.forEach((name, series) -> {
+            out.append("# TYPE ").append(name).append(" summary\n");
+            series.values().forEach(distribution -> distribution.write(out));
+        });
+
+        Map<String, Map<String, Gauge>> gaugesByName = new TreeMap<>();
+        gauges.forEach((series, gauge) -> gaugesByName.computeIfAbsent(gauge.name, name -> new TreeMap<>()).put(series, gauge));
+        gaugesByName.forEach((name, series) -> {
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            series.values().forEach(gauge -> gauge.write(out));
+        });
+
+        return out.toString();
+    }
+
+    private static String series(String name, String... labels) {
+        return name + labels(labels);
+    }
+
+    private static String labels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name and value pairs");
+        }
+        if (labels.length == 0) return "";
+
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) out.append(',');
+            out.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // Adds a quantile label to an already formatted label set
+    private static String withQuantile(String labels, double quantile) {
+        String q = "quantile=\"" + quantile + "\"";
+        return labels.isEmpty() ? "{" + q + "}" : labels.substring(0, labels.length() - 1) + "," + q + "}";
+    }
+
+    public static class Timer {
+        private final String name;
+        private final String labels;
+        private final Histogram histogram = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        private final LongAdder sumMicros = new LongAdder();
+
+        private Timer(String name, String labels) {
+            this.name = name;
+            this.labels = labels;
+        }
+
+        public void record(long nanos) {
+            long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+            histogram.recordValue(Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+            sumMicros.add(micros);
+        }
+
+        public void record(Duration duration) {
+            record(duration.toNanos());
+        }
+
+        public long count() {
+            return histogram.getTotalCount();
+        }
+
+        /**
+         * Latency at the given quantile, between 0 and 1.
+         */
+        public Duration quantile(double quantile) {
+            return Duration.of(histogram.getValueAtPercentile(quantile * 100), ChronoUnit.MICROS);
+        }
+
+        private void write(StringBuilder out) {
+            for (double quantile : QUANTILES) {
+                out.append(name).append("_seconds").append(withQuantile(labels, quantile)).append(' ')
+                        .append(seconds(histogram.getValueAtPercentile(quantile * 100))).append('\n');
+            }
+            out.append(name).append("_seconds_sum").append(labels).append(' ').append(seconds(sumMicros.sum())).append('\n');
+            out.append(name).append("_seconds_count").append(labels).append(' ').append(histogram.getTotalCount()).append('\n');
+        }
+
+        private static double seconds(long micros) {
+            return micros / 1_000_000.0;
+        }
+    }
+
+    public static class Counter {
+        private final String name;
+        private final String labels;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name, String labels) {
+            this.name = name;
+            this.labels = labels;
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        private void write(StringBuilder out) {
+            out.append(name).append("_total").append(labels).append(' ').append(count.sum()).append('\n');
+        }
+    }
+
+    public static class Distribution {
+        private final String name;
+        private final String labels;
+        private final Histogram histogram = new ConcurrentHistogram(HIGHEST_TRACKABLE_VALUE, SIGNIFICANT_DIGITS);
+        private final LongAdder sum = new LongAdder();
+
+        private Distribution(String name, String labels) {
+            this.name = name;
+            this.labels = labels;
+        }
+
+        public void record(long value) {
+            long recorded = Math.max(0, value);
+            histogram.recordValue(Math.min(recorded, HIGHEST_TRACKABLE_VALUE));
+            sum.add(recorded);
+        }
+
+        public long count() {
+            return histogram.getTotalCount();
+        }
+
+        /**
+         * Value at the given quantile, between 0 and 1.
+         */
+        public long quantile(double quantile) {
+            return histogram.getValueAtPercentile(quantile * 100);
+        }
+
+        private void write(StringBuilder out) {
+            for (double quantile : QUANTILES) {
+                out.append(name).append(withQuantile(labels, quantile)).append(' ')
+                        .append(histogram.getValueAtPercentile(quantile * 100)).append('\n');
+            }
+            out.append(name).append("_sum").append(labels).append(' ').append(sum.sum()).append('\n');
+            out.append(name).append("_count").append(labels).append(' ').append(histogram.getTotalCount()).append('\n');
+        }
+    }
+
+    /**
+     * A value that goes up and down, such as the number of requests in flight.
+     */
+    public static class Gauge {
+        private final String name;
+        private final String labels;
+        private final AtomicLong value = new AtomicLong();
+
+        private Gauge(String name, String labels) {
+            this.name = name;
+            this.labels = labels;
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void decrement() {
+            value.decrementAndGet();
+        }
+
+        public void set(long newValue) {
+            value.set(newValue);
+        }
+
+        public long value() {
+            return value.get();
+        }
+
+        private void write(StringBuilder out) {
+            out.append(name).append(labels).append(' ').append(value.get()).append('\n');
+        }
+    }
+}
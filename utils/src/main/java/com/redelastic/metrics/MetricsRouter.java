@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import play.api.mvc.Handler;
+import play.api.mvc.RequestHeader;
+import play.api.routing.Router;
+import play.api.routing.SimpleRouter;
+import play.mvc.Results;
+import play.routing.RoutingDsl;
+import scala.PartialFunction;
+
+import javax.inject.Inject;
+
+/**
+ * Serves {@code GET /metrics} in the Prometheus text format alongside a Lagom service's own calls, for Prometheus to
+ * scrape each node directly. It is not part of the service descriptor, so the service gateway does not expose it.
+ */
+public class MetricsRouter implements SimpleRouter {
+
+    private final Router delegate;
+
+    @Inject
+    public MetricsRouter(RoutingDsl routingDsl, MetricsRegistry metrics) {
+        this.delegate = routingDsl
+                .GET("/metrics")
+                .routingTo(request -> Results.ok(metrics.toPrometheus()).as("text/plain; version=0.0.4; charset=utf-8"))
+                .build()
+                .asScala();
+    }
+
+    @Override
+    public PartialFunction<RequestHeader, Handler> routes() {
+        return delegate.routes();
+    }
+}
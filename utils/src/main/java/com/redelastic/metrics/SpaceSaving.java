@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The most frequent keys in a stream, counted in a fixed number of counters with the Space-Saving algorithm
+ * (Metwally et al.): a key that arrives when every counter is taken replaces the least counted key, inheriting its
+ * count as a possible overcount. Any key occurring more than {@code 1/capacity} of the time is guaranteed a counter,
+ * and each count is at most its error above the key's true count. Not thread safe.
+ */
+final class SpaceSaving {
+
+    private static final Comparator<Counter> BY_COUNT =
+            Comparator.<Counter>comparingLong(counter -> counter.count).thenComparingLong(counter -> counter.sequence);
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    // Counters are removed before their count changes and added back after
+    private final TreeSet<Counter> byCount = new TreeSet<>(BY_COUNT);
+    private long sequence = 0;
+    private long total = 0;
+
+    SpaceSaving(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    void offer(String key) {
+        total++;
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            byCount.remove(counter);
+        } else if (counters.size() < capacity) {
+            counter = new Counter(key, 0, sequence++);
+            counters.put(key, counter);
+        } else {
+            Counter evicted = byCount.pollFirst();
+            counters.remove(evicted.key);
+            counter = new Counter(key, evicted.count, sequence++);
+            counters.put(key, counter);
+        }
+        counter.count++;
+        byCount.add(counter);
+    }
+
+    /**
+     * The most counted keys, most first.
+     */
+    List<Counter> top(int limit) {
+        List<Counter> top = new ArrayList<>(Math.min(limit, counters.size()));
+        Iterator<Counter> descending = byCount.descendingIterator();
+        while (top.size() < limit && descending.hasNext()) {
+            top.add(descending.next());
+        }
+        return top;
+    }
+
+    /**
+     * Every key offered, counted or not.
+     */
+    long total() {
+        return total;
+    }
+
+    static final class Counter {
+        final String key;
+        // The most this count may exceed the key's true count by
+        final long error;
+        private final long sequence;
+        private long count;
+
+        private Counter(String key, long error, long sequence) {
+            this.key = key;
+            this.error = error;
+            this.sequence = sequence;
+            this.count = error;
+        }
+
+        long count() {
+            return count;
+        }
+    }
+}
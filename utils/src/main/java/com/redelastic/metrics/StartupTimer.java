@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Records {@code startup_milliseconds}: the time from the JVM starting until this is created, which bound as the
+ * last eager singleton is once the application's services are constructed and about to start serving. Only
+ * meaningful in production mode, where the JVM is started for the application.
+ */
+@Singleton
+public class StartupTimer {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupTimer.class);
+
+    @Inject
+    public StartupTimer(MetricsRegistry metrics) {
+        long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        metrics.gauge("startup_milliseconds").set(millis);
+        log.info("Started in {} ms", millis);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.ratelimit;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of requests in flight, adapting the limit to their latency. A request slower than the latency
+ * threshold halves the limit, down to the minimum, and each run of fast requests as long as the current limit raises
+ * it by one, up to the maximum. When whatever the requests wait on slows down, fewer are let through until it
+ * recovers, rather than queueing more work behind it.
+ */
+public class ConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long thresholdNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+    private int fastSinceIncrease = 0;
+    private boolean decreased = false;
+    private long lastDecrease = 0;
+
+    public ConcurrencyLimit(int minLimit, int maxLimit, Duration latencyThreshold) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.thresholdNanos = latencyThreshold.toNanos();
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Start a request if there is room for it. Every successful acquire must be followed by a {@link #release}.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) return false;
+            if (inFlight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    /**
+     * End a request whose latency says nothing about load, such as one that waited on purpose, without moving the
+     * limit.
+     */
+    public void releaseUnmeasured() {
+        inFlight.decrementAndGet();
+    }
+
+    public void release(long latencyNanos) {
+        release(latencyNanos, System.nanoTime());
+    }
+
+    synchronized void release(long latencyNanos, long nowNanos) {
+        inFlight.decrementAndGet();
+        if (latencyNanos > thresholdNanos) {
+            fastSinceIncrease = 0;
+            // Requests that were already running when the limit dropped are still slow, only count one of them
+            if (!decreased || nowNanos - lastDecrease > thresholdNanos) {
+                limit = Math.max(minLimit, limit / 2);
+                decreased = true;
+                lastDecrease = nowNanos;
+            }
+        } else if (++fastSinceIncrease >= limit) {
+            fastSinceIncrease = 0;
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+}
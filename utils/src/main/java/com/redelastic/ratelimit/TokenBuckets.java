@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.ratelimit;
+
+import java.time.Duration;
+
+/**
+ * A token bucket per key, e.g. per client or per portfolio, all with the same rate and burst.
+ * <p>
+ * Buckets are held in open addressing tables of primitive longs, keyed by a 64 bit hash of the key, so a bucket costs
+ * three longs rather than a map entry, a key string and a bucket object. Keys whose hashes collide share a bucket.
+ * Tables are split into segments, each with its own lock.
+ * <p>
+ * A bucket left idle long enough to refill completely is indistinguishable from a new one, so {@link #evictIdle}
+ * removes those without changing any outcome.
+ */
+public class TokenBuckets {
+
+    private static final int SEGMENTS = 16;
+    private static final long MICROS_PER_TOKEN = 1_000_000;
+
+    private final long capacity;        // In millionths of a token
+    private final double refillPerNano; // Millionths of a token per nanosecond
+    private final long idleNanos;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * @param tokensPerSecond Sustained rate.
+     * @param burst           Tokens available to a new or idle key.
+     */
+    public TokenBuckets(double tokensPerSecond, int burst) {
+        this.capacity = burst * MICROS_PER_TOKEN;
+        this.refillPerNano = tokensPerSecond * MICROS_PER_TOKEN / 1e9;
+        this.idleNanos = (long) Math.ceil(capacity / refillPerNano);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Take {@code cost} tokens from the key's bucket if it has them.
+     *
+     * @return Zero if the tokens were taken, otherwise how long until the bucket will have them.
+     */
+    public Duration tryAcquire(String key, int cost) {
+        return Duration.ofNanos(tryAcquire(key, cost, System.nanoTime()));
+    }
+
+    long tryAcquire(String key, int cost, long nowNanos) {
+        long hash = hash(key);
+        return segmentFor(hash).tryAcquire(hash, cost * MICROS_PER_TOKEN, nowNanos);
+    }
+
+    /**
+     * Remove buckets that have refilled completely.
+     *
+     * @return The number of buckets removed.
+     */
+    public int evictIdle() {
+        return evictIdle(System.nanoTime());
+    }
+
+    int evictIdle(long nowNanos) {
+        int evicted = 0;
+        for (Segment segment : segments) {
+            evicted += segment.evictIdle(nowNanos);
+        }
+        return evicted;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> 60) & (SEGMENTS - 1)];
+    }
+
+    // 64 bit FNV-1a, with zero reserved for empty slots
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private class Segment {
+        private long[] keys = new long[16];
+        private long[] tokens = new long[16];
+        private long[] updated = new long[16];
+        private int size = 0;
+
+        synchronized long tryAcquire(long key, long cost, long nowNanos) {
+            int slot = find(key);
+            if (keys[slot] == 0) {
+                if (size + 1 > keys.length / 2) {
+                    evictIdle(nowNanos);
+                    if (size + 1 > keys.length / 2) resize(keys.length * 2);
+                }
+                slot = find(key);
+                keys[slot] = key;
+                tokens[slot] = capacity;
+                updated[slot] = nowNanos;
+                size++;
+            }
+
+            long refilled = (long) ((nowNanos - updated[slot]) * refillPerNano);
+            long available = Math.min(capacity, tokens[slot] + Math.max(0, refilled));
+            updated[slot] = nowNanos;
+
+            if (available >= cost) {
+                tokens[slot] = available - cost;
+                return 0;
+            }
+            tokens[slot] = available;
+            return (long) Math.ceil((cost - available) / refillPerNano);
+        }
+
+        synchronized int evictIdle(long nowNanos) {
+            int evicted = 0;
+            int slot = 0;
+            while (slot < keys.length) {
+                if (keys[slot] != 0 && nowNanos - updated[slot] >= idleNanos) {
+                    // Removal may shift a later entry into this slot, so look at it again
+                    remove(slot);
+                    evicted++;
+                } else {
+                    slot++;
+                }
+            }
+            return evicted;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) key & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        // Backward shift deletion, so lookups never need tombstones
+        private void remove(int slot) {
+            int mask = keys.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (keys[next] != 0) {
+                int home = (int) keys[next] & mask;
+                // Move the entry back into the hole unless its home slot lies cyclically in (hole, next]
+                boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+                if (!stays) {
+                    keys[hole] = keys[next];
+                    tokens[hole] = tokens[next];
+                    updated[hole] = updated[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[hole] = 0;
+            size--;
+        }
+
+        private void resize(int length) {
+            long[] oldKeys = keys;
+            long[] oldTokens = tokens;
+            long[] oldUpdated = updated;
+            keys = new long[length];
+            tokens = new long[length];
+            updated = new long[length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = find(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    tokens[slot] = oldTokens[i];
+                    updated[slot] = oldUpdated[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.serialization;
+
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.SerializerWithStringManifest;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileParser;
+import com.lightbend.lagom.serialization.JacksonJsonMigration;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serializes persisted events and entity state as Smile, Jackson's binary equivalent of JSON, for smaller journal
+ * rows that are quicker to parse on replay than {@code lagom-json}'s.
+ * <p>
+ * Classes are mapped with the same Jackson annotations as for JSON, and evolve with the same
+ * {@code lagom.serialization.json.migrations}: the manifest is the class name, with {@code #version} appended when
+ * the class has a migration, and payloads of older versions are migrated as a tree before being read. Properties
+ * the class no longer has are ignored, so removing one needs no migration.
+ * <p>
+ * An {@link Optional}, which is how the entities here hold their state, is written as the value it holds.
+ * Payloads over {@code compact-serialization.compress-above} bytes are GZIP compressed when that makes them smaller.
+ */
+public class CompactSerializer extends SerializerWithStringManifest {
+
+    // Stored with every row written, so must never change
+    static final int IDENTIFIER = 7001;
+
+    // The first byte of every payload, followed by the Smile document
+    static final byte PLAIN = 0;
+    static final byte GZIP = 1;
+
+    // Manifest prefix of an Optional, followed by the manifest of its value if it has one
+    private static final String OPTIONAL = "?";
+
+    private static final String MIGRATIONS_PATH = "lagom.serialization.json.migrations";
+
+    private final ObjectMapper mapper;
+    private final ClassLoader classLoader;
+    private final Map<String, JacksonJsonMigration> migrations;
+    private final int compressAbove;
+    private final ConcurrentHashMap<String, Class<?>> classes = new ConcurrentHashMap<>();
+
+    public CompactSerializer(ExtendedActorSystem system) {
+        this(system.dynamicAccess().classLoader(),
+                migrations(system.settings().config(), system.dynamicAccess().classLoader()),
+                (int) system.settings().config().getBytes("compact-serialization.compress-above").longValue());
+    }
+
+    CompactSerializer(ClassLoader classLoader, Map<String, JacksonJsonMigration> migrations, int compressAbove) {
+        this.classLoader = classLoader;
+        this.migrations = migrations;
+        this.compressAbove = compressAbove;
+        // The format byte already marks the payload, so Smile's four byte header is left out
+        SmileFactory smile = new SmileFactory()
+                .disable(SmileGenerator.Feature.WRITE_HEADER)
+                .disable(SmileParser.Feature.REQUIRE_HEADER);
+        this.mapper = new ObjectMapper(smile)
+                .findAndRegisterModules()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        if (o instanceof Optional) {
+            return ((Optional<?>) o).map(value -> OPTIONAL + manifest(value)).orElse(OPTIONAL);
+        }
+        String className = o.getClass().getName();
+        JacksonJsonMigration migration = migrations.get(className);
+        return migration == null ? className : className + "#" + migration.currentVersion();
+    }
+
+    @Override
+    public byte[] toBinary(Object o) {
+        Object value = o;
+        while (value instanceof Optional) {
+            value = ((Optional<?>) value).orElse(null);
+        }
+        if (value == null) return new byte[0];
+
+        try {
+            ByteArrayOutputStream plain = new ByteArrayOutputStream(256);
+            plain.write(PLAIN);
+            mapper.writeValue(plain, value);
+            if (plain.size() - 1 <= compressAbove) return plain.toByteArray();
+
+            byte[] bytes = plain.toByteArray();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length);
+            compressed.write(GZIP);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bytes, 1, bytes.length - 1);
+            }
+            return compressed.size() < bytes.length ? compressed.toByteArray() : bytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not serialize " + value.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) {
+        if (manifest.startsWith(OPTIONAL)) {
+            String valueManifest = manifest.substring(OPTIONAL.length());
+            return valueManifest.isEmpty() ? Optional.empty() : Optional.of(fromBinary(bytes, valueManifest));
+        }
+
+        int hash = manifest.indexOf('#');
+        String className = hash < 0 ? manifest : manifest.substring(0, hash);
+        int version = hash < 0 ? 1 : Integer.parseInt(manifest.substring(hash + 1));
+        JacksonJsonMigration migration = migrations.get(className);
+
+        try (InputStream payload = payload(bytes)) {
+            // A newer version than this node knows of is read as is, ignoring any properties it added
+            if (migration == null || version >= migration.currentVersion()) {
+                return mapper.readValue(payload, classFor(className));
+            }
+            JsonNode migrated = migration.transform(version, mapper.readTree(payload));
+            return mapper.treeToValue(migrated, classFor(migration.transformClassName(version, className)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not deserialize " + manifest, e);
+        }
+    }
+
+    private static InputStream payload(byte[] bytes) throws IOException {
+        switch (bytes[0]) {
+            case PLAIN:
+                return new ByteArrayInputStream(bytes, 1, bytes.length - 1);
+            case GZIP:
+                return new GZIPInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+            default:
+                throw new IllegalArgumentException("Unknown compact serialization format " + bytes[0]);
+        }
+    }
+
+    private Class<?> classFor(String className) {
+        return classes.computeIfAbsent(className, name -> {
+            try {
+                return Class.forName(name, true, classLoader);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Unknown class in manifest " + name, e);
+            }
+        });
+    }
+
+    private static Map<String, JacksonJsonMigration> migrations(Config config, ClassLoader classLoader) {
+        if (!config.hasPath(MIGRATIONS_PATH)) return Collections.emptyMap();
+
+        Map<String, JacksonJsonMigration> migrations = new HashMap<>();
+        for (Map.Entry<String, ConfigValue> entry : config.getObject(MIGRATIONS_PATH).entrySet()) {
+            String migrationClass = entry.getValue().unwrapped().toString();
+            try {
+                Constructor<? extends JacksonJsonMigration> constructor = Class.forName(migrationClass, true, classLoader)
+                        .asSubclass(JacksonJsonMigration.class)
+                        .getDeclaredConstructor();
+                constructor.setAccessible(true);
+                migrations.put(entry.getKey(), constructor.newInstance());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Could not create migration " + migrationClass, e);
+            }
+        }
+        return migrations;
+    }
+}
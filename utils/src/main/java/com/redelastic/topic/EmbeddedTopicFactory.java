@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.topic;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.japi.Pair;
+import akka.persistence.query.NoOffset;
+import akka.stream.ActorAttributes;
+import akka.stream.Materializer;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.RestartSource;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.lightbend.lagom.javadsl.api.broker.Subscriber;
+import com.lightbend.lagom.javadsl.api.broker.Topic;
+import com.lightbend.lagom.javadsl.persistence.AggregateEvent;
+import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
+import com.lightbend.lagom.javadsl.persistence.Offset;
+import com.lightbend.lagom.spi.persistence.OffsetDao;
+import com.lightbend.lagom.spi.persistence.OffsetStore;
+import com.redelastic.Bulkheads;
+import com.typesafe.config.Config;
+import org.pcollections.PSequence;
+import scala.compat.java8.FutureConverters;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiFunction;
+
+/**
+ * Topics for services deployed in one JVM with their subscribers, without a message broker.
+ * <p>
+ * Each subscriber group reads the topic's events straight from the journal, tag by tag, and stores how far it has
+ * got in the offset store the read sides use, so a subscriber resumes where it stopped just as a Kafka consumer group
+ * does. Up to {@code embedded-topics.buffer-size} messages per tag are read ahead of the subscriber, after which the
+ * journal query is backpressured. There is no partitioning between nodes: every node runs every subscription it
+ * makes, so this is only for single node deployments, with one subscription per group. Reading and converting the
+ * events runs on the topic producer dispatcher, as it does when publishing to Kafka.
+ */
+@Singleton
+public class EmbeddedTopicFactory implements TaggedTopicFactory {
+
+    private static final String DEFAULT_GROUP = "default";
+
+    private final OffsetStore offsetStore;
+    private final Materializer materializer;
+    private final int bufferSize;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+
+    @Inject
+    public EmbeddedTopicFactory(OffsetStore offsetStore, Materializer materializer, Config config) {
+        this.offsetStore = offsetStore;
+        this.materializer = materializer;
+        this.bufferSize = config.getInt("embedded-topics.buffer-size");
+        this.minBackoff = config.getDuration("embedded-topics.min-backoff");
+        this.maxBackoff = config.getDuration("embedded-topics.max-backoff");
+    }
+
+    @Override
+    public <Message, Event extends AggregateEvent<Event>> Topic<Message> taggedStreamWithOffset(
+            String topicId,
+            PSequence<AggregateEventTag<Event>> tags,
+            BiFunction<AggregateEventTag<Event>, Offset, Source<Pair<Message, Offset>, ?>> eventStream) {
+        return new EmbeddedTopic<>(topicId, tags, eventStream);
+    }
+
+    private class EmbeddedTopic<Message, Event extends AggregateEvent<Event>> implements Topic<Message> {
+        private final String topicId;
+        private final PSequence<AggregateEventTag<Event>> tags;
+        private final BiFunction<AggregateEventTag<Event>, Offset, Source<Pair<Message, Offset>, ?>> eventStream;
+
+        EmbeddedTopic(String topicId,
+                      PSequence<AggregateEventTag<Event>> tags,
+                      BiFunction<AggregateEventTag<Event>, Offset, Source<Pair<Message, Offset>, ?>> eventStream) {
+            this.topicId = topicId;
+            this.tags = tags;
+            this.eventStream = eventStream;
+        }
+
+        @Override
+        public TopicId topicId() {
+            return TopicId.of(topicId);
+        }
+
+        @Override
+        public Subscriber<Message> subscribe() {
+            return new EmbeddedSubscriber(DEFAULT_GROUP);
+        }
+
+        private class EmbeddedSubscriber implements Subscriber<Message> {
+            private final String groupId;
+
+            EmbeddedSubscriber(String groupId) {
+                this.groupId = groupId;
+            }
+
+            @Override
+            public Subscriber<Message> withGroupId(String groupId) {
+                return new EmbeddedSubscriber(groupId);
+            }
+
+            // The factory is not given the topic's partition key strategy, so messages here have no key
+            @Override
+            public Subscriber<com.lightbend.lagom.javadsl.api.broker.Message<Message>> withMetadata() {
+                return new MessageSubscriber<>(this, Optional.empty());
+            }
+
+            @Override
+            public Source<Message, ?> atMostOnceSource() {
+                return Source.from(tags).flatMapMerge(tags.size(), tag ->
+                        Source.fromCompletionStage(prepare(tag)).flatMapConcat(offsets ->
+                                events(tag, offsets).mapAsync(1, messageAndOffset ->
+                                        save(offsets, messageAndOffset.second())
+                                                .thenApply(done -> messageAndOffset.first()))));
+            }
+
+            @Override
+            public CompletionStage<Done> atLeastOnce(Flow<Message, Done, ?> flow) {
+                for (AggregateEventTag<Event> tag : tags) {
+                    RestartSource.withBackoff(minBackoff, maxBackoff, 0.2, () -> atLeastOnce(tag, flow))
+                            .runWith(Sink.ignore(), materializer);
+                }
+                // As with Kafka, the subscription runs for as long as the service does
+                return new CompletableFuture<>();
+            }
+
+            // The flow emits one Done per message, in order, so each is matched to the oldest offset not yet done
+            private Source<Done, NotUsed> atLeastOnce(AggregateEventTag<Event> tag, Flow<Message, Done, ?> flow) {
+                return Source.fromCompletionStage(prepare(tag)).flatMapConcat(offsets -> {
+                    Queue<Offset> inFlight = new ConcurrentLinkedQueue<>();
+                    return events(tag, offsets)
+                            .map(messageAndOffset -> {
+                                inFlight.add(messageAndOffset.second());
+                                return messageAndOffset.first();
+                            })
+                            .via(flow)
+                            .mapAsync(1, done -> save(offsets, inFlight.remove()));
+                });
+            }
+
+            private CompletionStage<OffsetDao> prepare(AggregateEventTag<Event> tag) {
+                return FutureConverters.toJava(offsetStore.prepare("embeddedTopic-" + topicId + "-" + groupId,
+                        tag.tag()));
+            }
+
+            private Source<Pair<Message, Offset>, NotUsed> events(AggregateEventTag<Event> tag, OffsetDao offsets) {
+                return eventStream.apply(tag, toDsl(offsets.loadedOffset()))
+                        .withAttributes(ActorAttributes.dispatcher(Bulkheads.TOPIC_PRODUCER))
+                        .async()
+                        .buffer(bufferSize, OverflowStrategy.backpressure())
+                        .mapMaterializedValue(mat -> NotUsed.getInstance());
+            }
+
+            private CompletionStage<Done> save(OffsetDao offsets, Offset offset) {
+                return FutureConverters.toJava(offsets.saveOffset(toQuery(offset)));
+            }
+        }
+    }
+
+    static Offset toDsl(akka.persistence.query.Offset offset) {
+        if (offset instanceof akka.persistence.query.Sequence) {
+            return Offset.sequence(((akka.persistence.query.Sequence) offset).value());
+        } else if (offset instanceof akka.persistence.query.TimeBasedUUID) {
+            return Offset.timeBasedUUID(((akka.persistence.query.TimeBasedUUID) offset).value());
+        }
+        return Offset.NONE;
+    }
+
+    static akka.persistence.query.Offset toQuery(Offset offset) {
+        if (offset instanceof Offset.Sequence) {
+            return akka.persistence.query.Offset.sequence(((Offset.Sequence) offset).value());
+        } else if (offset instanceof Offset.TimeBasedUUID) {
+            return akka.persistence.query.Offset.timeBasedUUID(((Offset.TimeBasedUUID) offset).value());
+        }
+        return NoOffset.getInstance();
+    }
+}
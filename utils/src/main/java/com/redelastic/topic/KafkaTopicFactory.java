@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.topic;
+
+import akka.japi.Pair;
+import akka.stream.ActorAttributes;
+import akka.stream.javadsl.Source;
+import com.lightbend.lagom.javadsl.api.broker.Topic;
+import com.lightbend.lagom.javadsl.broker.TopicProducer;
+import com.lightbend.lagom.javadsl.persistence.AggregateEvent;
+import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
+import com.lightbend.lagom.javadsl.persistence.Offset;
+import com.redelastic.Bulkheads;
+import org.pcollections.PSequence;
+
+import java.util.function.BiFunction;
+
+/**
+ * Publishes topics through the message broker Lagom is configured with, Kafka here. Reading and converting the
+ * events runs on the topic producer dispatcher.
+ */
+public class KafkaTopicFactory implements TaggedTopicFactory {
+
+    @Override
+    public <Message, Event extends AggregateEvent<Event>> Topic<Message> taggedStreamWithOffset(
+            String topicId,
+            PSequence<AggregateEventTag<Event>> tags,
+            BiFunction<AggregateEventTag<Event>, Offset, Source<Pair<Message, Offset>, ?>> eventStream) {
+        return TopicProducer.taggedStreamWithOffset(tags, (tag, offset) ->
+                eventStream.apply(tag, offset)
+                        .withAttributes(ActorAttributes.dispatcher(Bulkheads.TOPIC_PRODUCER))
+                        .async());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.topic;
+
+import akka.Done;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Source;
+import com.lightbend.lagom.javadsl.api.broker.Message;
+import com.lightbend.lagom.javadsl.api.broker.MetadataKey;
+import com.lightbend.lagom.javadsl.api.broker.Subscriber;
+import com.lightbend.lagom.javadsl.api.broker.kafka.PartitionKeyStrategy;
+
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * The {@link Subscriber#withMetadata()} view of a subscriber to a topic with no broker to take metadata from.
+ * <p>
+ * Each payload is wrapped in a {@link Message}, keyed as the topic's partition key strategy would key it in Kafka.
+ * Topics without a strategy give messages with no key, as Kafka does.
+ */
+public class MessageSubscriber<Payload> implements Subscriber<Message<Payload>> {
+
+    private final Subscriber<Payload> subscriber;
+    private final Optional<PartitionKeyStrategy<Payload>> partitionKeys;
+
+    public MessageSubscriber(Subscriber<Payload> subscriber, Optional<PartitionKeyStrategy<Payload>> partitionKeys) {
+        this.subscriber = subscriber;
+        this.partitionKeys = partitionKeys;
+    }
+
+    @Override
+    public Subscriber<Message<Payload>> withGroupId(String groupId) {
+        return new MessageSubscriber<>(subscriber.withGroupId(groupId), partitionKeys);
+    }
+
+    @Override
+    public Subscriber<Message<Message<Payload>>> withMetadata() {
+        return new MessageSubscriber<>(this, Optional.empty());
+    }
+
+    @Override
+    public Source<Message<Payload>, ?> atMostOnceSource() {
+        return subscriber.atMostOnceSource().map(this::message);
+    }
+
+    @Override
+    public CompletionStage<Done> atLeastOnce(Flow<Message<Payload>, Done, ?> flow) {
+        return subscriber.atLeastOnce(Flow.<Payload>create().map(this::message).via(flow));
+    }
+
+    private Message<Payload> message(Payload payload) {
+        Message<Payload> message = Message.create(payload);
+        return partitionKeys
+                .map(keys -> message.add(MetadataKey.messageKey(), keys.computePartitionKey(payload)))
+                .orElse(message);
+    }
+}
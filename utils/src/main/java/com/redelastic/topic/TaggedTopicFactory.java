@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.topic;
+
+import akka.japi.Pair;
+import akka.stream.javadsl.Source;
+import com.lightbend.lagom.javadsl.api.broker.Topic;
+import com.lightbend.lagom.javadsl.persistence.AggregateEvent;
+import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
+import com.lightbend.lagom.javadsl.persistence.Offset;
+import org.pcollections.PSequence;
+
+import java.util.function.BiFunction;
+
+/**
+ * Publishes a topic from a service's tagged events, as {@code TopicProducer.taggedStreamWithOffset} does, so that a
+ * service can publish through Kafka when deployed on its own ({@link KafkaTopicFactory}) or in memory when deployed
+ * in one JVM with its subscribers ({@link EmbeddedTopicFactory}).
+ */
+public interface TaggedTopicFactory {
+
+    /**
+     * @param topicId     the topic's id in the service descriptor, which the embedded broker stores its offsets under
+     * @param tags        the event tags the topic's messages come from
+     * @param eventStream the messages for a tag from the given offset, with the offset of the event each came from
+     */
+    <Message, Event extends AggregateEvent<Event>> Topic<Message> taggedStreamWithOffset(
+            String topicId,
+            PSequence<AggregateEventTag<Event>> tags,
+            BiFunction<AggregateEventTag<Event>, Offset, Source<Pair<Message, Offset>, ?>> eventStream);
+}
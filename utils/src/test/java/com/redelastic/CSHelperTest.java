@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CSHelperTest {
+
+    @Test
+    public void traverseLimitsParallelismAndKeepsOrder() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Integer> result = CSHelper.traverse(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8), 3, i -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            return CSHelper.delay(Duration.ofMillis(10 * (9 - i))).thenApply(done -> {
+                running.decrementAndGet();
+                return i * 10;
+            });
+        }).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList(10, 20, 30, 40, 50, 60, 70, 80), result);
+        assertEquals(3, maxRunning.get());
+    }
+
+    @Test
+    public void traverseStopsAfterFailure() throws Exception {
+        AtomicInteger started = new AtomicInteger();
+
+        try {
+            CSHelper.traverse(Arrays.asList(1, 2, 3, 4), 1, i -> {
+                started.incrementAndGet();
+                return i == 2
+                        ? CSHelper.<Integer>failedFuture(new IllegalStateException("boom"))
+                        : CompletableFuture.completedFuture(i);
+            }).toCompletableFuture().get(5, TimeUnit.SECONDS);
+            fail("Expected failure");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    public void traverseHandlesManyStagesThatAreAlreadyComplete() throws Exception {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) items.add(i);
+
+        List<Integer> result = CSHelper.traverse(items, 8, CompletableFuture::completedFuture)
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(items, result);
+    }
+
+    @Test
+    public void withTimeoutFailsSlowStages() throws Exception {
+        try {
+            CSHelper.withTimeout(new CompletableFuture<String>(), Duration.ofMillis(20))
+                    .toCompletableFuture().get(5, TimeUnit.SECONDS);
+            fail("Expected timeout");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void withTimeoutPassesThroughFastStages() throws Exception {
+        String result = CSHelper.withTimeout(CompletableFuture.completedFuture("ok"), Duration.ofSeconds(1))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals("ok", result);
+    }
+
+    @Test
+    public void withDeadlineFailsOnceOverdue() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Deadline deadline = Deadline.after(Duration.ZERO);
+
+        try {
+            CSHelper.withDeadline(deadline, () -> {
+                calls.incrementAndGet();
+                return CompletableFuture.completedFuture("ok");
+            }).toCompletableFuture().get(5, TimeUnit.SECONDS);
+            fail("Expected timeout");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void partialKeepsWhateverSucceeded() throws Exception {
+        List<Optional<String>> result = CSHelper.partial(Arrays.asList(
+                CompletableFuture.completedFuture("a"),
+                CSHelper.<String>failedFuture(new IllegalStateException()),
+                new CompletableFuture<String>()
+        ), Duration.ofMillis(20)).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList(Optional.of("a"), Optional.empty(), Optional.empty()), result);
+    }
+
+    @Test
+    public void hedgeTakesTheFirstResult() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = CSHelper.hedge(() -> calls.incrementAndGet() == 1
+                ? new CompletableFuture<String>()
+                : CompletableFuture.completedFuture("hedged"), Duration.ofMillis(20))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals("hedged", result);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void hedgeIsNotMadeWhenTheFirstCallIsFast() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = CSHelper.hedge(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("first");
+        }, Duration.ofMillis(20)).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        Thread.sleep(50);
+
+        assertEquals("first", result);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void retryRetriesRetryableFailures() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = CSHelper.retry(() -> calls.incrementAndGet() < 3
+                        ? CSHelper.<String>failedFuture(new IllegalStateException())
+                        : CompletableFuture.completedFuture("ok"),
+                5, Duration.ofMillis(1), Duration.ofMillis(10), ex -> ex instanceof IllegalStateException)
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void retryGivesUpAfterMaxAttempts() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        try {
+            CSHelper.retry(() -> {
+                        calls.incrementAndGet();
+                        return CSHelper.<String>failedFuture(new IllegalStateException());
+                    },
+                    3, Duration.ofMillis(1), Duration.ofMillis(10), ex -> true)
+                    .toCompletableFuture().get(5, TimeUnit.SECONDS);
+            fail("Expected failure");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void retryDoesNotRetryOtherFailures() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        try {
+            CSHelper.retry(() -> {
+                        calls.incrementAndGet();
+                        return CSHelper.<String>failedFuture(new IllegalArgumentException());
+                    },
+                    3, Duration.ofMillis(1), Duration.ofMillis(10), ex -> ex instanceof IllegalStateException)
+                    .toCompletableFuture().get(5, TimeUnit.SECONDS);
+            fail("Expected failure");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void pollUntilStopsOnceReached() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        int result = CSHelper.pollUntil(() -> CompletableFuture.completedFuture(calls.incrementAndGet()),
+                n -> n >= 3, Deadline.after(Duration.ofSeconds(5)), Duration.ofMillis(1), Duration.ofMillis(10))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, result);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void pollUntilReturnsTheLastReadAtTheDeadline() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        int result = CSHelper.pollUntil(() -> CompletableFuture.completedFuture(calls.incrementAndGet()),
+                n -> false, Deadline.after(Duration.ofMillis(50)), Duration.ofMillis(5), Duration.ofMillis(10))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(calls.get(), result);
+        assertTrue(calls.get() > 1);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.cluster.Cluster;
+import akka.cluster.sharding.ClusterSharding;
+import akka.cluster.sharding.ClusterShardingSettings;
+import akka.cluster.sharding.ShardRegion;
+import akka.dispatch.MessageDispatcher;
+import akka.pattern.Patterns;
+import com.typesafe.config.ConfigFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class EntityDispatchersTest {
+
+    private static ActorSystem system;
+
+    @BeforeClass
+    public static void setup() {
+        // The deployment entry the services use for their entities
+        system = ActorSystem.create("EntityDispatchersTest", ConfigFactory.parseString(
+                "akka.actor.provider = cluster\n"
+                        + "akka.remote.netty.tcp { hostname = \"127.0.0.1\", port = 0 }\n"
+                        + "akka.actor.deployment { \"/sharding/ProbeEntity/*/*\" { dispatcher = bulkheads.entity } }")
+                .withFallback(ConfigFactory.load()));
+        Cluster.get(system).join(Cluster.get(system).selfAddress());
+    }
+
+    @AfterClass
+    public static void teardown() {
+        system.terminate();
+        system = null;
+    }
+
+    @Test
+    public void runsShardedEntitiesOnTheDispatcherForTheirPath() throws Exception {
+        ActorRef region = startRegion("ProbeEntity");
+
+        assertEquals(Bulkheads.ENTITY, dispatcherOf(region, "probe-1"));
+        assertEquals(Optional.of(Bulkheads.ENTITY), EntityDispatchers.configured(system, "ProbeEntity"));
+    }
+
+    @Test
+    public void leavesOtherEntitiesOnTheDefaultDispatcher() throws Exception {
+        ActorRef region = startRegion("OtherEntity");
+
+        assertEquals("akka.actor.default-dispatcher", dispatcherOf(region, "other-1"));
+        assertEquals(Optional.empty(), EntityDispatchers.configured(system, "OtherEntity"));
+    }
+
+    private static ActorRef startRegion(String typeName) {
+        return ClusterSharding.get(system).start(typeName, Props.create(Probe.class),
+                ClusterShardingSettings.create(system), new ShardRegion.HashCodeMessageExtractor(10) {
+                    @Override
+                    public String entityId(Object message) {
+                        return (String) message;
+                    }
+                });
+    }
+
+    private static String dispatcherOf(ActorRef region, String entityId) throws Exception {
+        return (String) Patterns.ask(region, entityId, Duration.ofSeconds(10))
+                .toCompletableFuture().get(15, TimeUnit.SECONDS);
+    }
+
+    static class Probe extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .matchAny(message -> {
+                        MessageDispatcher dispatcher = (MessageDispatcher) getContext().getDispatcher();
+                        getSender().tell(dispatcher.id(), getSelf());
+                    })
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import com.lightbend.lagom.javadsl.persistence.Offset;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConsumerLagMonitorTest {
+
+    @Test
+    public void readsTheTimeOfATimeBasedOffset() {
+        long now = System.currentTimeMillis();
+        UUID uuid = ConsumerLagMonitor.startOf(now);
+
+        assertEquals(1, uuid.version());
+        assertEquals(now, ConsumerLagMonitor.timestamp(Offset.timeBasedUUID(uuid)));
+    }
+
+    @Test
+    public void otherOffsetsHaveNoTime() {
+        assertEquals(-1, ConsumerLagMonitor.timestamp(Offset.sequence(42)));
+        assertEquals(-1, ConsumerLagMonitor.timestamp(Offset.NONE));
+    }
+}
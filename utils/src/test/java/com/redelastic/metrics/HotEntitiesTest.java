@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HotEntitiesTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    @Test
+    public void reportsTheLastCompleteWindow() {
+        HotEntities hotEntities = new HotEntities(10, Duration.ofSeconds(10), 100);
+        for (int i = 0; i < 50; i++) {
+            hotEntities.commandHandled("PortfolioEntity", "market-maker", 0);
+        }
+        hotEntities.commandHandled("PortfolioEntity", "saver", 0);
+        assertTrue(hotEntities.hottestEntities("PortfolioEntity", 10, 5 * SECOND).isEmpty());
+
+        List<HotEntities.HotEntity> hottest = hotEntities.hottestEntities("PortfolioEntity", 1, 10 * SECOND);
+        assertEquals(1, hottest.size());
+        assertEquals("market-maker", hottest.get(0).getEntityId());
+        assertEquals(5.0, hottest.get(0).getCommandsPerSecond(), 0.001);
+        assertEquals(hotEntities.shardOf("market-maker"), hottest.get(0).getShard());
+    }
+
+    @Test
+    public void sumsEachShardsEntities() {
+        HotEntities hotEntities = new HotEntities(10, Duration.ofSeconds(1), 2);
+        for (int i = 0; i < 100; i++) {
+            hotEntities.commandHandled("OrderEntity", "order-" + i, 0);
+        }
+
+        List<HotEntities.ShardLoad> shards = hotEntities.hottestShards("OrderEntity", 10, SECOND);
+        assertEquals(2, shards.size());
+        assertEquals(100.0, shards.get(0).getCommandsPerSecond() + shards.get(1).getCommandsPerSecond(), 0.001);
+        assertEquals(1.0, shards.get(0).getShare() + shards.get(1).getShare(), 0.001);
+        assertTrue(shards.get(0).getCommandsPerSecond() >= shards.get(1).getCommandsPerSecond());
+    }
+
+    @Test
+    public void mergesEntitiesCountedInDifferentStripes() {
+        HotEntities hotEntities = new HotEntities(10, Duration.ofSeconds(1), 100);
+        for (int i = 1; i <= 20; i++) {
+            for (int j = 0; j < i; j++) {
+                hotEntities.commandHandled("PortfolioEntity", "portfolio-" + i, 0);
+            }
+        }
+
+        List<HotEntities.HotEntity> hottest = hotEntities.hottestEntities("PortfolioEntity", 3, SECOND);
+        assertEquals(3, hottest.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("portfolio-" + (20 - i), hottest.get(i).getEntityId());
+            assertEquals(20.0 - i, hottest.get(i).getCommandsPerSecond(), 0.001);
+        }
+    }
+
+    @Test
+    public void countsEveryCommandFromConcurrentHandlers() throws Exception {
+        HotEntities hotEntities = new HotEntities(1000, Duration.ofSeconds(1), 10);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> handlers = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                handlers.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        hotEntities.commandHandled("OrderEntity", "order-" + (i % 100), 0);
+                    }
+                }));
+            }
+            for (Future<?> handler : handlers) {
+                handler.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        double total = hotEntities.hottestShards("OrderEntity", 10, SECOND).stream()
+                .mapToDouble(HotEntities.ShardLoad::getCommandsPerSecond)
+                .sum();
+        assertEquals(40000.0, total, 0.001);
+        assertEquals(400.0, hotEntities.hottestEntities("OrderEntity", 1, SECOND).get(0).getCommandsPerSecond(), 0.001);
+    }
+
+    @Test
+    public void usesLagomsShards() {
+        HotEntities hotEntities = new HotEntities(10, Duration.ofSeconds(1), 100);
+        assertEquals(String.valueOf(Math.abs("portfolio-1".hashCode()) % 100), hotEntities.shardOf("portfolio-1"));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentedExecutorTest {
+
+    @Test
+    public void timesTasksOnceTheSystemHasARegistry() throws Exception {
+        InstrumentedExecutor executor = InstrumentedExecutor.start("timed", "pool", pool());
+        runTask(executor);
+
+        MetricsRegistry metrics = new MetricsRegistry();
+        InstrumentedExecutor.exportTo("timed", metrics);
+        runTask(executor);
+        runTask(executor);
+
+        // The pool counts a task done just after it returns
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, metrics.timer("dispatcher_queue_wait", "dispatcher", "pool").count());
+        assertEquals(2, metrics.timer("dispatcher_task", "dispatcher", "pool").count());
+    }
+
+    @Test
+    public void reportsQueueAndActiveThreads() throws Exception {
+        InstrumentedExecutor executor = InstrumentedExecutor.start("busy", "pool", pool());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        executor.execute(() -> await(release));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, executor.activeThreads());
+        assertEquals(1, executor.queueLength());
+        assertEquals(1, executor.maximumThreads());
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void forgetsExecutorsThatShutDown() {
+        InstrumentedExecutor executor = InstrumentedExecutor.start("stopping", "pool", pool());
+        assertTrue(InstrumentedExecutor.executors("stopping").containsKey("pool"));
+
+        executor.shutdown();
+        assertFalse(InstrumentedExecutor.executors("stopping").containsKey("pool"));
+    }
+
+    private static ThreadPoolExecutor pool() {
+        return new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    }
+
+    private static void runTask(InstrumentedExecutor executor) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void sameNameAndLabelsIsTheSameMetric() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        assertSame(metrics.timer("request", "route", "a"), metrics.timer("request", "route", "a"));
+        assertSame(metrics.counter("errors"), metrics.counter("errors"));
+    }
+
+    @Test
+    public void timersReportQuantiles() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        MetricsRegistry.Timer timer = metrics.timer("request");
+        for (int i = 1; i <= 100; i++) {
+            timer.record(Duration.ofMillis(i));
+        }
+
+        assertEquals(100, timer.count());
+        long median = timer.quantile(0.5).toMillis();
+        assertTrue("median was " + median, median >= 49 && median <= 51);
+    }
+
+    @Test
+    public void exportsPrometheusText() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.timer("request", "route", "getPortfolio").record(Duration.ofMillis(20));
+        metrics.counter("responses", "route", "getPortfolio", "status", "200").increment();
+
+        String text = metrics.toPrometheus();
+
+        assertTrue(text, text.contains("# TYPE request_seconds summary\n"));
+        assertTrue(text, text.contains("request_seconds{route=\"getPortfolio\",quantile=\"0.5\"} 0.02"));
+        assertTrue(text, text.contains("request_seconds_count{route=\"getPortfolio\"} 1\n"));
+        assertTrue(text, text.contains("responses_total{route=\"getPortfolio\",status=\"200\"} 1\n"));
+    }
+
+    @Test
+    public void escapesLabelValues() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.counter("responses", "route", "a\"b").increment();
+
+        assertTrue(metrics.toPrometheus().contains("responses_total{route=\"a\\\"b\"} 1\n"));
+    }
+
+    @Test
+    public void exportsDistributionsAndGauges() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.distribution("entity_recovery_events", "entity", "PortfolioEntity").record(12);
+        MetricsRegistry.Gauge inFlight = metrics.gauge("entity_asks_in_flight", "entity", "PortfolioEntity");
+        inFlight.increment();
+        inFlight.increment();
+        inFlight.decrement();
+
+        String text = metrics.toPrometheus();
+
+        assertTrue(text, text.contains("# TYPE entity_recovery_events summary\n"));
+        assertTrue(text, text.contains("entity_recovery_events{entity=\"PortfolioEntity\",quantile=\"0.5\"} 12\n"));
+        assertTrue(text, text.contains("entity_recovery_events_sum{entity=\"PortfolioEntity\"} 12\n"));
+        assertTrue(text, text.contains("# TYPE entity_asks_in_flight gauge\n"));
+        assertTrue(text, text.contains("entity_asks_in_flight{entity=\"PortfolioEntity\"} 1\n"));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.metrics;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpaceSavingTest {
+
+    @Test
+    public void countsExactlyWhileThereAreFreeCounters() {
+        SpaceSaving sketch = new SpaceSaving(3);
+        offer(sketch, "a", 5);
+        offer(sketch, "b", 2);
+        offer(sketch, "c", 7);
+
+        List<SpaceSaving.Counter> top = sketch.top(3);
+        assertEquals("c", top.get(0).key);
+        assertEquals(7, top.get(0).count());
+        assertEquals("a", top.get(1).key);
+        assertEquals("b", top.get(2).key);
+        assertEquals(0, top.get(2).error);
+        assertEquals(14, sketch.total());
+    }
+
+    @Test
+    public void findsFrequentKeysAmongManyRareOnes() {
+        SpaceSaving sketch = new SpaceSaving(10);
+        for (int i = 0; i < 1000; i++) {
+            sketch.offer("hot");
+            sketch.offer("rare-" + i);
+            if (i % 4 == 0) sketch.offer("warm");
+        }
+
+        List<SpaceSaving.Counter> top = sketch.top(2);
+        assertEquals("hot", top.get(0).key);
+        assertEquals("warm", top.get(1).key);
+        for (SpaceSaving.Counter counter : top) {
+            long trueCount = counter.key.equals("hot") ? 1000 : 250;
+            assertTrue(counter.count() >= trueCount);
+            assertTrue(counter.count() - counter.error <= trueCount);
+        }
+    }
+
+    @Test
+    public void aNewKeyInheritsTheLeastCount() {
+        SpaceSaving sketch = new SpaceSaving(2);
+        offer(sketch, "a", 4);
+        offer(sketch, "b", 2);
+        sketch.offer("c");
+
+        List<SpaceSaving.Counter> top = sketch.top(2);
+        assertEquals("c", top.get(1).key);
+        assertEquals(3, top.get(1).count());
+        assertEquals(2, top.get(1).error);
+    }
+
+    private static void offer(SpaceSaving sketch, String key, int times) {
+        for (int i = 0; i < times; i++) {
+            sketch.offer(key);
+        }
+    }
+}
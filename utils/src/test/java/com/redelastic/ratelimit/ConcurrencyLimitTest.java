@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.ratelimit;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimitTest {
+
+    private static final long SLOW = Duration.ofSeconds(2).toNanos();
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+
+    @Test
+    public void rejectsOverTheLimit() {
+        ConcurrencyLimit limit = new ConcurrencyLimit(1, 2, Duration.ofSeconds(1));
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+
+        limit.release(FAST, 0);
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    public void slowRequestsHalveTheLimitOncePerThreshold() {
+        ConcurrencyLimit limit = new ConcurrencyLimit(2, 16, Duration.ofSeconds(1));
+        for (int i = 0; i < 3; i++) limit.tryAcquire();
+
+        limit.release(SLOW, 0);
+        limit.release(SLOW, 1);
+        assertEquals(8, limit.limit());
+
+        limit.release(SLOW, SLOW);
+        assertEquals(4, limit.limit());
+    }
+
+    @Test
+    public void unmeasuredRequestsFreeTheirSlotWithoutMovingTheLimit() {
+        ConcurrencyLimit limit = new ConcurrencyLimit(1, 2, Duration.ofSeconds(1));
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+
+        limit.releaseUnmeasured();
+        assertEquals(1, limit.inFlight());
+        assertEquals(2, limit.limit());
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    public void fastRequestsRaiseTheLimitAgain() {
+        ConcurrencyLimit limit = new ConcurrencyLimit(2, 16, Duration.ofSeconds(1));
+        limit.tryAcquire();
+        limit.release(SLOW, 0);
+        assertEquals(8, limit.limit());
+
+        for (int i = 0; i < 8; i++) {
+            limit.tryAcquire();
+            limit.release(FAST, SLOW);
+        }
+        assertEquals(9, limit.limit());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.ratelimit;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketsTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void allowsBurstThenLimitsToRate() {
+        TokenBuckets buckets = new TokenBuckets(10, 5);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, buckets.tryAcquire("client", 1, 0));
+        }
+        long wait = buckets.tryAcquire("client", 1, 0);
+        assertEquals(SECOND / 10, wait);
+
+        assertEquals(0, buckets.tryAcquire("client", 1, wait));
+    }
+
+    @Test
+    public void keysHaveSeparateBuckets() {
+        TokenBuckets buckets = new TokenBuckets(1, 1);
+
+        assertEquals(0, buckets.tryAcquire("a", 1, 0));
+        assertTrue(buckets.tryAcquire("a", 1, 0) > 0);
+        assertEquals(0, buckets.tryAcquire("b", 1, 0));
+    }
+
+    @Test
+    public void costTakesSeveralTokens() {
+        TokenBuckets buckets = new TokenBuckets(1, 5);
+
+        assertEquals(0, buckets.tryAcquire("client", 5, 0));
+        assertEquals(5 * SECOND, buckets.tryAcquire("client", 5, 0));
+    }
+
+    @Test
+    public void evictsOnlyFullyRefilledBuckets() {
+        TokenBuckets buckets = new TokenBuckets(1, 2);
+        buckets.tryAcquire("old", 1, 0);
+        buckets.tryAcquire("new", 1, SECOND);
+
+        assertEquals(1, buckets.evictIdle(2 * SECOND));
+        assertEquals(1, buckets.size());
+        // The evicted key starts again with the full burst, as it would have had anyway
+        assertEquals(0, buckets.tryAcquire("old", 2, 2 * SECOND));
+    }
+
+    @Test
+    public void growsAndStillFindsEveryKey() {
+        TokenBuckets buckets = new TokenBuckets(1, 1);
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(0, buckets.tryAcquire("client-" + i, 1, 0));
+        }
+        assertEquals(10_000, buckets.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(buckets.tryAcquire("client-" + i, 1, 0) > 0);
+        }
+
+        assertEquals(10_000, buckets.evictIdle(SECOND));
+        assertEquals(0, buckets.size());
+    }
+}
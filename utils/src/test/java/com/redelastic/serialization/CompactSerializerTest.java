@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.serialization;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lightbend.lagom.serialization.JacksonJsonMigration;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactSerializerTest {
+
+    private final CompactSerializer serializer =
+            new CompactSerializer(getClass().getClassLoader(), Collections.emptyMap(), 1024);
+
+    @Test
+    public void roundTripsValuesAndOptionals() {
+        Sample sample = new Sample("IBM", 10);
+        assertEquals(Sample.class.getName(), serializer.manifest(sample));
+        assertEquals(sample, roundTrip(serializer, sample));
+
+        assertEquals("?" + Sample.class.getName(), serializer.manifest(Optional.of(sample)));
+        assertEquals(Optional.of(sample), roundTrip(serializer, Optional.of(sample)));
+
+        assertEquals("?", serializer.manifest(Optional.empty()));
+        assertEquals(0, serializer.toBinary(Optional.empty()).length);
+        assertEquals(Optional.empty(), roundTrip(serializer, Optional.empty()));
+    }
+
+    @Test
+    public void compressesLargePayloads() {
+        Sample small = new Sample("IBM", 10);
+        assertEquals(CompactSerializer.PLAIN, serializer.toBinary(small)[0]);
+
+        Sample large = new Sample(String.join("", Collections.nCopies(500, "IBM")), 10);
+        byte[] bytes = serializer.toBinary(large);
+        assertEquals(CompactSerializer.GZIP, bytes[0]);
+        assertTrue(bytes.length < 1024);
+        assertEquals(large, serializer.fromBinary(bytes, serializer.manifest(large)));
+    }
+
+    @Test
+    public void migratesOlderVersions() {
+        CompactSerializer migrating = new CompactSerializer(getClass().getClassLoader(),
+                Collections.singletonMap(Sample.class.getName(), new RenameShares()), 1024);
+        assertEquals(Sample.class.getName() + "#2", migrating.manifest(new Sample("IBM", 10)));
+
+        // Version 1 called shares "quantity", and had a property since removed
+        ObjectNode version1 = JsonNodeFactory.instance.objectNode()
+                .put("symbol", "IBM")
+                .put("quantity", 10)
+                .put("exchange", "NYSE");
+        byte[] bytes = serializer.toBinary(version1);
+        assertEquals(new Sample("IBM", 10), migrating.fromBinary(bytes, Sample.class.getName()));
+        assertEquals(new Sample("IBM", 10), migrating.fromBinary(bytes, Sample.class.getName() + "#1"));
+    }
+
+    private static Object roundTrip(CompactSerializer serializer, Object value) {
+        return serializer.fromBinary(serializer.toBinary(value), serializer.manifest(value));
+    }
+
+    public static final class Sample {
+        private final String symbol;
+        private final int shares;
+
+        @JsonCreator
+        public Sample(@JsonProperty("symbol") String symbol, @JsonProperty("shares") int shares) {
+            this.symbol = symbol;
+            this.shares = shares;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public int getShares() {
+            return shares;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Sample)) return false;
+            Sample other = (Sample) o;
+            return symbol.equals(other.symbol) && shares == other.shares;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(symbol, shares);
+        }
+    }
+
+    static class RenameShares extends JacksonJsonMigration {
+        @Override
+        public int currentVersion() {
+            return 2;
+        }
+
+        @Override
+        public JsonNode transform(int fromVersion, JsonNode json) {
+            ObjectNode root = (ObjectNode) json;
+            if (fromVersion < 2) root.set("shares", root.remove("quantity"));
+            return root;
+        }
+    }
+}
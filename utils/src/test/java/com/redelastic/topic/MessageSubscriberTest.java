@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2019 RedElastic Inc.
+ * See LICENSE file for details.
+ */
+
+package com.redelastic.topic;
+
+import akka.Done;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import com.lightbend.lagom.javadsl.api.broker.Message;
+import com.lightbend.lagom.javadsl.api.broker.MetadataKey;
+import com.lightbend.lagom.javadsl.api.broker.Subscriber;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class MessageSubscriberTest {
+
+    private static ActorSystem system;
+    private static Materializer materializer;
+
+    @BeforeClass
+    public static void setup() {
+        system = ActorSystem.create("MessageSubscriberTest");
+        materializer = ActorMaterializer.create(system);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    @Test
+    public void keysMessagesWithThePartitionKeyStrategy() throws Exception {
+        Subscriber<Message<String>> subscriber =
+                new MessageSubscriber<>(new ListSubscriber("portfolio-1:buy", "portfolio-2:sell"),
+                        Optional.of(payload -> payload.substring(0, payload.indexOf(':'))));
+
+        List<Message<String>> messages = subscriber.atMostOnceSource()
+                .runWith(Sink.seq(), materializer)
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, messages.size());
+        assertEquals("portfolio-1:buy", messages.get(0).getPayload());
+        assertEquals(Optional.of("portfolio-1"), messages.get(0).get(MetadataKey.messageKey()));
+        assertEquals(Optional.of("portfolio-2"), messages.get(1).get(MetadataKey.messageKey()));
+    }
+
+    @Test
+    public void leavesMessagesUnkeyedWithoutAStrategy() throws Exception {
+        List<Message<String>> received = new CopyOnWriteArrayList<>();
+        Subscriber<Message<String>> subscriber =
+                new MessageSubscriber<>(new ListSubscriber("first", "second"), Optional.empty());
+
+        subscriber.atLeastOnce(Flow.<Message<String>>create().map(message -> {
+            received.add(message);
+            return Done.getInstance();
+        })).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, received.size());
+        assertEquals("second", received.get(1).getPayload());
+        assertEquals(Optional.empty(), received.get(0).get(MetadataKey.messageKey()));
+    }
+
+    /**
+     * Hands its subscribers a fixed list of payloads.
+     */
+    private static class ListSubscriber implements Subscriber<String> {
+        private final List<String> payloads;
+
+        ListSubscriber(String... payloads) {
+            this.payloads = Arrays.asList(payloads);
+        }
+
+        @Override
+        public Subscriber<String> withGroupId(String groupId) {
+            return this;
+        }
+
+        @Override
+        public Subscriber<Message<String>> withMetadata() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Source<String, ?> atMostOnceSource() {
+            return Source.from(payloads);
+        }
+
+        @Override
+        public CompletionStage<Done> atLeastOnce(Flow<String, Done, ?> flow) {
+            return Source.from(payloads).via(flow).runWith(Sink.ignore(), materializer);
+        }
+    }
+}
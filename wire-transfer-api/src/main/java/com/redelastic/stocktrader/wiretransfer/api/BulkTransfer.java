@@ -0,0 +1,16 @@
+package com.redelastic.stocktrader.wiretransfer.api;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * A single transfer submitted as part of a bulk request. The client reference is opaque to the service, it is echoed
+ * back with the assigned transfer ID so the caller can correlate the two.
+ */
+@Value
+@Builder
+public class BulkTransfer {
+    @NonNull String clientRef;
+    @NonNull Transfer transfer;
+}
@@ -0,0 +1,13 @@
+package com.redelastic.stocktrader.wiretransfer.api;
+
+import com.redelastic.stocktrader.TransferId;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+@Value
+@Builder
+public class BulkTransferAccepted {
+    @NonNull String clientRef;
+    @NonNull TransferId transferId;
+}
@@ -6,6 +6,7 @@ import com.lightbend.lagom.javadsl.api.Service;
 import com.lightbend.lagom.javadsl.api.ServiceCall;
 import com.lightbend.lagom.javadsl.api.broker.Topic;
 import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.serialization.CompactSerializerFactory;
 import org.pcollections.PSequence;
 import com.lightbend.lagom.javadsl.api.transport.Method;
 
@@ -22,6 +23,20 @@ public interface WireTransferService extends Service {
 
     ServiceCall<Transfer, TransferId> transferFunds();
 
+    /**
+     * Start many transfers over a single connection. Each accepted transfer is streamed back, paired with the
+     * client reference it was submitted with, as soon as its saga has been started. Results are not necessarily in
+     * submission order. The connection is closed when the request stream completes, so keep it open until every
+     * transfer has been accepted. The response fails if any transfer cannot be started.
+     */
+    ServiceCall<Source<BulkTransfer, NotUsed>, Source<BulkTransferAccepted, NotUsed>> bulkTransferFunds();
+
+    /**
+     * Non-streaming variant of {@link #bulkTransferFunds()} for clients that prefer to submit a large batch as a
+     * single request.
+     */
+    ServiceCall<PSequence<BulkTransfer>, PSequence<BulkTransferAccepted>> transferFundsBatch();
+
     ServiceCall<NotUsed, PSequence<TransactionSummary>> getAllTransactionsFor(String portfolioId);
 
     ServiceCall<NotUsed, Source<String, ?>> transferStream();
@@ -33,12 +48,15 @@ public interface WireTransferService extends Service {
         // @formatter:off
         return named("reactivestock-wiretransfer").withCalls(
             call(this::transferFunds),
+            call(this::bulkTransferFunds),
+            restCall(Method.POST, "/api/transfer/batch", this::transferFundsBatch),
             call(this::transferStream),
             restCall(Method.GET, "/api/transfer/:portfolioId", this::getAllTransactionsFor)            
         )
         .withTopics(
             topic(TRANSFER_REQUEST_TOPIC_ID, this::transferRequest)
         )
+        .withSerializerFactory(new CompactSerializerFactory())
         .withAutoAcl(true);
         // @formatter:on
     }
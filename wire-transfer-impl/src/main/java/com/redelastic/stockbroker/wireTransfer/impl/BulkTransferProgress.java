@@ -0,0 +1,53 @@
+package com.redelastic.stockbroker.wireTransfer.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks a single bulk submission, logging how many transfers have been accepted and the rate at which sagas are
+ * being started. One instance per bulk request.
+ */
+class BulkTransferProgress {
+
+    private final Logger log = LoggerFactory.getLogger(BulkTransferProgress.class);
+
+    private final String requestId;
+    private final int reportInterval;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong accepted = new AtomicLong();
+
+    BulkTransferProgress(String requestId, int reportInterval) {
+        this.requestId = requestId;
+        this.reportInterval = reportInterval;
+    }
+
+    void transferAccepted() {
+        long count = accepted.incrementAndGet();
+        if (reportInterval > 0 && count % reportInterval == 0) {
+            log.info("Bulk transfer {}: {} transfers accepted ({} / s)", requestId, count, throughput(count));
+        }
+    }
+
+    void completed() {
+        long count = accepted.get();
+        log.info("Bulk transfer {} completed: {} transfers accepted in {} ms ({} / s)",
+                requestId, count, elapsed().toMillis(), throughput(count));
+    }
+
+    void failed(Throwable cause) {
+        log.warn("Bulk transfer {} failed after {} transfers accepted in {} ms",
+                requestId, accepted.get(), elapsed().toMillis(), cause);
+    }
+
+    private Duration elapsed() {
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+
+    private long throughput(long count) {
+        long millis = Math.max(1, elapsed().toMillis());
+        return count * 1000 / millis;
+    }
+}
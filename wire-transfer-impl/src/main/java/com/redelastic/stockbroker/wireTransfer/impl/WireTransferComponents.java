@@ -0,0 +1,17 @@
+package com.redelastic.stockbroker.wireTransfer.impl;
+
+import com.google.inject.AbstractModule;
+import com.redelastic.stockbroker.wireTransfer.impl.transfer.StuckTransferSweeper;
+import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferRepository;
+import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferRepositoryImpl;
+
+/**
+ * What the wire transfer service needs bound however it is deployed.
+ */
+public class WireTransferComponents extends AbstractModule {
+    @Override
+    protected void configure() {
+        bind(TransferRepository.class).to(TransferRepositoryImpl.class);
+        bind(StuckTransferSweeper.class).asEagerSingleton();
+    }
+}
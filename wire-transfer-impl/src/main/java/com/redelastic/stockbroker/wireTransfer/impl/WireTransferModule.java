@@ -0,0 +1,48 @@
+package com.redelastic.stockbroker.wireTransfer.impl;
+
+import com.google.inject.AbstractModule;
+import com.lightbend.lagom.javadsl.server.ServiceGuiceSupport;
+import com.redelastic.metrics.ConsumerLagRouter;
+import com.redelastic.metrics.MetricsRegistry;
+import com.redelastic.metrics.MetricsRouter;
+import com.redelastic.metrics.DispatcherMetrics;
+import com.redelastic.metrics.StartupTimer;
+import com.redelastic.stockbroker.wireTransfer.impl.transfer.SagaLatencyRouter;
+import com.redelastic.stockbroker.wireTransfer.impl.transfer.StuckTransfersRouter;
+import com.redelastic.stocktrader.portfolio.api.PortfolioService;
+import com.redelastic.stocktrader.serialization.CompactSerializerFactory;
+import com.redelastic.stocktrader.wiretransfer.api.WireTransferService;
+import com.redelastic.topic.KafkaTopicFactory;
+import com.redelastic.topic.TaggedTopicFactory;
+import com.typesafe.config.Config;
+import play.Environment;
+
+/**
+ * The wire transfer service deployed on its own, calling the portfolio service over HTTP and publishing through
+ * Kafka.
+ */
+@SuppressWarnings("WeakerAccess")
+public class WireTransferModule extends AbstractModule implements ServiceGuiceSupport {
+    private final Config config;
+
+    public WireTransferModule(Environment environment, Config config) {
+        this.config = config;
+    }
+
+    @Override
+    protected void configure() {
+        // Descriptors create their serializer factories themselves, so configure them from here
+        CompactSerializerFactory.configure(config);
+        bindService(WireTransferService.class, WireTransferServiceImpl.class,
+                additionalRouter(MetricsRouter.class),
+                additionalRouter(ConsumerLagRouter.class),
+                additionalRouter(StuckTransfersRouter.class),
+                additionalRouter(SagaLatencyRouter.class));
+        bind(MetricsRegistry.class).toInstance(new MetricsRegistry());
+        bind(TaggedTopicFactory.class).to(KafkaTopicFactory.class);
+        install(new WireTransferComponents());
+        bindClient(PortfolioService.class);
+        bind(DispatcherMetrics.class).asEagerSingleton();
+        bind(StartupTimer.class).asEagerSingleton();
+    }
+}
@@ -4,22 +4,34 @@ import akka.NotUsed;
 import akka.japi.Pair;
 import akka.japi.pf.FI;
 import akka.japi.pf.PFBuilder;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
 import akka.stream.javadsl.Flow;
 import com.lightbend.lagom.javadsl.api.ServiceCall;
 import com.lightbend.lagom.javadsl.api.broker.Topic;
-import com.lightbend.lagom.javadsl.broker.TopicProducer;
+import com.lightbend.lagom.javadsl.api.transport.ResponseHeader;
+import com.lightbend.lagom.javadsl.server.HeaderServiceCall;
+import com.redelastic.CSHelper;
+import com.redelastic.Deadline;
+import com.redelastic.metrics.ConsumerLagMonitor;
+import com.redelastic.topic.TaggedTopicFactory;
 import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
 import com.lightbend.lagom.javadsl.persistence.Offset;
 import com.lightbend.lagom.javadsl.persistence.ReadSide;
 import com.lightbend.lagom.javadsl.persistence.PersistentEntityRegistry;
 import com.lightbend.lagom.javadsl.persistence.cassandra.CassandraSession;
+import com.redelastic.stockbroker.wireTransfer.impl.transfer.PendingTransferIndexProcessor;
 import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferCommand;
 import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferEvent;
 import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferEventProcessor;
+import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferNetting;
 import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferProcess;
 import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferRepositoryImpl;
+import com.redelastic.stocktrader.ConsistencyToken;
 import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.wiretransfer.api.BulkTransfer;
+import com.redelastic.stocktrader.wiretransfer.api.BulkTransferAccepted;
 import com.redelastic.stocktrader.wiretransfer.api.Transfer;
 import com.redelastic.stocktrader.wiretransfer.api.TransferCompleted;
 import com.redelastic.stocktrader.wiretransfer.api.TransferRequest;
@@ -31,11 +43,14 @@ import com.lightbend.lagom.javadsl.pubsub.PubSubRegistry;
 import com.lightbend.lagom.javadsl.pubsub.TopicId;
 import java.util.concurrent.CompletableFuture;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.typesafe.config.Config;
 
 import org.pcollections.PSequence;
 import org.pcollections.TreePVector;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.Optional;
 import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 import java.util.List;
@@ -48,64 +63,166 @@ import javax.inject.Inject;
 
 public class WireTransferServiceImpl implements WireTransferService {
 
+    private static final Duration CONSISTENCY_POLL_INTERVAL = Duration.ofMillis(25);
+    private static final Duration CONSISTENCY_MAX_POLL_INTERVAL = Duration.ofMillis(400);
+
     private final TransferRepositoryImpl transferRepository;
+    private final TransferNetting transferNetting;
+    private final ConsumerLagMonitor lagMonitor;
+    private final TaggedTopicFactory topics;
     private final CassandraSession db;
     private final PubSubRegistry pubSub;
+    private final Materializer materializer;
+    private final int bulkParallelism;
+    private final int bulkProgressInterval;
+    private final Duration consistencyMaxWait;
 
     @Inject
     WireTransferServiceImpl(TransferRepositoryImpl transferRepository,
+                            TransferNetting transferNetting,
+                            ConsumerLagMonitor lagMonitor,
+                            TaggedTopicFactory topics,
                             ReadSide readSide,
                             CassandraSession db,
-                            PubSubRegistry pubSub) {
+                            PubSubRegistry pubSub,
+                            Materializer materializer,
+                            Config config) {
         this.transferRepository = transferRepository;
+        this.transferNetting = transferNetting;
+        this.lagMonitor = lagMonitor;
+        this.topics = topics;
         this.db = db;
         this.pubSub = pubSub;
+        this.materializer = materializer;
+        this.bulkParallelism = config.getInt("wiretransfer.bulk.parallelism");
+        this.bulkProgressInterval = config.getInt("wiretransfer.bulk.progress-interval");
+        this.consistencyMaxWait = config.getDuration("wiretransfer.consistency.max-wait");
         readSide.register(TransferProcess.class);
         readSide.register(TransferEventProcessor.class);
+        readSide.register(PendingTransferIndexProcessor.class);
     }
 
+    /**
+     * Responds with a consistency token for the transfer, which {@link #getAllTransactionsFor} can wait for. Summaries
+     * have no version, so the token only names the transfer.
+     */
     @Override
     public ServiceCall<Transfer, TransferId> transferFunds() {
+        return HeaderServiceCall.of((requestHeader, transfer) ->
+            startTransfer(transfer).thenApply(transferId -> Pair.create(
+                ResponseHeader.OK.withHeader(ConsistencyToken.HEADER,
+                    ConsistencyToken.forEntity(transferId.getId()).encode()),
+                transferId)));
+    }
+
+    @Override
+    public ServiceCall<Source<BulkTransfer, NotUsed>, Source<BulkTransferAccepted, NotUsed>> bulkTransferFunds() {
+        return transfers -> CompletableFuture.completedFuture(startTransfers(transfers));
+    }
+
+    @Override
+    public ServiceCall<PSequence<BulkTransfer>, PSequence<BulkTransferAccepted>> transferFundsBatch() {
+        return transfers ->
+            startTransfers(Source.from(transfers))
+                .runWith(Sink.seq(), materializer)
+                .thenApply(TreePVector::from);
+    }
+
+    /**
+     * Start a saga for each transfer, with at most bulkParallelism outstanding at once. Each transfer is emitted as
+     * soon as its entity has accepted it, so the output is not in submission order.
+     */
+    private Source<BulkTransferAccepted, NotUsed> startTransfers(Source<BulkTransfer, ?> transfers) {
+        BulkTransferProgress progress = new BulkTransferProgress(TransferId.newId().getId(), bulkProgressInterval);
+
+        return transfers
+            .mapMaterializedValue(mat -> NotUsed.getInstance())
+            .mapAsyncUnordered(bulkParallelism, bulkTransfer ->
+                startTransfer(bulkTransfer.getTransfer())
+                    .thenApply(transferId -> BulkTransferAccepted.builder()
+                        .clientRef(bulkTransfer.getClientRef())
+                        .transferId(transferId)
+                        .build()))
+            .map(accepted -> {
+                progress.transferAccepted();
+                return accepted;
+            })
+            .watchTermination((mat, done) -> {
+                done.whenComplete((d, failure) -> {
+                    if (failure == null) progress.completed();
+                    else progress.failed(failure);
+                });
+                return mat;
+            });
+    }
+
+    private CompletionStage<TransferId> startTransfer(Transfer transfer) {
+        if (transferNetting.isEnabled()) {
+            return transferNetting.submit(transfer);
+        }
+
         TransferId transferId = TransferId.newId();
 
-        return transfer ->
-            transferRepository
-                .get(transferId)
-                .ask(TransferCommand.TransferFunds.builder()
-                    .source(transfer.getSourceAccount())
-                    .destination(transfer.getDestinationAccount())
-                    .amount(transfer.getFunds())
-                    .build()
-                )
-                .thenApply(done -> transferId);
+        return transferRepository
+            .get(transferId)
+            .ask(TransferCommand.TransferFunds.builder()
+                .source(transfer.getSourceAccount())
+                .destination(transfer.getDestinationAccount())
+                .amount(transfer.getFunds())
+                .build()
+            )
+            .thenApply(done -> transferId);
     }
 
     @Override
     public Topic<TransferRequest> transferRequest() {
-        return TopicProducer.taggedStreamWithOffset(TransferEvent.TAG.allTags(), this::transferRequestSource);
+        return topics.taggedStreamWithOffset(TRANSFER_REQUEST_TOPIC_ID, TransferEvent.TAG.allTags(),
+                lagMonitor.topicProducer("transferRequest", this::transferRequestSource));
     }
 
+    /**
+     * Transfer summaries are written by {@link TransferEventProcessor}, so lag behind the transfers themselves. Given
+     * a consistency token from {@link #transferFunds()}, wait a bounded time for the transfer to be summarised before
+     * reading, checking a single row rather than the whole list each time.
+     */
     @Override
     public ServiceCall<NotUsed, PSequence<TransactionSummary>> getAllTransactionsFor(String portfolioId) {
-        return request -> {
-            Predicate<TransactionSummary> predicate = s -> s.source.equals(portfolioId) || s.destination.equals(portfolioId);
-            CompletionStage<PSequence<TransactionSummary>> result = db.selectAll(
-                "SELECT transferId, status, dateTime, source, destination, amount FROM transfer_summary;").thenApply(rows -> {
-                    List<TransactionSummary> summary = rows.stream().map(row -> 
-                        TransactionSummary.builder()
-                            .id(row.getString("transferid"))
-                            .status(row.getString("status"))
-                            .dateTime(row.getString("dateTime"))
-                            .source(row.getString("source"))
-                            .destination(row.getString("destination"))
-                            .amount(row.getString("amount"))
-                            .build())                        
-                        .filter(predicate)
-                        .collect(Collectors.toList());
-                    return TreePVector.from(summary);
-                });
-            return result;
-        };
+        return HeaderServiceCall.of((requestHeader, request) -> {
+            Optional<ConsistencyToken> token = ConsistencyToken.parse(requestHeader.getHeader(ConsistencyToken.HEADER));
+            if (!token.isPresent()) {
+                return transactionsFor(portfolioId).thenApply(transactions -> Pair.create(ResponseHeader.OK, transactions));
+            }
+            return CSHelper.pollUntil(
+                    () -> db.selectOne("SELECT transferId FROM transfer_summary WHERE transferId = ?",
+                        token.get().getEntityId()),
+                    Optional::isPresent,
+                    Deadline.after(consistencyMaxWait),
+                    CONSISTENCY_POLL_INTERVAL,
+                    CONSISTENCY_MAX_POLL_INTERVAL)
+                .thenCompose(row -> transactionsFor(portfolioId).thenApply(transactions -> Pair.create(
+                    ResponseHeader.OK.withHeader(ConsistencyToken.REACHED_HEADER, String.valueOf(row.isPresent())),
+                    transactions)));
+        });
+    }
+
+    private CompletionStage<PSequence<TransactionSummary>> transactionsFor(String portfolioId) {
+        Predicate<TransactionSummary> predicate = s -> s.source.equals(portfolioId) || s.destination.equals(portfolioId);
+        CompletionStage<PSequence<TransactionSummary>> result = db.selectAll(
+            "SELECT transferId, status, dateTime, source, destination, amount FROM transfer_summary;").thenApply(rows -> {
+                List<TransactionSummary> summary = rows.stream().map(row -> 
+                    TransactionSummary.builder()
+                        .id(row.getString("transferid"))
+                        .status(row.getString("status"))
+                        .dateTime(row.getString("dateTime"))
+                        .source(row.getString("source"))
+                        .destination(row.getString("destination"))
+                        .amount(row.getString("amount"))
+                        .build())                        
+                    .filter(predicate)
+                    .collect(Collectors.toList());
+                return TreePVector.from(summary);
+            });
+        return result;
     }
 
     @Override
@@ -0,0 +1,16 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import com.redelastic.stocktrader.TransferId;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * One of the original client transfers folded into a net transfer saga.
+ */
+@Value
+public class NettedTransfer {
+    @NonNull TransferId transferId;
+    @NonNull BigDecimal amount;
+}
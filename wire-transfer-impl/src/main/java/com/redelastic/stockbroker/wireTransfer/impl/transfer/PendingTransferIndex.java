@@ -0,0 +1,129 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.Done;
+import com.datastax.driver.core.Row;
+import com.lightbend.lagom.javadsl.persistence.cassandra.CassandraSession;
+import com.redelastic.stocktrader.TransferId;
+import com.typesafe.config.Config;
+import lombok.Value;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
+/**
+ * Queries over the index of unfinished transfers written by {@link PendingTransferIndexProcessor}.
+ * <p>
+ * Only buckets that are entirely older than the stuck threshold are read. Transfers are always indexed under the
+ * bucket for the current time, so these buckets no longer receive new entries, and once found to be empty they are
+ * dropped from the list of buckets.
+ */
+@Singleton
+public class PendingTransferIndex {
+
+    /**
+     * Saga states that are waiting on an external step.
+     */
+    static final List<TransferState.Status> PENDING_STATUSES = Arrays.asList(
+            TransferState.Status.FundsRequested,
+            TransferState.Status.FundsSent,
+            TransferState.Status.RefundSent);
+
+    private final CassandraSession db;
+    private final long bucketMillis;
+    private final Duration stuckAfter;
+
+    @Inject
+    PendingTransferIndex(CassandraSession db, Config config) {
+        this.db = db;
+        this.bucketMillis = config.getDuration("wiretransfer.stuck-transfers.bucket-size").toMillis();
+        this.stuckAfter = config.getDuration("wiretransfer.stuck-transfers.stuck-after");
+    }
+
+    long bucketFor(long epochMillis) {
+        return epochMillis / bucketMillis;
+    }
+
+    /**
+     * All transfers that have been in the same pending state for longer than the stuck threshold.
+     */
+    public CompletionStage<List<PendingTransfer>> stuckTransfers() {
+        return stuckTransfers(Instant.now());
+    }
+
+    CompletionStage<List<PendingTransfer>> stuckTransfers(Instant now) {
+        // The newest bucket that cannot contain a transition more recent than the threshold
+        long lastExpiredBucket = bucketFor(now.minus(stuckAfter).toEpochMilli()) - 1;
+
+        List<CompletableFuture<List<PendingTransfer>>> byStatus = PENDING_STATUSES.stream()
+                .map(status -> stuckTransfers(status, lastExpiredBucket, now).toCompletableFuture())
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(byStatus.toArray(new CompletableFuture[0]))
+                .thenApply(done -> {
+                    List<PendingTransfer> all = new ArrayList<>();
+                    byStatus.forEach(transfers -> all.addAll(transfers.join()));
+                    return all;
+                });
+    }
+
+    private CompletionStage<List<PendingTransfer>> stuckTransfers(TransferState.Status status, long lastExpiredBucket, Instant now) {
+        return db.selectAll(
+                "SELECT bucket FROM transfer_pending_buckets WHERE status = ? AND bucket <= ?",
+                status.name(), lastExpiredBucket)
+                .thenCompose(buckets -> {
+                    List<CompletableFuture<List<PendingTransfer>>> perBucket = buckets.stream()
+                            .map(row -> readBucket(status, row.getLong("bucket"), now).toCompletableFuture())
+                            .collect(Collectors.toList());
+
+                    return CompletableFuture.allOf(perBucket.toArray(new CompletableFuture[0]))
+                            .thenApply(done -> {
+                                List<PendingTransfer> transfers = new ArrayList<>();
+                                perBucket.forEach(bucket -> transfers.addAll(bucket.join()));
+                                return transfers;
+                            });
+                });
+    }
+
+    private CompletionStage<List<PendingTransfer>> readBucket(TransferState.Status status, long bucket, Instant now) {
+        return db.selectAll(
+                "SELECT transferId, transitionTime FROM transfer_pending_by_bucket WHERE status = ? AND bucket = ?",
+                status.name(), bucket)
+                .thenCompose(rows -> {
+                    if (rows.isEmpty()) {
+                        return dropBucket(status, bucket).thenApply(done -> new ArrayList<PendingTransfer>());
+                    }
+                    List<PendingTransfer> transfers = rows.stream()
+                            .map(row -> toPendingTransfer(status, row, now))
+                            .collect(Collectors.toList());
+                    return CompletableFuture.completedFuture(transfers);
+                });
+    }
+
+    private CompletionStage<Done> dropBucket(TransferState.Status status, long bucket) {
+        return db.executeWrite("DELETE FROM transfer_pending_buckets WHERE status = ? AND bucket = ?",
+                status.name(), bucket);
+    }
+
+    private PendingTransfer toPendingTransfer(TransferState.Status status, Row row, Instant now) {
+        Instant transitionTime = row.getTimestamp("transitionTime").toInstant();
+        return new PendingTransfer(
+                new TransferId(row.getString("transferId")),
+                status,
+                Duration.between(transitionTime, now));
+    }
+
+    @Value
+    public static class PendingTransfer {
+        TransferId transferId;
+        TransferState.Status status;
+        Duration age;
+    }
+}
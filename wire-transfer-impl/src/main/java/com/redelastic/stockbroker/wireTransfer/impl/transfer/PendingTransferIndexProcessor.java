@@ -0,0 +1,155 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
+import com.lightbend.lagom.javadsl.persistence.ReadSideProcessor;
+import com.lightbend.lagom.javadsl.persistence.cassandra.CassandraReadSide;
+import com.lightbend.lagom.javadsl.persistence.cassandra.CassandraSession;
+
+import akka.Done;
+import com.redelastic.metrics.ConsumerLagMonitor;
+import org.pcollections.PSequence;
+import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferEvent.*;
+
+import javax.inject.Inject;
+
+/**
+ * Maintains an index of transfers whose saga has not yet finished, bucketed by status and by the time of their last
+ * transition. A transfer moves to a new bucket on every transition and leaves the index when the saga completes, so
+ * a bucket that is older than the stuck threshold only contains transfers that have stopped making progress.
+ * <p>
+ * Transition times are taken when the event is processed here, which is close enough for detecting transfers stuck
+ * for minutes.
+ *
+ * @see PendingTransferIndex
+ */
+public class PendingTransferIndexProcessor extends ReadSideProcessor<TransferEvent> {
+
+  private final CassandraSession session;
+  private final CassandraReadSide readSide;
+  private final PendingTransferIndex index;
+  private final ConsumerLagMonitor lagMonitor;
+
+  private PreparedStatement insertBucket = null; // initialized in prepare
+  private PreparedStatement insertPending = null;
+  private PreparedStatement deletePending = null;
+  private PreparedStatement insertStatus = null;
+  private PreparedStatement deleteStatus = null;
+
+  @Inject
+  public PendingTransferIndexProcessor(CassandraSession session,
+                                       CassandraReadSide readSide,
+                                       PendingTransferIndex index,
+                                       ConsumerLagMonitor lagMonitor) {
+    this.session = session;
+    this.readSide = readSide;
+    this.index = index;
+    this.lagMonitor = lagMonitor;
+  }
+
+  @Override
+  public PSequence<AggregateEventTag<TransferEvent>> aggregateTags() {
+    return TransferEvent.TAG.allTags();
+  }
+
+  @Override
+  public ReadSideHandler<TransferEvent> buildHandler() {
+    ReadSideHandler<TransferEvent> handler = readSide.<TransferEvent>builder("transfer_pending_offset")
+      .setGlobalPrepare(this::prepareCreateTables)
+      .setPrepare(tag -> prepareStatements())
+      .setEventHandler(TransferInitiated.class, evt -> transition(evt, TransferState.Status.FundsRequested))
+      .setEventHandler(FundsRetrieved.class, evt -> transition(evt, TransferState.Status.FundsSent))
+      .setEventHandler(DeliveryFailed.class, evt -> transition(evt, TransferState.Status.RefundSent))
+      .setEventHandler(CouldNotSecureFunds.class, this::completed)
+      .setEventHandler(DeliveryConfirmed.class, this::completed)
+      .setEventHandler(RefundDelivered.class, this::completed)
+      .build();
+    return lagMonitor.readSide("PendingTransferIndexProcessor", handler);
+  }
+
+  private CompletionStage<Done> prepareCreateTables() {
+    // @formatter:off
+    return session.executeCreateTable(
+        "CREATE TABLE IF NOT EXISTS transfer_pending_buckets ("
+          + "status text, "
+          + "bucket bigint, "
+          + "PRIMARY KEY (status, bucket))")
+      .thenCompose(done -> session.executeCreateTable(
+        "CREATE TABLE IF NOT EXISTS transfer_pending_by_bucket ("
+          + "status text, "
+          + "bucket bigint, "
+          + "transferId text, "
+          + "transitionTime timestamp, "
+          + "PRIMARY KEY ((status, bucket), transferId))"))
+      .thenCompose(done -> session.executeCreateTable(
+        "CREATE TABLE IF NOT EXISTS transfer_pending_status ("
+          + "transferId text, "
+          + "status text, "
+          + "bucket bigint, "
+          + "PRIMARY KEY (transferId))"));
+    // @formatter:on
+  }
+
+  private CompletionStage<Done> prepareStatements() {
+    return session.prepare("INSERT INTO transfer_pending_buckets (status, bucket) VALUES (?, ?)")
+      .thenCompose(ps -> {
+        this.insertBucket = ps;
+        return session.prepare("INSERT INTO transfer_pending_by_bucket (status, bucket, transferId, transitionTime) VALUES (?, ?, ?, ?)");
+      })
+      .thenCompose(ps -> {
+        this.insertPending = ps;
+        return session.prepare("DELETE FROM transfer_pending_by_bucket WHERE status = ? AND bucket = ? AND transferId = ?");
+      })
+      .thenCompose(ps -> {
+        this.deletePending = ps;
+        return session.prepare("INSERT INTO transfer_pending_status (transferId, status, bucket) VALUES (?, ?, ?)");
+      })
+      .thenCompose(ps -> {
+        this.insertStatus = ps;
+        return session.prepare("DELETE FROM transfer_pending_status WHERE transferId = ?");
+      })
+      .thenApply(ps -> {
+        this.deleteStatus = ps;
+        return Done.getInstance();
+      });
+  }
+
+  private CompletionStage<List<BoundStatement>> transition(TransferEvent event, TransferState.Status status) {
+    String transferId = event.getTransferId().getId();
+    long now = System.currentTimeMillis();
+    long bucket = index.bucketFor(now);
+
+    return removeFromCurrentBucket(transferId).thenApply(statements -> {
+      statements.add(insertBucket.bind(status.name(), bucket));
+      statements.add(insertPending.bind(status.name(), bucket, transferId, new Date(now)));
+      statements.add(insertStatus.bind(transferId, status.name(), bucket));
+      return statements;
+    });
+  }
+
+  private CompletionStage<List<BoundStatement>> completed(TransferEvent event) {
+    String transferId = event.getTransferId().getId();
+
+    return removeFromCurrentBucket(transferId).thenApply(statements -> {
+      statements.add(deleteStatus.bind(transferId));
+      return statements;
+    });
+  }
+
+  private CompletionStage<List<BoundStatement>> removeFromCurrentBucket(String transferId) {
+    return session.selectOne("SELECT status, bucket FROM transfer_pending_status WHERE transferId = ?", transferId)
+      .thenApply(current -> {
+        List<BoundStatement> statements = new ArrayList<>();
+        current.ifPresent(row ->
+          statements.add(deletePending.bind(row.getString("status"), row.getLong("bucket"), transferId)));
+        return statements;
+      });
+  }
+
+}
@@ -0,0 +1,127 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.Done;
+import akka.stream.Materializer;
+import akka.stream.OverflowStrategy;
+import akka.stream.QueueOfferResult;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.SourceQueueWithComplete;
+import com.redelastic.CSHelper;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.portfolio.api.FundsTransfer;
+import com.redelastic.stocktrader.portfolio.api.PortfolioService;
+import com.redelastic.stocktrader.portfolio.api.PortfolioTransfer;
+import com.redelastic.stocktrader.portfolio.api.TransferOutcome;
+import com.typesafe.config.Config;
+import lombok.Value;
+import lombok.extern.log4j.Log4j;
+import org.pcollections.PSequence;
+import org.pcollections.TreePVector;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
+/**
+ * Groups the portfolio side of saga steps into batches, so that steps for many different transfers are sent to the
+ * portfolio service in a single processTransfers request. Steps are collected for at most the configured window, or
+ * until a batch is full, whichever comes first.
+ * <p>
+ * Steps offered while the buffer is full are failed with {@link QueueFull}. The saga steps fail their stage rather
+ * than the transfer when that happens, so the saga processor retries the step. The queue does not backpressure
+ * instead, as it only accepts one offer waiting for space at a time and steps are submitted concurrently.
+ */
+@Log4j
+@Singleton
+public class PortfolioTransferBatcher {
+
+    private final PortfolioService portfolioService;
+    private final SourceQueueWithComplete<PendingTransfer> queue;
+
+    @Inject
+    PortfolioTransferBatcher(PortfolioService portfolioService,
+                             Materializer materializer,
+                             Config config) {
+        this.portfolioService = portfolioService;
+
+        Config batchConfig = config.getConfig("wiretransfer.portfolio-batch");
+        int maxSize = batchConfig.getInt("max-size");
+        Duration window = batchConfig.getDuration("window");
+        int bufferSize = batchConfig.getInt("buffer-size");
+        int parallelism = batchConfig.getInt("parallelism");
+
+        this.queue = Source.<PendingTransfer>queue(bufferSize, OverflowStrategy.dropNew())
+                .groupedWithin(maxSize, window)
+                .mapAsyncUnordered(parallelism, this::sendBatch)
+                .to(Sink.ignore())
+                .run(materializer);
+    }
+
+    /**
+     * Submit a transfer to be applied to a portfolio as part of the next batch.
+     *
+     * @return the outcome reported by the portfolio service. Fails if the whole batch could not be delivered.
+     */
+    public CompletionStage<TransferOutcome> submit(PortfolioId portfolioId, FundsTransfer transfer) {
+        PendingTransfer pending = new PendingTransfer(
+                PortfolioTransfer.builder().portfolioId(portfolioId).transfer(transfer).build(),
+                new CompletableFuture<>());
+
+        return queue.offer(pending).thenCompose(offerResult -> {
+            if (offerResult != QueueOfferResult.enqueued()) {
+                pending.getResult().completeExceptionally(new QueueFull(offerResult));
+            }
+            return pending.getResult();
+        });
+    }
+
+    private CompletionStage<Done> sendBatch(List<PendingTransfer> batch) {
+        PSequence<PortfolioTransfer> transfers = TreePVector.from(
+                batch.stream().map(PendingTransfer::getTransfer).collect(Collectors.toList()));
+
+        return portfolioService
+                .processTransfers()
+                .invoke(transfers)
+                .handle((outcomes, ex) -> {
+                    if (ex == null && outcomes.size() != batch.size()) {
+                        ex = new IllegalStateException("Portfolio service returned " + outcomes.size()
+                                + " outcomes for a batch of " + batch.size() + " transfers");
+                    }
+                    if (ex != null) {
+                        log.warn("Portfolio transfer batch of " + batch.size() + " failed", ex);
+                        Throwable failure = ex;
+                        batch.forEach(pending -> pending.getResult().completeExceptionally(failure));
+                    } else {
+                        // Outcomes are returned in submission order
+                        for (int i = 0; i < batch.size(); i++) {
+                            batch.get(i).getResult().complete(outcomes.get(i));
+                        }
+                    }
+                    return Done.getInstance();
+                });
+    }
+
+    /**
+     * Whether a step failed because it could not be queued, and so never reached the portfolio service.
+     */
+    static boolean notQueued(Throwable ex) {
+        return CSHelper.unwrap(ex) instanceof QueueFull;
+    }
+
+    static class QueueFull extends IllegalStateException {
+        QueueFull(QueueOfferResult offerResult) {
+            super("Portfolio transfer batch queue rejected transfer: " + offerResult);
+        }
+    }
+
+    @Value
+    private static class PendingTransfer {
+        PortfolioTransfer transfer;
+        CompletableFuture<TransferOutcome> result;
+    }
+}
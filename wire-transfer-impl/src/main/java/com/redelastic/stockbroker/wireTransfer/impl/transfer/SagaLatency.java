@@ -0,0 +1,20 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * End to end latency, from acceptance to completion, of transfer sagas completed on one node, by the path that
+ * drove them: "fast" for steps chained directly after persisting, "journal" for steps driven by the saga processor.
+ */
+@Value
+@Builder
+public class SagaLatency {
+    @NonNull String path;
+    long count;
+    long p50Millis;
+    long p95Millis;
+    long p99Millis;
+    long maxMillis;
+}
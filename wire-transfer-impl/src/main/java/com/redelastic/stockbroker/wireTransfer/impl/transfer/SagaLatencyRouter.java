@@ -0,0 +1,35 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import play.api.mvc.Handler;
+import play.api.mvc.RequestHeader;
+import play.api.routing.Router;
+import play.api.routing.SimpleRouter;
+import play.libs.Json;
+import play.mvc.Results;
+import play.routing.RoutingDsl;
+import scala.PartialFunction;
+
+import javax.inject.Inject;
+
+/**
+ * Serves {@code GET /admin/saga-latency}, the end to end latency of transfers completed on this node by saga path.
+ * Like the other admin routers it is not exposed through the service gateway.
+ */
+public class SagaLatencyRouter implements SimpleRouter {
+
+    private final Router delegate;
+
+    @Inject
+    public SagaLatencyRouter(RoutingDsl routingDsl, TransferSagaExecutor sagaExecutor) {
+        this.delegate = routingDsl
+                .GET("/admin/saga-latency")
+                .routingTo(request -> Results.ok(Json.toJson(sagaExecutor.latency())))
+                .build()
+                .asScala();
+    }
+
+    @Override
+    public PartialFunction<RequestHeader, Handler> routes() {
+        return delegate.routes();
+    }
+}
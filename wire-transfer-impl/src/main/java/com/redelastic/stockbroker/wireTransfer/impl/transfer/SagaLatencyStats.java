@@ -0,0 +1,65 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * End to end latency of completed transfer sagas driven by one path. Latencies are counted in fixed exponential
+ * buckets, so recording is lock free and percentiles are reported as the upper bound of the bucket they fall in.
+ */
+class SagaLatencyStats {
+
+    private static final long[] BUCKET_BOUNDS_MILLIS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500,
+            1_000, 2_000, 5_000, 10_000, 20_000, 60_000, 300_000, Long.MAX_VALUE
+    };
+
+    private final String path;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length);
+    private final AtomicLong max = new AtomicLong();
+
+    SagaLatencyStats(String path) {
+        this.path = path;
+    }
+
+    void record(long latencyMillis) {
+        int bucket = 0;
+        while (latencyMillis > BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        max.accumulateAndGet(latencyMillis, Math::max);
+    }
+
+    SagaLatency snapshot() {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        return SagaLatency.builder()
+                .path(path)
+                .count(total)
+                .p50Millis(percentile(snapshot, total, 0.50))
+                .p95Millis(percentile(snapshot, total, 0.95))
+                .p99Millis(percentile(snapshot, total, 0.99))
+                .maxMillis(max.get())
+                .build();
+    }
+
+    private long percentile(long[] snapshot, long total, double quantile) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(BUCKET_BOUNDS_MILLIS[i], max.get());
+            }
+        }
+        return max.get();
+    }
+}
@@ -0,0 +1,172 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.Done;
+import akka.actor.AbstractActorWithTimers;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.PoisonPill;
+import akka.actor.Props;
+import akka.cluster.singleton.ClusterSingletonManager;
+import akka.cluster.singleton.ClusterSingletonManagerSettings;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.redelastic.stocktrader.TransferId;
+import com.typesafe.config.Config;
+import lombok.extern.log4j.Log4j;
+import scala.concurrent.duration.FiniteDuration;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Periodically looks for transfers stuck part way through the saga and re-drives them by re-running the saga step
+ * for the state the TransferEntity is in. The saga processor only reacts to new events, so without this a transfer
+ * whose portfolio step failed would stay where it is indefinitely.
+ * <p>
+ * A transfer can look stuck while its step is still running, or after the step reached the portfolio but its reply
+ * was lost, so a re-driven step may be one the portfolio has already applied. Withdrawls and deposits carry the
+ * transfer id and the portfolio applies each of them once, so re-driving them does not move funds twice.
+ * <p>
+ * Runs as a cluster singleton so each sweep happens once per cluster. The transfers it would re-drive are served at
+ * {@code GET /admin/stuck-transfers} by the {@link StuckTransfersRouter}.
+ */
+@Log4j
+@Singleton
+public class StuckTransferSweeper {
+
+    private final PendingTransferIndex index;
+    private final TransferRepository transferRepository;
+    private final TransferSagaSteps sagaSteps;
+    private final Materializer materializer;
+    private final int redriveParallelism;
+
+    @Inject
+    StuckTransferSweeper(ActorSystem system,
+                         PendingTransferIndex index,
+                         TransferRepository transferRepository,
+                         TransferSagaSteps sagaSteps,
+                         Materializer materializer,
+                         Config config) {
+        this.index = index;
+        this.transferRepository = transferRepository;
+        this.sagaSteps = sagaSteps;
+        this.materializer = materializer;
+
+        Config sweepConfig = config.getConfig("wiretransfer.stuck-transfers");
+        this.redriveParallelism = sweepConfig.getInt("redrive-parallelism");
+
+        if (sweepConfig.getBoolean("enabled")) {
+            FiniteDuration interval = FiniteDuration.create(
+                    sweepConfig.getDuration("sweep-interval").toMillis(), TimeUnit.MILLISECONDS);
+            system.actorOf(
+                    ClusterSingletonManager.props(
+                            Props.create(SweepActor.class, () -> new SweepActor(this, interval)),
+                            PoisonPill.getInstance(),
+                            ClusterSingletonManagerSettings.create(system)),
+                    "stuckTransferSweeper");
+        }
+    }
+
+    /**
+     * Find all stuck transfers and re-drive them, with at most redriveParallelism in progress at once.
+     */
+    CompletionStage<Done> sweep() {
+        return index.stuckTransfers().thenCompose(stuck -> {
+            report(stuck);
+            return Source.from(stuck)
+                    .mapAsyncUnordered(redriveParallelism, this::redrive)
+                    .runWith(Sink.ignore(), materializer);
+        });
+    }
+
+    private CompletionStage<Done> redrive(PendingTransferIndex.PendingTransfer pending) {
+        TransferId transferId = pending.getTransferId();
+        return transferRepository
+                .get(transferId)
+                .ask(TransferCommand.GetState.INSTANCE)
+                .thenCompose(state -> state
+                        .map(s -> redrive(transferId, s))
+                        .orElseGet(() -> CompletableFuture.completedFuture(Done.getInstance())))
+                .exceptionally(ex -> {
+                    log.warn("Unable to re-drive stuck transfer " + transferId, ex);
+                    return Done.getInstance();
+                });
+    }
+
+    private CompletionStage<Done> redrive(TransferId transferId, TransferState state) {
+        switch (state.getStatus()) {
+            case FundsRequested:
+                return new TransferEvent.TransferInitiated(transferId, state.getTransferDetails()).visit(sagaSteps);
+            case FundsSent:
+                return new TransferEvent.FundsRetrieved(transferId, state.getTransferDetails()).visit(sagaSteps);
+            case RefundSent:
+                return new TransferEvent.DeliveryFailed(transferId, state.getTransferDetails()).visit(sagaSteps);
+            default:
+                // The saga has moved on since the index was last updated
+                return CompletableFuture.completedFuture(Done.getInstance());
+        }
+    }
+
+    private void report(List<PendingTransferIndex.PendingTransfer> stuck) {
+        if (stuck.isEmpty()) {
+            log.debug("No stuck transfers");
+            return;
+        }
+
+        Map<TransferState.Status, Long> byStatus = stuck.stream()
+                .collect(Collectors.groupingBy(PendingTransferIndex.PendingTransfer::getStatus, Collectors.counting()));
+        Duration oldest = stuck.stream()
+                .map(PendingTransferIndex.PendingTransfer::getAge)
+                .max(Duration::compareTo)
+                .orElse(Duration.ZERO);
+
+        log.warn(String.format("Re-driving %d stuck transfers %s, oldest stuck for %ds",
+                stuck.size(), byStatus, oldest.getSeconds()));
+    }
+
+    static class SweepActor extends AbstractActorWithTimers {
+
+        private static final String TICK = "tick";
+        private static final String SWEEP_FINISHED = "sweepFinished";
+
+        private final StuckTransferSweeper sweeper;
+        private final FiniteDuration interval;
+        private boolean sweeping = false;
+
+        SweepActor(StuckTransferSweeper sweeper, FiniteDuration interval) {
+            this.sweeper = sweeper;
+            this.interval = interval;
+        }
+
+        @Override
+        public void preStart() {
+            getTimers().startPeriodicTimer(TICK, TICK, interval);
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .matchEquals(TICK, tick -> {
+                        // Skip the tick rather than overlap sweeps when one runs long
+                        if (!sweeping) {
+                            sweeping = true;
+                            ActorRef self = getSelf();
+                            sweeper.sweep().whenComplete((done, ex) -> {
+                                if (ex != null) log.warn("Stuck transfer sweep failed", ex);
+                                self.tell(SWEEP_FINISHED, ActorRef.noSender());
+                            });
+                        }
+                    })
+                    .matchEquals(SWEEP_FINISHED, finished -> sweeping = false)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import play.api.mvc.Handler;
+import play.api.mvc.RequestHeader;
+import play.api.routing.Router;
+import play.api.routing.SimpleRouter;
+import play.libs.Json;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+import play.routing.RoutingDsl;
+import scala.PartialFunction;
+
+import javax.inject.Inject;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
+/**
+ * Serves {@code GET /admin/stuck-transfers}, the transfers that appear to be stuck part way through the saga, oldest
+ * first. Like the metrics routers it is not exposed through the service gateway.
+ */
+public class StuckTransfersRouter implements SimpleRouter {
+
+    private final Router delegate;
+    private final PendingTransferIndex pendingTransfers;
+
+    @Inject
+    public StuckTransfersRouter(RoutingDsl routingDsl, PendingTransferIndex pendingTransfers) {
+        this.pendingTransfers = pendingTransfers;
+        this.delegate = routingDsl
+                .GET("/admin/stuck-transfers")
+                .routingAsync(this::stuck)
+                .build()
+                .asScala();
+    }
+
+    @Override
+    public PartialFunction<RequestHeader, Handler> routes() {
+        return delegate.routes();
+    }
+
+    private CompletionStage<Result> stuck(Http.Request request) {
+        return pendingTransfers.stuckTransfers().thenApply(stuck -> {
+            List<PendingTransferIndex.PendingTransfer> oldestFirst = stuck.stream()
+                    .sorted(Comparator.comparing(PendingTransferIndex.PendingTransfer::getAge).reversed())
+                    .collect(Collectors.toList());
+
+            ObjectNode report = Json.newObject()
+                    .put("count", oldestFirst.size())
+                    .put("oldestStuckForSeconds", oldestFirst.isEmpty() ? 0 : oldestFirst.get(0).getAge().getSeconds());
+            ArrayNode transfers = report.putArray("transfers");
+            oldestFirst.forEach(pending -> transfers.addObject()
+                    .put("transferId", pending.getTransferId().getId())
+                    .put("status", pending.getStatus().toString())
+                    .put("stuckForSeconds", pending.getAge().getSeconds()));
+            return Results.ok(report);
+        });
+    }
+}
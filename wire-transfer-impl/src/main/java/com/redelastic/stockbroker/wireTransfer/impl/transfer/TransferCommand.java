@@ -6,8 +6,10 @@ import com.redelastic.stocktrader.wiretransfer.api.Account;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Value;
+import org.pcollections.PSequence;
 
 import java.math.BigDecimal;
+import java.util.Optional;
 
 public abstract class TransferCommand {
     private TransferCommand() {}
@@ -19,6 +21,7 @@ public abstract class TransferCommand {
         Account source;
         Account destination;
         BigDecimal amount;
+        PSequence<NettedTransfer> nettedTransfers;
     }
 
     @Value
@@ -61,4 +64,12 @@ public abstract class TransferCommand {
 
         private RefundSuccessful() {}
     }
+
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    public static class GetState extends TransferCommand implements ReplyType<Optional<TransferState>> {
+        public static GetState INSTANCE = new GetState();
+
+        private GetState() {}
+    }
 }
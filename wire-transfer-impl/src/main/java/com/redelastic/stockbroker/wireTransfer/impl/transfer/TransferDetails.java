@@ -4,6 +4,8 @@ import com.redelastic.stocktrader.wiretransfer.api.Account;
 import lombok.Builder;
 import lombok.NonNull;
 import lombok.Value;
+import org.pcollections.PSequence;
+import org.pcollections.TreePVector;
 
 import java.math.BigDecimal;
 
@@ -14,4 +16,24 @@ public class TransferDetails {
     @NonNull public Account source;
     @NonNull public Account destination;
     @NonNull public BigDecimal amount;
+
+    /**
+     * When netting is enabled, the client transfers this saga moves funds for. Amount is their total. Absent for
+     * ordinary transfers, and for events persisted before netting was introduced.
+     */
+    PSequence<NettedTransfer> nettedTransfers;
+
+    /**
+     * When the transfer was accepted, in epoch millis, used to measure end to end saga latency. Absent for events
+     * persisted before it was recorded.
+     */
+    Long initiatedAt;
+
+    public PSequence<NettedTransfer> getNettedTransfers() {
+        return nettedTransfers == null ? TreePVector.empty() : nettedTransfers;
+    }
+
+    public boolean isNetted() {
+        return !getNettedTransfers().isEmpty();
+    }
 }
@@ -1,7 +1,8 @@
 package com.redelastic.stockbroker.wireTransfer.impl.transfer;
 
 import akka.Done;
-import com.lightbend.lagom.javadsl.persistence.PersistentEntity;
+import com.redelastic.metrics.InstrumentedEntity;
+import com.redelastic.metrics.MetricsRegistry;
 import com.redelastic.stocktrader.TransferId;
 import lombok.extern.log4j.Log4j;
 
@@ -12,6 +13,7 @@ import com.lightbend.lagom.javadsl.pubsub.PubSubRef;
 import com.lightbend.lagom.javadsl.pubsub.PubSubRegistry;
 import com.lightbend.lagom.javadsl.pubsub.TopicId;
 
+import java.math.BigDecimal;
 import java.util.Date;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -24,17 +26,20 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Log4j
-public class TransferEntity extends PersistentEntity<TransferCommand, TransferEvent, Optional<TransferState>> {
+public class TransferEntity extends InstrumentedEntity<TransferCommand, TransferEvent, Optional<TransferState>> {
 
     private final PubSubRef<String> publishedTopic;
+    private final TransferSagaExecutor sagaExecutor;
 
     @Inject
-    public TransferEntity(PubSubRegistry pubSub) {
+    public TransferEntity(PubSubRegistry pubSub, TransferSagaExecutor sagaExecutor, MetricsRegistry metrics) {
+        super(metrics);
         publishedTopic = pubSub.refFor(TopicId.of(String.class, "transfer"));
+        this.sagaExecutor = sagaExecutor;
     }
 
     @Override
-    public Behavior initialBehavior(Optional<Optional<TransferState>> snapshotState) {
+    protected Behavior createInitialBehavior(Optional<Optional<TransferState>> snapshotState) {
         return snapshotState
                 .flatMap(Function.identity())
                 .map(state -> {
@@ -69,15 +74,15 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
                     .source(cmd.getSource())
                     .destination(cmd.getDestination())
                     .amount(cmd.getAmount())
+                    .nettedTransfers(cmd.getNettedTransfers())
+                    .initiatedAt(System.currentTimeMillis())
                     .build();
 
-            ObjectMapper mapper = new ObjectMapper();
-            TransferCompleted tc = buildTransferCompleted(transferDetails, "Transfer Initiated");
-            publishedTopic.publish(mapper.valueToTree(tc).toString());
+            publishStatus(transferDetails, "Transfer Initiated");
 
             return ctx.thenPersist(
                     new TransferEvent.TransferInitiated(getTransferId(), transferDetails),
-                    evt -> ctx.reply(Done.getInstance()));
+                    evt -> persisted(evt, ctx));
         });
 
         builder.setEventHandlerChangingBehavior(TransferEvent.TransferInitiated.class, this::fundsRequested);
@@ -86,6 +91,8 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
 
         builder.setCommandHandler(TransferCommand.DeliveryFailed.class, this::warn);
 
+        builder.setReadOnlyCommandHandler(TransferCommand.GetState.class, this::getState);
+
         return builder.build();
     }
 
@@ -103,7 +110,7 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
                             getTransferId(),
                             state().get().getTransferDetails()
                     ),
-                    evt -> ctx.reply(Done.getInstance())
+                    evt -> persisted(evt, ctx)
             ));
         builder.setEventHandlerChangingBehavior(TransferEvent.FundsRetrieved.class,
                 evt -> sendingFunds(state().get()));
@@ -114,7 +121,7 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
                             getTransferId(),
                             state().get().getTransferDetails()
                     ),
-                    evt -> ctx.reply(Done.getInstance())
+                    evt -> persisted(evt, ctx)
             ));
 
         builder.setEventHandlerChangingBehavior(TransferEvent.CouldNotSecureFunds.class,
@@ -124,6 +131,8 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
 
         builder.setCommandHandler(TransferCommand.DeliveryFailed.class, this::warn);
 
+        builder.setReadOnlyCommandHandler(TransferCommand.GetState.class, this::getState);
+
         return builder.build();
     }
 
@@ -136,6 +145,8 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
 
         builder.setCommandHandler(TransferCommand.DeliveryFailed.class, this::warn);
         
+        builder.setReadOnlyCommandHandler(TransferCommand.GetState.class, this::getState);
+
         return builder.build();
     }
 
@@ -143,16 +154,14 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
         BehaviorBuilder builder = newBehaviorBuilder(Optional.of(state.withStatus(TransferState.Status.FundsSent)));
         
         builder.setCommandHandler(TransferCommand.DeliverySuccessful.class, (cmd, ctx) -> {                
-                ObjectMapper mapper = new ObjectMapper();
-                TransferCompleted tc = buildTransferCompleted(state.transferDetails, "Delivery Confirmed");
-                publishedTopic.publish(mapper.valueToTree(tc).toString());
+                publishStatus(state.transferDetails, "Delivery Confirmed");
 
                 return ctx.thenPersist(
                     new TransferEvent.DeliveryConfirmed(
                             getTransferId(),
                             state().get().getTransferDetails()
                     ),
-                    evt -> ctx.reply(Done.getInstance())
+                    evt -> persisted(evt, ctx)
                 );
             }
         );
@@ -163,7 +172,7 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
         builder.setCommandHandler(TransferCommand.DeliveryFailed.class, (cmd, ctx) ->
                 ctx.thenPersist(
                         new TransferEvent.DeliveryFailed(getTransferId(), state().get().getTransferDetails()),
-                        ect -> ctx.reply(Done.getInstance())
+                        evt -> persisted(evt, ctx)
                 ));
 
         builder.setEventHandlerChangingBehavior(TransferEvent.DeliveryFailed.class, evt -> refundSent(state));
@@ -172,6 +181,8 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
 
         builder.setCommandHandler(TransferCommand.RefundSuccessful.class, this::warn);
         
+        builder.setReadOnlyCommandHandler(TransferCommand.GetState.class, this::getState);
+
         return builder.build();
     }
 
@@ -186,6 +197,8 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
 
         builder.setCommandHandler(TransferCommand.DeliveryFailed.class, this::warn);      
 
+        builder.setReadOnlyCommandHandler(TransferCommand.GetState.class, this::getState);
+
         return builder.build();
     }
 
@@ -197,7 +210,8 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
                     new TransferEvent.RefundDelivered(
                             getTransferId(),
                             state().get().getTransferDetails()
-                    )
+                    ),
+                    evt -> persisted(evt, ctx)
             ));
 
         builder.setCommandHandler(TransferCommand.RequestFundsSuccessful.class, this::ignore);        
@@ -206,6 +220,8 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
 
         builder.setEventHandlerChangingBehavior(TransferEvent.RefundDelivered.class, evt -> refundDelivered(state));
 
+        builder.setReadOnlyCommandHandler(TransferCommand.GetState.class, this::getState);
+
         return builder.build();
     }
 
@@ -218,9 +234,24 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
 
         builder.setCommandHandler(TransferCommand.DeliveryFailed.class, this::warn);
 
+        builder.setReadOnlyCommandHandler(TransferCommand.GetState.class, this::getState);
+
         return builder.build();
     }
 
+    /**
+     * Acknowledge the command and hand the event straight to the saga executor, rather than waiting for the saga
+     * processor to read it back from the journal.
+     */
+    private void persisted(TransferEvent evt, CommandContext<Done> ctx) {
+        ctx.reply(Done.getInstance());
+        sagaExecutor.submit(evt);
+    }
+
+    private void getState(TransferCommand.GetState cmd, ReadOnlyCommandContext<Optional<TransferState>> ctx) {
+        ctx.reply(state());
+    }
+
     private <C extends TransferCommand> Persist ignore(C cmd, CommandContext<Done> ctx) {
         log.info(String.format("Ignoring command %s in state %s", cmd.toString(), state().toString()));
         ctx.reply(Done.getInstance());
@@ -233,7 +264,23 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
         return ctx.done();
     }
 
-    private TransferCompleted buildTransferCompleted(TransferDetails details, String status) {
+    /**
+     * Publish a status update for this transfer, or for each of the client transfers it nets.
+     */
+    private void publishStatus(TransferDetails details, String status) {
+        ObjectMapper mapper = new ObjectMapper();
+        if (details.isNetted()) {
+            details.getNettedTransfers().forEach(netted -> {
+                TransferCompleted tc = buildTransferCompleted(netted.getTransferId().getId(), details, netted.getAmount(), status);
+                publishedTopic.publish(mapper.valueToTree(tc).toString());
+            });
+        } else {
+            TransferCompleted tc = buildTransferCompleted(entityId(), details, details.getAmount(), status);
+            publishedTopic.publish(mapper.valueToTree(tc).toString());
+        }
+    }
+
+    private TransferCompleted buildTransferCompleted(String transferId, TransferDetails details, BigDecimal amount, String status) {
         DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
         Date date = new Date();
 
@@ -260,14 +307,14 @@ public class TransferEntity extends PersistentEntity<TransferCommand, TransferEv
         }                
 
         TransferCompleted transferCompletedEvent = TransferCompleted.builder()
-            .id(entityId().toString())
+            .id(transferId)
             .status(status)
             .dateTime(dateFormat.format(date))
             .destinationType(destType)
             .destinationId(destId)
             .sourceType(sourceType)
             .sourceId(sourceId)
-            .amount(details.amount.toString())
+            .amount(amount.toString())
             .build();
 
         return transferCompletedEvent;
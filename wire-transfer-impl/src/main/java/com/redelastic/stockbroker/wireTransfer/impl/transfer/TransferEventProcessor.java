@@ -11,6 +11,7 @@ import com.lightbend.lagom.javadsl.persistence.cassandra.CassandraReadSide;
 import com.lightbend.lagom.javadsl.persistence.cassandra.CassandraSession;
 
 import akka.Done;
+import com.redelastic.metrics.ConsumerLagMonitor;
 import org.pcollections.PSequence;
 import org.pcollections.TreePVector;
 import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferEvent.*;
@@ -20,6 +21,7 @@ import javax.inject.Inject;
 
 import static com.lightbend.lagom.javadsl.persistence.cassandra.CassandraReadSide.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.sql.Timestamp;
 
@@ -27,13 +29,15 @@ public class TransferEventProcessor extends ReadSideProcessor<TransferEvent> {
 
   private final CassandraSession session;
   private final CassandraReadSide readSide;
+  private final ConsumerLagMonitor lagMonitor;
 
   private PreparedStatement writeTransfers = null; // initialized in prepare
 
   @Inject
-  public TransferEventProcessor(CassandraSession session, CassandraReadSide readSide) {
+  public TransferEventProcessor(CassandraSession session, CassandraReadSide readSide, ConsumerLagMonitor lagMonitor) {
     this.session = session;
     this.readSide = readSide;
+    this.lagMonitor = lagMonitor;
   }
 
   @Override
@@ -43,7 +47,7 @@ public class TransferEventProcessor extends ReadSideProcessor<TransferEvent> {
 
   @Override
   public ReadSideHandler<TransferEvent> buildHandler() {
-    return readSide.<TransferEvent>builder("transfer_offset")
+    return lagMonitor.readSide("TransferEventProcessor", readSide.<TransferEvent>builder("transfer_offset")
       .setGlobalPrepare(this::prepareCreateTables)
       .setPrepare(tag -> prepareWriteTransfers())
       .setEventHandler(TransferInitiated.class, this::processTransferInitiated)
@@ -52,7 +56,7 @@ public class TransferEventProcessor extends ReadSideProcessor<TransferEvent> {
       .setEventHandler(DeliveryConfirmed.class, this::processDeliveryConfirmed)
       .setEventHandler(DeliveryFailed.class, this::processDeliveryFailed)
       .setEventHandler(RefundDelivered.class, this::processRefundDelivered)
-      .build();
+      .build());
   }
 
   private CompletionStage<Done> prepareCreateTables() {
@@ -87,6 +91,10 @@ public class TransferEventProcessor extends ReadSideProcessor<TransferEvent> {
   }
 
   private CompletionStage<List<BoundStatement>> processCouldNotSecureFunds(CouldNotSecureFunds event) {
+    // The transfers a net transfer carried are then started individually, and summarised by their own sagas
+    if (event.getTransferDetails().isNetted()) {
+      return completedStatements(new ArrayList<>());
+    }
     return processTransferEvent("Could Not Secure Funds", event);
   }
 
@@ -103,11 +111,9 @@ public class TransferEventProcessor extends ReadSideProcessor<TransferEvent> {
   }
 
   private CompletionStage<List<BoundStatement>> processTransferEvent(String status, TransferEvent event) {
-    String transferId = event.getTransferId().getId();
     Timestamp timestamp = new Timestamp(System.currentTimeMillis());
     String source = null;
     String destination = null;
-    String amount = event.getTransferDetails().getAmount().toString();
 
     if (event.getTransferDetails().getSource() instanceof Account.Portfolio) {
       source = ((Account.Portfolio) event.getTransferDetails().getSource()).getPortfolioId().getId();  
@@ -121,6 +127,22 @@ public class TransferEventProcessor extends ReadSideProcessor<TransferEvent> {
       destination = "Savings";
     }
 
+    // A netted saga is recorded against each of the client transfers it carries, rather than its own ID
+    if (event.getTransferDetails().isNetted()) {
+      List<BoundStatement> statements = new ArrayList<>();
+      for (NettedTransfer netted : event.getTransferDetails().getNettedTransfers()) {
+        statements.add(bindWriteTransfer(netted.getTransferId().getId(), status, timestamp, source, destination,
+            netted.getAmount().toString()));
+      }
+      return completedStatements(statements);
+    }
+
+    return completedStatements(Arrays.asList(bindWriteTransfer(event.getTransferId().getId(), status, timestamp,
+        source, destination, event.getTransferDetails().getAmount().toString())));
+  }
+
+  private BoundStatement bindWriteTransfer(String transferId, String status, Timestamp timestamp, String source,
+                                           String destination, String amount) {
     BoundStatement bindWriteTransfers = writeTransfers.bind();
     bindWriteTransfers.setString("transferId", transferId);
     bindWriteTransfers.setString("status", status);
@@ -128,7 +150,7 @@ public class TransferEventProcessor extends ReadSideProcessor<TransferEvent> {
     bindWriteTransfers.setString("source", source);
     bindWriteTransfers.setString("destination", destination);
     bindWriteTransfers.setString("amount", amount);
-    return completedStatements(Arrays.asList(bindWriteTransfers));
+    return bindWriteTransfers;
   }
 
 }
\ No newline at end of file
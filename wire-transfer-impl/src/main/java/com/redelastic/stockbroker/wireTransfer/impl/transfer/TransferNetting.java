@@ -0,0 +1,162 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.Done;
+import akka.japi.Pair;
+import akka.stream.Materializer;
+import akka.stream.OverflowStrategy;
+import akka.stream.QueueOfferResult;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.SourceQueueWithComplete;
+import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.wiretransfer.api.Account;
+import com.redelastic.stocktrader.wiretransfer.api.Transfer;
+import com.typesafe.config.Config;
+import lombok.Value;
+import lombok.extern.log4j.Log4j;
+import org.pcollections.PSequence;
+import org.pcollections.TreePVector;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
+/**
+ * Optional netting of transfers between the same pair of accounts. Transfers are collected for the configured
+ * window; all transfers in a window with the same source and destination are then moved by a single saga for their
+ * total amount. Each client transfer keeps its own ID, and its status is recorded and published individually.
+ * <p>
+ * A transfer is only acknowledged once the net saga carrying it has been persisted, so acknowledged transfers are
+ * never lost, at the cost of up to one window of extra latency.
+ * <p>
+ * If the source cannot cover the total, the transfers are not failed together: the saga steps start each of them
+ * as an ordinary saga under its own ID, so those the source can cover still go through. They then take two
+ * attempts at the withdrawl instead of one.
+ */
+@Log4j
+@Singleton
+public class TransferNetting {
+
+    private final TransferRepository transferRepository;
+    private final boolean enabled;
+    private final SourceQueueWithComplete<PendingTransfer> queue;
+
+    @Inject
+    TransferNetting(TransferRepository transferRepository,
+                    Materializer materializer,
+                    Config config) {
+        this.transferRepository = transferRepository;
+
+        Config nettingConfig = config.getConfig("wiretransfer.netting");
+        this.enabled = nettingConfig.getBoolean("enabled");
+
+        if (enabled) {
+            int maxTransfers = nettingConfig.getInt("max-transfers");
+            Duration window = nettingConfig.getDuration("window");
+            int bufferSize = nettingConfig.getInt("buffer-size");
+
+            this.queue = Source.<PendingTransfer>queue(bufferSize, OverflowStrategy.dropNew())
+                    .groupedWithin(maxTransfers, window)
+                    .mapAsyncUnordered(1, this::startNetTransfers)
+                    .to(Sink.ignore())
+                    .run(materializer);
+        } else {
+            this.queue = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Submit a transfer to be netted with others between the same accounts.
+     *
+     * @return the ID assigned to this transfer, once the saga carrying it has started.
+     */
+    public CompletionStage<TransferId> submit(Transfer transfer) {
+        if (!enabled) {
+            throw new IllegalStateException("Transfer netting is not enabled");
+        }
+
+        PendingTransfer pending = new PendingTransfer(TransferId.newId(), transfer, new CompletableFuture<>());
+
+        return queue.offer(pending).thenCompose(offerResult -> {
+            if (offerResult != QueueOfferResult.enqueued()) {
+                pending.getResult().completeExceptionally(
+                        new IllegalStateException("Transfer netting queue rejected transfer: " + offerResult));
+            }
+            return pending.getResult();
+        });
+    }
+
+    private CompletionStage<Done> startNetTransfers(List<PendingTransfer> window) {
+        LinkedHashMap<Pair<Account, Account>, List<PendingTransfer>> byAccounts = window.stream()
+                .collect(Collectors.groupingBy(
+                        pending -> Pair.create(pending.getTransfer().getSourceAccount(),
+                                pending.getTransfer().getDestinationAccount()),
+                        LinkedHashMap::new,
+                        Collectors.toList()));
+
+        if (log.isDebugEnabled()) {
+            log.debug("Netting " + window.size() + " transfers into " + byAccounts.size() + " sagas");
+        }
+
+        CompletableFuture<?>[] sagas = byAccounts.values().stream()
+                .map(members -> startNetTransfer(members).toCompletableFuture())
+                .toArray(CompletableFuture[]::new);
+
+        return CompletableFuture.allOf(sagas).thenApply(done -> Done.getInstance());
+    }
+
+    private CompletionStage<Done> startNetTransfer(List<PendingTransfer> members) {
+        Transfer first = members.get(0).getTransfer();
+        BigDecimal total = members.stream()
+                .map(pending -> pending.getTransfer().getFunds())
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        // A transfer with nothing to net against runs as an ordinary saga under its own ID
+        TransferId sagaId;
+        PSequence<NettedTransfer> netted;
+        if (members.size() == 1) {
+            sagaId = members.get(0).getTransferId();
+            netted = null;
+        } else {
+            sagaId = TransferId.newId();
+            netted = TreePVector.from(members.stream()
+                    .map(pending -> new NettedTransfer(pending.getTransferId(), pending.getTransfer().getFunds()))
+                    .collect(Collectors.toList()));
+        }
+
+        return transferRepository
+                .get(sagaId)
+                .ask(TransferCommand.TransferFunds.builder()
+                        .source(first.getSourceAccount())
+                        .destination(first.getDestinationAccount())
+                        .amount(total)
+                        .nettedTransfers(netted)
+                        .build())
+                .handle((done, ex) -> {
+                    if (ex != null) {
+                        log.warn("Unable to start net transfer " + sagaId + " for " + members.size() + " transfers", ex);
+                        members.forEach(pending -> pending.getResult().completeExceptionally(ex));
+                    } else {
+                        members.forEach(pending -> pending.getResult().complete(pending.getTransferId()));
+                    }
+                    return Done.getInstance();
+                });
+    }
+
+    @Value
+    private static class PendingTransfer {
+        TransferId transferId;
+        Transfer transfer;
+        CompletableFuture<TransferId> result;
+    }
+}
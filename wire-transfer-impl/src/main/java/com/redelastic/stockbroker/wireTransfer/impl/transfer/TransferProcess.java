@@ -7,14 +7,13 @@ import akka.stream.javadsl.Flow;
 import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
 import com.lightbend.lagom.javadsl.persistence.Offset;
 import com.lightbend.lagom.javadsl.persistence.ReadSideProcessor;
-import com.redelastic.stocktrader.portfolio.api.FundsTransfer;
-import com.redelastic.stocktrader.portfolio.api.PortfolioService;
-import com.redelastic.stocktrader.wiretransfer.api.Account;
+import com.redelastic.metrics.ConsumerLagMonitor;
+import com.typesafe.config.Config;
 import lombok.extern.log4j.Log4j;
-import lombok.val;
 import org.pcollections.PSequence;
 
 import javax.inject.Inject;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.function.Function;
@@ -28,28 +27,41 @@ import java.util.function.Function;
  * 2. sending the funds to the destination account
  * <p>
  * If the second step fails the funds should be refunded.
+ * <p>
+ * The steps themselves are implemented by {@link TransferSagaSteps}.
+ * <p>
+ * When the {@link TransferSagaExecutor} fast path is enabled, most steps will already have been run by the time the
+ * event is read here. This processor is then the recovery path: it waits for a step still running on the fast path,
+ * and otherwise only runs a step if the entity is still waiting for it.
  */
 @Log4j
 public class TransferProcess extends ReadSideProcessor<TransferEvent> {
 
-    private final PortfolioService portfolioService;
+    private final int concurrentSteps; // max number of events to process concurrently
+    private final TransferSagaSteps sagaSteps;
+    private final TransferSagaExecutor sagaExecutor;
     private final TransferRepository transferRepository;
-    private final int concurrentSteps = 10; // max number of events to process concurrently
-    private final TransferEventVisitor transferEventVisitor;
+    private final ConsumerLagMonitor lagMonitor;
 
     @Inject
-    TransferProcess(PortfolioService portfolioService,
-                    TransferRepository transferRepository) {
-        this.portfolioService = portfolioService;
+    TransferProcess(TransferSagaSteps sagaSteps,
+                    TransferSagaExecutor sagaExecutor,
+                    TransferRepository transferRepository,
+                    ConsumerLagMonitor lagMonitor,
+                    Config config) {
+        this.sagaSteps = sagaSteps;
+        this.sagaExecutor = sagaExecutor;
         this.transferRepository = transferRepository;
-        this.transferEventVisitor = new TransferEventVisitor();
+        this.lagMonitor = lagMonitor;
+        // Needs to be comfortably larger than the batch size, otherwise batches will never fill
+        this.concurrentSteps = config.getInt("wiretransfer.saga.concurrent-steps");
     }
 
 
     @Override
     public ReadSideHandler<TransferEvent> buildHandler() {
 
-        return new HandleEvent();
+        return lagMonitor.readSide("TransferProcess", new HandleEvent());
     }
 
     @Override
@@ -72,101 +84,41 @@ public class TransferProcess extends ReadSideProcessor<TransferEvent> {
                             )
                     )
                     .mapAsyncUnordered(concurrentSteps,
-                            e -> e.first().visit(transferEventVisitor));
+                            e -> runStep(e.first()));
         }
 
     }
 
-    class TransferEventVisitor implements TransferEvent.Visitor<CompletionStage<Done>> {
-        @Override
-        public CompletionStage<Done> visit(TransferEvent.TransferInitiated transferInitiated) {
-            val transferEntity = transferRepository.get(transferInitiated.getTransferId());
-            if (transferInitiated.getTransferDetails().getSource() instanceof Account.Portfolio) {
-                val transfer = FundsTransfer.Withdrawl.builder()
-                        .transferId(transferInitiated.getTransferId())
-                        .funds(transferInitiated.getTransferDetails().getAmount())
-                        .build();
-                val portfolioId = ((Account.Portfolio) transferInitiated.getTransferDetails().getSource()).getPortfolioId();
-                return portfolioService
-                        .processTransfer(portfolioId)
-                        .invoke(transfer)
-                        .thenApply(done -> transferEntity.ask(TransferCommand.RequestFundsSuccessful.INSTANCE))
-                        .exceptionally(ex -> transferEntity.ask(TransferCommand.RequestFundsFailed.INSTANCE))
-                        .thenCompose(Function.identity());
-            } else {
-                // Any other sort of accounts are out of scope, this means they will freely accept and transfer money.
-                // You don't actually want sources of free money in a production system.
-                return transferEntity
-                        .ask(TransferCommand.RequestFundsSuccessful.INSTANCE);
-            }
-        }
-
-        @Override
-        public CompletionStage<Done> visit(TransferEvent.CouldNotSecureFunds couldNotSecureFunds) {
-            // Saga failed, but nothing to compensate for
-            return CompletableFuture.completedFuture(Done.getInstance());
-        }
-
-        @Override
-        public CompletionStage<Done> visit(TransferEvent.FundsRetrieved evt) {
-            val transferEntity = transferRepository.get(evt.getTransferId());
-            if (evt.getTransferDetails().getDestination() instanceof Account.Portfolio) {
-                val transfer = FundsTransfer.Deposit.builder()
-                        .transferId(evt.getTransferId())
-                        .funds(evt.getTransferDetails().getAmount())
-                        .build();
-                val portfolioId = ((Account.Portfolio) evt.getTransferDetails().getDestination()).getPortfolioId();
-
-                return portfolioService
-                        .processTransfer(portfolioId)
-                        .invoke(transfer)
-                        .thenApply(done ->
-                                transferEntity.ask(TransferCommand.DeliverySuccessful.INSTANCE))
-                        .exceptionally(ex ->
-                                transferEntity.ask(TransferCommand.DeliveryFailed.INSTANCE))
-                        .thenCompose(Function.identity());
-            } else {
-                // As above, any unimplemented account type just freely accepts transfers
-                return transferEntity
-                        .ask(TransferCommand.DeliverySuccessful.INSTANCE);
-            }
+    private CompletionStage<Done> runStep(TransferEvent event) {
+        if (!sagaExecutor.isEnabled()) {
+            return event.visit(sagaSteps);
         }
 
-        @Override
-        public CompletionStage<Done> visit(TransferEvent.DeliveryFailed deliveryFailed) {
-            val transferEntity = transferRepository.get(deliveryFailed.getTransferId());
-
-            if (deliveryFailed.getTransferDetails().getSource() instanceof Account.Portfolio) {
-
-                val portfolioId = ((Account.Portfolio) deliveryFailed.getTransferDetails().getSource()).getPortfolioId();
-                val refund = FundsTransfer.Refund.builder()
-                        .transferId(deliveryFailed.getTransferId())
-                        .funds(deliveryFailed.getTransferDetails().getAmount())
-                        .build();
-                return portfolioService
-                        .processTransfer(portfolioId)
-                        .invoke(refund)
-                        .thenCompose(done ->
-                                transferEntity.ask(TransferCommand.RefundSuccessful.INSTANCE)
-                        );
-            } else {
-                return transferEntity
-                        .ask(TransferCommand.RefundSuccessful.INSTANCE);
-            }
-        }
+        return sagaExecutor.inFlight(event)
+                .map(fastPathStep -> fastPathStep
+                        .handle((done, ex) -> ex == null
+                                ? CompletableFuture.completedFuture(Done.getInstance())
+                                : runStepIfPending(event))
+                        .thenCompose(Function.identity()))
+                .orElseGet(() -> runStepIfPending(event));
+    }
 
-        @Override
-        public CompletionStage<Done> visit(TransferEvent.DeliveryConfirmed deliveryConfirmed) {
-            // Saga is completed successfully
-            return CompletableFuture.completedFuture(Done.getInstance());
+    private CompletionStage<Done> runStepIfPending(TransferEvent event) {
+        Optional<TransferState.Status> pendingStatus = TransferSagaExecutor.pendingStatusAfter(event);
+        if (!pendingStatus.isPresent()) {
+            return event.visit(sagaSteps);
         }
 
-        @Override
-        public CompletionStage<Done> visit(TransferEvent.RefundDelivered refundSent) {
-            // Saga is complete after refunding source
-            return CompletableFuture.completedFuture(Done.getInstance());
-        }
+        return transferRepository
+                .get(event.getTransferId())
+                .ask(TransferCommand.GetState.INSTANCE)
+                .thenCompose(state -> {
+                    if (state.isPresent() && state.get().getStatus() == pendingStatus.get()) {
+                        return event.visit(sagaSteps);
+                    } else {
+                        // Already handled by the fast path
+                        return CompletableFuture.completedFuture(Done.getInstance());
+                    }
+                });
     }
-
-
 }
@@ -5,11 +5,11 @@ import akka.japi.Pair;
 import akka.stream.javadsl.Source;
 import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
 import com.lightbend.lagom.javadsl.persistence.Offset;
-import com.lightbend.lagom.javadsl.persistence.PersistentEntityRef;
+import com.redelastic.metrics.InstrumentedEntityRef;
 import com.redelastic.stocktrader.TransferId;
 
 public interface TransferRepository {
-    PersistentEntityRef<TransferCommand> get(TransferId transferId);
+    InstrumentedEntityRef<TransferCommand> get(TransferId transferId);
 
     Source<Pair<TransferEvent, Offset>, NotUsed> eventStream(AggregateEventTag<TransferEvent> tag, Offset offset);
 }
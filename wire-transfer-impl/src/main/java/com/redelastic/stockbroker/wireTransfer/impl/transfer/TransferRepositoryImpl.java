@@ -1,12 +1,15 @@
 package com.redelastic.stockbroker.wireTransfer.impl.transfer;
 
 import akka.NotUsed;
+import akka.actor.ActorSystem;
 import akka.japi.Pair;
 import akka.stream.javadsl.Source;
 import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
 import com.lightbend.lagom.javadsl.persistence.Offset;
-import com.lightbend.lagom.javadsl.persistence.PersistentEntityRef;
 import com.lightbend.lagom.javadsl.persistence.PersistentEntityRegistry;
+import com.redelastic.EntityDispatchers;
+import com.redelastic.metrics.InstrumentedEntityRef;
+import com.redelastic.metrics.MetricsRegistry;
 import com.redelastic.stocktrader.TransferId;
 
 import javax.inject.Inject;
@@ -14,16 +17,21 @@ import javax.inject.Inject;
 public class TransferRepositoryImpl implements TransferRepository {
 
     private final PersistentEntityRegistry entityRegistry;
+    private final MetricsRegistry metrics;
 
     @Inject
-    public TransferRepositoryImpl(PersistentEntityRegistry entityRegistry) {
+    public TransferRepositoryImpl(PersistentEntityRegistry entityRegistry,
+                                  MetricsRegistry metrics,
+                                  ActorSystem system) {
         entityRegistry.register(TransferEntity.class);
+        EntityDispatchers.check(system, TransferEntity.class);
         this.entityRegistry = entityRegistry;
+        this.metrics = metrics;
     }
 
     @Override
-    public PersistentEntityRef<TransferCommand> get(TransferId transferId) {
-        return entityRegistry.refFor(TransferEntity.class, transferId.getId());
+    public InstrumentedEntityRef<TransferCommand> get(TransferId transferId) {
+        return InstrumentedEntityRef.refFor(entityRegistry, TransferEntity.class, transferId.getId(), metrics);
     }
 
     @Override
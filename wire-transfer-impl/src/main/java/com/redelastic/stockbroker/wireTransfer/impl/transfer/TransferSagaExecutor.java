@@ -0,0 +1,206 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.Done;
+import com.redelastic.stocktrader.TransferId;
+import com.typesafe.config.Config;
+import lombok.extern.log4j.Log4j;
+import org.pcollections.PSequence;
+import org.pcollections.TreePVector;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fast path for the transfer saga. The TransferEntity hands each event to the executor as soon as it is persisted,
+ * and the next saga step runs immediately on the entity's node instead of waiting for {@link TransferProcess} to
+ * read the event back from the journal.
+ * <p>
+ * The fast path is best effort. Steps are not retried here and are dropped when too many are in flight; the saga
+ * processor still sees every event and runs any step the fast path has not completed. Which steps are running is
+ * only known on this node, so the processor on another node may run a step the fast path is also running. Steps
+ * must therefore be safe to repeat: the portfolio service applies each transfer's withdrawl and deposit once.
+ * <p>
+ * Also records end to end latency of completed sagas, split by the path that ran the final step.
+ */
+@Log4j
+@Singleton
+public class TransferSagaExecutor {
+
+    // The steps use the TransferEntity, which is given this executor, so are only looked up when a step runs
+    private final Provider<TransferSagaSteps> sagaSteps;
+    private final boolean enabled;
+    private final int maxInFlight;
+    private final long forgetAfterNanos;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Done>> inFlight = new ConcurrentHashMap<>();
+    // Transfers whose most recent step was started by the fast path, with when it started. Transfers that never
+    // complete, because they are stuck or were abandoned, are forgotten after forgetAfterNanos.
+    private final ConcurrentHashMap<TransferId, Long> fastPathTransfers = new ConcurrentHashMap<>();
+    private final AtomicLong lastForgotten = new AtomicLong(System.nanoTime());
+
+    private final SagaLatencyStats fastPathLatency = new SagaLatencyStats("fast");
+    private final SagaLatencyStats journalLatency = new SagaLatencyStats("journal");
+
+    @Inject
+    TransferSagaExecutor(Provider<TransferSagaSteps> sagaSteps, Config config) {
+        this(sagaSteps,
+                config.getBoolean("wiretransfer.saga.fast-path.enabled"),
+                config.getInt("wiretransfer.saga.fast-path.max-in-flight"),
+                config.getDuration("wiretransfer.saga.fast-path.forget-after"));
+    }
+
+    TransferSagaExecutor(TransferSagaSteps sagaSteps, boolean enabled, int maxInFlight, Duration forgetAfter) {
+        this(() -> sagaSteps, enabled, maxInFlight, forgetAfter);
+    }
+
+    private TransferSagaExecutor(Provider<TransferSagaSteps> sagaSteps, boolean enabled, int maxInFlight,
+                                 Duration forgetAfter) {
+        this.sagaSteps = sagaSteps;
+        this.enabled = enabled;
+        this.maxInFlight = maxInFlight;
+        this.forgetAfterNanos = forgetAfter.toNanos();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Run the saga step for a newly persisted event, or record the saga's latency if the event completes it.
+     */
+    void submit(TransferEvent event) {
+        submit(event, System.nanoTime());
+    }
+
+    void submit(TransferEvent event, long now) {
+        TransferId transferId = event.getTransferId();
+        forgetStaleTransfers(now);
+
+        if (!pendingStatusAfter(event).isPresent()) {
+            recordCompletion(event);
+            return;
+        }
+
+        if (!enabled || inFlight.size() >= maxInFlight) {
+            // Leave this step to the saga processor
+            fastPathTransfers.remove(transferId);
+            return;
+        }
+
+        String key = stepKey(event);
+        CompletableFuture<Done> step = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, step) != null) {
+            return;
+        }
+        fastPathTransfers.put(transferId, now);
+
+        CompletionStage<Done> result;
+        try {
+            result = event.visit(sagaSteps.get());
+        } catch (RuntimeException ex) {
+            CompletableFuture<Done> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            result = failed;
+        }
+
+        result.whenComplete((done, ex) -> {
+            inFlight.remove(key, step);
+            if (ex != null) {
+                log.debug("Fast path step for " + key + " failed, leaving it to the saga processor", ex);
+                fastPathTransfers.remove(transferId);
+                step.completeExceptionally(ex);
+            } else {
+                step.complete(done);
+            }
+        });
+    }
+
+    /**
+     * The fast path step currently running for this event on this node, if any.
+     */
+    Optional<CompletionStage<Done>> inFlight(TransferEvent event) {
+        return Optional.<CompletionStage<Done>>ofNullable(inFlight.get(stepKey(event)));
+    }
+
+    /**
+     * The saga state a transfer is in after this event while it waits for the event's step to run, or empty if
+     * the event completes the saga.
+     */
+    static Optional<TransferState.Status> pendingStatusAfter(TransferEvent event) {
+        return event.visit(new TransferEvent.Visitor<Optional<TransferState.Status>>() {
+            @Override
+            public Optional<TransferState.Status> visit(TransferEvent.TransferInitiated transferInitiated) {
+                return Optional.of(TransferState.Status.FundsRequested);
+            }
+
+            @Override
+            public Optional<TransferState.Status> visit(TransferEvent.FundsRetrieved fundsRetrieved) {
+                return Optional.of(TransferState.Status.FundsSent);
+            }
+
+            @Override
+            public Optional<TransferState.Status> visit(TransferEvent.CouldNotSecureFunds couldNotSecureFunds) {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<TransferState.Status> visit(TransferEvent.DeliveryConfirmed deliveryConfirmed) {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<TransferState.Status> visit(TransferEvent.DeliveryFailed deliveryFailed) {
+                return Optional.of(TransferState.Status.RefundSent);
+            }
+
+            @Override
+            public Optional<TransferState.Status> visit(TransferEvent.RefundDelivered refundDelivered) {
+                return Optional.empty();
+            }
+        });
+    }
+
+    /**
+     * Latency of sagas completed on this node since it started.
+     */
+    public PSequence<SagaLatency> latency() {
+        return TreePVector.<SagaLatency>empty()
+                .plus(fastPathLatency.snapshot())
+                .plus(journalLatency.snapshot());
+    }
+
+    /**
+     * The number of transfers whose latest step the fast path started and that have not completed since.
+     */
+    int fastPathTransfers() {
+        return fastPathTransfers.size();
+    }
+
+    // At most once per forgetAfterNanos, so each submit stays cheap
+    private void forgetStaleTransfers(long now) {
+        long last = lastForgotten.get();
+        if (now - last >= forgetAfterNanos && lastForgotten.compareAndSet(last, now)) {
+            fastPathTransfers.values().removeIf(startedAt -> now - startedAt >= forgetAfterNanos);
+        }
+    }
+
+    private void recordCompletion(TransferEvent event) {
+        boolean fastPath = fastPathTransfers.remove(event.getTransferId()) != null;
+        Long initiatedAt = event.getTransferDetails().getInitiatedAt();
+        if (initiatedAt != null) {
+            long latency = System.currentTimeMillis() - initiatedAt;
+            (fastPath ? fastPathLatency : journalLatency).record(latency);
+        }
+    }
+
+    private static String stepKey(TransferEvent event) {
+        return event.getTransferId().getId() + "/" + event.getClass().getSimpleName();
+    }
+}
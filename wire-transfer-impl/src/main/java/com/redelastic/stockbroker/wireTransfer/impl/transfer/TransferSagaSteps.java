@@ -0,0 +1,174 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.Done;
+import com.redelastic.CSHelper;
+import com.redelastic.stocktrader.portfolio.api.FundsTransfer;
+import com.redelastic.stocktrader.wiretransfer.api.Account;
+import lombok.val;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The steps of the transfer saga, one per event. Each step performs the external action the event calls for and
+ * then reports the result back to the TransferEntity, which persists the next event.
+ * <p>
+ * Steps are delivered at least once: they may be repeated when the saga processor restarts, when it and the fast
+ * path both run a step, or when a stuck transfer is re-driven. Withdrawls, deposits and refunds carry the transfer
+ * id, which the portfolio service uses to apply each of them once.
+ * <p>
+ * Portfolio steps are not sent individually, they are handed to the {@link PortfolioTransferBatcher} which groups
+ * steps across transfers into batched requests to the portfolio service.
+ */
+@Singleton
+public class TransferSagaSteps implements TransferEvent.Visitor<CompletionStage<Done>> {
+
+    private final PortfolioTransferBatcher portfolioTransfers;
+    private final TransferRepository transferRepository;
+
+    @Inject
+    TransferSagaSteps(PortfolioTransferBatcher portfolioTransfers,
+                      TransferRepository transferRepository) {
+        this.portfolioTransfers = portfolioTransfers;
+        this.transferRepository = transferRepository;
+    }
+
+    @Override
+    public CompletionStage<Done> visit(TransferEvent.TransferInitiated transferInitiated) {
+        val transferEntity = transferRepository.get(transferInitiated.getTransferId());
+        if (transferInitiated.getTransferDetails().getSource() instanceof Account.Portfolio) {
+            val transfer = FundsTransfer.Withdrawl.builder()
+                    .transferId(transferInitiated.getTransferId())
+                    .funds(transferInitiated.getTransferDetails().getAmount())
+                    .build();
+            val portfolioId = ((Account.Portfolio) transferInitiated.getTransferDetails().getSource()).getPortfolioId();
+            return portfolioTransfers
+                    .submit(portfolioId, transfer)
+                    .thenApply(outcome -> outcome.isAccepted()
+                            ? transferEntity.ask(TransferCommand.RequestFundsSuccessful.INSTANCE)
+                            : transferEntity.ask(TransferCommand.RequestFundsFailed.INSTANCE))
+                    .exceptionally(ex -> failedUnlessNotQueued(ex,
+                            () -> transferEntity.ask(TransferCommand.RequestFundsFailed.INSTANCE)))
+                    .thenCompose(Function.identity());
+        } else {
+            // Any other sort of accounts are out of scope, this means they will freely accept and transfer money.
+            // You don't actually want sources of free money in a production system.
+            return transferEntity
+                    .ask(TransferCommand.RequestFundsSuccessful.INSTANCE);
+        }
+    }
+
+    @Override
+    public CompletionStage<Done> visit(TransferEvent.CouldNotSecureFunds couldNotSecureFunds) {
+        if (couldNotSecureFunds.getTransferDetails().isNetted()) {
+            return startIndividually(couldNotSecureFunds.getTransferDetails());
+        }
+        // Saga failed, but nothing to compensate for
+        return CompletableFuture.completedFuture(Done.getInstance());
+    }
+
+    /**
+     * The source could not cover the total of a net transfer, but may still cover some of the transfers it carries,
+     * so rather than failing them all, start an ordinary saga for each under its own id.
+     */
+    private CompletionStage<Done> startIndividually(TransferDetails netted) {
+        CompletableFuture<?>[] started = netted.getNettedTransfers().stream()
+                .map(transfer -> startUnlessStarted(transfer, netted).toCompletableFuture())
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(started).thenApply(done -> Done.getInstance());
+    }
+
+    private CompletionStage<Done> startUnlessStarted(NettedTransfer transfer, TransferDetails netted) {
+        val transferEntity = transferRepository.get(transfer.getTransferId());
+        // This step is repeated if the saga processor restarts, by when some transfers may have been started
+        return transferEntity
+                .ask(TransferCommand.GetState.INSTANCE)
+                .thenCompose(state -> state.isPresent()
+                        ? CompletableFuture.completedFuture(Done.getInstance())
+                        : transferEntity.ask(TransferCommand.TransferFunds.builder()
+                                .source(netted.getSource())
+                                .destination(netted.getDestination())
+                                .amount(transfer.getAmount())
+                                .build()));
+    }
+
+    @Override
+    public CompletionStage<Done> visit(TransferEvent.FundsRetrieved evt) {
+        val transferEntity = transferRepository.get(evt.getTransferId());
+        if (evt.getTransferDetails().getDestination() instanceof Account.Portfolio) {
+            val transfer = FundsTransfer.Deposit.builder()
+                    .transferId(evt.getTransferId())
+                    .funds(evt.getTransferDetails().getAmount())
+                    .build();
+            val portfolioId = ((Account.Portfolio) evt.getTransferDetails().getDestination()).getPortfolioId();
+
+            return portfolioTransfers
+                    .submit(portfolioId, transfer)
+                    .thenApply(outcome -> outcome.isAccepted()
+                            ? transferEntity.ask(TransferCommand.DeliverySuccessful.INSTANCE)
+                            : transferEntity.ask(TransferCommand.DeliveryFailed.INSTANCE))
+                    .exceptionally(ex -> failedUnlessNotQueued(ex,
+                            () -> transferEntity.ask(TransferCommand.DeliveryFailed.INSTANCE)))
+                    .thenCompose(Function.identity());
+        } else {
+            // As above, any unimplemented account type just freely accepts transfers
+            return transferEntity
+                    .ask(TransferCommand.DeliverySuccessful.INSTANCE);
+        }
+    }
+
+    @Override
+    public CompletionStage<Done> visit(TransferEvent.DeliveryFailed deliveryFailed) {
+        val transferEntity = transferRepository.get(deliveryFailed.getTransferId());
+
+        if (deliveryFailed.getTransferDetails().getSource() instanceof Account.Portfolio) {
+
+            val portfolioId = ((Account.Portfolio) deliveryFailed.getTransferDetails().getSource()).getPortfolioId();
+            val refund = FundsTransfer.Refund.builder()
+                    .transferId(deliveryFailed.getTransferId())
+                    .funds(deliveryFailed.getTransferDetails().getAmount())
+                    .build();
+            return portfolioTransfers
+                    .submit(portfolioId, refund)
+                    .thenCompose(outcome -> {
+                        if (!outcome.isAccepted()) {
+                            // Fail the stage so the refund is retried when the processor restarts
+                            throw new IllegalStateException("Refund for transfer " + deliveryFailed.getTransferId()
+                                    + " rejected: " + outcome.getReason());
+                        }
+                        return transferEntity.ask(TransferCommand.RefundSuccessful.INSTANCE);
+                    });
+        } else {
+            return transferEntity
+                    .ask(TransferCommand.RefundSuccessful.INSTANCE);
+        }
+    }
+
+    /**
+     * A step the batcher had no room for never reached the portfolio, so rather than failing the transfer, fail the
+     * stage for the saga processor to retry the step.
+     */
+    private static CompletionStage<Done> failedUnlessNotQueued(Throwable ex, Supplier<CompletionStage<Done>> failed) {
+        if (PortfolioTransferBatcher.notQueued(ex)) {
+            throw new CompletionException(CSHelper.unwrap(ex));
+        }
+        return failed.get();
+    }
+
+    @Override
+    public CompletionStage<Done> visit(TransferEvent.DeliveryConfirmed deliveryConfirmed) {
+        // Saga is completed successfully
+        return CompletableFuture.completedFuture(Done.getInstance());
+    }
+
+    @Override
+    public CompletionStage<Done> visit(TransferEvent.RefundDelivered refundSent) {
+        // Saga is complete after refunding source
+        return CompletableFuture.completedFuture(Done.getInstance());
+    }
+}
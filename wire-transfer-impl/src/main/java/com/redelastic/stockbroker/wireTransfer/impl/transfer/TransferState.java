@@ -18,6 +18,8 @@ public class TransferState implements Jsonable {
                         .source(transfer.getSource())
                         .destination(transfer.getDestination())
                         .amount(transfer.getAmount())
+                        .nettedTransfers(transfer.getNettedTransfers())
+                        .initiatedAt(transfer.getInitiatedAt())
                         .build(),
                 Status.FundsRequested
         );
@@ -0,0 +1,183 @@
+package com.redelastic.stockbroker.wireTransfer.impl;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.lightbend.lagom.javadsl.persistence.PersistentEntity;
+import com.lightbend.lagom.javadsl.persistence.PersistentEntityRegistry;
+import com.redelastic.CSHelper;
+import com.redelastic.metrics.InstrumentedEntityRef;
+import com.redelastic.metrics.MetricsRegistry;
+import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferCommand;
+import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferEntity;
+import com.redelastic.stockbroker.wireTransfer.impl.transfer.TransferRepositoryImpl;
+import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.wiretransfer.api.Account;
+import com.redelastic.stocktrader.wiretransfer.api.BulkTransfer;
+import com.redelastic.stocktrader.wiretransfer.api.BulkTransferAccepted;
+import com.redelastic.stocktrader.wiretransfer.api.Transfer;
+import com.redelastic.stocktrader.wiretransfer.api.WireTransferService;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pcollections.PSequence;
+import org.pcollections.TreePVector;
+
+import javax.inject.Inject;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static com.lightbend.lagom.javadsl.testkit.ServiceTest.*;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static play.inject.Bindings.bind;
+
+public class WireTransferServiceImplTest {
+
+    private static final int TRANSFERS = 20;
+
+    private static TestServer server;
+
+    @BeforeClass
+    public static void setUp() {
+        server = startServer(defaultSetup().withCassandra()
+                .configureBuilder(b -> b
+                        .configure("wiretransfer.stuck-transfers.enabled", false)
+                        .overrides(bind(TransferRepositoryImpl.class).to(FailingTransferRepository.class))));
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+    }
+
+    @Test
+    public void bulkTransfersReturnEachClientRefWithItsOwnTransfer() throws Exception {
+        WireTransferService service = server.client(WireTransferService.class);
+
+        List<BulkTransferAccepted> accepted = service.bulkTransferFunds()
+                .invoke(keptOpen(transfers("bulk", TRANSFERS, BigDecimal.TEN)))
+                .thenCompose(response -> response.take(TRANSFERS).runWith(Sink.seq(), server.materializer()))
+                .toCompletableFuture().get(60, SECONDS);
+
+        assertEachAcceptedOnce("bulk", accepted);
+    }
+
+    @Test
+    public void batchTransfersReturnEachClientRefWithItsOwnTransfer() throws Exception {
+        WireTransferService service = server.client(WireTransferService.class);
+
+        PSequence<BulkTransferAccepted> accepted = service.transferFundsBatch()
+                .invoke(TreePVector.from(transfers("batch", TRANSFERS, BigDecimal.TEN)))
+                .toCompletableFuture().get(60, SECONDS);
+
+        assertEachAcceptedOnce("batch", accepted);
+    }
+
+    @Test
+    public void bulkTransfersFailWhenATransferCannotBeStarted() throws Exception {
+        WireTransferService service = server.client(WireTransferService.class);
+        List<BulkTransfer> transfers = transfers("failing", TRANSFERS, BigDecimal.TEN);
+        transfers.set(TRANSFERS / 2, transfer("unstartable", FailingTransferRepository.FAILING_AMOUNT));
+
+        CompletionStage<List<BulkTransferAccepted>> accepted = service.bulkTransferFunds()
+                .invoke(keptOpen(transfers))
+                .thenCompose(response -> response.runWith(Sink.seq(), server.materializer()));
+
+        try {
+            accepted.toCompletableFuture().get(60, SECONDS);
+            fail("Bulk transfer completed despite a transfer failing to start");
+        } catch (ExecutionException expected) {
+            // The response stream is failed, rather than completed without the transfer
+        }
+    }
+
+    /**
+     * The connection is closed once the request stream completes, so it is left open until the transfers are in.
+     */
+    private static Source<BulkTransfer, NotUsed> keptOpen(List<BulkTransfer> transfers) {
+        return Source.from(transfers).concat(Source.maybe());
+    }
+
+    private static List<BulkTransfer> transfers(String prefix, int count, BigDecimal funds) {
+        List<BulkTransfer> transfers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            transfers.add(transfer(prefix + "-" + i, funds));
+        }
+        return transfers;
+    }
+
+    private static BulkTransfer transfer(String clientRef, BigDecimal funds) {
+        return BulkTransfer.builder()
+                .clientRef(clientRef)
+                .transfer(Transfer.builder()
+                        .sourceAccount(new Account.SavingsAccount("source"))
+                        .destinationAccount(new Account.SavingsAccount("destination"))
+                        .funds(funds)
+                        .build())
+                .build();
+    }
+
+    /**
+     * Transfers are accepted in whatever order their entities reply, so only the pairing of client refs with transfer
+     * ids is checked.
+     */
+    private static void assertEachAcceptedOnce(String prefix, List<BulkTransferAccepted> accepted) {
+        assertEquals(TRANSFERS, accepted.size());
+        Set<String> clientRefs = accepted.stream()
+                .map(BulkTransferAccepted::getClientRef)
+                .collect(Collectors.toSet());
+        Set<String> expected = transfers(prefix, TRANSFERS, BigDecimal.TEN).stream()
+                .map(BulkTransfer::getClientRef)
+                .collect(Collectors.toSet());
+        assertEquals(expected, clientRefs);
+        Set<TransferId> transferIds = accepted.stream()
+                .map(BulkTransferAccepted::getTransferId)
+                .collect(Collectors.toSet());
+        assertEquals(TRANSFERS, transferIds.size());
+    }
+
+    /**
+     * Fails to start any transfer of {@link #FAILING_AMOUNT}, as an entity that cannot be reached would.
+     */
+    static class FailingTransferRepository extends TransferRepositoryImpl {
+
+        static final BigDecimal FAILING_AMOUNT = new BigDecimal("13.13");
+
+        private final MetricsRegistry metrics;
+
+        @Inject
+        public FailingTransferRepository(PersistentEntityRegistry entityRegistry,
+                                         MetricsRegistry metrics,
+                                         ActorSystem system) {
+            super(entityRegistry, metrics, system);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public InstrumentedEntityRef<TransferCommand> get(TransferId transferId) {
+            InstrumentedEntityRef<TransferCommand> entity = super.get(transferId);
+            return new InstrumentedEntityRef<TransferCommand>(null, TransferEntity.class, metrics) {
+                @Override
+                public <Reply, Cmd extends Object & PersistentEntity.ReplyType<Reply>> CompletionStage<Reply> ask(
+                        Cmd command) {
+                    if (command instanceof TransferCommand.TransferFunds
+                            && ((TransferCommand.TransferFunds) command).getAmount().equals(FAILING_AMOUNT)) {
+                        return CSHelper.failedFuture(new IllegalStateException("Transfer entity unavailable"));
+                    }
+                    return entity.ask(command);
+                }
+            };
+        }
+    }
+}
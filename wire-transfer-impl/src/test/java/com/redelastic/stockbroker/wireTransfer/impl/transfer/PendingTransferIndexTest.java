@@ -0,0 +1,174 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.japi.Pair;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.utils.UUIDs;
+import com.lightbend.lagom.javadsl.persistence.Offset;
+import com.lightbend.lagom.javadsl.persistence.ReadSideProcessor.ReadSideHandler;
+import com.lightbend.lagom.javadsl.persistence.cassandra.CassandraSession;
+import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.wiretransfer.api.Account;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.lightbend.lagom.javadsl.testkit.ServiceTest.*;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PendingTransferIndexTest {
+
+    private static final TransferDetails DETAILS = TransferDetails.builder()
+            .source(new Account.SavingsAccount("source"))
+            .destination(new Account.SavingsAccount("destination"))
+            .amount(new BigDecimal("100"))
+            .build();
+
+    private static TestServer server;
+    private static CassandraSession db;
+    private static PendingTransferIndex index;
+    private static ReadSideHandler<TransferEvent> handler;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = startServer(defaultSetup().withCassandra()
+                .configureBuilder(b -> b.configure("wiretransfer.stuck-transfers.enabled", false)));
+        db = server.injector().instanceOf(CassandraSession.class);
+        index = server.injector().instanceOf(PendingTransferIndex.class);
+
+        // Events are handed to the processor directly, rather than persisted and read back from the journal
+        handler = server.injector().instanceOf(PendingTransferIndexProcessor.class).buildHandler();
+        handler.globalPrepare().toCompletableFuture().get(30, SECONDS);
+        handler.prepare(TransferEvent.TAG.allTags().get(0)).toCompletableFuture().get(30, SECONDS);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+    }
+
+    @Test
+    public void movesTransfersBetweenBucketsAsTheyProgress() throws Exception {
+        TransferId transferId = new TransferId("progressing");
+
+        handle(new TransferEvent.TransferInitiated(transferId, DETAILS));
+        assertEquals(Optional.of("FundsRequested"), indexedStatus(transferId));
+        assertEquals(1, pendingRows(transferId).size());
+
+        handle(new TransferEvent.FundsRetrieved(transferId, DETAILS));
+        assertEquals(Optional.of("FundsSent"), indexedStatus(transferId));
+        List<Row> pending = pendingRows(transferId);
+        assertEquals(1, pending.size());
+        assertEquals("FundsSent", pending.get(0).getString("status"));
+    }
+
+    @Test
+    public void removesTransfersWhenTheirSagaFinishes() throws Exception {
+        TransferId delivered = new TransferId("delivered");
+        handle(new TransferEvent.TransferInitiated(delivered, DETAILS));
+        handle(new TransferEvent.FundsRetrieved(delivered, DETAILS));
+        handle(new TransferEvent.DeliveryConfirmed(delivered, DETAILS));
+
+        TransferId unfunded = new TransferId("unfunded");
+        handle(new TransferEvent.TransferInitiated(unfunded, DETAILS));
+        handle(new TransferEvent.CouldNotSecureFunds(unfunded, DETAILS));
+
+        TransferId refunded = new TransferId("refunded");
+        handle(new TransferEvent.TransferInitiated(refunded, DETAILS));
+        handle(new TransferEvent.FundsRetrieved(refunded, DETAILS));
+        handle(new TransferEvent.DeliveryFailed(refunded, DETAILS));
+        assertEquals(Optional.of("RefundSent"), indexedStatus(refunded));
+        handle(new TransferEvent.RefundDelivered(refunded, DETAILS));
+
+        for (TransferId transferId : new TransferId[]{delivered, unfunded, refunded}) {
+            assertFalse(indexedStatus(transferId).isPresent());
+            assertTrue(pendingRows(transferId).isEmpty());
+        }
+    }
+
+    @Test
+    public void readsOnlyExpiredBucketsAndDropsEmptyOnes() throws Exception {
+        Instant now = Instant.now();
+        long current = index.bucketFor(now.toEpochMilli());
+        // Buckets are a minute wide and transfers are stuck after five, so the transfers in the bucket from five
+        // minutes ago may have moved within the last five minutes, and the bucket before it is the last expired
+        long lastExpired = current - 6;
+        TransferState.Status status = TransferState.Status.FundsSent;
+
+        index(status, current - 10, "old", now.minus(Duration.ofMinutes(10)));
+        indexBucket(status, current - 8);
+        index(status, lastExpired, "last-expired", now.minus(Duration.ofSeconds(6 * 60 + 30)));
+        index(status, lastExpired + 1, "not-yet-expired", now.minus(Duration.ofSeconds(5 * 60 + 30)));
+        index(status, current, "recent", now);
+
+        List<PendingTransferIndex.PendingTransfer> stuck = index.stuckTransfers(now).toCompletableFuture()
+                .get(10, SECONDS);
+
+        Set<String> stuckIds = stuck.stream()
+                .filter(transfer -> transfer.getStatus() == status)
+                .map(transfer -> transfer.getTransferId().getId())
+                .collect(Collectors.toSet());
+        assertEquals(2, stuckIds.size());
+        assertTrue(stuckIds.contains("old"));
+        assertTrue(stuckIds.contains("last-expired"));
+
+        Set<Long> buckets = db.selectAll("SELECT bucket FROM transfer_pending_buckets WHERE status = ?", status.name())
+                .toCompletableFuture().get(10, SECONDS).stream()
+                .map(row -> row.getLong("bucket"))
+                .collect(Collectors.toSet());
+        assertFalse(buckets.contains(current - 8));
+        assertTrue(buckets.contains(current - 10));
+        assertTrue(buckets.contains(lastExpired));
+        assertTrue(buckets.contains(lastExpired + 1));
+        assertTrue(buckets.contains(current));
+    }
+
+    private static void handle(TransferEvent event) throws Exception {
+        Source.single(Pair.create(event, Offset.timeBasedUUID(UUIDs.timeBased())))
+                .via(handler.handle())
+                .runWith(Sink.ignore(), server.materializer())
+                .toCompletableFuture().get(10, SECONDS);
+    }
+
+    private static Optional<String> indexedStatus(TransferId transferId) throws Exception {
+        return db.selectOne("SELECT status FROM transfer_pending_status WHERE transferId = ?", transferId.getId())
+                .toCompletableFuture().get(10, SECONDS)
+                .map(row -> row.getString("status"));
+    }
+
+    private static List<Row> pendingRows(TransferId transferId) throws Exception {
+        return db.selectAll("SELECT status, bucket FROM transfer_pending_by_bucket WHERE transferId = ? ALLOW FILTERING",
+                transferId.getId())
+                .toCompletableFuture().get(10, SECONDS);
+    }
+
+    private static void indexBucket(TransferState.Status status, long bucket) throws Exception {
+        db.executeWrite("INSERT INTO transfer_pending_buckets (status, bucket) VALUES (?, ?)", status.name(), bucket)
+                .toCompletableFuture().get(10, SECONDS);
+    }
+
+    private static void index(TransferState.Status status, long bucket, String transferId, Instant transitionTime)
+            throws Exception {
+        indexBucket(status, bucket);
+        db.executeWrite(
+                "INSERT INTO transfer_pending_by_bucket (status, bucket, transferId, transitionTime) VALUES (?, ?, ?, ?)",
+                status.name(), bucket, transferId, Date.from(transitionTime))
+                .toCompletableFuture().get(10, SECONDS);
+    }
+}
@@ -0,0 +1,256 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.testkit.javadsl.TestKit;
+import com.lightbend.lagom.javadsl.api.ServiceCall;
+import com.lightbend.lagom.javadsl.api.broker.Topic;
+import com.redelastic.CSHelper;
+import com.redelastic.stocktrader.OrderId;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.portfolio.api.FundsTransfer;
+import com.redelastic.stocktrader.portfolio.api.OpenPortfolioDetails;
+import com.redelastic.stocktrader.portfolio.api.OrderPlaced;
+import com.redelastic.stocktrader.portfolio.api.PortfolioService;
+import com.redelastic.stocktrader.portfolio.api.PortfolioSummary;
+import com.redelastic.stocktrader.portfolio.api.PortfolioTransfer;
+import com.redelastic.stocktrader.portfolio.api.PortfolioView;
+import com.redelastic.stocktrader.portfolio.api.RankedPortfolio;
+import com.redelastic.stocktrader.portfolio.api.TransferOutcome;
+import com.redelastic.stocktrader.portfolio.api.order.OrderDetails;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pcollections.PSequence;
+import org.pcollections.TreePVector;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PortfolioTransferBatcherTest {
+
+    private static final PortfolioId PORTFOLIO = new PortfolioId("portfolio");
+
+    private static ActorSystem system;
+    private static Materializer materializer;
+
+    @BeforeClass
+    public static void setup() {
+        system = ActorSystem.create("PortfolioTransferBatcherTest");
+        materializer = ActorMaterializer.create(system);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    @Test
+    public void completesEachStepWithItsOwnOutcome() throws Exception {
+        // Accepts every transfer but the second
+        PortfolioServiceStub portfolios = new PortfolioServiceStub(transfers -> {
+            List<TransferOutcome> outcomes = new ArrayList<>();
+            for (int i = 0; i < transfers.size(); i++) {
+                outcomes.add(outcome(transfers.get(i), i != 1, i != 1 ? null : "Insufficient funds"));
+            }
+            return CompletableFuture.completedFuture(TreePVector.from(outcomes));
+        });
+        // The window closes as soon as it holds all three steps
+        PortfolioTransferBatcher batcher = new PortfolioTransferBatcher(portfolios, materializer, batchConfig(3, 100));
+
+        CompletableFuture<TransferOutcome> first = batcher.submit(PORTFOLIO, withdrawl("first")).toCompletableFuture();
+        CompletableFuture<TransferOutcome> second = batcher.submit(PORTFOLIO, withdrawl("second")).toCompletableFuture();
+        CompletableFuture<TransferOutcome> third = batcher.submit(PORTFOLIO, withdrawl("third")).toCompletableFuture();
+
+        assertOutcome(first.get(5, TimeUnit.SECONDS), "first", true);
+        assertOutcome(second.get(5, TimeUnit.SECONDS), "second", false);
+        assertEquals("Insufficient funds", second.get().getReason());
+        assertOutcome(third.get(5, TimeUnit.SECONDS), "third", true);
+        assertNull(third.get().getReason());
+
+        assertEquals(1, portfolios.batches.size());
+        assertEquals(3, portfolios.batches.get(0).size());
+    }
+
+    @Test
+    public void failsEveryStepWhenTheOutcomesDoNotMatchTheBatch() throws Exception {
+        // Loses the last outcome, so none of them can be matched to its step
+        PortfolioServiceStub portfolios = new PortfolioServiceStub(transfers -> CompletableFuture.completedFuture(
+                TreePVector.singleton(outcome(transfers.get(0), true, null))));
+        PortfolioTransferBatcher batcher = new PortfolioTransferBatcher(portfolios, materializer, batchConfig(2, 100));
+
+        CompletableFuture<TransferOutcome> first = batcher.submit(PORTFOLIO, withdrawl("first")).toCompletableFuture();
+        CompletableFuture<TransferOutcome> second = batcher.submit(PORTFOLIO, withdrawl("second")).toCompletableFuture();
+
+        for (CompletableFuture<TransferOutcome> step : Arrays.asList(first, second)) {
+            Throwable failure = failureOf(step);
+            assertTrue(failure instanceof IllegalStateException);
+            assertFalse(PortfolioTransferBatcher.notQueued(failure));
+        }
+    }
+
+    @Test
+    public void failsEveryStepWhenTheBatchFails() throws Exception {
+        RuntimeException unavailable = new RuntimeException("Portfolio service unavailable");
+        PortfolioServiceStub portfolios = new PortfolioServiceStub(transfers -> CSHelper.failedFuture(unavailable));
+        PortfolioTransferBatcher batcher = new PortfolioTransferBatcher(portfolios, materializer, batchConfig(2, 100));
+
+        CompletableFuture<TransferOutcome> first = batcher.submit(PORTFOLIO, withdrawl("first")).toCompletableFuture();
+        CompletableFuture<TransferOutcome> second = batcher.submit(PORTFOLIO, withdrawl("second")).toCompletableFuture();
+
+        assertEquals(unavailable, failureOf(first));
+        assertEquals(unavailable, failureOf(second));
+    }
+
+    @Test
+    public void failsStepsItHasNoRoomFor() throws Exception {
+        // Holds every batch until the end of the test, so steps back up into the queue
+        CompletableFuture<PSequence<TransferOutcome>> held = new CompletableFuture<>();
+        PortfolioServiceStub portfolios = new PortfolioServiceStub(transfers -> held);
+        PortfolioTransferBatcher batcher = new PortfolioTransferBatcher(portfolios, materializer, batchConfig(1, 1));
+
+        List<CompletableFuture<TransferOutcome>> steps = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            steps.add(batcher.submit(PORTFOLIO, withdrawl("transfer-" + i)).toCompletableFuture());
+        }
+
+        // Offers are answered in order, so once the last has been refused every other has been answered too
+        assertTrue(PortfolioTransferBatcher.notQueued(failureOf(steps.get(steps.size() - 1))));
+        long notQueued = steps.stream()
+                .filter(CompletableFuture::isCompletedExceptionally)
+                .filter(step -> PortfolioTransferBatcher.notQueued(failureOf(step)))
+                .count();
+        // The first step is being sent, so was queued
+        assertTrue(steps.size() > notQueued);
+
+        held.complete(TreePVector.empty());
+    }
+
+    private static Config batchConfig(int maxSize, int bufferSize) {
+        return ConfigFactory.parseString(
+                "wiretransfer.portfolio-batch { max-size = " + maxSize + ", buffer-size = " + bufferSize
+                        + ", window = 5s, parallelism = 1 }");
+    }
+
+    private static FundsTransfer withdrawl(String transferId) {
+        return FundsTransfer.Withdrawl.builder()
+                .transferId(new TransferId(transferId))
+                .funds(new BigDecimal("10"))
+                .build();
+    }
+
+    private static TransferOutcome outcome(PortfolioTransfer transfer, boolean accepted, String reason) {
+        return TransferOutcome.builder()
+                .portfolioId(transfer.getPortfolioId())
+                .transferId(transfer.getTransfer().getTransferId())
+                .accepted(accepted)
+                .reason(reason)
+                .build();
+    }
+
+    private static void assertOutcome(TransferOutcome outcome, String transferId, boolean accepted) {
+        assertEquals(PORTFOLIO, outcome.getPortfolioId());
+        assertEquals(new TransferId(transferId), outcome.getTransferId());
+        assertEquals(accepted, outcome.isAccepted());
+    }
+
+    private static Throwable failureOf(CompletableFuture<?> step) {
+        try {
+            step.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return CSHelper.unwrap(e);
+        } catch (Exception e) {
+            throw new AssertionError("Step did not fail", e);
+        }
+        fail("Step succeeded");
+        return null;
+    }
+
+    /**
+     * Answers processTransfers with the given function, recording each batch. Nothing else is called.
+     */
+    private static class PortfolioServiceStub implements PortfolioService {
+
+        final List<PSequence<PortfolioTransfer>> batches = new CopyOnWriteArrayList<>();
+        private final Function<PSequence<PortfolioTransfer>, CompletionStage<PSequence<TransferOutcome>>> process;
+
+        PortfolioServiceStub(Function<PSequence<PortfolioTransfer>, CompletionStage<PSequence<TransferOutcome>>> process) {
+            this.process = process;
+        }
+
+        @Override
+        public ServiceCall<PSequence<PortfolioTransfer>, PSequence<TransferOutcome>> processTransfers() {
+            return transfers -> {
+                batches.add(transfers);
+                return process.apply(transfers);
+            };
+        }
+
+        @Override
+        public ServiceCall<OpenPortfolioDetails, PortfolioId> openPortfolio() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServiceCall<OrderDetails, OrderId> placeOrder(PortfolioId portfolioId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServiceCall<NotUsed, Done> closePortfolio(PortfolioId portfolioId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServiceCall<FundsTransfer, Done> processTransfer(PortfolioId portfolioId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServiceCall<NotUsed, PortfolioView> getPortfolio(PortfolioId portfolioId, Optional<String> fields) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServiceCall<NotUsed, PSequence<PortfolioSummary>> getAllPortfolios() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServiceCall<NotUsed, PSequence<RankedPortfolio>> getTopPortfolios(Optional<Integer> limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServiceCall<NotUsed, PSequence<RankedPortfolio>> getBiggestMovers(Optional<Integer> limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Topic<OrderPlaced> orderPlaced() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
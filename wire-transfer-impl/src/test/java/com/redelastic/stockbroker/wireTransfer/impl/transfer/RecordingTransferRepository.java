@@ -0,0 +1,76 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.japi.Pair;
+import akka.stream.javadsl.Source;
+import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
+import com.lightbend.lagom.javadsl.persistence.Offset;
+import com.lightbend.lagom.javadsl.persistence.PersistentEntity;
+import com.redelastic.metrics.InstrumentedEntityRef;
+import com.redelastic.metrics.MetricsRegistry;
+import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.wiretransfer.api.Account;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records the transfers started through it. {@code GetState} finds a transfer once it has been started, or if it
+ * was marked as started beforehand.
+ */
+class RecordingTransferRepository implements TransferRepository {
+
+    private static final TransferDetails STARTED = TransferDetails.builder()
+            .source(new Account.SavingsAccount("savings"))
+            .destination(new Account.SavingsAccount("savings"))
+            .amount(BigDecimal.ONE)
+            .build();
+
+    final List<Pair<TransferId, TransferCommand.TransferFunds>> started = new CopyOnWriteArrayList<>();
+    private final Set<TransferId> existing = new HashSet<>();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    void alreadyStarted(TransferId transferId) {
+        existing.add(transferId);
+    }
+
+    private boolean isStarted(TransferId transferId) {
+        return existing.contains(transferId) || started.stream().anyMatch(s -> s.first().equals(transferId));
+    }
+
+    @Override
+    public InstrumentedEntityRef<TransferCommand> get(TransferId transferId) {
+        return new InstrumentedEntityRef<TransferCommand>(null, TransferEntity.class, metrics) {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <Reply, Cmd extends Object & PersistentEntity.ReplyType<Reply>> CompletionStage<Reply> ask(
+                    Cmd command) {
+                Object reply;
+                if (command instanceof TransferCommand.TransferFunds) {
+                    started.add(Pair.create(transferId, (TransferCommand.TransferFunds) command));
+                    reply = Done.getInstance();
+                } else if (command instanceof TransferCommand.GetState) {
+                    reply = isStarted(transferId)
+                            ? Optional.of(new TransferState(STARTED, TransferState.Status.FundsRequested))
+                            : Optional.empty();
+                } else {
+                    throw new UnsupportedOperationException(command.toString());
+                }
+                return CompletableFuture.completedFuture((Reply) reply);
+            }
+        };
+    }
+
+    @Override
+    public Source<Pair<TransferEvent, Offset>, NotUsed> eventStream(AggregateEventTag<TransferEvent> tag,
+                                                                     Offset offset) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,246 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import com.lightbend.lagom.javadsl.persistence.AggregateEventTag;
+import com.lightbend.lagom.javadsl.persistence.Offset;
+import com.lightbend.lagom.javadsl.persistence.PersistentEntity;
+import com.redelastic.metrics.InstrumentedEntityRef;
+import com.redelastic.metrics.MetricsRegistry;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.wiretransfer.api.Account;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class StuckTransferSweeperTest {
+
+    private static final TransferDetails DETAILS = TransferDetails.builder()
+            .source(new Account.Portfolio(new PortfolioId("source")))
+            .destination(new Account.SavingsAccount("savings"))
+            .amount(new BigDecimal("100"))
+            .build();
+
+    private static ActorSystem system;
+    private static Materializer materializer;
+
+    @BeforeClass
+    public static void setup() {
+        system = ActorSystem.create("StuckTransferSweeperTest");
+        materializer = ActorMaterializer.create(system);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    @Test
+    public void redrivesTheStepForTheStateEachTransferIsIn() throws Exception {
+        IndexStub index = new IndexStub();
+        RepositoryStub transfers = new RepositoryStub();
+        index.stuck("requested", TransferState.Status.FundsRequested);
+        transfers.inState("requested", TransferState.Status.FundsRequested);
+        index.stuck("refunding", TransferState.Status.RefundSent);
+        transfers.inState("refunding", TransferState.Status.RefundSent);
+        // The index lags the entity, which is what the step is chosen from
+        index.stuck("sent", TransferState.Status.FundsRequested);
+        transfers.inState("sent", TransferState.Status.FundsSent);
+        index.stuck("delivered", TransferState.Status.FundsSent);
+        transfers.inState("delivered", TransferState.Status.DeliveryConfirmed);
+        index.stuck("unknown", TransferState.Status.FundsRequested);
+
+        StepsStub steps = new StepsStub(true);
+        sweeper(index, transfers, steps, 8).sweep().toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        Map<TransferId, Class<?>> redriven = new HashMap<>();
+        steps.started.forEach(event -> redriven.put(event.getTransferId(), event.getClass()));
+        assertEquals(3, redriven.size());
+        assertEquals(TransferEvent.TransferInitiated.class, redriven.get(new TransferId("requested")));
+        assertEquals(TransferEvent.DeliveryFailed.class, redriven.get(new TransferId("refunding")));
+        assertEquals(TransferEvent.FundsRetrieved.class, redriven.get(new TransferId("sent")));
+    }
+
+    @Test
+    public void redrivesAtMostTheConfiguredNumberAtOnce() throws Exception {
+        IndexStub index = new IndexStub();
+        RepositoryStub transfers = new RepositoryStub();
+        for (int i = 0; i < 5; i++) {
+            index.stuck("transfer-" + i, TransferState.Status.FundsRequested);
+            transfers.inState("transfer-" + i, TransferState.Status.FundsRequested);
+        }
+
+        StepsStub steps = new StepsStub(false);
+        CompletableFuture<Done> sweep = sweeper(index, transfers, steps, 2).sweep().toCompletableFuture();
+
+        for (int completed = 0; completed < 5; completed++) {
+            int expected = Math.min(completed + 2, 5);
+            awaitStarted(steps, expected);
+            assertEquals(expected, steps.started.size());
+            assertFalse(sweep.isDone());
+            steps.pending.get(completed).complete(Done.getInstance());
+        }
+
+        sweep.get(5, TimeUnit.SECONDS);
+        assertEquals(2, steps.mostInProgress.get());
+    }
+
+    @Test
+    public void carriesOnPastTransfersItCannotRedrive() throws Exception {
+        IndexStub index = new IndexStub();
+        RepositoryStub transfers = new RepositoryStub();
+        index.stuck("failing", TransferState.Status.FundsRequested);
+        transfers.inState("failing", TransferState.Status.FundsRequested);
+        index.stuck("working", TransferState.Status.FundsRequested);
+        transfers.inState("working", TransferState.Status.FundsRequested);
+
+        StepsStub steps = new StepsStub(true);
+        steps.failing = new TransferId("failing");
+        sweeper(index, transfers, steps, 1).sweep().toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, steps.started.size());
+        assertEquals(new TransferId("working"), steps.started.get(1).getTransferId());
+    }
+
+    private static StuckTransferSweeper sweeper(IndexStub index, RepositoryStub transfers, StepsStub steps,
+                                                int parallelism) {
+        Config config = ConfigFactory.parseString(
+                "wiretransfer.stuck-transfers { enabled = off, redrive-parallelism = " + parallelism + " }");
+        return new StuckTransferSweeper(system, index, transfers, steps, materializer, config);
+    }
+
+    private static void awaitStarted(StepsStub steps, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (steps.started.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        // Give the sweep the chance to start a step it should not
+        Thread.sleep(100);
+    }
+
+    private static class IndexStub extends PendingTransferIndex {
+        private final List<PendingTransfer> stuck = new ArrayList<>();
+
+        IndexStub() {
+            super(null, ConfigFactory.parseString(
+                    "wiretransfer.stuck-transfers { bucket-size = 1m, stuck-after = 5m }"));
+        }
+
+        void stuck(String transferId, TransferState.Status status) {
+            stuck.add(new PendingTransfer(new TransferId(transferId), status, Duration.ofMinutes(10)));
+        }
+
+        @Override
+        public CompletionStage<List<PendingTransfer>> stuckTransfers() {
+            return CompletableFuture.completedFuture(stuck);
+        }
+    }
+
+    /**
+     * Answers {@code GetState} with the state each transfer was given, or with no state for any other transfer.
+     */
+    private static class RepositoryStub implements TransferRepository {
+        private final Map<TransferId, TransferState> states = new HashMap<>();
+        private final MetricsRegistry metrics = new MetricsRegistry();
+
+        void inState(String transferId, TransferState.Status status) {
+            states.put(new TransferId(transferId), new TransferState(DETAILS, status));
+        }
+
+        @Override
+        public InstrumentedEntityRef<TransferCommand> get(TransferId transferId) {
+            return new InstrumentedEntityRef<TransferCommand>(null, TransferEntity.class, metrics) {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <Reply, Cmd extends Object & PersistentEntity.ReplyType<Reply>> CompletionStage<Reply> ask(
+                        Cmd command) {
+                    if (!(command instanceof TransferCommand.GetState)) {
+                        throw new UnsupportedOperationException(command.toString());
+                    }
+                    return CompletableFuture.completedFuture((Reply) Optional.ofNullable(states.get(transferId)));
+                }
+            };
+        }
+
+        @Override
+        public Source<Pair<TransferEvent, Offset>, NotUsed> eventStream(AggregateEventTag<TransferEvent> tag,
+                                                                         Offset offset) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Records the steps started and how many ran at once. Steps either complete straight away or are left running
+     * until the test completes them.
+     */
+    private static class StepsStub extends TransferSagaSteps {
+        final List<TransferEvent> started = new CopyOnWriteArrayList<>();
+        final List<CompletableFuture<Done>> pending = new CopyOnWriteArrayList<>();
+        final AtomicInteger mostInProgress = new AtomicInteger();
+        private final AtomicInteger inProgress = new AtomicInteger();
+        private final boolean completeImmediately;
+        TransferId failing;
+
+        StepsStub(boolean completeImmediately) {
+            super(null, null);
+            this.completeImmediately = completeImmediately;
+        }
+
+        private CompletionStage<Done> start(TransferEvent event) {
+            started.add(event);
+            if (event.getTransferId().equals(failing)) {
+                CompletableFuture<Done> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new RuntimeException("Portfolio service unavailable"));
+                return failed;
+            }
+            if (completeImmediately) {
+                return CompletableFuture.completedFuture(Done.getInstance());
+            }
+            mostInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+            CompletableFuture<Done> step = new CompletableFuture<>();
+            pending.add(step);
+            return step.whenComplete((done, ex) -> inProgress.decrementAndGet());
+        }
+
+        @Override
+        public CompletionStage<Done> visit(TransferEvent.TransferInitiated transferInitiated) {
+            return start(transferInitiated);
+        }
+
+        @Override
+        public CompletionStage<Done> visit(TransferEvent.FundsRetrieved evt) {
+            return start(evt);
+        }
+
+        @Override
+        public CompletionStage<Done> visit(TransferEvent.DeliveryFailed deliveryFailed) {
+            return start(deliveryFailed);
+        }
+    }
+}
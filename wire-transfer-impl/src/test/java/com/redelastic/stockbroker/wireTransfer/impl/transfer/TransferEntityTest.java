@@ -0,0 +1,80 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.Done;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import com.lightbend.lagom.internal.javadsl.pubsub.PubSubRegistryImpl;
+import com.lightbend.lagom.javadsl.testkit.PersistentEntityTestDriver;
+import com.redelastic.metrics.MetricsRegistry;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.wiretransfer.api.Account;
+import com.typesafe.config.ConfigFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+public class TransferEntityTest {
+
+    private static ActorSystem system;
+
+    @BeforeClass
+    public static void setup() {
+        // Publishing transfer status needs the cluster's pub-sub mediator
+        system = ActorSystem.create("TransferEntityTest", ConfigFactory
+                .parseString("akka.actor.provider = cluster")
+                .withFallback(ConfigFactory.load()));
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    @Test
+    public void repliesAndSubmitsEachPersistedEvent() {
+        RecordingExecutor executor = new RecordingExecutor();
+        PersistentEntityTestDriver<TransferCommand, TransferEvent, Optional<TransferState>> driver =
+                new PersistentEntityTestDriver<>(system,
+                        new TransferEntity(new PubSubRegistryImpl(system), executor, new MetricsRegistry()),
+                        "transfer");
+
+        PersistentEntityTestDriver.Outcome<TransferEvent, Optional<TransferState>> outcome = driver.run(
+                TransferCommand.TransferFunds.builder()
+                        .source(new Account.Portfolio(new PortfolioId("source")))
+                        .destination(new Account.SavingsAccount("savings"))
+                        .amount(new BigDecimal("100"))
+                        .build(),
+                TransferCommand.RequestFundsSuccessful.INSTANCE,
+                // Repeated by a redriven step, persists nothing
+                TransferCommand.RequestFundsSuccessful.INSTANCE,
+                TransferCommand.DeliverySuccessful.INSTANCE
+        );
+
+        assertEquals(4, outcome.getReplies().size());
+        outcome.getReplies().forEach(reply -> assertEquals(Done.getInstance(), reply));
+        assertEquals(outcome.events(), executor.submitted);
+        assertEquals(TransferState.Status.DeliveryConfirmed, outcome.state().get().getStatus());
+    }
+
+    private static class RecordingExecutor extends TransferSagaExecutor {
+        final List<TransferEvent> submitted = new ArrayList<>();
+
+        RecordingExecutor() {
+            super(null, false, 0, Duration.ofMinutes(1));
+        }
+
+        @Override
+        void submit(TransferEvent event) {
+            submitted.add(event);
+        }
+    }
+}
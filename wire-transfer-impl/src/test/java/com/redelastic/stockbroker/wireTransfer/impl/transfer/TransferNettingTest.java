@@ -0,0 +1,147 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.Done;
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.testkit.javadsl.TestKit;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.wiretransfer.api.Account;
+import com.redelastic.stocktrader.wiretransfer.api.Transfer;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pcollections.TreePVector;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransferNettingTest {
+
+    private static final Account SAVINGS = new Account.SavingsAccount("savings");
+    private static final Account FIRST = new Account.Portfolio(new PortfolioId("first"));
+    private static final Account SECOND = new Account.Portfolio(new PortfolioId("second"));
+
+    private static ActorSystem system;
+    private static Materializer materializer;
+
+    @BeforeClass
+    public static void setup() {
+        system = ActorSystem.create("TransferNettingTest");
+        materializer = ActorMaterializer.create(system);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    @Test
+    public void movesTransfersBetweenTheSameAccountsTogether() throws Exception {
+        RecordingTransferRepository transfers = new RecordingTransferRepository();
+        // The window closes as soon as it holds all three transfers
+        TransferNetting netting = new TransferNetting(transfers, materializer, nettingConfig(3));
+
+        CompletableFuture<TransferId> first = netting.submit(transfer(FIRST, "10")).toCompletableFuture();
+        CompletableFuture<TransferId> alone = netting.submit(transfer(SECOND, "5")).toCompletableFuture();
+        CompletableFuture<TransferId> second = netting.submit(transfer(FIRST, "20")).toCompletableFuture();
+        List<TransferId> ids = Arrays.asList(
+                first.get(5, TimeUnit.SECONDS), alone.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+
+        assertEquals(2, transfers.started.size());
+        Pair<TransferId, TransferCommand.TransferFunds> net = startedFrom(transfers, FIRST);
+        assertFalse(ids.contains(net.first()));
+        assertEquals(new BigDecimal("30"), net.second().getAmount());
+        assertEquals(Arrays.asList(ids.get(0), ids.get(2)), net.second().getNettedTransfers().stream()
+                .map(NettedTransfer::getTransferId)
+                .collect(Collectors.toList()));
+
+        // Nothing to net against, so it runs under its own id
+        Pair<TransferId, TransferCommand.TransferFunds> single = startedFrom(transfers, SECOND);
+        assertEquals(ids.get(1), single.first());
+        assertEquals(new BigDecimal("5"), single.second().getAmount());
+        assertNull(single.second().getNettedTransfers());
+    }
+
+    @Test
+    public void startsEachNettedTransferWhenTheSourceCannotCoverTheTotal() throws Exception {
+        RecordingTransferRepository transfers = new RecordingTransferRepository();
+        TransferSagaSteps steps = new TransferSagaSteps(null, transfers);
+        TransferId covered = new TransferId("covered");
+        TransferId retried = new TransferId("retried");
+        // Started by an earlier attempt at the step
+        transfers.alreadyStarted(retried);
+
+        TransferDetails details = TransferDetails.builder()
+                .source(FIRST)
+                .destination(SAVINGS)
+                .amount(new BigDecimal("30"))
+                .nettedTransfers(TreePVector.from(Arrays.asList(
+                        new NettedTransfer(covered, new BigDecimal("10")),
+                        new NettedTransfer(retried, new BigDecimal("20")))))
+                .build();
+        Done done = steps.visit(new TransferEvent.CouldNotSecureFunds(new TransferId("net"), details))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(Done.getInstance(), done);
+        assertEquals(1, transfers.started.size());
+        Pair<TransferId, TransferCommand.TransferFunds> started = transfers.started.get(0);
+        assertEquals(covered, started.first());
+        assertEquals(new BigDecimal("10"), started.second().getAmount());
+        assertEquals(FIRST, started.second().getSource());
+        assertEquals(SAVINGS, started.second().getDestination());
+        assertNull(started.second().getNettedTransfers());
+    }
+
+    @Test
+    public void leavesFailedOrdinaryTransfersFailed() throws Exception {
+        RecordingTransferRepository transfers = new RecordingTransferRepository();
+        TransferSagaSteps steps = new TransferSagaSteps(null, transfers);
+        TransferDetails details = TransferDetails.builder()
+                .source(FIRST)
+                .destination(SAVINGS)
+                .amount(new BigDecimal("30"))
+                .build();
+
+        steps.visit(new TransferEvent.CouldNotSecureFunds(new TransferId("transfer"), details))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertTrue(transfers.started.isEmpty());
+    }
+
+    private static Pair<TransferId, TransferCommand.TransferFunds> startedFrom(RecordingTransferRepository transfers,
+                                                                             Account source) {
+        return transfers.started.stream()
+                .filter(started -> started.second().getSource().equals(source))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+    }
+
+    private static Transfer transfer(Account source, String funds) {
+        return Transfer.builder()
+                .sourceAccount(source)
+                .destinationAccount(SAVINGS)
+                .funds(new BigDecimal(funds))
+                .build();
+    }
+
+    private static Config nettingConfig(int maxTransfers) {
+        return ConfigFactory.parseString(
+                "wiretransfer.netting { enabled = on, window = 10s, buffer-size = 100, max-transfers = "
+                        + maxTransfers + " }");
+    }
+}
@@ -0,0 +1,125 @@
+package com.redelastic.stockbroker.wireTransfer.impl.transfer;
+
+import akka.Done;
+import com.redelastic.stocktrader.PortfolioId;
+import com.redelastic.stocktrader.TransferId;
+import com.redelastic.stocktrader.wiretransfer.api.Account;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TransferSagaExecutorTest {
+
+    private static final long MINUTE = Duration.ofMinutes(1).toNanos();
+
+    private static final TransferDetails DETAILS = TransferDetails.builder()
+            .source(new Account.Portfolio(new PortfolioId("source")))
+            .destination(new Account.SavingsAccount("savings"))
+            .amount(new BigDecimal("100"))
+            .build();
+
+    @Test
+    public void knowsWhichEventsLeaveAStepToRun() {
+        TransferId id = new TransferId("transfer");
+        assertEquals(Optional.of(TransferState.Status.FundsRequested),
+                TransferSagaExecutor.pendingStatusAfter(new TransferEvent.TransferInitiated(id, DETAILS)));
+        assertEquals(Optional.of(TransferState.Status.FundsSent),
+                TransferSagaExecutor.pendingStatusAfter(new TransferEvent.FundsRetrieved(id, DETAILS)));
+        assertEquals(Optional.of(TransferState.Status.RefundSent),
+                TransferSagaExecutor.pendingStatusAfter(new TransferEvent.DeliveryFailed(id, DETAILS)));
+        assertFalse(TransferSagaExecutor.pendingStatusAfter(new TransferEvent.DeliveryConfirmed(id, DETAILS)).isPresent());
+        assertFalse(TransferSagaExecutor.pendingStatusAfter(new TransferEvent.CouldNotSecureFunds(id, DETAILS)).isPresent());
+        assertFalse(TransferSagaExecutor.pendingStatusAfter(new TransferEvent.RefundDelivered(id, DETAILS)).isPresent());
+    }
+
+    @Test
+    public void runsEachStepOnceWhileItIsInFlight() {
+        StepsStub steps = new StepsStub();
+        TransferSagaExecutor executor = new TransferSagaExecutor(steps, true, 10, Duration.ofMinutes(1));
+        TransferEvent initiated = new TransferEvent.TransferInitiated(new TransferId("transfer"), DETAILS);
+
+        executor.submit(initiated);
+        executor.submit(initiated);
+
+        assertEquals(1, steps.started.size());
+        assertTrue(executor.inFlight(initiated).isPresent());
+
+        steps.pending.get(0).complete(Done.getInstance());
+        assertFalse(executor.inFlight(initiated).isPresent());
+    }
+
+    @Test
+    public void leavesStepsToTheSagaProcessorWhenBusyOrDisabled() {
+        StepsStub steps = new StepsStub();
+        TransferSagaExecutor busy = new TransferSagaExecutor(steps, true, 1, Duration.ofMinutes(1));
+        busy.submit(new TransferEvent.TransferInitiated(new TransferId("first"), DETAILS));
+        busy.submit(new TransferEvent.TransferInitiated(new TransferId("second"), DETAILS));
+        assertEquals(1, steps.started.size());
+
+        TransferSagaExecutor disabled = new TransferSagaExecutor(steps, false, 10, Duration.ofMinutes(1));
+        disabled.submit(new TransferEvent.TransferInitiated(new TransferId("third"), DETAILS));
+        assertEquals(1, steps.started.size());
+        assertEquals(0, disabled.fastPathTransfers());
+    }
+
+    @Test
+    public void forgetsTransfersThatNeverComplete() {
+        StepsStub steps = new StepsStub();
+        TransferSagaExecutor executor = new TransferSagaExecutor(steps, true, 10, Duration.ofMinutes(1));
+        long start = System.nanoTime();
+
+        executor.submit(new TransferEvent.TransferInitiated(new TransferId("abandoned"), DETAILS), start);
+        executor.submit(new TransferEvent.TransferInitiated(new TransferId("completed"), DETAILS), start + MINUTE / 2);
+        assertEquals(2, executor.fastPathTransfers());
+
+        executor.submit(new TransferEvent.DeliveryConfirmed(new TransferId("completed"), DETAILS), start + MINUTE / 2);
+        assertEquals(1, executor.fastPathTransfers());
+
+        executor.submit(new TransferEvent.TransferInitiated(new TransferId("recent"), DETAILS), start + MINUTE);
+        assertEquals(1, executor.fastPathTransfers());
+    }
+
+    /**
+     * Records the steps started, leaving them running until the test completes them.
+     */
+    private static class StepsStub extends TransferSagaSteps {
+        final List<TransferEvent> started = new ArrayList<>();
+        final List<CompletableFuture<Done>> pending = new ArrayList<>();
+
+        StepsStub() {
+            super(null, null);
+        }
+
+        private CompletionStage<Done> start(TransferEvent event) {
+            CompletableFuture<Done> step = new CompletableFuture<>();
+            started.add(event);
+            pending.add(step);
+            return step;
+        }
+
+        @Override
+        public CompletionStage<Done> visit(TransferEvent.TransferInitiated transferInitiated) {
+            return start(transferInitiated);
+        }
+
+        @Override
+        public CompletionStage<Done> visit(TransferEvent.FundsRetrieved evt) {
+            return start(evt);
+        }
+
+        @Override
+        public CompletionStage<Done> visit(TransferEvent.DeliveryFailed deliveryFailed) {
+            return start(deliveryFailed);
+        }
+    }
+}